@@ -37,16 +37,20 @@ import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
+import org.joda.time.Period;
 import org.n52.io.crs.BoundingBox;
 import org.n52.io.crs.CRSUtils;
+import org.n52.io.generalize.GeneralizingAlgorithm;
 import org.n52.io.geojson.GeojsonPoint;
 import org.n52.io.img.ChartDimension;
 import org.n52.io.style.LineStyle;
 import org.n52.io.style.Style;
+import org.n52.io.v1.data.Aggregation;
 import org.n52.io.v1.data.BBox;
 import org.n52.io.v1.data.DesignedParameterSet;
 import org.n52.io.v1.data.ParameterSet;
 import org.n52.io.v1.data.StyleProperties;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.io.v1.data.Vicinity;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
@@ -131,6 +135,11 @@ public class IoParameters {
      */
     private static final int DEFAULT_LIMIT = -1;
 
+    /**
+     * Determines the paging token marking the last value of the previous data page.
+     */
+    static final String AFTER = "after";
+
     /**
      * Determines the locale the output shall have.
      */
@@ -208,6 +217,50 @@ public class IoParameters {
      */
     private static final boolean DEFAULT_GENERALIZE = false;
 
+    /**
+     * Determines the maximum number of points a generalized timeseries shall have.
+     */
+    static final String MAX_POINTS = "maxPoints";
+
+    /**
+     * The default (let the algorithm decide) number of generalized points.
+     * 
+     * @see #MAX_POINTS
+     */
+    private static final int DEFAULT_MAX_POINTS = -1;
+
+    /**
+     * Determines the algorithm to generalize timeseries with.
+     */
+    static final String GENERALIZING_ALGORITHM = "generalizingAlgorithm";
+
+    /**
+     * Determines the number of pixel columns timeseries data is rendered into.
+     */
+    static final String RESOLUTION = "resolution";
+
+    /**
+     * The default (raw data) resolution.
+     * 
+     * @see #RESOLUTION
+     */
+    private static final int DEFAULT_RESOLUTION = -1;
+
+    /**
+     * Determines the function to aggregate values within each time bucket.
+     */
+    static final String AGGREGATE = "aggregate";
+
+    /**
+     * Determines the width of the time buckets to aggregate values within (as ISO8601 period).
+     */
+    static final String BUCKET = "bucket";
+
+    /**
+     * The default time bucket width in case an aggregation is requested.
+     */
+    private static final String DEFAULT_BUCKET = "PT1H";
+
     /**
      * Determines how raw data shall be formatted.
      */
@@ -399,6 +452,114 @@ public class IoParameters {
         return parseBoolean(GENERALIZE);
     }
 
+    /**
+     * @return the value of {@value #MAX_POINTS} parameter. If not present, the default
+     *         {@value #DEFAULT_MAX_POINTS} is returned.
+     * @throws IoParseException
+     *         if parameter could not be parsed.
+     */
+    public int getMaxPoints() {
+        if ( !query.containsKey(MAX_POINTS)) {
+            return DEFAULT_MAX_POINTS;
+        }
+        return parseInteger(MAX_POINTS);
+    }
+
+    /**
+     * Data rendered into a chart only needs the first, last, minimum and maximum value per pixel column to be
+     * drawn exactly like the raw data.
+     * 
+     * @return the value of {@value #RESOLUTION} parameter. If not present, the default
+     *         {@value #DEFAULT_RESOLUTION} is returned.
+     * @throws IoParseException
+     *         if parameter could not be parsed.
+     */
+    public int getResolution() {
+        if ( !query.containsKey(RESOLUTION)) {
+            return DEFAULT_RESOLUTION;
+        }
+        return parseInteger(RESOLUTION);
+    }
+
+    /**
+     * @return the value of {@value #GENERALIZING_ALGORITHM} parameter, or <code>null</code> if the service
+     *         shall decide.
+     * @throws IoParseException
+     *         if parameter does not match a known algorithm.
+     */
+    public GeneralizingAlgorithm getGeneralizingAlgorithm() {
+        if ( !query.containsKey(GENERALIZING_ALGORITHM)) {
+            return null;
+        }
+        return GeneralizingAlgorithm.fromParameterValue(query.get(GENERALIZING_ALGORITHM));
+    }
+
+    /**
+     * @return the value of {@value #AGGREGATE} parameter, or <code>null</code> if raw values are requested.
+     * @throws IoParseException
+     *         if parameter does not match a known aggregation.
+     */
+    public Aggregation getAggregation() {
+        if ( !query.containsKey(AGGREGATE)) {
+            return null;
+        }
+        return Aggregation.fromParameterValue(query.get(AGGREGATE));
+    }
+
+    /**
+     * Data pages are selected by the timestamp of the last value of the previous page instead of an offset.
+     * The page size is determined by the {@value #LIMIT} parameter.
+     * 
+     * @return the value of {@value #AFTER} parameter, or <code>null</code> if data shall be returned from the
+     *         start of the requested timespan.
+     * @throws IoParseException
+     *         if parameter is not a valid paging token.
+     */
+    public TimestampCursor getPagingCursor() {
+        if ( !query.containsKey(AFTER)) {
+            return null;
+        }
+        return TimestampCursor.decode(query.get(AFTER));
+    }
+
+    /**
+     * Fixed length buckets (e.g. <code>PT15M</code>, <code>P1D</code>) are supported as well as single
+     * calendar units (<code>P1W</code>, <code>P1M</code>, <code>P1Y</code>).
+     * 
+     * @return the value of {@value #BUCKET} parameter. If not present, the default {@value #DEFAULT_BUCKET}
+     *         is returned.
+     * @throws IoParseException
+     *         if parameter is not a valid ISO8601 period, or if it is not supported.
+     */
+    public Period getAggregationBucket() {
+        String bucket = query.containsKey(BUCKET)
+            ? query.get(BUCKET)
+            : DEFAULT_BUCKET;
+        try {
+            return validateBucket(Period.parse(bucket));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IoParseException("Could not parse bucket parameter: " + bucket, e);
+        }
+    }
+
+    private Period validateBucket(Period bucket) {
+        if (isCalendarUnit(bucket)) {
+            return bucket;
+        }
+        if (bucket.getMonths() != 0 || bucket.getYears() != 0) {
+            throw new IoParseException("Month or year buckets are supported as 'P1M' or 'P1Y' only: " + bucket);
+        }
+        if (bucket.toStandardDuration().getMillis() <= 0) {
+            throw new IoParseException("Bucket has to be a positive period: " + bucket);
+        }
+        return bucket;
+    }
+
+    private boolean isCalendarUnit(Period bucket) {
+        return bucket.equals(Period.years(1)) || bucket.equals(Period.months(1));
+    }
+
     /**
      * @return <code>true</code> if a legend shall be included when rendering a chart, <code>false</code>
      *         otherwise.
@@ -482,8 +643,12 @@ public class IoParameters {
         return validateTimespan(query.get(TIMESPAN));
     }
 
+    /**
+     * @return the last week. It ends at the next full minute, so that all requests within the same minute
+     *         resolve to the same timespan (and share e.g. cached charts).
+     */
     private Interval createDefaultTimespan() {
-        DateTime now = new DateTime();
+        DateTime now = new DateTime().plusMinutes(1).withSecondOfMinute(0).withMillisOfSecond(0);
         DateTime lastWeek = now.minusWeeks(1);
         return new Interval(lastWeek, now);
     }
@@ -797,6 +962,27 @@ public class IoParameters {
         queryParameters.put(EXPANDED, Boolean.toString(parameters.isExpanded()));
         queryParameters.put(GENERALIZE, Boolean.toString(parameters.isGeneralize()));
         queryParameters.put(LOCALE, parameters.getLanguage());
+        if (parameters.getAggregate() != null) {
+            queryParameters.put(AGGREGATE, parameters.getAggregate());
+        }
+        if (parameters.getBucket() != null) {
+            queryParameters.put(BUCKET, parameters.getBucket());
+        }
+        if (parameters.getLimit() > 0) {
+            queryParameters.put(LIMIT, Integer.toString(parameters.getLimit()));
+        }
+        if (parameters.getAfter() != null) {
+            queryParameters.put(AFTER, parameters.getAfter());
+        }
+        if (parameters.getMaxPoints() > 0) {
+            queryParameters.put(MAX_POINTS, Integer.toString(parameters.getMaxPoints()));
+        }
+        if (parameters.getGeneralizingAlgorithm() != null) {
+            queryParameters.put(GENERALIZING_ALGORITHM, parameters.getGeneralizingAlgorithm());
+        }
+        if (parameters.getResolution() > 0) {
+            queryParameters.put(RESOLUTION, Integer.toString(parameters.getResolution()));
+        }
         return queryParameters;
     }
 
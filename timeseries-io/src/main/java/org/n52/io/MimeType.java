@@ -33,7 +33,8 @@ package org.n52.io;
  */
 public enum MimeType {
 
-    APPLICATION_JSON("application/json", "json"), IMAGE_PNG("image/png", "png"), APPLICATION_PDF("application/pdf","pdf");
+    APPLICATION_JSON("application/json", "json"), IMAGE_PNG("image/png", "png"), APPLICATION_PDF("application/pdf","pdf"),
+    APPLICATION_OCTET_STREAM("application/octet-stream", "binary"), TEXT_CSV("text/csv", "csv");
     
     private String mimeType;
     
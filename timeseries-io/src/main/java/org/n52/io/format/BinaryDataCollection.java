@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesDataCollection;
+
+public final class BinaryDataCollection extends TimeseriesDataCollection<ColumnarTimeseries> {
+
+    private final Map<String, String> nextTokens = new HashMap<String, String>();
+
+    /**
+     * @param timeseriesId
+     *        the timeseries id.
+     * @return the paging token to get the next page of the timeseries, or <code>null</code> if there are no
+     *         further values.
+     */
+    public String getNext(String timeseriesId) {
+        return nextTokens.get(timeseriesId);
+    }
+
+    public void setNext(String timeseriesId, String next) {
+        if (next != null) {
+            nextTokens.put(timeseriesId, next);
+        }
+        else {
+            nextTokens.remove(timeseriesId);
+        }
+    }
+
+    @Override
+    public Object getTimeseriesOutput() {
+        /*
+         * The binary format is not serialized as JSON, see writeTo(OutputStream)
+         */
+        return getAllTimeseries();
+    }
+
+    /**
+     * Writes all timeseries in the binary format of {@link BinaryTimeseriesWriter}.
+     * 
+     * @param stream
+     *        the stream to write to (not closed).
+     * @throws IOException
+     *         if writing fails.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        BinaryTimeseriesWriter writer = new BinaryTimeseriesWriter(stream);
+        writer.writeHeader(getAllTimeseries().size());
+        for (Entry<String, ColumnarTimeseries> timeseries : getAllTimeseries().entrySet()) {
+            String timeseriesId = timeseries.getKey();
+            writer.writeTimeseries(timeseriesId, timeseries.getValue(), getNext(timeseriesId));
+        }
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.util.Map;
+
+import org.n52.io.v1.data.TimeseriesData;
+import org.n52.io.v1.data.TimeseriesDataMetadata;
+
+/**
+ * Formats timeseries for the compact binary output of {@link BinaryTimeseriesWriter}. Like with
+ * {@link HighchartFormatter} reference values become timeseries of their own.
+ */
+public class BinaryFormatter implements TimeseriesDataFormatter<BinaryDataCollection> {
+
+    @Override
+    public BinaryDataCollection format(TvpDataCollection toFormat) {
+        BinaryDataCollection dataCollection = new BinaryDataCollection();
+        for (String timeseriesId : toFormat.getAllTimeseries().keySet()) {
+            TimeseriesData seriesToFormat = toFormat.getTimeseries(timeseriesId);
+            dataCollection.addNewTimeseries(timeseriesId, seriesToFormat.getSeries());
+
+            TimeseriesDataMetadata metadata = seriesToFormat.getMetadata();
+            if (metadata != null) {
+                dataCollection.setNext(timeseriesId, metadata.getNext());
+                Map<String, TimeseriesData> referenceValues = metadata.getReferenceValues();
+                for (String referenceValueId : referenceValues.keySet()) {
+                    TimeseriesData timeseriesData = referenceValues.get(referenceValueId);
+                    dataCollection.addNewTimeseries(referenceValueId, timeseriesData.getSeries());
+                }
+            }
+        }
+        return dataCollection;
+    }
+
+}
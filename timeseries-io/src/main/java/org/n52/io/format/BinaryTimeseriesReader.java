@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.n52.io.IoParseException;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+/**
+ * Reads timeseries written by {@link BinaryTimeseriesWriter} (see there for the format), e.g. by clients
+ * requesting data with <code>format=binary</code>.
+ */
+public final class BinaryTimeseriesReader {
+
+    private BinaryTimeseriesReader() {
+        // static methods only
+    }
+
+    /**
+     * @param stream
+     *        the stream to read from (not closed).
+     * @return the timeseries read (in the order they were written) along with their paging tokens.
+     * @throws IoParseException
+     *         if the stream could not be read or does not contain binary timeseries.
+     */
+    public static BinaryDataCollection read(InputStream stream) {
+        try {
+            DataInputStream input = new DataInputStream(stream);
+            byte[] magic = new byte[BinaryTimeseriesWriter.MAGIC.length];
+            input.readFully(magic);
+            if ( !Arrays.equals(magic, BinaryTimeseriesWriter.MAGIC)) {
+                throw new IoParseException("Not a binary timeseries stream.");
+            }
+            int version = input.readUnsignedByte();
+            if (version < 1 || version > BinaryTimeseriesWriter.VERSION) {
+                throw new IoParseException("Unsupported binary timeseries version: " + version);
+            }
+            int timeseriesCount = input.readInt();
+            BinaryDataCollection dataCollection = new BinaryDataCollection();
+            dataCollection.setAllTimeseries(new LinkedHashMap<String, ColumnarTimeseries>());
+            for (int i = 0; i < timeseriesCount; i++) {
+                String timeseriesId = input.readUTF();
+                if (version > 1) {
+                    String next = input.readUTF();
+                    dataCollection.setNext(timeseriesId, next.isEmpty()
+                        ? null
+                        : next);
+                }
+                int size = input.readInt();
+                byte[] encoded = new byte[input.readInt()];
+                input.readFully(encoded);
+                dataCollection.addNewTimeseries(timeseriesId, decode(encoded, size));
+            }
+            return dataCollection;
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not read binary timeseries.", e);
+        }
+    }
+
+    static ColumnarTimeseries decode(byte[] encoded, int size) {
+        ColumnarTimeseries series = new ColumnarTimeseries(size);
+        if (size == 0) {
+            return series;
+        }
+        BitInput bits = new BitInput(encoded);
+        long timestamp = bits.read(64);
+        long delta = 0L;
+        long value = bits.read(64);
+        int leading = 0;
+        int trailing = 0;
+        series.add(timestamp, Double.longBitsToDouble(value));
+        for (int i = 1; i < size; i++) {
+            delta += readDeltaOfDelta(bits);
+            timestamp += delta;
+
+            if (bits.readBit()) {
+                if (bits.readBit()) {
+                    leading = (int) bits.read(5);
+                    int meaningful = (int) bits.read(6) + 1;
+                    trailing = Long.SIZE - leading - meaningful;
+                }
+                value ^= bits.read(Long.SIZE - leading - trailing) << trailing;
+            }
+            series.add(timestamp, Double.longBitsToDouble(value));
+        }
+        return series;
+    }
+
+    private static long readDeltaOfDelta(BitInput bits) {
+        if ( !bits.readBit()) {
+            return 0L;
+        }
+        if ( !bits.readBit()) {
+            return bits.readSigned(7);
+        }
+        if ( !bits.readBit()) {
+            return bits.readSigned(9);
+        }
+        if ( !bits.readBit()) {
+            return bits.readSigned(12);
+        }
+        return bits.read(64);
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.n52.io.IoParseException;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+/**
+ * Writes timeseries in a compact binary format suited for machine-to-machine transfer of many values. The
+ * encoding follows Facebook's Gorilla paper: timestamps are stored as delta of deltas, values as XOR of their
+ * predecessor's bits, both bit-packed. Regular intervals and slowly changing values take a few bits per
+ * value. The format is read by {@link BinaryTimeseriesReader}.<br/>
+ * <br/>
+ * Layout (big endian):
+ * <ul>
+ * <li>header: magic bytes <code>N52B</code>, version byte, number of timeseries (int)</li>
+ * <li>per timeseries: id (modified UTF-8 as by {@link DataOutputStream#writeUTF(String)}), paging token to
+ * get the next page (modified UTF-8, empty if there are no further values; since version 2), number of
+ * values (int), length of the encoded values in bytes (int), encoded values</li>
+ * </ul>
+ * Encoded values start with the first timestamp and the first value's bits (64 bits each). Each further
+ * timestamp is stored as difference of its delta to the previous delta (the first delta counts from
+ * <code>0</code>):
+ * <ul>
+ * <li><code>0</code>: same delta</li>
+ * <li><code>10</code> followed by 7 bits, <code>110</code> by 9 bits, <code>1110</code> by 12 bits, all two's
+ * complement</li>
+ * <li><code>1111</code> followed by 64 bits</li>
+ * </ul>
+ * Each further value is stored as XOR of its bits with the previous value's bits:
+ * <ul>
+ * <li><code>0</code>: same value</li>
+ * <li><code>10</code>: the meaningful bits, placed within the previous block of meaningful bits</li>
+ * <li><code>11</code>: 5 bits leading zeros, 6 bits number of meaningful bits minus one, the meaningful bits</li>
+ * </ul>
+ * Missing values are {@link Double#NaN}. Geometries are not written.
+ */
+public final class BinaryTimeseriesWriter {
+
+    static final byte[] MAGIC = new byte[] {'N', '5', '2', 'B'};
+
+    static final int VERSION = 2;
+
+    private final DataOutputStream output;
+
+    public BinaryTimeseriesWriter(OutputStream stream) {
+        this.output = new DataOutputStream(stream);
+    }
+
+    /**
+     * @param timeseriesCount
+     *        the number of timeseries written afterwards.
+     */
+    public void writeHeader(int timeseriesCount) {
+        try {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(timeseriesCount);
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write binary timeseries header.", e);
+        }
+    }
+
+    public void writeTimeseries(String timeseriesId, ColumnarTimeseries series) {
+        writeTimeseries(timeseriesId, series, null);
+    }
+
+    /**
+     * @param next
+     *        the paging token to get the next page of the timeseries, or <code>null</code> if there are no
+     *        further values.
+     */
+    public void writeTimeseries(String timeseriesId, ColumnarTimeseries series, String next) {
+        try {
+            int size = series.size();
+            byte[] encoded = encode(series.getTimestamps(), series.getValues(), size);
+            output.writeUTF(timeseriesId);
+            output.writeUTF(next != null
+                ? next
+                : "");
+            output.writeInt(size);
+            output.writeInt(encoded.length);
+            output.write(encoded);
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write binary timeseries '" + timeseriesId + "'.", e);
+        }
+    }
+
+    /**
+     * Flushes the target stream.
+     * 
+     * @throws IOException
+     *         if flushing fails.
+     */
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    static byte[] encode(long[] timestamps, double[] values, int size) {
+        // mostly about two bits per timestamp and a dozen per value
+        BitOutput bits = new BitOutput(16 + size * 2);
+        if (size == 0) {
+            return bits.toByteArray();
+        }
+        long previousTimestamp = timestamps[0];
+        long previousDelta = 0L;
+        long previousValue = Double.doubleToLongBits(values[0]);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        bits.write(previousTimestamp, 64);
+        bits.write(previousValue, 64);
+        for (int i = 1; i < size; i++) {
+            long delta = timestamps[i] - previousTimestamp;
+            writeDeltaOfDelta(bits, delta - previousDelta);
+            previousTimestamp = timestamps[i];
+            previousDelta = delta;
+
+            long value = Double.doubleToLongBits(values[i]);
+            long xor = value ^ previousValue;
+            previousValue = value;
+            if (xor == 0L) {
+                bits.writeBit(false);
+                continue;
+            }
+            bits.writeBit(true);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                bits.writeBit(false);
+                bits.write(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+            }
+            else {
+                int meaningful = Long.SIZE - leading - trailing;
+                bits.writeBit(true);
+                bits.write(leading, 5);
+                bits.write(meaningful - 1, 6);
+                bits.write(xor >>> trailing, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        return bits.toByteArray();
+    }
+
+    private static void writeDeltaOfDelta(BitOutput bits, long deltaOfDelta) {
+        if (deltaOfDelta == 0L) {
+            bits.writeBit(false);
+        }
+        else if (deltaOfDelta >= -64L && deltaOfDelta < 64L) {
+            bits.write(0x2L, 2);
+            bits.write(deltaOfDelta, 7);
+        }
+        else if (deltaOfDelta >= -256L && deltaOfDelta < 256L) {
+            bits.write(0x6L, 3);
+            bits.write(deltaOfDelta, 9);
+        }
+        else if (deltaOfDelta >= -2048L && deltaOfDelta < 2048L) {
+            bits.write(0xeL, 4);
+            bits.write(deltaOfDelta, 12);
+        }
+        else {
+            bits.write(0xfL, 4);
+            bits.write(deltaOfDelta, 64);
+        }
+    }
+
+}
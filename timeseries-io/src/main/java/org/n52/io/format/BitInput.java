@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import org.n52.io.IoParseException;
+
+/**
+ * Reads bits most significant bit first from a byte array, as written by {@link BitOutput}.
+ */
+final class BitInput {
+
+    private final byte[] data;
+
+    private final long length;
+
+    private long position;
+
+    BitInput(byte[] data) {
+        this.data = data;
+        this.length = data.length * 8L;
+    }
+
+    boolean readBit() {
+        return read(1) != 0L;
+    }
+
+    /**
+     * @param bits
+     *        the number of bits to read (1 to 64).
+     * @return the bits read as the lowest bits of the returned value.
+     * @throws IoParseException
+     *         if less bits are left.
+     */
+    long read(int bits) {
+        if (position + bits > length) {
+            throw new IoParseException("Binary timeseries data is truncated.");
+        }
+        long value = 0L;
+        int left = bits;
+        while (left > 0) {
+            int bitOffset = (int) (position & 7);
+            int available = 8 - bitOffset;
+            int taken = Math.min(available, left);
+            int current = data[(int) (position >>> 3)] & 0xff;
+            int chunk = (current >>> (available - taken)) & ((1 << taken) - 1);
+            value = (value << taken) | chunk;
+            left -= taken;
+            position += taken;
+        }
+        return value;
+    }
+
+    /**
+     * @return the given number of bits read as two's complement number.
+     */
+    long readSigned(int bits) {
+        int shift = Long.SIZE - bits;
+        return (read(bits) << shift) >> shift;
+    }
+
+}
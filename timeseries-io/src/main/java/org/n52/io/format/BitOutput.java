@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.util.Arrays;
+
+/**
+ * Collects bits most significant bit first into a growing byte array.
+ */
+final class BitOutput {
+
+    private byte[] buffer;
+
+    private int size;
+
+    private long word;
+
+    private int free = Long.SIZE;
+
+    BitOutput(int expectedBytes) {
+        this.buffer = new byte[Math.max(expectedBytes, 16)];
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1L : 0L, 1);
+    }
+
+    /**
+     * @param value
+     *        the value whose lowest bits are written.
+     * @param bits
+     *        the number of bits to write (1 to 64).
+     */
+    void write(long value, int bits) {
+        long masked = bits < Long.SIZE
+            ? value & ((1L << bits) - 1)
+            : value;
+        if (bits <= free) {
+            free -= bits;
+            word |= masked << free;
+            if (free == 0) {
+                flushWord();
+            }
+        }
+        else {
+            int remaining = bits - free;
+            word |= masked >>> remaining;
+            flushWord();
+            free = Long.SIZE - remaining;
+            word = masked << free;
+        }
+    }
+
+    private void flushWord() {
+        ensureCapacity(size + 8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (word >>> shift);
+        }
+        word = 0L;
+        free = Long.SIZE;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    /**
+     * @return the bits written so far, the last byte padded with zero bits.
+     */
+    byte[] toByteArray() {
+        int pendingBytes = (Long.SIZE - free + 7) / 8;
+        byte[] bytes = Arrays.copyOf(buffer, size + pendingBytes);
+        for (int i = 0; i < pendingBytes; i++) {
+            bytes[size + i] = (byte) (word >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+}
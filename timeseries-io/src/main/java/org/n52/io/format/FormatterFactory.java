@@ -38,6 +38,8 @@ public final class FormatterFactory {
     public TimeseriesDataFormatter<?> create() {
         if ("highcharts".equals(format)) {
             return new HighchartFormatter();
+        } else if ("binary".equals(format)) {
+            return new BinaryFormatter();
         } else {
             return new TvpFormatter();
         }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.io.IOException;
+
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a timeseries as Highcharts series data (<code>[[timestamp, value], ...]</code>, <code>null</code> for
+ * missing values) straight from its primitive arrays, without creating an object per value.
+ */
+public class HighchartDataSerializer extends JsonSerializer<ColumnarTimeseries> {
+
+    @Override
+    public void serialize(ColumnarTimeseries series, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        long[] timestamps = series.getTimestamps();
+        double[] values = series.getValues();
+        generator.writeStartArray();
+        for (int i = 0; i < series.size(); i++) {
+            generator.writeStartArray();
+            generator.writeNumber(timestamps[i]);
+            if (Double.isNaN(values[i])) {
+                generator.writeNull();
+            }
+            else {
+                generator.writeNumber(values[i]);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+    }
+
+}
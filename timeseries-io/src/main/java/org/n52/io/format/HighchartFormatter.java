@@ -27,13 +27,10 @@
  */
 package org.n52.io.format;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.TimeseriesDataMetadata;
-import org.n52.io.v1.data.TimeseriesValue;
 
 
 public class HighchartFormatter implements TimeseriesDataFormatter<HighchartDataCollection> {
@@ -60,20 +57,9 @@ public class HighchartFormatter implements TimeseriesDataFormatter<HighchartData
     }
 
     private HighchartSeries createHighchartSeries(String seriesId, TimeseriesData seriesToFormat) {
-        List<Number[]> formattedSeries = formatSeries(seriesToFormat);
         HighchartSeries series = new HighchartSeries();
         series.setName(seriesId);
-        series.setData(formattedSeries);
-        return series;
-    }
-
-    private List<Number[]> formatSeries(TimeseriesData timeseries) {
-        List<Number[]> series = new ArrayList<Number[]>();
-        for (TimeseriesValue currentValue : timeseries.getValues()) {
-            Long timestamp = currentValue.getTimestamp();
-            Double value = currentValue.getValue();
-            series.add(new Number[] {timestamp, value});
-        }
+        series.setData(seriesToFormat.getSeries());
         return series;
     }
 
@@ -27,13 +27,15 @@
  */
 package org.n52.io.format;
 
-import java.util.List;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 public class HighchartSeries {
     
     private String name;
     
-    private List<Number[]> data;
+    private ColumnarTimeseries data;
 
     public String getName() {
         return name;
@@ -43,11 +45,12 @@ public class HighchartSeries {
         this.name = name;
     }
 
-    public List<Number[]> getData() {
+    @JsonSerialize(using = HighchartDataSerializer.class)
+    public ColumnarTimeseries getData() {
         return data;
     }
 
-    public void setData(List<Number[]> series) {
+    public void setData(ColumnarTimeseries series) {
         this.data = series;
     }
     
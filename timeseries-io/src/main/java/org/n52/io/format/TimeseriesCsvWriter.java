@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.n52.io.IoParseException;
+
+/**
+ * Writes timeseries rows as CSV (RFC 4180) directly to a stream as they are handled. The first column holds
+ * the ISO 8601 timestamp (UTC), each further column the values of one timeseries. Missing values are left
+ * empty. Rows are never collected in memory.
+ */
+public final class TimeseriesCsvWriter implements TimeseriesRowHandler {
+
+    private static final String LINE_END = "\r\n";
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = ISODateTimeFormat.dateTime().withZoneUTC();
+
+    private final Writer writer;
+
+    private TimeseriesCsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public static TimeseriesCsvWriter createCsvWriter(OutputStream stream) throws IOException {
+        return new TimeseriesCsvWriter(new BufferedWriter(new OutputStreamWriter(stream, "UTF-8")));
+    }
+
+    @Override
+    public void startRows(String[] timeseriesIds) {
+        try {
+            writer.write("timestamp");
+            for (String timeseriesId : timeseriesIds) {
+                writer.write(',');
+                writeEscaped(timeseriesId);
+            }
+            writer.write(LINE_END);
+            // let the first bytes go out before all values have been read
+            writer.flush();
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write CSV header to output stream.", e);
+        }
+    }
+
+    private void writeEscaped(String field) throws IOException {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @Override
+    public void handleRow(long timestamp, double[] values) {
+        try {
+            TIMESTAMP_FORMAT.printTo(writer, timestamp);
+            for (double value : values) {
+                writer.write(',');
+                if ( !Double.isNaN(value)) {
+                    writer.write(Double.toString(value));
+                }
+            }
+            writer.write(LINE_END);
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write CSV row to output stream.", e);
+        }
+    }
+
+    @Override
+    public void endRows() {
+        try {
+            writer.flush();
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write CSV to output stream.", e);
+        }
+    }
+
+    /**
+     * Flushes and closes the writer and the target stream.
+     * 
+     * @throws IOException
+     *         if closing fails.
+     */
+    public void close() throws IOException {
+        writer.close();
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.n52.io.IoParseException;
+import org.n52.io.v1.data.TimeseriesValue;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes timeseries values directly to a JSON generator as they are handled. The output equals the one of
+ * {@link TvpFormatter} (<code>{"values": [...]}</code>) or {@link HighchartFormatter} (
+ * <code>{"name": ..., "data": [...]}</code>) for a single timeseries, but values are never collected in
+ * memory.
+ */
+public final class TimeseriesJsonWriter implements TimeseriesValueHandler {
+
+    private static final String TVP_FORMAT = "tvp";
+
+    private static final String HIGHCHARTS_FORMAT = "highcharts";
+
+    private final JsonGenerator generator;
+
+    private final boolean highcharts;
+
+    private TimeseriesJsonWriter(JsonGenerator generator, String format) {
+        this.generator = generator;
+        this.highcharts = HIGHCHARTS_FORMAT.equals(format);
+    }
+
+    /**
+     * @param format
+     *        the requested output format.
+     * @return <code>true</code> if values of the given format can be written one by one.
+     */
+    public static boolean isSupportedFormat(String format) {
+        return format == null
+                || TVP_FORMAT.equals(format)
+                || HIGHCHARTS_FORMAT.equals(format);
+    }
+
+    public static TimeseriesJsonWriter createJsonWriter(OutputStream stream, String format) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(NON_NULL);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(stream, JsonEncoding.UTF8);
+        return new TimeseriesJsonWriter(generator, format);
+    }
+
+    @Override
+    public void startTimeseries(String timeseriesId) {
+        try {
+            generator.writeStartObject();
+            if (highcharts) {
+                generator.writeStringField("name", timeseriesId);
+                generator.writeArrayFieldStart("data");
+            }
+            else {
+                generator.writeArrayFieldStart("values");
+            }
+            // let the first bytes go out before all values have been read
+            generator.flush();
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write timeseries to output stream.", e);
+        }
+    }
+
+    @Override
+    public void handleValue(TimeseriesValue value) {
+        try {
+            if (highcharts) {
+                writeHighchartsValue(value);
+            }
+            else {
+                writeTvpValue(value);
+            }
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write timeseries value to output stream.", e);
+        }
+    }
+
+    private void writeHighchartsValue(TimeseriesValue value) throws IOException {
+        generator.writeStartArray();
+        generator.writeNumber(value.getTimestamp());
+        writeNumberOrNull(value.getValue());
+        generator.writeEndArray();
+    }
+
+    private void writeTvpValue(TimeseriesValue value) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("timestamp", value.getTimestamp());
+        if (value.getValue() != null) {
+            generator.writeNumberField("value", value.getValue());
+        }
+        if (value.getGeom() != null) {
+            generator.writeObjectField("geom", value.getGeom());
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeNumberOrNull(Double value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        }
+        else {
+            generator.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void endTimeseries(String timeseriesId) {
+        try {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        catch (IOException e) {
+            throw new IoParseException("Could not write timeseries to output stream.", e);
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying generator and the target stream.
+     * 
+     * @throws IOException
+     *         if closing fails.
+     */
+    public void close() throws IOException {
+        generator.close();
+    }
+
+}
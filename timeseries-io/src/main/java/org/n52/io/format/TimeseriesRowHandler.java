@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+/**
+ * Callback to process the values of multiple timeseries row by row, aligned by timestamp (see
+ * {@link TimeseriesRowMerger}).
+ */
+public interface TimeseriesRowHandler {
+
+    /**
+     * @param timeseriesIds
+     *        the ids of the timeseries, in the order of the values of each row.
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void startRows(String[] timeseriesIds);
+
+    /**
+     * @param timestamp
+     *        the timestamp of the row (rows arrive ordered by timestamp).
+     * @param values
+     *        the value of each timeseries at the timestamp, {@link Double#NaN} if a timeseries has no value
+     *        there. The array is reused for the next row and must not be kept.
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void handleRow(long timestamp, double[] values);
+
+    /**
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void endRows();
+
+}
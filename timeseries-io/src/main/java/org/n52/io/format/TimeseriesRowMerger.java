@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+
+/**
+ * Merges the values of multiple timeseries into rows aligned by timestamp (k-way merge). Only the current
+ * value of each timeseries is held, so memory stays flat regardless of the number of values.
+ */
+public final class TimeseriesRowMerger {
+
+    private TimeseriesRowMerger() {
+        // static methods only
+    }
+
+    /**
+     * Reads all cursors and passes a row for each distinct timestamp to the handler. Cursors are not closed.
+     * If a timeseries has multiple values with the same timestamp, the last one is taken.
+     * 
+     * @param timeseriesIds
+     *        the ids of the timeseries.
+     * @param cursors
+     *        a cursor over the values of each timeseries (same order as the ids).
+     * @param handler
+     *        the handler to pass the rows to.
+     */
+    public static void merge(String[] timeseriesIds, TimeseriesValueCursor[] cursors, TimeseriesRowHandler handler) {
+        PriorityQueue<Column> columns = new PriorityQueue<Column>(Math.max(cursors.length, 1));
+        for (int i = 0; i < cursors.length; i++) {
+            Column column = new Column(i, cursors[i]);
+            if (column.advance()) {
+                columns.add(column);
+            }
+        }
+        handler.startRows(timeseriesIds);
+        double[] row = new double[cursors.length];
+        while ( !columns.isEmpty()) {
+            long timestamp = columns.peek().timestamp;
+            Arrays.fill(row, Double.NaN);
+            while ( !columns.isEmpty() && columns.peek().timestamp == timestamp) {
+                Column column = columns.poll();
+                row[column.index] = column.cursor.getValue();
+                if (column.advance()) {
+                    columns.add(column);
+                }
+            }
+            handler.handleRow(timestamp, row);
+        }
+        handler.endRows();
+    }
+
+    /**
+     * Like {@link #merge(String[], TimeseriesValueCursor[], TimeseriesRowHandler)} for timeseries already held
+     * in memory (e.g. aggregated data). Timeseries missing in the given data get no values.
+     */
+    public static void merge(String[] timeseriesIds, TvpDataCollection data, TimeseriesRowHandler handler) {
+        TimeseriesValueCursor[] cursors = new TimeseriesValueCursor[timeseriesIds.length];
+        for (int i = 0; i < timeseriesIds.length; i++) {
+            TimeseriesData timeseries = data.getTimeseries(timeseriesIds[i]);
+            cursors[i] = createCursor(timeseries != null
+                ? timeseries.getSeries()
+                : new ColumnarTimeseries(0));
+        }
+        merge(timeseriesIds, cursors, handler);
+    }
+
+    /**
+     * @return a cursor over the values of an in-memory timeseries.
+     */
+    public static TimeseriesValueCursor createCursor(final ColumnarTimeseries series) {
+        return new TimeseriesValueCursor() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < series.size();
+            }
+
+            @Override
+            public long getTimestamp() {
+                return series.getTimestamp(index);
+            }
+
+            @Override
+            public double getValue() {
+                return series.getValue(index);
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    private static final class Column implements Comparable<Column> {
+
+        private final int index;
+
+        private final TimeseriesValueCursor cursor;
+
+        private long timestamp;
+
+        Column(int index, TimeseriesValueCursor cursor) {
+            this.index = index;
+            this.cursor = cursor;
+        }
+
+        boolean advance() {
+            if (cursor.next()) {
+                timestamp = cursor.getTimestamp();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(Column other) {
+            if (timestamp != other.timestamp) {
+                return timestamp < other.timestamp ? -1 : 1;
+            }
+            return index < other.index ? -1 : index == other.index ? 0 : 1;
+        }
+
+    }
+
+}
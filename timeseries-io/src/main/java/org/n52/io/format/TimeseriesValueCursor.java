@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+/**
+ * Forward-only cursor over the values of a single timeseries ordered by timestamp, e.g. backed by an open
+ * database cursor.
+ */
+public interface TimeseriesValueCursor {
+
+    /**
+     * Moves to the next value.
+     * 
+     * @return <code>true</code> if there is a next value, <code>false</code> if all values have been read.
+     */
+    public boolean next();
+
+    /**
+     * @return the timestamp of the current value.
+     */
+    public long getTimestamp();
+
+    /**
+     * @return the current value, {@link Double#NaN} if missing.
+     */
+    public double getValue();
+
+    /**
+     * Releases the resources held by the cursor.
+     */
+    public void close();
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import org.n52.io.v1.data.TimeseriesValue;
+
+/**
+ * Callback to process timeseries values one by one, e.g. while values are read from an open database cursor.
+ * Implementations must not keep references to handled values if memory shall stay flat.
+ */
+public interface TimeseriesValueHandler {
+
+    /**
+     * @param timeseriesId
+     *        the id of the timeseries whose values will be handled next.
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void startTimeseries(String timeseriesId);
+
+    /**
+     * @param value
+     *        the next value of the current timeseries (values arrive ordered by timestamp).
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void handleValue(TimeseriesValue value);
+
+    /**
+     * @param timeseriesId
+     *        the id of the timeseries whose values have all been handled.
+     * @throws IoParseException
+     *         if handling fails.
+     */
+    public void endTimeseries(String timeseriesId);
+
+}
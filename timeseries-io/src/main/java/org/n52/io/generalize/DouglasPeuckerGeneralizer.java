@@ -31,13 +31,11 @@ import static java.lang.Double.parseDouble;
 import static java.lang.Integer.parseInt;
 
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
-import java.util.Arrays;
 import java.util.Properties;
 
 import org.n52.io.format.TvpDataCollection;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.TimeseriesData;
-import org.n52.io.v1.data.TimeseriesValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +44,9 @@ import org.slf4j.LoggerFactory;
  * 
  * Characteristic measurement values are picked depending on a given tolerance value. Values that differ less
  * than this tolerance value from an ideal line between some minima and maxima will be dropped.
+ * 
+ * For large timeseries prefer the {@link IterativeDouglasPeuckerGeneralizer} which reads the same
+ * configuration keys.
  */
 public final class DouglasPeuckerGeneralizer implements Generalizer {
 
@@ -54,7 +55,7 @@ public final class DouglasPeuckerGeneralizer implements Generalizer {
     /**
      * Config-key for {@link #maxEntries} of entries.
      */
-    private static final String MAX_ENTRIES = "MAX_ENTRIES";
+    static final String MAX_ENTRIES = "MAX_ENTRIES";
 
     /**
      * Config-key for {@link #reductionRate}.
@@ -64,7 +65,7 @@ public final class DouglasPeuckerGeneralizer implements Generalizer {
     /**
      * Config-key for the {@link #toleranceValue}.
      */
-    private static final String TOLERANCE_VALUE = "TOLERANCE_VALUE";
+    static final String TOLERANCE_VALUE = "TOLERANCE_VALUE";
 
     /**
      * {@link #maxEntries} is the value for the maximum points the generalizer will handle, otherwise an
@@ -135,41 +136,55 @@ public final class DouglasPeuckerGeneralizer implements Generalizer {
     }
 
     private TimeseriesData generalize(TimeseriesData timeseries) throws GeneralizerException {
-        TimeseriesValue[] originalValues = timeseries.getValues();
-        if (originalValues.length < 3 || toleranceValue <= 0) {
+        ColumnarTimeseries originalValues = timeseries.getSeries();
+        int originalSize = originalValues.size();
+        if (originalSize < 3 || toleranceValue <= 0) {
             return timeseries;
         }
 
-        if (maxEntries != -1 && originalValues.length > maxEntries) {
-            throw new GeneralizerException("Maximum number of entries exceeded (" + originalValues.length + ">"
+        if (maxEntries != -1 && originalSize > maxEntries) {
+            throw new GeneralizerException("Maximum number of entries exceeded (" + originalSize + ">"
                     + maxEntries + ")!");
         }
 
-        TimeseriesData generalizedTimeseries = new TimeseriesData();
-        TimeseriesValue[] generalizedValues = recursiveGeneralize(timeseries);
-        generalizedTimeseries.addValues(generalizedValues);
+        ColumnarTimeseries generalizedValues = new ColumnarTimeseries();
+        recursiveGeneralize(originalValues, 0, originalSize, generalizedValues);
 
         // add first element if new list is empty
-        if (generalizedValues.length == 0 && originalValues.length > 0) {
-            generalizedTimeseries.addValues(originalValues[0]);
+        if (generalizedValues.isEmpty()) {
+            generalizedValues.add(originalValues, 0);
         }
 
         // add the last one if not already contained!
-        if (generalizedValues.length > 0 && originalValues.length > 0) {
-            TimeseriesValue lastOriginialValue = originalValues[originalValues.length - 1];
-            TimeseriesValue lastGeneralizedValue = generalizedValues[generalizedValues.length - 1];
-            if (lastGeneralizedValue.getTimestamp() != lastOriginialValue.getTimestamp()) {
-                generalizedTimeseries.addValues(lastOriginialValue);
+        else {
+            long lastOriginalTimestamp = originalValues.getTimestamp(originalSize - 1);
+            long lastGeneralizedTimestamp = generalizedValues.getTimestamp(generalizedValues.size() - 1);
+            if (lastGeneralizedTimestamp != lastOriginalTimestamp) {
+                generalizedValues.add(originalValues, originalSize - 1);
             }
         }
-        return generalizedTimeseries;
+        return TimeseriesData.newTimeseriesData(generalizedValues);
     }
 
-    private TimeseriesValue[] recursiveGeneralize(TimeseriesData timeseries) {
-        TimeseriesValue[] values = timeseries.getValues();
-        TimeseriesValue startValue = getFirstValue(timeseries);
-        TimeseriesValue endValue = getLastValue(timeseries);
-        Line2D.Double line = createTendencyLine(startValue, endValue);
+    /**
+     * Generalizes the values within the given index range.
+     * 
+     * @param values
+     *        all values of the timeseries.
+     * @param from
+     *        index of the first value (inclusive).
+     * @param to
+     *        index of the last value (exclusive).
+     * @param generalized
+     *        the series to add the kept values to.
+     */
+    private void recursiveGeneralize(ColumnarTimeseries values, int from, int to, ColumnarTimeseries generalized) {
+        long[] timestamps = values.getTimestamps();
+        double[] data = values.getValues();
+        double startTime = timestamps[from];
+        double startValue = data[from];
+        double endTime = timestamps[to - 1];
+        double endValue = data[to - 1];
 
         // find the point of maximum distance to the line
         int index = 0;
@@ -177,9 +192,8 @@ public final class DouglasPeuckerGeneralizer implements Generalizer {
         double distance;
 
         // start and end value are not mentioned
-        for (int i = 1; i < values.length - 1; i++) {
-            TimeseriesValue timeseriesValue = values[i];
-            distance = calculateDistance(line, timeseriesValue);
+        for (int i = from + 1; i < to - 1; i++) {
+            distance = Line2D.ptLineDist(startTime, startValue, endTime, endValue, timestamps[i], data[i]);
             if (distance > maxDist) {
                 index = i;
                 maxDist = distance;
@@ -187,57 +201,16 @@ public final class DouglasPeuckerGeneralizer implements Generalizer {
         }
 
         if (maxDist < toleranceValue) {
-            return timeseries.getValues();
+            for (int i = from; i < to; i++) {
+                generalized.add(values, i);
+            }
         }
         else {
             // split and handle both parts separately
-            TimeseriesData generalizedData = new TimeseriesData();
-            TimeseriesData firstPartToBeGeneralized = new TimeseriesData();
-            TimeseriesData restPartToBeGeneralized = new TimeseriesData();
-            firstPartToBeGeneralized.addValues(Arrays.copyOfRange(values, 0, index));
-            restPartToBeGeneralized.addValues(Arrays.copyOfRange(values, index + 1, values.length));
-            generalizedData.addValues(recursiveGeneralize(firstPartToBeGeneralized));
-            generalizedData.addValues(recursiveGeneralize(restPartToBeGeneralized));
-            return generalizedData.getValues();
+            recursiveGeneralize(values, from, index, generalized);
+            recursiveGeneralize(values, index + 1, to, generalized);
         }
 
     }
 
-    private double calculateDistance(Line2D.Double line, TimeseriesValue timeseriesValue) {
-        return line.ptLineDist(createPoint(timeseriesValue));
-    }
-
-    private Point2D.Double createPoint(TimeseriesValue timeseriesValue) {
-        Long timestamp = timeseriesValue.getTimestamp();
-        double value = timeseriesValue.getValue();
-
-        Point2D.Double p = new Point2D.Double();
-        p.setLocation(timestamp, value);
-        return p;
-    }
-
-    private Line2D.Double createTendencyLine(TimeseriesValue start, TimeseriesValue end) {
-        Long startTime = start.getTimestamp();
-        double startValue = start.getValue();
-        Long endTime = end.getTimestamp();
-        double endValue = end.getValue();
-        return new Line2D.Double(startTime, startValue, endTime, endValue);
-    }
-
-    private TimeseriesValue getFirstValue(TimeseriesData timeseries) {
-        TimeseriesValue[] values = timeseries.getValues();
-        if (values == null || values.length == 0) {
-            throw new IllegalArgumentException("Timeseries must not be empty.");
-        }
-        return values[0];
-    }
-
-    private TimeseriesValue getLastValue(TimeseriesData timeseries) {
-        TimeseriesValue[] values = timeseries.getValues();
-        if (values == null || values.length == 0) {
-            throw new IllegalArgumentException("Timeseries must not be empty.");
-        }
-        return values[values.length - 1];
-    }
-
 }
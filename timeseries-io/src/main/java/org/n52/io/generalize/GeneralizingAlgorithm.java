@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.generalize;
+
+import java.util.Locale;
+
+import org.n52.io.IoParseException;
+import org.n52.io.format.TvpDataCollection;
+
+/**
+ * Algorithms available to generalize timeseries data.
+ */
+public enum GeneralizingAlgorithm {
+
+    /**
+     * Largest-Triangle-Three-Buckets, keeps the visual shape of the timeseries.
+     */
+    LTTB {
+        @Override
+        public Generalizer createGeneralizer(TvpDataCollection data, int maxPoints) {
+            return LargestTriangleThreeBucketsGeneralizer.createGeneralizer(data, maxPoints);
+        }
+    },
+
+    /**
+     * Douglas-Peucker, keeps points deviating more than a tolerance from the line between their neighbours.
+     */
+    DP {
+        @Override
+        public Generalizer createGeneralizer(TvpDataCollection data, int maxPoints) {
+            return IterativeDouglasPeuckerGeneralizer.createGeneralizer(data, maxPoints);
+        }
+    };
+
+    /**
+     * @param data
+     *        the data to generalize.
+     * @param maxPoints
+     *        the maximum number of points each generalized timeseries shall have, or <code>-1</code> to let
+     *        the algorithm decide.
+     * @return a generalizer for the given data.
+     */
+    public abstract Generalizer createGeneralizer(TvpDataCollection data, int maxPoints);
+
+    /**
+     * @return the lower case parameter value, e.g. <code>lttb</code>.
+     */
+    public String getParameterValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param value
+     *        the parameter value to parse (case insensitive).
+     * @return the matching algorithm.
+     * @throws IoParseException
+     *         if value does not match any known algorithm.
+     */
+    public static GeneralizingAlgorithm fromParameterValue(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IoParseException("Unknown generalizing algorithm '" + value + "'. Valid values are lttb, dp.", e);
+        }
+    }
+
+}
@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.generalize;
+
+import static java.lang.Double.parseDouble;
+import static java.lang.Integer.parseInt;
+import static org.n52.io.generalize.DouglasPeuckerGeneralizer.MAX_ENTRIES;
+import static org.n52.io.generalize.DouglasPeuckerGeneralizer.TOLERANCE_VALUE;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+import org.n52.io.format.TvpDataCollection;
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Douglas-Peucker generalizer working in one pass over the primitive timestamp and value arrays of a
+ * timeseries. Ranges still to be checked are kept on an explicit stack (so large series can not overflow the
+ * call stack) and kept points are marked in a {@link BitSet}, so no intermediate series or points are
+ * created.<br/>
+ * <br/>
+ * Distances are measured perpendicular to the line between the range's end points, with time in
+ * milliseconds and the value in its unit of measure. Missing values are always kept as they mark gaps; the
+ * values in between are generalized separately. Configuration keys are the same as for the
+ * {@link DouglasPeuckerGeneralizer}.
+ */
+public final class IterativeDouglasPeuckerGeneralizer implements Generalizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IterativeDouglasPeuckerGeneralizer.class);
+
+    /**
+     * the maximum points the generalizer will handle, otherwise an exception will be thrown; -1 is unlimited
+     */
+    private int maxEntries = -1; // fallback default
+
+    /**
+     * Absolute tolerance value.
+     */
+    private double toleranceValue = 0.1; // fallback default
+
+    /**
+     * the maximum points a generalized timeseries shall have; -1 keeps all points exceeding the tolerance
+     */
+    private int maxPoints = -1;
+
+    private TvpDataCollection dataToGeneralize;
+
+    public static Generalizer createNonConfigGeneralizer(TvpDataCollection data) {
+        return new IterativeDouglasPeuckerGeneralizer(data, new Properties());
+    }
+
+    public static Generalizer createGeneralizer(TvpDataCollection data, Properties configuration) {
+        return new IterativeDouglasPeuckerGeneralizer(data, configuration);
+    }
+
+    /**
+     * @param data
+     *        the data to generalize.
+     * @param maxPoints
+     *        the maximum number of points each generalized timeseries shall have, or <code>-1</code> to keep
+     *        all points exceeding the tolerance. If limited, the most distant points are kept first.
+     * @return a generalizer with fallback configuration.
+     */
+    public static Generalizer createGeneralizer(TvpDataCollection data, int maxPoints) {
+        IterativeDouglasPeuckerGeneralizer generalizer = new IterativeDouglasPeuckerGeneralizer(data, new Properties());
+        generalizer.maxPoints = maxPoints;
+        return generalizer;
+    }
+
+    private IterativeDouglasPeuckerGeneralizer(TvpDataCollection data, Properties configuration) {
+        this.dataToGeneralize = data;
+        configure(configuration);
+    }
+
+    private void configure(Properties configuration) {
+        try {
+            maxEntries = configuration.containsKey(MAX_ENTRIES)
+                ? parseInt(configuration.getProperty(MAX_ENTRIES))
+                : -1;
+            toleranceValue = configuration.containsKey(TOLERANCE_VALUE)
+                ? parseDouble(configuration.getProperty(TOLERANCE_VALUE))
+                : 0.1;
+        }
+        catch (NumberFormatException ne) {
+            LOGGER.error("Error while reading properties!  Using fallback defaults.", ne);
+            throw new IllegalStateException("Error while reading properties! Using fallback defaults.");
+        }
+    }
+
+    @Override
+    public TvpDataCollection generalize() throws GeneralizerException {
+        TvpDataCollection generalizedDataCollection = new TvpDataCollection();
+        for (String timeseriesId : dataToGeneralize.getAllTimeseries().keySet()) {
+            TimeseriesData timeseries = dataToGeneralize.getTimeseries(timeseriesId);
+            generalizedDataCollection.addNewTimeseries(timeseriesId, generalize(timeseries));
+        }
+        return generalizedDataCollection;
+    }
+
+    private TimeseriesData generalize(TimeseriesData timeseries) throws GeneralizerException {
+        ColumnarTimeseries originalValues = timeseries.getSeries();
+        int originalSize = originalValues.size();
+        if (originalSize < 3 || toleranceValue <= 0) {
+            return timeseries;
+        }
+
+        if (maxEntries != -1 && originalSize > maxEntries) {
+            throw new GeneralizerException("Maximum number of entries exceeded (" + originalSize + ">"
+                    + maxEntries + ")!");
+        }
+
+        long[] timestamps = originalValues.getTimestamps();
+        double[] values = originalValues.getValues();
+        BitSet kept = maxPoints > 0 && originalSize > maxPoints
+            ? markMostDistantPoints(timestamps, values, toleranceValue, maxPoints)
+            : markKeptPoints(timestamps, values, toleranceValue);
+        if (kept.cardinality() == originalSize) {
+            return timeseries;
+        }
+        ColumnarTimeseries generalizedValues = new ColumnarTimeseries(kept.cardinality());
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            generalizedValues.add(originalValues, i);
+        }
+        return TimeseriesData.newTimeseriesData(generalizedValues);
+    }
+
+    /**
+     * Marks the points to keep when generalizing the given series.
+     * 
+     * @param timestamps
+     *        the timestamps in ascending order.
+     * @param values
+     *        the values ({@link Double#NaN} for missing values).
+     * @param tolerance
+     *        the distance a point has to exceed to be kept.
+     * @return the indices of all points to keep.
+     */
+    static BitSet markKeptPoints(long[] timestamps, double[] values, double tolerance) {
+        BitSet kept = new BitSet(values.length);
+        RangeStack ranges = new RangeStack();
+        markGapsAndRuns(values, kept, ranges);
+
+        double squaredTolerance = tolerance * tolerance;
+        while ( !ranges.isEmpty()) {
+            int to = ranges.popTo();
+            int from = ranges.popFrom();
+            if (to - from < 2) {
+                continue;
+            }
+            int index = findMostDistantPoint(timestamps, values, from, to);
+            if (squaredDistance(timestamps, values, from, to, index) >= squaredTolerance) {
+                kept.set(index);
+                ranges.push(from, index);
+                ranges.push(index, to);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Like {@link #markKeptPoints(long[], double[], double)} but stops after the given number of points has
+     * been marked. Ranges are split in order of their most distant point, so the points kept are the most
+     * significant ones. Gaps and the end points of present values are kept in any case.
+     * 
+     * @param timestamps
+     *        the timestamps in ascending order.
+     * @param values
+     *        the values ({@link Double#NaN} for missing values).
+     * @param tolerance
+     *        the distance a point has to exceed to be kept.
+     * @param maxPoints
+     *        the number of points to keep at most.
+     * @return the indices of all points to keep.
+     */
+    static BitSet markMostDistantPoints(long[] timestamps, double[] values, double tolerance, int maxPoints) {
+        BitSet kept = new BitSet(values.length);
+        RangeStack runs = new RangeStack();
+        int keptPoints = markGapsAndRuns(values, kept, runs);
+
+        double squaredTolerance = tolerance * tolerance;
+        PriorityQueue<Split> splits = new PriorityQueue<Split>();
+        while ( !runs.isEmpty()) {
+            int to = runs.popTo();
+            addSplit(splits, timestamps, values, runs.popFrom(), to, squaredTolerance);
+        }
+        while (keptPoints < maxPoints && !splits.isEmpty()) {
+            Split split = splits.poll();
+            kept.set(split.index);
+            keptPoints++;
+            addSplit(splits, timestamps, values, split.from, split.index, squaredTolerance);
+            addSplit(splits, timestamps, values, split.index, split.to, squaredTolerance);
+        }
+        return kept;
+    }
+
+    private static void addSplit(PriorityQueue<Split> splits,
+                                 long[] timestamps,
+                                 double[] values,
+                                 int from,
+                                 int to,
+                                 double squaredTolerance) {
+        if (to - from < 2) {
+            return;
+        }
+        int index = findMostDistantPoint(timestamps, values, from, to);
+        double squaredDistance = squaredDistance(timestamps, values, from, to, index);
+        if (squaredDistance >= squaredTolerance) {
+            splits.add(new Split(from, to, index, squaredDistance));
+        }
+    }
+
+    /**
+     * Marks missing values and the end points of each run of present values as kept.
+     * 
+     * @return the number of points marked.
+     */
+    private static int markGapsAndRuns(double[] values, BitSet kept, RangeStack runs) {
+        int size = values.length;
+        int runStart = -1;
+        for (int i = 0; i <= size; i++) {
+            boolean present = i < size && !Double.isNaN(values[i]);
+            if (present && runStart < 0) {
+                runStart = i;
+            }
+            else if ( !present) {
+                if (runStart >= 0) {
+                    kept.set(runStart);
+                    kept.set(i - 1);
+                    runs.push(runStart, i - 1);
+                    runStart = -1;
+                }
+                if (i < size) {
+                    kept.set(i); // keep the gap
+                }
+            }
+        }
+        return kept.cardinality();
+    }
+
+    /**
+     * @return the index of the point between <code>from</code> and <code>to</code> (both exclusive) with the
+     *         largest distance to the line between the points at <code>from</code> and <code>to</code>.
+     */
+    private static int findMostDistantPoint(long[] timestamps, double[] values, int from, int to) {
+        // time relative to range start keeps precision when squaring
+        long startTime = timestamps[from];
+        double startValue = values[from];
+        double dx = timestamps[to] - startTime;
+        double dy = values[to] - startValue;
+        boolean isPoint = dx == 0 && dy == 0;
+
+        int index = from + 1;
+        double maxCross = -1;
+        for (int i = from + 1; i < to; i++) {
+            double px = timestamps[i] - startTime;
+            double py = values[i] - startValue;
+            // squared distance to the line times squared length of the line
+            double cross = isPoint
+                ? px * px + py * py
+                : (dx * py - dy * px) * (dx * py - dy * px);
+            if (cross > maxCross) {
+                maxCross = cross;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static double squaredDistance(long[] timestamps, double[] values, int from, int to, int index) {
+        long startTime = timestamps[from];
+        double startValue = values[from];
+        double dx = timestamps[to] - startTime;
+        double dy = values[to] - startValue;
+        double px = timestamps[index] - startTime;
+        double py = values[index] - startValue;
+        double squaredLength = dx * dx + dy * dy;
+        if (squaredLength == 0) {
+            return px * px + py * py;
+        }
+        double cross = dx * py - dy * px;
+        return cross * cross / squaredLength;
+    }
+
+    /**
+     * A range to be split at its most distant point, ordered by descending distance.
+     */
+    private static final class Split implements Comparable<Split> {
+
+        private final int from;
+
+        private final int to;
+
+        private final int index;
+
+        private final double squaredDistance;
+
+        Split(int from, int to, int index, double squaredDistance) {
+            this.from = from;
+            this.to = to;
+            this.index = index;
+            this.squaredDistance = squaredDistance;
+        }
+
+        @Override
+        public int compareTo(Split other) {
+            return Double.compare(other.squaredDistance, squaredDistance);
+        }
+    }
+
+    /**
+     * Growable stack of index ranges.
+     */
+    private static final class RangeStack {
+
+        private int[] elements = new int[64];
+
+        private int size;
+
+        void push(int from, int to) {
+            if (size + 2 > elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+            }
+            elements[size++] = from;
+            elements[size++] = to;
+        }
+
+        int popTo() {
+            return elements[--size];
+        }
+
+        int popFrom() {
+            return elements[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+}
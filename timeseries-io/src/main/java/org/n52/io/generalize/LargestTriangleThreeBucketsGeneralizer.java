@@ -32,8 +32,8 @@ import static java.lang.Integer.parseInt;
 import java.util.Properties;
 
 import org.n52.io.format.TvpDataCollection;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.TimeseriesData;
-import org.n52.io.v1.data.TimeseriesValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +58,11 @@ public class LargestTriangleThreeBucketsGeneralizer implements Generalizer {
      * reduced to 1/3 of it's size; -1 means there is no proper empirical value
      */
     private int reductionRate = -1; // fallback default
+
+    /**
+     * the number of points to reduce each timeseries to; -1 means a tenth of the timeseries' size
+     */
+    private int maxPoints = -1;
 	
 	private LargestTriangleThreeBucketsGeneralizer(TvpDataCollection data,
 			Properties configuration) {
@@ -80,6 +85,22 @@ public class LargestTriangleThreeBucketsGeneralizer implements Generalizer {
 	public static Generalizer createNonConfigGeneralizer(TvpDataCollection data) {
 		return new LargestTriangleThreeBucketsGeneralizer(data, new Properties());
 	}
+
+    /**
+     * @param data
+     *        the data to generalize.
+     * @param maxPoints
+     *        the number of points to reduce each timeseries to (at least 3), or <code>-1</code> to reduce
+     *        timeseries with more than 200 values to a tenth of their size.
+     * @return a generalizer reducing each timeseries to the given number of points.
+     */
+    public static Generalizer createGeneralizer(TvpDataCollection data, int maxPoints) {
+        LargestTriangleThreeBucketsGeneralizer generalizer = new LargestTriangleThreeBucketsGeneralizer(data, new Properties());
+        generalizer.maxPoints = maxPoints > 0
+            ? Math.max(maxPoints, 3)
+            : -1;
+        return generalizer;
+    }
 	
 	@Override
 	public TvpDataCollection generalize() throws GeneralizerException {
@@ -92,20 +113,24 @@ public class LargestTriangleThreeBucketsGeneralizer implements Generalizer {
 	}
 
 	private TimeseriesData generalize(TimeseriesData timeseries) {
-		TimeseriesValue[] data = timeseries.getValues();
+		ColumnarTimeseries series = timeseries.getSeries();
 		
-		int dataLength = data.length;
+		int dataLength = series.size();
 		
-		if (dataLength > 200) {
-			int threshold = data.length / 10; // TODO define the threshold
+		int threshold = maxPoints > 0
+		        ? maxPoints
+		        : dataLength / 10;
+		if (maxPoints > 0 ? dataLength > maxPoints : dataLength > 200) {
+			long[] timestamps = series.getTimestamps();
+			double[] values = series.getValues();
 			
-			TimeseriesData sampled = new TimeseriesData();
+			ColumnarTimeseries sampled = new ColumnarTimeseries(threshold);
 			
 			// Bucket size. Leave room for start and end data points
 			double every = ((double) dataLength - 2) / (threshold - 2);
 			
 			int pointIndex = 0;
-			sampled.addValues(data[pointIndex]);
+			sampled.add(series, pointIndex);
 			
 			for (int i = 0; i < threshold - 2; i++) {
 				// Calculate point average for next bucket (containing c)
@@ -118,9 +143,9 @@ public class LargestTriangleThreeBucketsGeneralizer implements Generalizer {
 				double avgRangeLength = avgRangeEnd - avgRangeStart;
 				
 				for (; avgRangeStart < avgRangeEnd; avgRangeStart++) {
-					avgTimestamp += data[avgRangeStart].getTimestamp();
-					if(data[avgRangeStart].getValue() != null) {
-						avgValue += data[avgRangeStart].getValue();
+					avgTimestamp += timestamps[avgRangeStart];
+					if ( !Double.isNaN(values[avgRangeStart])) {
+						avgValue += values[avgRangeStart];
 					}
 				}
 				
@@ -132,32 +157,34 @@ public class LargestTriangleThreeBucketsGeneralizer implements Generalizer {
 				int rangeTo = (int) Math.floor((i+1)* every) + 1;
 				
 				// Point a
-				double tempTimestamp = data[pointIndex].getTimestamp();
-				double tempValue = data[pointIndex].getValue();
+				double tempTimestamp = timestamps[pointIndex];
+				double tempValue = values[pointIndex];
 				
 				double area;
-				TimeseriesValue maxAreaPoint = null;
+				int maxAreaPointIndex = -1;
 				int nextPointIndex = 0;
 				double maxArea = area = -1;
 				
 				for (; rangeOffs < rangeTo; rangeOffs++) {
 					// calculate triangle area over three buckets
-					if (data[rangeOffs].getValue() != null) {
-						area = Math.abs((tempTimestamp - avgTimestamp) * (data[rangeOffs].getValue() - tempValue) - (tempTimestamp - data[rangeOffs].getTimestamp()) * (avgValue - tempValue)) * 0.5;
+					if ( !Double.isNaN(values[rangeOffs])) {
+						area = Math.abs((tempTimestamp - avgTimestamp) * (values[rangeOffs] - tempValue) - (tempTimestamp - timestamps[rangeOffs]) * (avgValue - tempValue)) * 0.5;
 						if (area > maxArea){
 							maxArea = area;
-							maxAreaPoint = data[rangeOffs];
+							maxAreaPointIndex = rangeOffs;
 							nextPointIndex = rangeOffs;
 						}
 					}
 				}
 				
-				sampled.addValues(maxAreaPoint); // Pick this point from the Bucket
+				if (maxAreaPointIndex >= 0) {
+					sampled.add(series, maxAreaPointIndex); // Pick this point from the Bucket
+				}
 				pointIndex = nextPointIndex; // This a is the next a
 			}
 			
-			sampled.addValues(data[dataLength - 1]); // Allways add last value
-			return sampled;
+			sampled.add(series, dataLength - 1); // Allways add last value
+			return TimeseriesData.newTimeseriesData(sampled);
 		} else {
 			return timeseries;
 		}
@@ -36,7 +36,7 @@ import org.n52.io.style.BarStyle;
 
 final class BarRenderer implements Renderer {
     
-    static final String BAR_CHART_TYPE = "bar";
+    public static final String BAR_CHART_TYPE = "bar";
     
     private XYBarRenderer renderer;
     
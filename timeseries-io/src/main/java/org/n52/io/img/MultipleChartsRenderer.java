@@ -42,20 +42,17 @@ import org.jfree.data.time.Day;
 import org.jfree.data.time.Hour;
 import org.jfree.data.time.Month;
 import org.jfree.data.time.RegularTimePeriod;
-import org.jfree.data.time.Second;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.time.Week;
 import org.n52.io.format.TvpDataCollection;
 import org.n52.io.style.BarStyle;
 import org.n52.io.style.LineStyle;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.FeatureOutput;
 import org.n52.io.v1.data.ReferenceValueOutput;
 import org.n52.io.v1.data.StyleProperties;
 import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.TimeseriesDataMetadata;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
-import org.n52.io.v1.data.TimeseriesValue;
 
 public class MultipleChartsRenderer extends ChartRenderer {
 
@@ -180,45 +177,71 @@ public class MultipleChartsRenderer extends ChartRenderer {
             getXYPlot().setDataset(timeseriesIndex, createTimeseriesCollection(data, style));
         }
 
-        private TimeSeriesCollection createTimeseriesCollection(TimeseriesData data, StyleProperties style) {
-            TimeSeriesCollection timeseriesCollection = new TimeSeriesCollection();
-            timeseriesCollection.addSeries(createDiscreteTimeseries(data, style));
-            timeseriesCollection.setGroup(new DatasetGroup(chartId));
-            return timeseriesCollection;
+        private TimeseriesXYDataset createTimeseriesCollection(TimeseriesData data, StyleProperties style) {
+            TimeseriesXYDataset dataset = createDiscreteTimeseries(data, style);
+            dataset.setGroup(new DatasetGroup(chartId));
+            return dataset;
         }
 
-        private TimeSeries createDiscreteTimeseries(TimeseriesData timeseriesData, StyleProperties style) {
-            TimeSeries timeseries = new TimeSeries(chartId);
-            if (hasValues(timeseriesData)) {
-                if (isBarStyle(style)) {
-                    TimeseriesValue timeseriesValue = timeseriesData.getValues()[0];
-                    Date timeOfFirstValue = new Date(timeseriesValue.getTimestamp());
-                    RegularTimePeriod timeinterval = determineTimeInterval(timeOfFirstValue, style);
-
-                    double intervalSum = 0.0;
-                    for (TimeseriesValue value : timeseriesData.getValues()) {
-                        if (isValueInInterval(value, timeinterval)) {
-                            intervalSum += value.getValue();
-                        }
-                        else {
-                            timeseries.add(timeinterval, intervalSum);
-                            timeinterval = determineTimeInterval(new Date(value.getTimestamp()), style);
-                            intervalSum = value.getValue();
-                        }
+        private TimeseriesXYDataset createDiscreteTimeseries(TimeseriesData timeseriesData, StyleProperties style) {
+            ColumnarTimeseries values = timeseriesData.getSeries();
+            if (hasValues(timeseriesData) && isBarStyle(style)) {
+                /*
+                 * Values may have been summed up per bar interval by the data service already. In that
+                 * case each value simply becomes one bar.
+                 */
+                int size = values.size();
+                long[] x = new long[size];
+                long[] endX = new long[size];
+                double[] y = new double[size];
+                int bars = 0;
+
+                Date timeOfFirstValue = new Date(values.getTimestamp(0));
+                RegularTimePeriod timeinterval = determineTimeInterval(timeOfFirstValue, style);
+
+                double intervalSum = 0.0;
+                for (int i = 0; i < size; i++) {
+                    long timestamp = values.getTimestamp(i);
+                    double value = values.hasValue(i) ? values.getValue(i) : 0.0;
+                    if (isValueInInterval(timestamp, timeinterval)) {
+                        intervalSum += value;
                     }
-                }
-                else if (isLineStyle(style)) {
-                    for (TimeseriesValue value : timeseriesData.getValues()) {
-                        Second second = new Second(new Date(value.getTimestamp()));
-                        timeseries.add(second, value.getValue());
+                    else {
+                        addBar(timeinterval, intervalSum, x, endX, y, bars++);
+                        timeinterval = determineTimeInterval(new Date(timestamp), style);
+                        intervalSum = value;
                     }
                 }
+                addBar(timeinterval, intervalSum, x, endX, y, bars++);
+                return new TimeseriesXYDataset(chartId, x, x, endX, y, bars);
             }
-            return timeseries;
+            else if (hasValues(timeseriesData) && isLineStyle(style)) {
+                String timespan = getChartStyleDefinitions().getTimespan();
+                long start = getStartTime(timespan).getTime();
+                long end = getEndTime(timespan).getTime();
+                int columns = isDrawingEachValue(style) ? 0 : getChartStyleDefinitions().getWidth();
+                return TimeseriesXYDataset.createLineDataset(chartId, values, start, end, columns);
+            }
+            return TimeseriesXYDataset.createLineDataset(chartId, new ColumnarTimeseries(0), 0L, 0L, 0);
+        }
+
+        private void addBar(RegularTimePeriod interval, double sum, long[] x, long[] endX, double[] y, int index) {
+            x[index] = interval.getFirstMillisecond();
+            endX[index] = interval.getLastMillisecond();
+            y[index] = sum;
+        }
+
+        /**
+         * @return <code>true</code> if the line style draws a shape for each value, so that no value must be
+         *         left out, otherwise <code>false</code>.
+         */
+        private boolean isDrawingEachValue(StyleProperties style) {
+            String lineType = createLineStyle(style).getLineType();
+            return "dotted".equals(lineType) || "solidWithDots".equals(lineType);
         }
 
         private boolean hasValues(TimeseriesData timeseriesData) {
-            return timeseriesData.getValues().length > 0;
+            return timeseriesData.size() > 0;
         }
 
         private RegularTimePeriod determineTimeInterval(Date date, StyleProperties styleProperties) {
@@ -238,20 +261,17 @@ public class MultipleChartsRenderer extends ChartRenderer {
         }
 
         /**
+         * @param timestamp
+         *        the timestamp to check.
          * @param interval
          *        the interval to check.
          * @return <code>true</code> if timestamp is within the given interval, otherwise <code>false</code>
          *         is returned. If passed interval was <code>null</code> false will be returned.
-         * @throws IllegalArgumentException
-         *         if passed in value is <code>null</code>.
          */
-        private boolean isValueInInterval(TimeseriesValue value, RegularTimePeriod interval) {
-            if (value == null) {
-                throw new IllegalArgumentException("TimeseriesValue must not be null.");
-            }
+        private boolean isValueInInterval(long timestamp, RegularTimePeriod interval) {
             return interval == null
-                    || interval.getStart().getTime() <= value.getTimestamp()
-                    && value.getTimestamp() < interval.getEnd().getTime();
+                    || interval.getStart().getTime() <= timestamp
+                    && timestamp < interval.getEnd().getTime();
         }
 
     }
@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.img;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+/**
+ * A read-only dataset of a single timeseries backed by primitive arrays. Unlike a JFreeChart
+ * <code>TimeSeries</code> no period object is created per value and no ordered insert, duplicate check or
+ * change event is needed while filling the dataset. Missing values are {@link Double#NaN}, so line renderers
+ * interrupt the line there.<br/>
+ * <br/>
+ * X values are milliseconds since the epoch. Bars span from their start to end X value, lines have equal
+ * start, end and X values.
+ */
+final class TimeseriesXYDataset extends AbstractIntervalXYDataset implements DomainInfo, RangeInfo {
+
+    private static final long serialVersionUID = 4409735240357215437L;
+
+    private final Comparable< ? > seriesKey;
+
+    private final long[] x;
+
+    private final long[] startX;
+
+    private final long[] endX;
+
+    private final double[] y;
+
+    private final int itemCount;
+
+    private final Range domainBounds;
+
+    private final Range intervalDomainBounds;
+
+    private final Range rangeBounds;
+
+    /**
+     * @param seriesKey
+     *        the key of the only series.
+     * @param x
+     *        the ascending x values.
+     * @param startX
+     *        the start of each item's interval.
+     * @param endX
+     *        the end of each item's interval.
+     * @param y
+     *        the y values, {@link Double#NaN} if missing.
+     * @param itemCount
+     *        the number of items (the arrays may be larger).
+     */
+    TimeseriesXYDataset(Comparable< ? > seriesKey, long[] x, long[] startX, long[] endX, double[] y, int itemCount) {
+        this.seriesKey = seriesKey;
+        this.x = x;
+        this.startX = startX;
+        this.endX = endX;
+        this.y = y;
+        this.itemCount = itemCount;
+        this.domainBounds = itemCount > 0
+            ? new Range(x[0], x[itemCount - 1])
+            : null;
+        this.intervalDomainBounds = itemCount > 0
+            ? new Range(startX[0], endX[itemCount - 1])
+            : null;
+        this.rangeBounds = findRangeBounds(y, itemCount);
+    }
+
+    private static Range findRangeBounds(double[] y, int itemCount) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < itemCount; i++) {
+            if ( !Double.isNaN(y[i])) {
+                min = Math.min(min, y[i]);
+                max = Math.max(max, y[i]);
+            }
+        }
+        return min <= max
+            ? new Range(min, max)
+            : null;
+    }
+
+    /**
+     * Creates a line dataset showing the same as a line through all values would do when drawn with the
+     * given number of pixel columns. Within each column (and between missing values) only the first, last,
+     * minimum and maximum value are kept. Series having at most four values per column are taken as they
+     * are, without copying.
+     * 
+     * @param seriesKey
+     *        the key of the series.
+     * @param series
+     *        the values to show.
+     * @param start
+     *        the start of the shown timespan.
+     * @param end
+     *        the end of the shown timespan.
+     * @param columns
+     *        the number of pixel columns the timespan is drawn with, <code>0</code> to keep all values.
+     * @return a line dataset.
+     */
+    static TimeseriesXYDataset createLineDataset(Comparable< ? > seriesKey,
+                                                 ColumnarTimeseries series,
+                                                 long start,
+                                                 long end,
+                                                 int columns) {
+        ColumnarTimeseries shown = series.size() > 4L * columns && columns > 0 && end > start
+            ? decimateToColumns(series, start, end, columns)
+            : series;
+        long[] timestamps = shown.getTimestamps();
+        return new TimeseriesXYDataset(seriesKey, timestamps, timestamps, timestamps, shown.getValues(), shown.size());
+    }
+
+    /**
+     * @return the first, last, minimum and maximum value of each pixel column and run of present values, and
+     *         one missing value for each run of missing values.
+     */
+    static ColumnarTimeseries decimateToColumns(ColumnarTimeseries series, long start, long end, int columns) {
+        long[] timestamps = series.getTimestamps();
+        double[] values = series.getValues();
+        int size = series.size();
+        double columnsPerMilli = (double) columns / (end - start);
+        ColumnarTimeseries decimated = new ColumnarTimeseries(Math.min(size, 4 * columns + 16));
+        int runStart = 0;
+        while (runStart < size) {
+            if (Double.isNaN(values[runStart])) {
+                // keep a single gap for consecutive missing values
+                decimated.add(timestamps[runStart], Double.NaN);
+                while (runStart < size && Double.isNaN(values[runStart])) {
+                    runStart++;
+                }
+                continue;
+            }
+            long column = (long) Math.floor((timestamps[runStart] - start) * columnsPerMilli);
+            int min = runStart;
+            int max = runStart;
+            int last = runStart;
+            int i = runStart + 1;
+            while (i < size && !Double.isNaN(values[i])
+                    && (long) Math.floor((timestamps[i] - start) * columnsPerMilli) == column) {
+                if (values[i] < values[min]) {
+                    min = i;
+                }
+                if (values[i] > values[max]) {
+                    max = i;
+                }
+                last = i;
+                i++;
+            }
+            addInOrder(decimated, timestamps, values, runStart, min, max, last);
+            runStart = i;
+        }
+        return decimated;
+    }
+
+    private static void addInOrder(ColumnarTimeseries target, long[] timestamps, double[] values, int first, int min, int max, int last) {
+        int lower = Math.min(min, max);
+        int upper = Math.max(min, max);
+        target.add(timestamps[first], values[first]);
+        if (lower > first) {
+            target.add(timestamps[lower], values[lower]);
+        }
+        if (upper > lower && upper > first) {
+            target.add(timestamps[upper], values[upper]);
+        }
+        if (last > upper && last > first) {
+            target.add(timestamps[last], values[last]);
+        }
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getSeriesKey(int series) {
+        checkSeries(series);
+        return seriesKey;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        checkSeries(series);
+        return itemCount;
+    }
+
+    private void checkSeries(int series) {
+        if (series != 0) {
+            throw new IllegalArgumentException("Invalid series index: " + series);
+        }
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return x[item];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return Long.valueOf(x[item]);
+    }
+
+    @Override
+    public double getStartXValue(int series, int item) {
+        return startX[item];
+    }
+
+    @Override
+    public Number getStartX(int series, int item) {
+        return Long.valueOf(startX[item]);
+    }
+
+    @Override
+    public double getEndXValue(int series, int item) {
+        return endX[item];
+    }
+
+    @Override
+    public Number getEndX(int series, int item) {
+        return Long.valueOf(endX[item]);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return y[item];
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return Double.isNaN(y[item])
+            ? null
+            : Double.valueOf(y[item]);
+    }
+
+    @Override
+    public double getStartYValue(int series, int item) {
+        return y[item];
+    }
+
+    @Override
+    public Number getStartY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public double getEndYValue(int series, int item) {
+        return y[item];
+    }
+
+    @Override
+    public Number getEndY(int series, int item) {
+        return getY(series, item);
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return includeInterval
+            ? intervalDomainBounds
+            : domainBounds;
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range bounds = getDomainBounds(includeInterval);
+        return bounds != null
+            ? bounds.getLowerBound()
+            : Double.NaN;
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range bounds = getDomainBounds(includeInterval);
+        return bounds != null
+            ? bounds.getUpperBound()
+            : Double.NaN;
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds != null
+            ? rangeBounds.getLowerBound()
+            : Double.NaN;
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds != null
+            ? rangeBounds.getUpperBound()
+            : Double.NaN;
+    }
+
+}
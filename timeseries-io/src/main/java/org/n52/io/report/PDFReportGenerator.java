@@ -27,25 +27,31 @@
  */
 package org.n52.io.report;
 
-import static java.io.File.createTempFile;
 import static org.n52.io.MimeType.APPLICATION_PDF;
 import static org.n52.io.MimeType.IMAGE_PNG;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
 import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.fop.apps.FOPException;
+import org.apache.fop.apps.FOUserAgent;
 import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.FopFactory;
 import org.joda.time.DateTime;
@@ -53,10 +59,10 @@ import org.n52.io.IoHandler;
 import org.n52.io.IoParseException;
 import org.n52.io.format.TvpDataCollection;
 import org.n52.io.img.ChartRenderer;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
 import org.n52.io.v1.data.TimeseriesOutput;
-import org.n52.io.v1.data.TimeseriesValue;
 import org.n52.oxf.DocumentStructureDocument;
 import org.n52.oxf.DocumentStructureType;
 import org.n52.oxf.DocumentStructureType.TimeSeries;
@@ -75,8 +81,24 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
 
     private static final String PDF_TRANSORMATION_RULES = "pdf/Document_2_PDF_" + LOCALE_REPLACER + ".xslt";
 
+    private static final String CHART_URI_SCHEME = "chart:";
+
+    /**
+     * Shared by all reports as creating a factory sets up fonts, image loaders and caches. Its image cache
+     * keys images by URI, so each report's chart gets an URI of its own.
+     */
+    private static final FopFactory FOP_FACTORY = FopFactory.newInstance();
+
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
+    private static final ConcurrentMap<String, Templates> TRANSFORMATION_RULES = new ConcurrentHashMap<String, Templates>();
+
     private DocumentStructureDocument document;
 
+    private byte[] chart;
+
+    private String chartUri;
+
     private ChartRenderer renderer;
 
     public PDFReportGenerator(ChartRenderer renderer, String locale) {
@@ -95,27 +117,17 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
 
     @Override
     public void generateOutput(TvpDataCollection data) throws IoParseException {
-        try {
-            generateTimeseriesChart(data);
-            generateTimeseriesMetadata();
-        } catch(IOException e) {
-            throw new IoParseException("Error handling (temp) file!", e);
-        }
+        generateTimeseriesChart(data);
+        generateTimeseriesMetadata();
     }
 
-    private void generateTimeseriesChart(TvpDataCollection data) throws IOException {
-        FileOutputStream stream = null;
-        try {
-            renderer.generateOutput(data);
-            File tmpFile = createTempFile("52n_swc_", "_chart.png");
-            stream = new FileOutputStream(tmpFile);
-            renderer.encodeAndWriteTo(stream);
-            document.getDocumentStructure().setDiagramURL(tmpFile.getAbsolutePath());
-        }  finally {
-            if (stream != null) {
-                stream.close();
-            }
-        }
+    private void generateTimeseriesChart(TvpDataCollection data) throws IoParseException {
+        renderer.generateOutput(data);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        renderer.encodeAndWriteTo(stream);
+        chart = stream.toByteArray();
+        chartUri = CHART_URI_SCHEME + UUID.randomUUID();
+        document.getDocumentStructure().setDiagramURL(chartUri);
     }
 
     private void generateTimeseriesMetadata() {
@@ -129,13 +141,12 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
     @Override
     public void encodeAndWriteTo(OutputStream stream) throws IoParseException {
         try {
-            FopFactory fopFactory = FopFactory.newInstance();
-            Fop fop = fopFactory.newFop(APPLICATION_PDF.getMimeType(), stream);
+            FOUserAgent userAgent = FOP_FACTORY.newFOUserAgent();
+            userAgent.setURIResolver(new ChartResolver());
+            Fop fop = FOP_FACTORY.newFop(APPLICATION_PDF.getMimeType(), userAgent, stream);
 
             // Create PDF via XSLT transformation
-            TransformerFactory transFact = TransformerFactory.newInstance();
-            StreamSource transformationRule = getTransforamtionRule();
-            Transformer transformer = transFact.newTransformer(transformationRule);
+            Transformer transformer = getTransformationRules().newTransformer();
 
             Source source = new StreamSource(document.newInputStream());
             Result result = new SAXResult(fop.getDefaultHandler());
@@ -159,9 +170,43 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
         }
     }
 
-    private StreamSource getTransforamtionRule() {
+    /**
+     * @return the compiled transformation rules of the report's locale. Rules are compiled once per locale
+     *         and shared afterwards, as {@link Templates} are thread-safe.
+     */
+    private Templates getTransformationRules() throws TransformerConfigurationException {
         String rules = PDF_TRANSORMATION_RULES.replace(LOCALE_REPLACER, i18n.getLocale());
-        return new StreamSource(getClass().getResourceAsStream("/" + rules));
+        Templates templates = TRANSFORMATION_RULES.get(rules);
+        if (templates == null) {
+            templates = compileTransformationRules(rules);
+            Templates concurrentlyCompiled = TRANSFORMATION_RULES.putIfAbsent(rules, templates);
+            if (concurrentlyCompiled != null) {
+                templates = concurrentlyCompiled;
+            }
+            LOGGER.debug("Compiled PDF transformation rules '{}'.", rules);
+        }
+        return templates;
+    }
+
+    private Templates compileTransformationRules(String rules) throws TransformerConfigurationException {
+        InputStream transformationRules = getClass().getResourceAsStream("/" + rules);
+        if (transformationRules == null) {
+            throw new TransformerConfigurationException("Missing PDF transformation rules: " + rules);
+        }
+        try {
+            synchronized (TRANSFORMER_FACTORY) {
+                // a TransformerFactory is not thread-safe
+                return TRANSFORMER_FACTORY.newTemplates(new StreamSource(transformationRules));
+            }
+        }
+        finally {
+            try {
+                transformationRules.close();
+            }
+            catch (IOException e) {
+                LOGGER.debug("Could not close PDF transformation rules.", e);
+            }
+        }
     }
 
     private TimeSeries addTimeseries(TimeseriesMetadataOutput metadata) {
@@ -210,10 +255,11 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
         dataTable.setRightColHeader(createValueTableHeader(metadata));
 
         TimeseriesData data = dataCollection.getTimeseries(metadata.getId());
-        for (TimeseriesValue valueEntry : data.getValues()) {
+        ColumnarTimeseries values = data.getSeries();
+        for (int i = 0; i < values.size(); i++) {
             Entry entry = dataTable.addNewEntry();
-            entry.setTime(new DateTime(valueEntry.getTimestamp()).toString());
-            entry.setValue(Double.toString(valueEntry.getValue()));
+            entry.setTime(new DateTime(values.getTimestamp(i)).toString());
+            entry.setValue(Double.toString(values.getValue(i)));
         }
     }
 
@@ -223,4 +269,19 @@ public class PDFReportGenerator extends ReportGenerator implements IoHandler {
         return phenomenon + " (" + metadata.getUom() + ")";
     }
 
+    /**
+     * Resolves the chart of the report from memory so that FOP does not have to read it from a file.
+     */
+    private final class ChartResolver implements URIResolver {
+
+        @Override
+        public Source resolve(String href, String base) {
+            if (chart == null || !chartUri.equals(href)) {
+                return null; // let FOP resolve other resources
+            }
+            return new StreamSource(new ByteArrayInputStream(chart), chartUri);
+        }
+
+    }
+
 }
@@ -27,6 +27,7 @@
  */
 package org.n52.io.style;
 
+import org.joda.time.Period;
 import org.n52.io.v1.data.StyleProperties;
 
 
@@ -55,6 +56,28 @@ public class BarStyle extends Style {
 		return DEFAULT_BAR_WIDTH;
 	}
     
+    /**
+     * @param options
+     *        the style options of a bar chart.
+     * @return the period of which each bar sums up the values. Defaults to one week if no interval is set
+     *         (as the chart renderer does).
+     */
+    public static Period getBarIntervalPeriod(StyleProperties options) {
+        String interval = options != null
+            ? options.getProperties().get(BAR_INTERVAL)
+            : null;
+        if ("byHour".equals(interval)) {
+            return Period.hours(1);
+        }
+        else if ("byDay".equals(interval)) {
+            return Period.days(1);
+        }
+        else if ("byMonth".equals(interval)) {
+            return Period.months(1);
+        }
+        return Period.weeks(1);
+    }
+
     public static BarStyle createBarStyle(StyleProperties options) {
         if (options == null || options.getProperties().isEmpty()) {
             return createDefaultBarStyle();
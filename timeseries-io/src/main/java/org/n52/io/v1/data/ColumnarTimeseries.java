@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.v1.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.n52.io.geojson.GeojsonPoint;
+
+/**
+ * Column oriented timeseries holding timestamps and values in primitive arrays. Values are kept sorted by
+ * timestamp: appending in order (as delivered by the database) costs nothing extra, out of order appends are
+ * sorted once on the next read access.<br/>
+ * <br/>
+ * Missing values are stored as {@link Double#NaN}. Geometries are only allocated when at least one value has
+ * a location.
+ */
+public final class ColumnarTimeseries implements Serializable {
+
+    private static final long serialVersionUID = -2718047212843312437L;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] timestamps;
+
+    private double[] values;
+
+    private GeojsonPoint[] geometries;
+
+    private int size;
+
+    private boolean sorted = true;
+
+    public ColumnarTimeseries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize
+     *        the amount of values expected to be added (avoids growing the arrays).
+     */
+    public ColumnarTimeseries(int expectedSize) {
+        int capacity = Math.max(expectedSize, 1);
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * @param timestamp
+     *        the timestamp of the value.
+     * @param value
+     *        the value, or {@link Double#NaN} if no value is present.
+     */
+    public void add(long timestamp, double value) {
+        add(timestamp, value, null);
+    }
+
+    /**
+     * @param timestamp
+     *        the timestamp of the value.
+     * @param value
+     *        the value, or {@link Double#NaN} if no value is present.
+     * @param geometry
+     *        the location of the value (may be <code>null</code>).
+     */
+    public void add(long timestamp, double value, GeojsonPoint geometry) {
+        ensureCapacity(size + 1);
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            sorted = false;
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        if (geometry != null) {
+            if (geometries == null) {
+                geometries = new GeojsonPoint[timestamps.length];
+            }
+            geometries[size] = geometry;
+        }
+        size++;
+    }
+
+    public void add(TimeseriesValue value) {
+        if (value != null) {
+            Double doubleValue = value.getValue();
+            add(value.getTimestamp(), doubleValue == null ? Double.NaN : doubleValue, value.getGeom());
+        }
+    }
+
+    /**
+     * Appends the value at the given index of another series.
+     * 
+     * @param source
+     *        the series to copy from.
+     * @param index
+     *        the index of the value to copy.
+     */
+    public void add(ColumnarTimeseries source, int index) {
+        add(source.getTimestamp(index), source.getValue(index), source.getGeometry(index));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return timestamps[index];
+    }
+
+    /**
+     * @param index
+     *        the index of the value.
+     * @return the value at the given index, or {@link Double#NaN} if no value is present.
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return values[index];
+    }
+
+    public boolean hasValue(int index) {
+        return !Double.isNaN(getValue(index));
+    }
+
+    public GeojsonPoint getGeometry(int index) {
+        checkIndex(index);
+        ensureSorted();
+        return geometries != null
+            ? geometries[index]
+            : null;
+    }
+
+    /**
+     * @return the sorted timestamps. The array length equals {@link #size()}. The array is shared and must not
+     *         be modified.
+     */
+    public long[] getTimestamps() {
+        ensureSorted();
+        trimToSize();
+        return timestamps;
+    }
+
+    /**
+     * @return the values in timestamp order ({@link Double#NaN} if a value is missing). The array length
+     *         equals {@link #size()}. The array is shared and must not be modified.
+     */
+    public double[] getValues() {
+        ensureSorted();
+        trimToSize();
+        return values;
+    }
+
+    /**
+     * @return the values as {@link TimeseriesValue}s ordered by timestamp.
+     */
+    public TimeseriesValue[] toTimeseriesValues() {
+        ensureSorted();
+        TimeseriesValue[] result = new TimeseriesValue[size];
+        for (int i = 0; i < size; i++) {
+            TimeseriesValue value = new TimeseriesValue();
+            value.setTimestamp(timestamps[i]);
+            value.setValue(Double.isNaN(values[i]) ? null : values[i]);
+            value.setGeom(geometries != null ? geometries[i] : null);
+            result[i] = value;
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > timestamps.length) {
+            int newCapacity = Math.max(minCapacity, timestamps.length + (timestamps.length >> 1));
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            if (geometries != null) {
+                geometries = Arrays.copyOf(geometries, newCapacity);
+            }
+        }
+    }
+
+    private void trimToSize() {
+        if (timestamps.length != size) {
+            timestamps = Arrays.copyOf(timestamps, size);
+            values = Arrays.copyOf(values, size);
+            if (geometries != null) {
+                geometries = Arrays.copyOf(geometries, size);
+            }
+        }
+    }
+
+    private void ensureSorted() {
+        if (sorted) {
+            return;
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size);
+
+        long[] sortedTimestamps = new long[size];
+        double[] sortedValues = new double[size];
+        GeojsonPoint[] sortedGeometries = geometries != null
+            ? new GeojsonPoint[size]
+            : null;
+        for (int i = 0; i < size; i++) {
+            sortedTimestamps[i] = timestamps[order[i]];
+            sortedValues[i] = values[order[i]];
+            if (sortedGeometries != null) {
+                sortedGeometries[i] = geometries[order[i]];
+            }
+        }
+        timestamps = sortedTimestamps;
+        values = sortedValues;
+        geometries = sortedGeometries;
+        sorted = true;
+    }
+
+    /**
+     * Stable sort of value indices by timestamp, so that equal timestamps keep their insertion order.
+     */
+    private void mergeSort(int[] order, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle);
+        mergeSort(order, buffer, middle, to);
+        if (timestamps[order[middle - 1]] <= timestamps[order[middle]]) {
+            return; // already in order
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < middle && timestamps[buffer[left]] <= timestamps[buffer[right]]) {
+                order[i] = buffer[left++];
+            }
+            else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+}
@@ -59,13 +59,54 @@ public abstract class ParameterSet {
      * A language code to determine the requested locale. "en" is the default.
      */
     private String language = "en";
+
+    /**
+     * The function to aggregate values within each time bucket (e.g. <code>avg</code>). No aggregation if
+     * <code>null</code>.
+     */
+    private String aggregate;
+
+    /**
+     * The width of the time buckets to aggregate values within (as ISO8601 period, e.g. <code>PT1H</code>).
+     */
+    private String bucket;
+
+    /**
+     * The maximum number of values per timeseries to return (no limit if not positive).
+     */
+    private int limit = -1;
+
+    /**
+     * The paging token of the previous data page (see {@link TimestampCursor}).
+     */
+    private String after;
+
+    /**
+     * The maximum number of points a generalized timeseries shall have (algorithm decides if not positive).
+     */
+    private int maxPoints = -1;
+
+    /**
+     * The algorithm to generalize timeseries with (e.g. <code>lttb</code>). The service decides if
+     * <code>null</code>.
+     */
+    private String generalizingAlgorithm;
+
+    /**
+     * The number of pixel columns the data will be rendered into. If positive, only the first, last, minimum
+     * and maximum value per column are returned.
+     */
+    private int resolution = -1;
     
     protected ParameterSet() {
         timespan = createDefaultTimespan();
     }
 
+    /**
+     * @return the last week as ISO8601 interval, resolved like {@link org.n52.io.IoParameters#getTimespan()}.
+     */
     private String createDefaultTimespan() {
-        DateTime now = new DateTime();
+        DateTime now = new DateTime().plusMinutes(1).withSecondOfMinute(0).withMillisOfSecond(0);
         DateTime lastWeek = now.minusWeeks(1);
         return new Interval(lastWeek, now).toString();
     }
@@ -115,6 +156,62 @@ public abstract class ParameterSet {
         this.language = language;
     }
 
+    public String getAggregate() {
+        return aggregate;
+    }
+
+    public void setAggregate(String aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(String bucket) {
+        this.bucket = bucket;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    public int getMaxPoints() {
+        return maxPoints;
+    }
+
+    public void setMaxPoints(int maxPoints) {
+        this.maxPoints = maxPoints;
+    }
+
+    public String getGeneralizingAlgorithm() {
+        return generalizingAlgorithm;
+    }
+
+    public void setGeneralizingAlgorithm(String generalizingAlgorithm) {
+        this.generalizingAlgorithm = generalizingAlgorithm;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(int resolution) {
+        this.resolution = resolution;
+    }
+
     private String validateTimespan(String timespan) {
         return Interval.parse(timespan).toString();
     }
@@ -28,10 +28,6 @@
 package org.n52.io.v1.data;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -42,13 +38,29 @@ public class TimeseriesData implements Serializable {
 
     private static final long serialVersionUID = 4717558247670336015L;
 
-    private List<TimeseriesValue> values = new ArrayList<TimeseriesValue>();
+    private ColumnarTimeseries series;
+
+    /**
+     * Lazily created compatibility view on {@link #series}.
+     */
+    private transient TimeseriesValue[] values;
     
     private TimeseriesDataMetadata metadata;
+
+    public TimeseriesData() {
+        this(new ColumnarTimeseries());
+    }
+
+    private TimeseriesData(ColumnarTimeseries series) {
+        this.series = series;
+    }
     
     public void addValues(TimeseriesValue... values) {
         if (values != null && values.length > 0) {
-            this.values.addAll(Arrays.asList(values));
+            for (TimeseriesValue value : values) {
+                series.add(value);
+            }
+            this.values = null;
         }
     }
 
@@ -58,7 +70,7 @@ public class TimeseriesData implements Serializable {
      * @return a timeseries object.
      */
     public static TimeseriesData newTimeseriesData(Map<Long, Double> values) {
-        TimeseriesData timeseries = new TimeseriesData();
+        TimeseriesData timeseries = new TimeseriesData(new ColumnarTimeseries(values.size()));
         for (Entry<Long, Double> data : values.entrySet()) {
             timeseries.addNewValue(data.getKey(), data.getValue());
         }
@@ -71,20 +83,47 @@ public class TimeseriesData implements Serializable {
         return timeseries;
     }
 
+    /**
+     * @param series
+     *        the columnar values (taken as is, not copied).
+     * @return a timeseries object backed by the given series.
+     */
+    public static TimeseriesData newTimeseriesData(ColumnarTimeseries series) {
+        return new TimeseriesData(series);
+    }
+
     private void addNewValue(Long timestamp, Double value) {
-        values.add(new TimeseriesValue(timestamp, value));
+        series.add(timestamp, value == null ? Double.NaN : value);
     }
     
     /**
-     * @return a sorted list of timeseries values.
+     * @return a sorted array of timeseries values. The array is created once from the underlying
+     *         {@link #getSeries() series}, so prefer reading the series when handling lots of values.
      */
     public TimeseriesValue[] getValues() {
-        Collections.sort(values);
-        return values.toArray(new TimeseriesValue[0]);
+        if (values == null) {
+            values = series.toTimeseriesValues();
+        }
+        return values;
     }
 
     void setValues(TimeseriesValue[] values) {
-        this.values = Arrays.asList(values);
+        this.series = new ColumnarTimeseries(values.length);
+        this.values = null;
+        addValues(values);
+    }
+
+    /**
+     * @return the values as primitive columns sorted by timestamp.
+     */
+    @JsonIgnore
+    public ColumnarTimeseries getSeries() {
+        return series;
+    }
+
+    @JsonIgnore
+    public int size() {
+        return series.size();
     }
     
     @JsonProperty("extra")
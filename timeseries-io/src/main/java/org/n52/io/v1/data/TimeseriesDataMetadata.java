@@ -31,12 +31,17 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 public class TimeseriesDataMetadata implements Serializable {
 
     private static final long serialVersionUID = 7422416308386483575L;
     
     private Map<String, TimeseriesData> referenceValues = new HashMap<String, TimeseriesData>();
 
+    private String next;
+
     public Map<String, TimeseriesData> getReferenceValues() {
         return referenceValues;
     }
@@ -44,5 +49,18 @@ public class TimeseriesDataMetadata implements Serializable {
     public void setReferenceValues(Map<String, TimeseriesData> referenceValues) {
         this.referenceValues = referenceValues;
     }
+
+    /**
+     * @return the paging token to get the next data page, or <code>null</code> if there are no further
+     *         values.
+     */
+    @JsonInclude(Include.NON_NULL)
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
     
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.v1.data;
+
+import org.n52.io.IoParseException;
+
+/**
+ * Marks the position of a data page by the timestamp of the last value returned and the number of values
+ * sharing that timestamp which have been returned already. Clients receive it as an opaque token and pass it
+ * back to get the values following that position. This way pages can be selected via an index range
+ * condition instead of skipping all previous rows; only values at the cursor's timestamp have to be skipped.
+ */
+public final class TimestampCursor {
+
+    /**
+     * Prefix to be able to change the token format later on.
+     */
+    private static final String VERSION = "2";
+
+    private static final char SEPARATOR = '.';
+
+    private static final int RADIX = 36;
+
+    private final long timestamp;
+
+    private final int skip;
+
+    public TimestampCursor(long timestamp, int skip) {
+        if (skip < 0) {
+            throw new IllegalArgumentException("skip must not be negative: " + skip);
+        }
+        this.timestamp = timestamp;
+        this.skip = skip;
+    }
+
+    /**
+     * @return the timestamp (in milliseconds) of the last value of the previous page.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the number of values at {@link #getTimestamp()} which have been returned already.
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * @return the token to be passed to clients.
+     */
+    public String encode() {
+        return VERSION + Long.toString(timestamp, RADIX) + SEPARATOR + Integer.toString(skip, RADIX);
+    }
+
+    /**
+     * @param token
+     *        a token previously created via {@link #encode()}.
+     * @return the decoded cursor.
+     * @throws IoParseException
+     *         if token is not valid.
+     */
+    public static TimestampCursor decode(String token) {
+        int separator = token != null
+            ? token.indexOf(SEPARATOR)
+            : -1;
+        if (separator < 0 || !token.startsWith(VERSION)) {
+            throw new IoParseException("Invalid paging token: " + token);
+        }
+        try {
+            long timestamp = Long.parseLong(token.substring(VERSION.length(), separator), RADIX);
+            int skip = Integer.parseInt(token.substring(separator + 1), RADIX);
+            return new TimestampCursor(timestamp, skip);
+        }
+        catch (IllegalArgumentException e) { // including NumberFormatException
+            throw new IoParseException("Invalid paging token: " + token, e);
+        }
+    }
+
+    /**
+     * Determines the cursor of the page following the given one. Values are expected in the order pages are
+     * read, i.e. by timestamp.
+     * 
+     * @param previous
+     *        the cursor the given page has been read with, or <code>null</code> for the first page.
+     * @param page
+     *        the values of the page.
+     * @return the cursor to read the values following the page, or the previous cursor if the page is empty.
+     */
+    public static TimestampCursor createNextPage(TimestampCursor previous, ColumnarTimeseries page) {
+        int size = page.size();
+        if (size == 0) {
+            return previous;
+        }
+        long lastTimestamp = page.getTimestamp(size - 1);
+        int sameTimestamp = 1;
+        while (sameTimestamp < size && page.getTimestamp(size - 1 - sameTimestamp) == lastTimestamp) {
+            sameTimestamp++;
+        }
+        if (sameTimestamp == size && previous != null && previous.getTimestamp() == lastTimestamp) {
+            // the whole page continues the values at the previous cursor's timestamp
+            return new TimestampCursor(lastTimestamp, previous.getSkip() + size);
+        }
+        return new TimestampCursor(lastTimestamp, sameTimestamp);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+}
@@ -70,10 +70,23 @@ public class UndesignedParameterSet extends ParameterSet {
         return parameters;
     }
 
+    public static UndesignedParameterSet createForTimeseries(String[] timeseriesIds, Interval timespan) {
+        UndesignedParameterSet parameters = new UndesignedParameterSet();
+        parameters.setTimeseries(timeseriesIds);
+        parameters.setTimespan(timespan.toString());
+        return parameters;
+    }
+
     public static UndesignedParameterSet createFromDesignedParameters(DesignedParameterSet designedSet) {
         UndesignedParameterSet parameters = new UndesignedParameterSet();
         parameters.setTimeseries(designedSet.getTimeseries());
         parameters.setTimespan(designedSet.getTimespan());
+        parameters.setAggregate(designedSet.getAggregate());
+        parameters.setBucket(designedSet.getBucket());
+        parameters.setLimit(designedSet.getLimit());
+        parameters.setAfter(designedSet.getAfter());
+        parameters.setMaxPoints(designedSet.getMaxPoints());
+        parameters.setGeneralizingAlgorithm(designedSet.getGeneralizingAlgorithm());
         return parameters;
     }
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+public class BinaryTimeseriesReaderTest {
+
+    @Test
+    public void
+    shouldReadWrittenTimeseries()
+    throws IOException
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(1376524800000L, 433.3);
+        series.add(1376524860000L, 432.4);
+        series.add(1376524920000L, Double.NaN);
+        series.add(1376524980001L, 432.4);
+        series.add(1376611200000L, -1.0E300);
+        BinaryDataCollection read = writeAndRead("ts_1", series, null);
+        ColumnarTimeseries readSeries = read.getTimeseries("ts_1");
+        assertThat(readSeries.size(), is(5));
+        for (int i = 0; i < series.size(); i++) {
+            assertThat(readSeries.getTimestamp(i), is(series.getTimestamp(i)));
+            assertThat(readSeries.hasValue(i), is(series.hasValue(i)));
+            if (series.hasValue(i)) {
+                assertThat(readSeries.getValue(i), is(series.getValue(i)));
+            }
+        }
+    }
+
+    @Test
+    public void
+    shouldReadEmptyTimeseries()
+    throws IOException
+    {
+        BinaryDataCollection read = writeAndRead("ts_1", new ColumnarTimeseries(), null);
+        assertThat(read.getTimeseries("ts_1").isEmpty(), is(true));
+        assertThat(read.getNext("ts_1"), is(nullValue()));
+    }
+
+    @Test
+    public void
+    shouldReadPagingToken()
+    throws IOException
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(1376524800000L, 433.3);
+        BinaryDataCollection read = writeAndRead("ts_1", series, "MTM3NjUyNDgwMDAwMA");
+        assertThat(read.getNext("ts_1"), is("MTM3NjUyNDgwMDAwMA"));
+        assertThat(read.getTimeseries("ts_1").size(), is(1));
+    }
+
+    @Test
+    public void
+    shouldEncodeRegularTimeseriesWithFewBitsPerValue()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries(10000);
+        for (int i = 0; i < 10000; i++) {
+            series.add(1376524800000L + i * 60000L, 20.5);
+        }
+        byte[] encoded = BinaryTimeseriesWriter.encode(series.getTimestamps(), series.getValues(), series.size());
+        // two bits per value, plus first timestamp, first value and first delta
+        assertThat(encoded.length <= 16 + 9 + 10000 * 2 / 8, is(true));
+    }
+
+    private BinaryDataCollection writeAndRead(String timeseriesId, ColumnarTimeseries series, String next) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryTimeseriesWriter writer = new BinaryTimeseriesWriter(output);
+        writer.writeHeader(1);
+        writer.writeTimeseries(timeseriesId, series, next);
+        writer.flush();
+        return BinaryTimeseriesReader.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class HighchartFormatterTest {
+
+    @Test
+    public void
+    shouldWriteTimestampValuePairsWithNullForMissingValues()
+    throws JsonProcessingException
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(1376524800000L, 433.3);
+        series.add(1376524860000L, Double.NaN);
+        TvpDataCollection data = new TvpDataCollection();
+        data.addNewTimeseries("ts_1", TimeseriesData.newTimeseriesData(series));
+        HighchartDataCollection formatted = new HighchartFormatter().format(data);
+        String json = new ObjectMapper().writeValueAsString(formatted.getTimeseries("ts_1"));
+        assertThat(json, is("{\"name\":\"ts_1\",\"data\":[[1376524800000,433.3],[1376524860000,null]]}"));
+    }
+
+}
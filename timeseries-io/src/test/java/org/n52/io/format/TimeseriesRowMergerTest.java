@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.format;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.n52.io.format.TimeseriesRowMerger.createCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+public class TimeseriesRowMergerTest {
+
+    @Test
+    public void
+    shouldAlignValuesByTimestamp()
+    {
+        ColumnarTimeseries first = new ColumnarTimeseries();
+        first.add(1L, 1.0);
+        first.add(3L, 3.0);
+        ColumnarTimeseries second = new ColumnarTimeseries();
+        second.add(2L, 20.0);
+        second.add(3L, 30.0);
+        second.add(4L, Double.NaN);
+        RowCollector rows = new RowCollector();
+        TimeseriesRowMerger.merge(new String[] {"ts_1", "ts_2"},
+                                  new TimeseriesValueCursor[] {createCursor(first), createCursor(second)},
+                                  rows);
+        assertThat(rows.ids, is(Arrays.asList("ts_1", "ts_2")));
+        assertThat(rows.rows, is(Arrays.asList("1:1.0,NaN", "2:NaN,20.0", "3:3.0,30.0", "4:NaN,NaN")));
+        assertThat(rows.ended, is(true));
+    }
+
+    @Test
+    public void
+    shouldHandleEmptyTimeseries()
+    {
+        ColumnarTimeseries first = new ColumnarTimeseries();
+        first.add(1L, 1.0);
+        RowCollector rows = new RowCollector();
+        TimeseriesRowMerger.merge(new String[] {"ts_1", "ts_2"},
+                                  new TimeseriesValueCursor[] {createCursor(new ColumnarTimeseries()), createCursor(first)},
+                                  rows);
+        assertThat(rows.rows, is(Arrays.asList("1:NaN,1.0")));
+    }
+
+    private static final class RowCollector implements TimeseriesRowHandler {
+
+        private List<String> ids;
+
+        private final List<String> rows = new ArrayList<String>();
+
+        private boolean ended;
+
+        @Override
+        public void startRows(String[] timeseriesIds) {
+            ids = Arrays.asList(timeseriesIds);
+        }
+
+        @Override
+        public void handleRow(long timestamp, double[] values) {
+            StringBuilder row = new StringBuilder().append(timestamp).append(':');
+            for (int i = 0; i < values.length; i++) {
+                row.append(i > 0 ? "," : "").append(values[i]);
+            }
+            rows.add(row.toString());
+        }
+
+        @Override
+        public void endRows() {
+            ended = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.generalize;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.n52.io.generalize.IterativeDouglasPeuckerGeneralizer.markKeptPoints;
+import static org.n52.io.generalize.IterativeDouglasPeuckerGeneralizer.markMostDistantPoints;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class IterativeDouglasPeuckerGeneralizerTest {
+
+    @Test
+    public void
+    shouldDropPointsOnStraightLine()
+    {
+        long[] timestamps = new long[] {0L, 1L, 2L, 3L, 4L};
+        double[] values = new double[] {0.0, 1.0, 2.0, 3.0, 4.0};
+        BitSet kept = markKeptPoints(timestamps, values, 0.1);
+        assertThat(kept.cardinality(), is(2));
+        assertThat(kept.get(0), is(true));
+        assertThat(kept.get(4), is(true));
+    }
+
+    @Test
+    public void
+    shouldKeepPeakExceedingTolerance()
+    {
+        long[] timestamps = new long[] {0L, 1L, 2L, 3L, 4L};
+        double[] values = new double[] {0.0, 0.0, 5.0, 0.0, 0.0};
+        BitSet kept = markKeptPoints(timestamps, values, 0.1);
+        assertThat(kept.get(2), is(true));
+        assertThat(kept.get(1), is(true));
+        assertThat(kept.get(3), is(true));
+    }
+
+    @Test
+    public void
+    shouldKeepGapsAndGeneralizeRunsSeparately()
+    {
+        long[] timestamps = new long[] {0L, 1L, 2L, 3L, 4L, 5L, 6L};
+        double[] values = new double[] {0.0, 1.0, 2.0, Double.NaN, 2.0, 2.0, 2.0};
+        BitSet kept = markKeptPoints(timestamps, values, 0.1);
+        assertThat(kept.toString(), is("{0, 2, 3, 4, 6}"));
+    }
+
+    @Test
+    public void
+    shouldKeepMostDistantPointsOnlyIfLimited()
+    {
+        long[] timestamps = new long[] {0L, 1L, 2L, 3L, 4L, 5L, 6L};
+        double[] values = new double[] {0.0, 1.0, 0.0, 8.0, 0.0, 2.0, 0.0};
+        BitSet kept = markMostDistantPoints(timestamps, values, 0.1, 3);
+        assertThat(kept.toString(), is("{0, 3, 6}"));
+    }
+
+    @Test
+    public void
+    shouldHandleLargeSeriesWithoutRecursion()
+    {
+        int size = 1000000;
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = i * 1000L;
+            values[i] = Math.sin(i / 1000.0) * 10;
+        }
+        BitSet kept = markKeptPoints(timestamps, values, 0.1);
+        assertThat(kept.get(0), is(true));
+        assertThat(kept.get(size - 1), is(true));
+        assertThat(kept.cardinality() < size / 10, is(true));
+    }
+
+}
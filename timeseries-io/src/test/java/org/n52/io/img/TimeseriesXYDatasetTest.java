@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.img;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.n52.io.img.TimeseriesXYDataset.createLineDataset;
+import static org.n52.io.img.TimeseriesXYDataset.decimateToColumns;
+
+import org.junit.Test;
+import org.n52.io.v1.data.ColumnarTimeseries;
+
+public class TimeseriesXYDatasetTest {
+
+    @Test
+    public void
+    shouldKeepFirstMinMaxAndLastValuePerColumn()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        double[] values = new double[] {3.0, 1.0, 7.0, 5.0, 4.0, 2.0, 9.0, 6.0, 8.0, 0.0};
+        for (int i = 0; i < values.length; i++) {
+            series.add(i, values[i]);
+        }
+        ColumnarTimeseries decimated = decimateToColumns(series, 0L, 10L, 2);
+        assertThat(decimated.size(), is(7));
+        assertThat(decimated.getValue(0), is(3.0));
+        assertThat(decimated.getValue(1), is(1.0));
+        assertThat(decimated.getValue(2), is(7.0));
+        assertThat(decimated.getValue(3), is(4.0));
+        assertThat(decimated.getValue(4), is(2.0));
+        assertThat(decimated.getValue(5), is(9.0));
+        assertThat(decimated.getValue(6), is(0.0));
+    }
+
+    @Test
+    public void
+    shouldKeepSingleGapForConsecutiveMissingValues()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(0L, 1.0);
+        series.add(1L, Double.NaN);
+        series.add(2L, Double.NaN);
+        series.add(3L, 2.0);
+        ColumnarTimeseries decimated = decimateToColumns(series, 0L, 4L, 1);
+        assertThat(decimated.size(), is(3));
+        assertThat(decimated.hasValue(1), is(false));
+        assertThat(decimated.getTimestamp(2), is(3L));
+    }
+
+    @Test
+    public void
+    shouldTakeSmallSeriesAsTheyAre()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(0L, 1.0);
+        series.add(1L, Double.NaN);
+        TimeseriesXYDataset dataset = createLineDataset("test", series, 0L, 1L, 100);
+        assertThat(dataset.getItemCount(0), is(2));
+        assertThat(dataset.getY(0, 1), is(nullValue()));
+        assertThat(dataset.getRangeLowerBound(false), is(1.0));
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.v1.data;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ColumnarTimeseriesTest {
+
+    @Test
+    public void
+    shouldSortValuesAddedOutOfOrder()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries(2);
+        series.add(3000L, 3.0);
+        series.add(1000L, 1.0);
+        series.add(2000L, 2.0);
+        assertThat(series.size(), is(3));
+        assertThat(series.getTimestamps(), is(new long[] {1000L, 2000L, 3000L}));
+        assertThat(series.getValues(), is(new double[] {1.0, 2.0, 3.0}));
+    }
+
+    @Test
+    public void
+    shouldKeepInsertionOrderOfEqualTimestamps()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(2000L, 1.0);
+        series.add(1000L, 2.0);
+        series.add(2000L, 3.0);
+        assertThat(series.getValues(), is(new double[] {2.0, 1.0, 3.0}));
+    }
+
+    @Test
+    public void
+    shouldCreateTimeseriesValuesWithMissingValuesAsNull()
+    {
+        ColumnarTimeseries series = new ColumnarTimeseries();
+        series.add(1000L, Double.NaN);
+        TimeseriesValue[] values = series.toTimeseriesValues();
+        assertThat(values.length, is(1));
+        assertThat(values[0].getTimestamp(), is(1000L));
+        assertThat(values[0].getValue(), is(nullValue()));
+    }
+
+    @Test
+    public void
+    shouldProvideSortedLegacyViewOnTimeseriesData()
+    {
+        TimeseriesData data = TimeseriesData.newTimeseriesData(new TimeseriesValue(2000L, 2.0),
+                                                               new TimeseriesValue(1000L, 1.0));
+        TimeseriesValue[] values = data.getValues();
+        assertThat(values[0].getTimestamp(), is(1000L));
+        assertThat(values[1].getTimestamp(), is(2000L));
+        assertThat(data.size(), is(2));
+    }
+
+}
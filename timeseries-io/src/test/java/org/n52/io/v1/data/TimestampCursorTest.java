@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io.v1.data;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.n52.io.IoParseException;
+
+public class TimestampCursorTest {
+
+    private static final long[] TIMESTAMPS = new long[] {1000L, 2000L, 2000L, 2000L, 3000L, 3000L, 4000L, -5L};
+
+    @Test
+    public void
+    shouldDecodeEncodedCursor()
+    {
+        TimestampCursor cursor = TimestampCursor.decode(new TimestampCursor(1388534400000L, 3).encode());
+        assertThat(cursor.getTimestamp(), is(1388534400000L));
+        assertThat(cursor.getSkip(), is(3));
+        TimestampCursor negative = TimestampCursor.decode(new TimestampCursor(-1L, 0).encode());
+        assertThat(negative.getTimestamp(), is(-1L));
+        assertThat(negative.getSkip(), is(0));
+    }
+
+    @Test(expected = IoParseException.class)
+    public void
+    shouldRejectTokenWithoutSkip()
+    {
+        TimestampCursor.decode("1hxq2b1c0");
+    }
+
+    @Test(expected = IoParseException.class)
+    public void
+    shouldRejectNegativeSkip()
+    {
+        TimestampCursor.decode("2hxq2b1c0.-1");
+    }
+
+    @Test
+    public void
+    shouldReturnAllValuesAcrossPageBoundaries()
+    {
+        long[] timestamps = sorted(TIMESTAMPS);
+        for (int limit = 1; limit <= timestamps.length + 1; limit++) {
+            assertThat("limit " + limit, readAllPages(timestamps, limit), is(timestamps));
+        }
+    }
+
+    @Test
+    public void
+    shouldAccumulateSkipWhenPageContinuesTimestamp()
+    {
+        ColumnarTimeseries page = new ColumnarTimeseries();
+        page.add(2000L, 1.0);
+        page.add(2000L, 2.0);
+        TimestampCursor next = TimestampCursor.createNextPage(new TimestampCursor(2000L, 1), page);
+        assertThat(next.getTimestamp(), is(2000L));
+        assertThat(next.getSkip(), is(3));
+    }
+
+    /**
+     * Reads pages the way the data access does: values at or after the cursor's timestamp, skipping the
+     * values at the cursor's timestamp which have been returned already.
+     */
+    private long[] readAllPages(long[] timestamps, int limit) {
+        long[] result = new long[timestamps.length];
+        int read = 0;
+        TimestampCursor cursor = null;
+        while (true) {
+            ColumnarTimeseries page = readPage(timestamps, cursor, limit);
+            for (int i = 0; i < page.size(); i++) {
+                result[read++] = page.getTimestamp(i);
+            }
+            if (page.size() < limit) {
+                return result;
+            }
+            cursor = TimestampCursor.decode(TimestampCursor.createNextPage(cursor, page).encode());
+        }
+    }
+
+    private ColumnarTimeseries readPage(long[] timestamps, TimestampCursor cursor, int limit) {
+        ColumnarTimeseries page = new ColumnarTimeseries();
+        int skipped = 0;
+        for (long timestamp : timestamps) {
+            if (cursor != null && timestamp < cursor.getTimestamp()) {
+                continue;
+            }
+            if (cursor != null && skipped < cursor.getSkip()) {
+                skipped++;
+                continue;
+            }
+            if (page.size() < limit) {
+                page.add(timestamp, 0.0);
+            }
+        }
+        return page;
+    }
+
+    private long[] sorted(long[] timestamps) {
+        long[] copy = timestamps.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+}
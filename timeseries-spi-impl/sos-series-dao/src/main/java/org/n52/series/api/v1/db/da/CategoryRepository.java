@@ -75,6 +75,14 @@ public class CategoryRepository extends SessionAwareRepository implements Output
 
     @Override
     public List<CategoryOutput> getAllCondensed(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<CategoryOutput> results = new ArrayList<CategoryOutput>();
+            for (CategoryEntity categoryEntity : metadata.getCategories(parameters)) {
+                results.add(createCondensed(categoryEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             CategoryDao categoryDao = new CategoryDao(session);
@@ -91,6 +99,14 @@ public class CategoryRepository extends SessionAwareRepository implements Output
 
     @Override
     public List<CategoryOutput> getAllExpanded(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<CategoryOutput> results = new ArrayList<CategoryOutput>();
+            for (CategoryEntity categoryEntity : metadata.getCategories(parameters)) {
+                results.add(createExpanded(categoryEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             CategoryDao categoryDao = new CategoryDao(session);
@@ -107,6 +123,14 @@ public class CategoryRepository extends SessionAwareRepository implements Output
 
     @Override
     public CategoryOutput getInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        CategoryEntity cached = metadata != null
+            ? metadata.getCategory(parseId(id))
+            : null;
+        if (cached != null) {
+            return createExpanded(cached, parameters);
+        }
+        // unknown to the snapshot or added since its last refresh
         Session session = getSession();
         try {
             CategoryDao categoryDao = new CategoryDao(session);
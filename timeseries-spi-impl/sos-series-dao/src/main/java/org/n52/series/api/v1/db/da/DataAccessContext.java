@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.n52.sos.ds.hibernate.HibernateSessionHolder;
+import org.n52.sos.ds.hibernate.SessionFactoryProvider;
+import org.n52.sos.ogc.ows.OwsExceptionReport;
+import org.n52.sos.service.Configurator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the single connection pool all repositories get their hibernate sessions from. The context is
+ * created once by Spring and handed to the repositories via
+ * {@link org.n52.series.api.v1.db.da.beans.ServiceInfo}. On {@link #init()} the
+ * session factory is set up and the pool gets warmed up so that first requests do not pay for opening
+ * connections. {@link #destroy()} closes the pool again.<br/>
+ * <br/>
+ * When running within a SOS instance the SOS' session factory is shared and left untouched on destroy.
+ */
+public class DataAccessContext {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataAccessContext.class);
+
+    private static final String DATASOURCE_PROPERTIES = "/datasource.properties";
+
+    private String datasourceProperties = DATASOURCE_PROPERTIES;
+
+    private int warmUpSessions = 2;
+
+    private SessionFactoryProvider provider;
+
+    private volatile HibernateSessionHolder sessionHolder;
+
+    public synchronized void init() {
+        if (sessionHolder != null) {
+            return; // already initialized
+        }
+        if (Configurator.getInstance() == null) {
+            provider = new SessionFactoryProvider();
+            provider.initialize(loadDatasourceProperties());
+            sessionHolder = new HibernateSessionHolder(provider);
+        } else {
+            sessionHolder = new HibernateSessionHolder();
+        }
+        warmUp();
+    }
+
+    private Properties loadDatasourceProperties() {
+        InputStream stream = getClass().getResourceAsStream(datasourceProperties);
+        if (stream == null) {
+            throw new IllegalStateException("Could not find datasource configuration " + datasourceProperties);
+        }
+        try {
+            Properties connectionProviderConfig = new Properties();
+            connectionProviderConfig.load(stream);
+            return connectionProviderConfig;
+        }
+        catch (IOException e) {
+            LOGGER.error("Could not establish database connection. Check {}", datasourceProperties, e);
+            throw new IllegalStateException("Could not establish database connection.", e);
+        }
+        finally {
+            try {
+                stream.close();
+            }
+            catch (IOException e) {
+                LOGGER.debug("Could not close {}", datasourceProperties, e);
+            }
+        }
+    }
+
+    /**
+     * Opens the configured number of sessions at once, so the pool acquires that many connections before the
+     * first request arrives. A failing warm up is logged only as the database may become available later.
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        List<Session> sessions = new ArrayList<Session>(warmUpSessions);
+        try {
+            for (int i = 0; i < warmUpSessions; i++) {
+                Session session = getSession();
+                sessions.add(session);
+                session.createSQLQuery("SELECT 1").uniqueResult();
+            }
+            LOGGER.debug("Warmed up {} database connections in {}ms.",
+                         warmUpSessions, System.currentTimeMillis() - start);
+        }
+        catch (HibernateException e) {
+            LOGGER.warn("Could not warm up database connections.", e);
+        }
+        catch (IllegalStateException e) {
+            LOGGER.warn("Could not warm up database connections.", e);
+        }
+        finally {
+            for (Session session : sessions) {
+                returnSession(session);
+            }
+        }
+    }
+
+    public synchronized void destroy() {
+        if (provider != null) {
+            provider.cleanup();
+            provider = null;
+        }
+        sessionHolder = null;
+    }
+
+    public Session getSession() {
+        HibernateSessionHolder holder = sessionHolder;
+        if (holder == null) {
+            throw new IllegalStateException("Data access context has not been initialized.");
+        }
+        try {
+            return holder.getSession();
+        }
+        catch (OwsExceptionReport e) {
+            throw new IllegalStateException("Could not get hibernate session.", e);
+        }
+    }
+
+    public void returnSession(Session session) {
+        HibernateSessionHolder holder = sessionHolder;
+        if (holder != null) {
+            holder.returnSession(session);
+        }
+    }
+
+    /**
+     * @param datasourceProperties
+     *        classpath location of the connection properties (default is <code>/datasource.properties</code>).
+     */
+    public void setDatasourceProperties(String datasourceProperties) {
+        this.datasourceProperties = datasourceProperties;
+    }
+
+    /**
+     * @param warmUpSessions
+     *        number of sessions to open on startup to fill the connection pool.
+     */
+    public void setWarmUpSessions(int warmUpSessions) {
+        this.warmUpSessions = warmUpSessions;
+    }
+
+}
@@ -35,17 +35,23 @@ import static org.hibernate.criterion.Restrictions.like;
 import static org.hibernate.criterion.Restrictions.or;
 import static org.n52.series.api.v1.db.da.beans.DataModelUtil.isEntitySupported;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.spatial.criterion.SpatialRestrictions;
 import org.hibernate.sql.JoinType;
 import org.joda.time.Interval;
+import org.joda.time.Period;
 import org.n52.io.IoParameters;
 import org.n52.io.crs.BoundingBox;
 import org.n52.io.crs.CRSUtils;
+import org.n52.io.v1.data.Aggregation;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.series.api.v1.db.da.beans.SeriesEntity;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
@@ -91,6 +97,56 @@ public class DbQuery {
         return parameters.getSpatialFilter();
     }
 
+    /**
+     * @return <code>true</code> if values shall be aggregated within time buckets instead of returning raw
+     *         values.
+     */
+    public boolean isAggregate() {
+        return getAggregation() != null;
+    }
+
+    public Aggregation getAggregation() {
+        return parameters.getAggregation();
+    }
+
+    public Period getAggregationBucket() {
+        return parameters.getAggregationBucket();
+    }
+
+    public int getLimit() {
+        return parameters.getLimit();
+    }
+
+    /**
+     * @return the number of pixel columns data is rendered into, or <code>-1</code> if raw data is requested.
+     */
+    public int getResolution() {
+        return parameters.getResolution();
+    }
+
+    /**
+     * @return <code>true</code> if only the first, last, minimum and maximum value per pixel column of the
+     *         requested {@link #getResolution() resolution} shall be returned.
+     */
+    public boolean isDecimated() {
+        return getResolution() > 0 && !isAggregate() && !isDataPaged() && getTimespan() != null;
+    }
+
+    /**
+     * @return the cursor of the previous data page or <code>null</code> if the first page is requested.
+     */
+    public TimestampCursor getPagingCursor() {
+        return parameters.getPagingCursor();
+    }
+
+    /**
+     * @return <code>true</code> if data shall be returned in pages of {@link #getLimit()} values or starting
+     *         after a {@link #getPagingCursor() paging cursor}.
+     */
+    public boolean isDataPaged() {
+        return getLimit() > 0 || getPagingCursor() != null;
+    }
+
     public boolean checkTranslationForLocale(Criteria criteria) {
         return criteria.add(Restrictions.like(COLUMN_LOCALE, getCountryCode())).list().size() != 0;
     }
@@ -118,6 +174,49 @@ public class DbQuery {
         return criteria;
     }
 
+    /**
+     * Applies paging parameters to an already materialized (e.g. cached) list of items.
+     * 
+     * @param items
+     *        all items in a stable order.
+     * @return the requested page of given items.
+     */
+    public <T> List<T> addPagingTo(List<T> items) {
+        int offset = Math.max(0, parameters.getOffset());
+        if (offset >= items.size()) {
+            return Collections.emptyList();
+        }
+        int limit = parameters.getLimit();
+        int end = limit > 0 ? Math.min(items.size(), offset + limit) : items.size();
+        return items.subList(offset, end);
+    }
+
+    /**
+     * Restricts observations to those following the paging cursor (if any) and limits the result to the page
+     * size. In contrast to {@link #addPagingTo(Criteria)} only the values sharing the cursor's timestamp have
+     * to be skipped, the cursor condition itself can be answered from the timestamp index. Paged observations
+     * sharing a timestamp are ordered by key, so that the skipped ones are the same on each request.
+     * 
+     * @param criteria
+     *        the observation criteria ordered by timestamp.
+     * @return the criteria restricted to the requested page.
+     */
+    public Criteria addDataPagingTo(Criteria criteria) {
+        if ( !isDataPaged()) {
+            return criteria;
+        }
+        criteria.addOrder(Order.asc(COLUMN_KEY));
+        TimestampCursor cursor = getPagingCursor();
+        if (cursor != null) {
+            criteria.add(Restrictions.ge(COLUMN_TIMESTAMP, new Date(cursor.getTimestamp())));
+            criteria.setFirstResult(cursor.getSkip());
+        }
+        if (getLimit() > 0) {
+            criteria.setMaxResults(getLimit());
+        }
+        return criteria;
+    }
+
     public Criteria addTimespanTo(Criteria criteria) {
         if (parameters.getTimespan() != null) {
             Date start = parameters.getTimespan().getStart().toDate();
@@ -160,6 +259,48 @@ public class DbQuery {
         return filter.setProjection(projectionList().add(property(propertyName)));
     }
 
+    /**
+     * Checks the same filter parameters as {@link #createDetachedFilterCriteria(String)} against an already
+     * loaded series, i.e. without accessing the database.
+     * 
+     * @param series
+     *        the series to check.
+     * @return <code>true</code> if the series matches all filter parameters.
+     */
+    public boolean matches(SeriesEntity series) {
+        if (parameters.getPhenomenon() != null
+                && !hasKey(series.getPhenomenon().getPkid(), parameters.getPhenomenon())) {
+            return false;
+        }
+        if (parameters.getProcedure() != null
+                && !hasKey(series.getProcedure().getPkid(), parameters.getProcedure())) {
+            return false;
+        }
+        if (parameters.getOffering() != null
+                && !hasKey(series.getProcedure().getPkid(), parameters.getOffering())) {
+            // here procedure == offering
+            return false;
+        }
+        if (parameters.getFeature() != null
+                && !hasKey(series.getFeature().getPkid(), parameters.getFeature())) {
+            return false;
+        }
+        if (parameters.getStation() != null
+                && !hasKey(series.getFeature().getPkid(), parameters.getStation())) {
+            // here feature == station
+            return false;
+        }
+        if (parameters.getCategory() != null
+                && !hasKey(series.getCategory().getPkid(), parameters.getCategory())) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasKey(Long pkid, String id) {
+        return pkid != null && pkid.equals(parseToId(id));
+    }
+
     /**
      * @param id
      *        the id string to parse.
@@ -43,30 +43,38 @@ import org.n52.sensorweb.v1.spi.search.SearchResult;
 
 public class EntityCounter {
 
-    private SessionAwareRepository repository = new SessionAwareRepository(new ServiceInfo()) {
-        /**
-         * Not for use in this context
-         */
-        @Override
-        public Collection<SearchResult> searchFor(String searchString, String locale) {
-            return null;
-        }
+    private final SessionAwareRepository repository;
 
-        /**
-         * Not for use in this context
-         */
-        @Override
-        protected List<SearchResult> convertToSearchResults(List< ? extends DescribableEntity< ? extends I18nEntity>> found,
-                                                            String locale) {
-            return null;
-        }
-    };
+    public EntityCounter(ServiceInfo serviceInfo) {
+        this.repository = new SessionAwareRepository(serviceInfo) {
+            /**
+             * Not for use in this context
+             */
+            @Override
+            public Collection<SearchResult> searchFor(String searchString, String locale) {
+                return null;
+            }
+
+            /**
+             * Not for use in this context
+             */
+            @Override
+            protected List<SearchResult> convertToSearchResults(List< ? extends DescribableEntity< ? extends I18nEntity>> found,
+                                                                String locale) {
+                return null;
+            }
+        };
+    }
 
     public int countStations() throws DataAccessException {
         return countFeatures();
     }
 
     public int countFeatures() throws DataAccessException {
+        MetadataSnapshot metadata = repository.getMetadataSnapshot();
+        if (metadata != null) {
+            return metadata.getAllFeatures().size();
+        }
         Session session = repository.getSession();
         try {
             return new FeatureDao(session).getCount();
@@ -82,6 +90,10 @@ public class EntityCounter {
     }
 
     public int countProcedures() throws DataAccessException {
+        MetadataSnapshot metadata = repository.getMetadataSnapshot();
+        if (metadata != null) {
+            return metadata.getAllProcedures().size();
+        }
         Session session = repository.getSession();
         try {
             return new ProcedureDao(session).getCount();
@@ -92,6 +104,10 @@ public class EntityCounter {
     }
 
     public int countPhenomena() throws DataAccessException {
+        MetadataSnapshot metadata = repository.getMetadataSnapshot();
+        if (metadata != null) {
+            return metadata.getAllPhenomena().size();
+        }
         Session session = repository.getSession();
         try {
             return new PhenomenonDao(session).getCount();
@@ -102,6 +118,10 @@ public class EntityCounter {
     }
 
     public int countCategories() throws DataAccessException {
+        MetadataSnapshot metadata = repository.getMetadataSnapshot();
+        if (metadata != null) {
+            return metadata.getAllCategories().size();
+        }
         Session session = repository.getSession();
         try {
             return new CategoryDao(session).getCount();
@@ -112,6 +132,10 @@ public class EntityCounter {
     }
 
     public int countTimeseries() throws DataAccessException {
+        MetadataSnapshot metadata = repository.getMetadataSnapshot();
+        if (metadata != null) {
+            return metadata.getAllSeries().size();
+        }
         Session session = repository.getSession();
         try {
             return new SeriesDao(session).getCount();
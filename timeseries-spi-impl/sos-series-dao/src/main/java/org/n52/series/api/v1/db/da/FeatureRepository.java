@@ -76,6 +76,14 @@ public class FeatureRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public List<FeatureOutput> getAllCondensed(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<FeatureOutput> results = new ArrayList<FeatureOutput>();
+            for (FeatureEntity featureEntity : metadata.getFeatures(parameters)) {
+                results.add(createCondensed(featureEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             FeatureDao featureDao = new FeatureDao(session);
@@ -91,6 +99,14 @@ public class FeatureRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public List<FeatureOutput> getAllExpanded(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<FeatureOutput> results = new ArrayList<FeatureOutput>();
+            for (FeatureEntity featureEntity : metadata.getFeatures(parameters)) {
+                results.add(createExpanded(featureEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             FeatureDao featureDao = new FeatureDao(session);
@@ -106,6 +122,14 @@ public class FeatureRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public FeatureOutput getInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        FeatureEntity cached = metadata != null
+            ? metadata.getFeature(parseId(id))
+            : null;
+        if (cached != null) {
+            return createExpanded(cached, parameters);
+        }
+        // unknown to the snapshot or added since its last refresh
         Session session = getSession();
         try {
             FeatureDao featureDao = new FeatureDao(session);
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.n52.series.api.v1.db.da.beans.ServiceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds a process wide {@link MetadataSnapshot} so that repositories can assemble metadata outputs without
+ * accessing the database. The snapshot is loaded once on {@link #init()} and replaced atomically whenever
+ * metadata entities were added or removed (checked every {@link #setCheckInterval(int) check interval}) or
+ * when it gets older than the configured {@link #setMaxAge(int) maximum age}. Until the first snapshot is
+ * available {@link #getSnapshot()} returns <code>null</code> and repositories fall back to the database.<br/>
+ * <br/>
+ * The index of {@link #getKnownSeries() known series} is refreshed separately every
+ * {@link #setIndexRefreshInterval(int) index refresh interval} by reading the series ids only, so that existence
+ * checks can rely on it without accessing the database.
+ */
+public class MetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private ServiceInfo serviceInfo;
+
+    private int checkInterval = 60;
+
+    private int maxAge = 3600;
+
+    private int indexRefreshInterval = 10;
+
+    private volatile MetadataSnapshot snapshot;
+
+    private volatile SeriesIdIndex knownSeries;
+
+    private MetadataRepository repository;
+
+    private ScheduledExecutorService scheduler;
+
+    public void init() {
+        repository = new MetadataRepository(serviceInfo);
+        refreshIfOutdated();
+        serviceInfo.setMetadataCache(this);
+        // two threads, so that a long running snapshot load does not delay index refreshes
+        scheduler = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metadata-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshIfOutdated();
+            }
+        }, checkInterval, checkInterval, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshKnownSeries();
+            }
+        }, indexRefreshInterval, indexRefreshInterval, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        snapshot = null;
+        knownSeries = null;
+    }
+
+    /**
+     * @return the current snapshot or <code>null</code> if no snapshot has been loaded (yet).
+     */
+    public MetadataSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return an index of all series pkids at most one {@link #setIndexRefreshInterval(int) index refresh
+     *         interval} old or <code>null</code> if no index has been loaded (yet).
+     */
+    public SeriesIdIndex getKnownSeries() {
+        return knownSeries;
+    }
+
+    /**
+     * Loads a new snapshot and replaces the current one.
+     */
+    public synchronized void refresh() throws DataAccessException {
+        long start = System.currentTimeMillis();
+        MetadataSnapshot loaded = repository.loadSnapshot();
+        snapshot = loaded;
+        knownSeries = loaded.getKnownSeries();
+        LOGGER.debug("Loaded metadata snapshot of {} series in {}ms.",
+                     loaded.getAllSeries().size(), System.currentTimeMillis() - start);
+    }
+
+    void refreshIfOutdated() {
+        try {
+            MetadataSnapshot current = snapshot;
+            if (current == null || isExpired(current)
+                    || !current.getFingerprint().equals(repository.loadFingerprint())) {
+                refresh();
+            }
+        }
+        catch (DataAccessException e) {
+            // keep the last snapshot and retry on next schedule
+            LOGGER.warn("Could not refresh metadata snapshot.", e);
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn("Could not refresh metadata snapshot.", e);
+        }
+    }
+
+    void refreshKnownSeries() {
+        try {
+            knownSeries = new SeriesIdIndex(repository.loadSeriesIds());
+        }
+        catch (RuntimeException e) {
+            // keep the last index and retry on next schedule
+            LOGGER.warn("Could not refresh series id index.", e);
+        }
+    }
+
+    private boolean isExpired(MetadataSnapshot current) {
+        return System.currentTimeMillis() - current.getCreated() > TimeUnit.SECONDS.toMillis(maxAge);
+    }
+
+    public void setServiceInfo(ServiceInfo serviceInfo) {
+        this.serviceInfo = serviceInfo;
+    }
+
+    /**
+     * @param checkInterval
+     *        seconds between two checks for changed metadata.
+     */
+    public void setCheckInterval(int checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * @param maxAge
+     *        seconds after which a snapshot is reloaded even if no changes were detected (e.g. to pick up
+     *        renamed entities).
+     */
+    public void setMaxAge(int maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @param indexRefreshInterval
+     *        seconds between two refreshes of the index of known series, i.e. the longest time a new series
+     *        may be reported as unknown.
+     */
+    public void setIndexRefreshInterval(int indexRefreshInterval) {
+        this.indexRefreshInterval = indexRefreshInterval;
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.criterion.Projections;
+import org.n52.io.geojson.GeojsonPoint;
+import org.n52.series.api.v1.db.da.beans.CategoryEntity;
+import org.n52.series.api.v1.db.da.beans.DescribableEntity;
+import org.n52.series.api.v1.db.da.beans.FeatureEntity;
+import org.n52.series.api.v1.db.da.beans.I18nEntity;
+import org.n52.series.api.v1.db.da.beans.PhenomenonEntity;
+import org.n52.series.api.v1.db.da.beans.ProcedureEntity;
+import org.n52.series.api.v1.db.da.beans.SeriesEntity;
+import org.n52.series.api.v1.db.da.beans.ServiceInfo;
+import org.n52.series.api.v1.db.da.beans.UnitEntity;
+import org.n52.series.api.v1.db.da.dao.ObservationDao;
+import org.n52.sensorweb.v1.spi.search.SearchResult;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Loads {@link MetadataSnapshot}s within a single session.
+ */
+class MetadataRepository extends SessionAwareRepository {
+
+    private static final Class< ? >[] METADATA_ENTITIES = new Class< ? >[] {
+        CategoryEntity.class,
+        PhenomenonEntity.class,
+        ProcedureEntity.class,
+        UnitEntity.class,
+        FeatureEntity.class,
+        SeriesEntity.class
+    };
+
+    private final StationRepository stationRepository;
+
+    MetadataRepository(ServiceInfo serviceInfo) {
+        super(serviceInfo);
+        this.stationRepository = new StationRepository(serviceInfo);
+    }
+
+    /**
+     * Not for use in this context
+     */
+    @Override
+    public Collection<SearchResult> searchFor(String queryString, String locale) {
+        return null;
+    }
+
+    /**
+     * Not for use in this context
+     */
+    @Override
+    protected List<SearchResult> convertToSearchResults(List< ? extends DescribableEntity< ? extends I18nEntity>> found,
+                                                        String locale) {
+        return null;
+    }
+
+    /**
+     * @return the number of rows and the highest pkid of each metadata table.
+     */
+    String loadFingerprint() {
+        Session session = getSession();
+        try {
+            return createFingerprint(session);
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * @return the pkids of all series (including those of reference series).
+     */
+    @SuppressWarnings("unchecked")
+    List<Long> loadSeriesIds() {
+        Session session = getSession();
+        try {
+            return session.createCriteria(SeriesEntity.class)
+                    .setProjection(Projections.property("pkid"))
+                    .list();
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    MetadataSnapshot loadSnapshot() throws DataAccessException {
+        Session session = getSession();
+        try {
+            String fingerprint = createFingerprint(session);
+
+            // load referenced entities first so that series associations resolve without further queries
+            SortedMap<Long, CategoryEntity> categories = loadAll(CategoryEntity.class, session);
+            SortedMap<Long, PhenomenonEntity> phenomena = loadAll(PhenomenonEntity.class, session);
+            SortedMap<Long, ProcedureEntity> procedures = loadAll(ProcedureEntity.class, session);
+            SortedMap<Long, FeatureEntity> features = loadAll(FeatureEntity.class, session);
+            loadAll(UnitEntity.class, session);
+
+            SortedMap<Long, SeriesEntity> series = new TreeMap<Long, SeriesEntity>();
+            SortedMap<Long, FeatureEntity> observedFeatures = new TreeMap<Long, FeatureEntity>();
+            for (Object result : session.createCriteria(SeriesEntity.class).list()) {
+                SeriesEntity entity = (SeriesEntity) result;
+                initializeAssociations(entity);
+                series.put(entity.getPkid(), entity);
+                observedFeatures.put(entity.getFeature().getPkid(), entity.getFeature());
+            }
+
+            // features without series are not listed, their locations are looked up on request
+            Map<Long, Point> locations = new HashMap<Long, Point>();
+            Map<Long, GeojsonPoint> geojsonLocations = new HashMap<Long, GeojsonPoint>();
+            for (FeatureEntity feature : observedFeatures.values()) {
+                Point location = stationRepository.transformToInnerCrs(feature);
+                GeojsonPoint geojsonLocation = stationRepository.createGeojsonPoint(location, feature);
+                if (geojsonLocation != null) {
+                    locations.put(feature.getPkid(), location);
+                    geojsonLocations.put(feature.getPkid(), geojsonLocation);
+                }
+            }
+
+            Set<Long> mobileSeries = new ObservationDao(session).getMobileSeries(null);
+
+            // entities are handed out detached from now on
+            session.clear();
+            return new MetadataSnapshot(series, features, procedures, phenomena, categories,
+                                        locations, geojsonLocations, mobileSeries, fingerprint);
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends DescribableEntity< ? >> SortedMap<Long, T> loadAll(Class<T> entityType, Session session) {
+        SortedMap<Long, T> entities = new TreeMap<Long, T>();
+        for (T entity : (List<T>) session.createCriteria(entityType).list()) {
+            Hibernate.initialize(entity.getTranslations());
+            entities.put(entity.getPkid(), entity);
+        }
+        return entities;
+    }
+
+    private void initializeAssociations(SeriesEntity entity) {
+        Hibernate.initialize(entity.getCategory());
+        Hibernate.initialize(entity.getPhenomenon());
+        Hibernate.initialize(entity.getProcedure());
+        Hibernate.initialize(entity.getFeature());
+        Hibernate.initialize(entity.getUnit());
+    }
+
+    private String createFingerprint(Session session) {
+        StringBuilder sb = new StringBuilder();
+        for (Class< ? > entityType : METADATA_ENTITIES) {
+            Object[] countAndMax = (Object[]) session.createCriteria(entityType)
+                    .setProjection(Projections.projectionList()
+                            .add(Projections.rowCount())
+                            .add(Projections.max("pkid")))
+                    .uniqueResult();
+            sb.append(countAndMax[0]).append(":").append(countAndMax[1]).append(";");
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.n52.io.crs.BoundingBox;
+import org.n52.io.geojson.GeojsonPoint;
+import org.n52.series.api.v1.db.da.beans.CategoryEntity;
+import org.n52.series.api.v1.db.da.beans.FeatureEntity;
+import org.n52.series.api.v1.db.da.beans.PhenomenonEntity;
+import org.n52.series.api.v1.db.da.beans.ProcedureEntity;
+import org.n52.series.api.v1.db.da.beans.SeriesEntity;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * An immutable view on all metadata entities of the database. Series reference their (detached) feature,
+ * procedure, phenomenon, category and unit entities so that outputs can be assembled without accessing the
+ * database. Lists of features, procedures, phenomena and categories are derived from the series matching a
+ * query, just like the filter subqueries of the DAOs. Station locations are already transformed to the inner CRS ({@link org.n52.io.crs.CRSUtils#DEFAULT_CRS}).
+ * Instances are created by {@link MetadataCache} and must not be modified.
+ */
+public final class MetadataSnapshot {
+
+    private final SortedMap<Long, SeriesEntity> series;
+
+    private final SortedMap<Long, FeatureEntity> features;
+
+    private final SortedMap<Long, ProcedureEntity> procedures;
+
+    private final SortedMap<Long, PhenomenonEntity> phenomena;
+
+    private final SortedMap<Long, CategoryEntity> categories;
+
+    private final Map<Long, Point> locations;
+
+    private final Map<Long, GeojsonPoint> geojsonLocations;
+
+    private final SeriesIdIndex knownSeries;
+
+    private final Set<Long> mobileSeries;
+
+    private final String fingerprint;
+
+    private final long created;
+
+    MetadataSnapshot(SortedMap<Long, SeriesEntity> series,
+                     SortedMap<Long, FeatureEntity> features,
+                     SortedMap<Long, ProcedureEntity> procedures,
+                     SortedMap<Long, PhenomenonEntity> phenomena,
+                     SortedMap<Long, CategoryEntity> categories,
+                     Map<Long, Point> locations,
+                     Map<Long, GeojsonPoint> geojsonLocations,
+                     Set<Long> mobileSeries,
+                     String fingerprint) {
+        this.series = Collections.unmodifiableSortedMap(series);
+        this.features = Collections.unmodifiableSortedMap(features);
+        this.procedures = Collections.unmodifiableSortedMap(procedures);
+        this.phenomena = Collections.unmodifiableSortedMap(phenomena);
+        this.categories = Collections.unmodifiableSortedMap(categories);
+        this.locations = Collections.unmodifiableMap(locations);
+        this.geojsonLocations = Collections.unmodifiableMap(geojsonLocations);
+        this.knownSeries = new SeriesIdIndex(series.keySet());
+        this.mobileSeries = Collections.unmodifiableSet(mobileSeries);
+        this.fingerprint = fingerprint;
+        this.created = System.currentTimeMillis();
+    }
+
+    public boolean containsSeries(Long pkid) {
+        return pkid != null && knownSeries.contains(pkid.longValue());
+    }
+
+    /**
+     * @return an index of all series pkids (including those of reference series).
+     */
+    public SeriesIdIndex getKnownSeries() {
+        return knownSeries;
+    }
+
+    /**
+     * @param pkid
+     *        the series' pkid.
+     * @return the series or <code>null</code> if unknown.
+     */
+    public SeriesEntity getSeries(Long pkid) {
+        return series.get(pkid);
+    }
+
+    public SortedMap<Long, SeriesEntity> getAllSeries() {
+        return series;
+    }
+
+    /**
+     * @param query
+     *        the query containing filter and paging parameters.
+     * @return all non-reference series matching given query ordered by pkid.
+     */
+    public List<SeriesEntity> getSeries(DbQuery query) {
+        List<SeriesEntity> matches = new ArrayList<SeriesEntity>();
+        for (SeriesEntity entity : series.values()) {
+            if ( !entity.getProcedure().isReference() && query.matches(entity)) {
+                matches.add(entity);
+            }
+        }
+        return query.addPagingTo(matches);
+    }
+
+    /**
+     * @param featurePkid
+     *        the feature's pkid.
+     * @return all series (including reference series) observed at given feature ordered by pkid.
+     */
+    public List<SeriesEntity> getSeriesOf(Long featurePkid) {
+        List<SeriesEntity> matches = new ArrayList<SeriesEntity>();
+        for (SeriesEntity entity : series.values()) {
+            if (entity.getFeature().getPkid().equals(featurePkid)) {
+                matches.add(entity);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param pkid
+     *        the series' pkid.
+     * @return <code>true</code> if observations of given series have individual locations.
+     */
+    public boolean isMobileSeries(Long pkid) {
+        return mobileSeries.contains(pkid);
+    }
+
+    /**
+     * @param pkid
+     *        the feature's pkid.
+     * @return the feature or <code>null</code> if unknown.
+     */
+    public FeatureEntity getFeature(Long pkid) {
+        return features.get(pkid);
+    }
+
+    /**
+     * @param query
+     *        the query containing filter, spatial filter and paging parameters.
+     * @return all features which have at least one series matching given query ordered by pkid.
+     */
+    public List<FeatureEntity> getFeatures(DbQuery query) {
+        SortedSet<Long> featurePkids = new TreeSet<Long>();
+        for (SeriesEntity entity : series.values()) {
+            if (query.matches(entity)) {
+                featurePkids.add(entity.getFeature().getPkid());
+            }
+        }
+        BoundingBox spatialFilter = query.getSpatialFilter();
+        List<FeatureEntity> matches = new ArrayList<FeatureEntity>();
+        for (Long featurePkid : featurePkids) {
+            Point location = locations.get(featurePkid);
+            if (spatialFilter == null || (location != null && spatialFilter.contains(location))) {
+                matches.add(features.get(featurePkid));
+            }
+        }
+        return query.addPagingTo(matches);
+    }
+
+    public SortedMap<Long, FeatureEntity> getAllFeatures() {
+        return features;
+    }
+
+    /**
+     * @param pkid
+     *        the procedure's pkid.
+     * @return the procedure or <code>null</code> if unknown.
+     */
+    public ProcedureEntity getProcedure(Long pkid) {
+        return procedures.get(pkid);
+    }
+
+    /**
+     * @param query
+     *        the query containing filter and paging parameters.
+     * @return all non-reference procedures which have at least one series matching given query ordered by
+     *         pkid.
+     */
+    public List<ProcedureEntity> getProcedures(DbQuery query) {
+        SortedSet<Long> procedurePkids = new TreeSet<Long>();
+        for (SeriesEntity entity : series.values()) {
+            if ( !entity.getProcedure().isReference() && query.matches(entity)) {
+                procedurePkids.add(entity.getProcedure().getPkid());
+            }
+        }
+        return query.addPagingTo(select(procedures, procedurePkids));
+    }
+
+    public SortedMap<Long, ProcedureEntity> getAllProcedures() {
+        return procedures;
+    }
+
+    /**
+     * @param pkid
+     *        the phenomenon's pkid.
+     * @return the phenomenon or <code>null</code> if unknown.
+     */
+    public PhenomenonEntity getPhenomenon(Long pkid) {
+        return phenomena.get(pkid);
+    }
+
+    /**
+     * @param query
+     *        the query containing filter and paging parameters.
+     * @return all phenomena which have at least one series matching given query ordered by pkid.
+     */
+    public List<PhenomenonEntity> getPhenomena(DbQuery query) {
+        SortedSet<Long> phenomenonPkids = new TreeSet<Long>();
+        for (SeriesEntity entity : series.values()) {
+            if (query.matches(entity)) {
+                phenomenonPkids.add(entity.getPhenomenon().getPkid());
+            }
+        }
+        return query.addPagingTo(select(phenomena, phenomenonPkids));
+    }
+
+    public SortedMap<Long, PhenomenonEntity> getAllPhenomena() {
+        return phenomena;
+    }
+
+    /**
+     * @param pkid
+     *        the category's pkid.
+     * @return the category or <code>null</code> if unknown.
+     */
+    public CategoryEntity getCategory(Long pkid) {
+        return categories.get(pkid);
+    }
+
+    /**
+     * @param query
+     *        the query containing filter and paging parameters.
+     * @return all categories which have at least one series matching given query ordered by pkid.
+     */
+    public List<CategoryEntity> getCategories(DbQuery query) {
+        SortedSet<Long> categoryPkids = new TreeSet<Long>();
+        for (SeriesEntity entity : series.values()) {
+            if (query.matches(entity)) {
+                categoryPkids.add(entity.getCategory().getPkid());
+            }
+        }
+        return query.addPagingTo(select(categories, categoryPkids));
+    }
+
+    public SortedMap<Long, CategoryEntity> getAllCategories() {
+        return categories;
+    }
+
+    private static <T> List<T> select(Map<Long, T> entities, Collection<Long> pkids) {
+        List<T> selected = new ArrayList<T>(pkids.size());
+        for (Long pkid : pkids) {
+            T entity = entities.get(pkid);
+            if (entity != null) {
+                selected.add(entity);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param featurePkid
+     *        the feature's pkid.
+     * @return <code>true</code> if the location of given feature could be transformed when loading this
+     *         snapshot.
+     */
+    public boolean hasStationLocation(Long featurePkid) {
+        return geojsonLocations.containsKey(featurePkid);
+    }
+
+    /**
+     * @param featurePkid
+     *        the feature's pkid.
+     * @return the feature's location in {@link org.n52.io.crs.CRSUtils#DEFAULT_CRS} or <code>null</code> if
+     *         unknown.
+     */
+    public GeojsonPoint getStationLocation(Long featurePkid) {
+        return geojsonLocations.get(featurePkid);
+    }
+
+    /**
+     * @return a value which changes whenever metadata entities were added or removed.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the creation time of this snapshot in milliseconds.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.n52.series.api.v1.db.da.beans.ServiceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains minimum, maximum, sum and count of observation values per series within fixed time buckets of
+ * several {@link #setResolutions(String) resolutions} (by default one minute, one hour and one day). The
+ * rollups are refreshed incrementally every {@link #setRefreshInterval(int) refresh interval}: the finest
+ * resolution from the raw observations inserted since the last refresh (tracked by observation id, so
+ * backfilled observations are included as well), each coarser one from the finer rollups changed since.
+ * Until the next refresh backfilled observations are missing in aggregates read from rollups. Observations
+ * updated or deleted in place are not picked up. Observation ids have to increase with insertion (as
+ * assigned by a sequence).<br/>
+ * <br/>
+ * Queries spanning at least the {@link #setRawSpanLimit(String) raw span limit} are served from the
+ * coarsest suitable rollup (see {@link #selectForAggregation(org.n52.series.api.v1.db.da.DbQuery)} and
+ * {@link #selectForDecimation(org.n52.series.api.v1.db.da.DbQuery)}), shorter ones from raw observations.
+ * <br/>
+ * <br/>
+ * Rollups are {@link #setEnabled(boolean) disabled} by default. When enabled, the following tables are
+ * created on startup if missing (so the database user needs the according privileges) and all existing
+ * observations are rolled up once in the background, which may take a while on large databases:
+ * 
+ * <pre>
+ * CREATE TABLE observation_rollup (
+ *     seriesid bigint NOT NULL,
+ *     resolution integer NOT NULL,
+ *     bucketstart timestamp NOT NULL,
+ *     minvalue double precision,
+ *     maxvalue double precision,
+ *     sumvalue double precision,
+ *     countvalue bigint NOT NULL,
+ *     PRIMARY KEY (seriesid, resolution, bucketstart));
+ * CREATE TABLE observation_rollup_state (
+ *     seriesid bigint NOT NULL,
+ *     resolution integer NOT NULL,
+ *     rolleduntil timestamp NOT NULL,
+ *     PRIMARY KEY (seriesid, resolution));
+ * CREATE TABLE observation_rollup_watermark (
+ *     resolution integer NOT NULL,
+ *     rolledobservation bigint NOT NULL,
+ *     PRIMARY KEY (resolution));
+ * CREATE TABLE observation_rollup_dirty (
+ *     seriesid bigint NOT NULL,
+ *     resolution integer NOT NULL,
+ *     bucketstart timestamp NOT NULL,
+ *     PRIMARY KEY (seriesid, resolution, bucketstart));
+ * </pre>
+ * 
+ * If the rollup tables cannot be created rollups stay disabled.
+ */
+public class ObservationRollups {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObservationRollups.class);
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    private ServiceInfo serviceInfo;
+
+    private boolean enabled;
+
+    private int[] resolutions = parseResolutions("PT1M,PT1H,P1D");
+
+    private int refreshInterval = 300;
+
+    private Period rawSpanLimit = Period.days(2);
+
+    private RollupRepository repository;
+
+    private ScheduledExecutorService scheduler;
+
+    public void init() {
+        if ( !enabled) {
+            LOGGER.info("Observation rollups are disabled. Observations will be read without rollups.");
+            return;
+        }
+        repository = new RollupRepository(serviceInfo);
+        try {
+            repository.createTablesIfMissing();
+        }
+        catch (DataAccessException e) {
+            LOGGER.warn("Could not create rollup tables. Observations will be read without rollups.", e);
+            return;
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn("Could not create rollup tables. Observations will be read without rollups.", e);
+            return;
+        }
+        serviceInfo.setObservationRollups(this);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "observation-rollup-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshQuietly();
+            }
+        }, 0, refreshInterval, TimeUnit.SECONDS);
+    }
+
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Rolls up observations added since the last refresh, finest resolution first, so that the dirty buckets
+     * of coarser resolutions are rolled up from already updated finer rollups.
+     */
+    public synchronized void refresh() throws DataAccessException {
+        int[] derivedResolutions = getDerivedResolutions();
+        for (int i = 0; i < resolutions.length; i++) {
+            long start = System.currentTimeMillis();
+            int sourceResolution = getSourceResolution(i);
+            int rolledUp = sourceResolution > 0
+                ? repository.rollUpDirtyBuckets(resolutions[i], sourceResolution)
+                : repository.rollUpObservations(resolutions[i], derivedResolutions);
+            LOGGER.debug("Rolled up {} series at {}s resolution in {}ms.",
+                         rolledUp, resolutions[i], System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * @return the coarsest finer resolution the given resolution is a multiple of, or <code>-1</code> if it
+     *         has to be rolled up from raw observations.
+     */
+    private int getSourceResolution(int index) {
+        for (int i = index - 1; i >= 0; i--) {
+            if (resolutions[index] % resolutions[i] == 0) {
+                return resolutions[i];
+            }
+        }
+        return -1;
+    }
+
+    private int[] getDerivedResolutions() {
+        int count = 0;
+        int[] derived = new int[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            if (getSourceResolution(i) > 0) {
+                derived[count++] = resolutions[i];
+            }
+        }
+        return Arrays.copyOf(derived, count);
+    }
+
+    void refreshQuietly() {
+        try {
+            refresh();
+        }
+        catch (DataAccessException e) {
+            // retry on next schedule
+            LOGGER.warn("Could not refresh observation rollups.", e);
+        }
+        catch (RuntimeException e) {
+            LOGGER.warn("Could not refresh observation rollups.", e);
+        }
+    }
+
+    /**
+     * @param parameters
+     *        an aggregating query.
+     * @return the coarsest resolution (in seconds) the aggregation bucket is a multiple of, or <code>-1</code>
+     *         if observations shall be aggregated from raw observations.
+     */
+    public int selectForAggregation(DbQuery parameters) {
+        if ( !isLongSpan(parameters.getTimespan())) {
+            return -1;
+        }
+        Period bucket = parameters.getAggregationBucket();
+        long bucketSeconds;
+        try {
+            bucketSeconds = bucket.toStandardSeconds().getSeconds();
+        }
+        catch (UnsupportedOperationException e) {
+            // months and years are multiples of days
+            bucketSeconds = SECONDS_PER_DAY;
+        }
+        for (int i = resolutions.length - 1; i >= 0; i--) {
+            if (bucketSeconds % resolutions[i] == 0) {
+                return resolutions[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param parameters
+     *        a decimating query.
+     * @return the coarsest resolution (in seconds) not wider than a pixel column, or <code>-1</code> if
+     *         observations shall be decimated from raw observations.
+     */
+    public int selectForDecimation(DbQuery parameters) {
+        Interval timespan = parameters.getTimespan();
+        if ( !isLongSpan(timespan) || parameters.getResolution() <= 0) {
+            return -1;
+        }
+        long columnSeconds = timespan.toDurationMillis() / 1000 / parameters.getResolution();
+        for (int i = resolutions.length - 1; i >= 0; i--) {
+            if (resolutions[i] <= columnSeconds) {
+                return resolutions[i];
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLongSpan(Interval timespan) {
+        return timespan != null
+                && !timespan.getStart().plus(rawSpanLimit).isAfter(timespan.getEnd());
+    }
+
+    public void setServiceInfo(ServiceInfo serviceInfo) {
+        this.serviceInfo = serviceInfo;
+    }
+
+    /**
+     * @param enabled
+     *        <code>true</code> to create, maintain and read rollups (default is <code>false</code>).
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param resolutions
+     *        comma separated ISO8601 periods of fixed length (e.g. <code>PT1M,PT1H,P1D</code>).
+     */
+    public void setResolutions(String resolutions) {
+        this.resolutions = parseResolutions(resolutions);
+    }
+
+    private static int[] parseResolutions(String resolutions) {
+        String[] periods = resolutions.split(",");
+        int[] seconds = new int[periods.length];
+        for (int i = 0; i < periods.length; i++) {
+            seconds[i] = Period.parse(periods[i].trim()).toStandardSeconds().getSeconds();
+            if (seconds[i] <= 0) {
+                throw new IllegalArgumentException("Rollup resolution must be positive: " + periods[i]);
+            }
+        }
+        Arrays.sort(seconds);
+        return seconds;
+    }
+
+    /**
+     * @param refreshInterval
+     *        seconds between two incremental refreshes.
+     */
+    public void setRefreshInterval(int refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @param rawSpanLimit
+     *        ISO8601 period from which on queried timespans are read from rollups (e.g. <code>P2D</code>).
+     */
+    public void setRawSpanLimit(String rawSpanLimit) {
+        this.rawSpanLimit = Period.parse(rawSpanLimit);
+    }
+
+}
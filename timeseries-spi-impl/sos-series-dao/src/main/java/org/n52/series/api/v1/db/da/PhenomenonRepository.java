@@ -77,6 +77,14 @@ public class PhenomenonRepository extends SessionAwareRepository implements Outp
 
     @Override
     public List<PhenomenonOutput> getAllCondensed(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<PhenomenonOutput> results = new ArrayList<PhenomenonOutput>();
+            for (PhenomenonEntity phenomenonEntity : metadata.getPhenomena(parameters)) {
+                results.add(createCondensed(phenomenonEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             PhenomenonDao phenomenonDao = new PhenomenonDao(session);
@@ -92,6 +100,14 @@ public class PhenomenonRepository extends SessionAwareRepository implements Outp
 
     @Override
     public List<PhenomenonOutput> getAllExpanded(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<PhenomenonOutput> results = new ArrayList<PhenomenonOutput>();
+            for (PhenomenonEntity phenomenonEntity : metadata.getPhenomena(parameters)) {
+                results.add(createExpanded(phenomenonEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             PhenomenonDao phenomenonDao = new PhenomenonDao(session);
@@ -107,6 +123,14 @@ public class PhenomenonRepository extends SessionAwareRepository implements Outp
 
     @Override
     public PhenomenonOutput getInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        PhenomenonEntity cached = metadata != null
+            ? metadata.getPhenomenon(parseId(id))
+            : null;
+        if (cached != null) {
+            return createExpanded(cached, parameters);
+        }
+        // unknown to the snapshot or added since its last refresh
         Session session = getSession();
         try {
             PhenomenonDao phenomenonDao = new PhenomenonDao(session);
@@ -76,6 +76,14 @@ public class ProcedureRepository extends SessionAwareRepository implements Outpu
 
     @Override
     public List<ProcedureOutput> getAllCondensed(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<ProcedureOutput> results = new ArrayList<ProcedureOutput>();
+            for (ProcedureEntity procedureEntity : metadata.getProcedures(parameters)) {
+                results.add(createCondensed(procedureEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             ProcedureDao procedureDao = new ProcedureDao(session);
@@ -91,6 +99,14 @@ public class ProcedureRepository extends SessionAwareRepository implements Outpu
 
     @Override
     public List<ProcedureOutput> getAllExpanded(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<ProcedureOutput> results = new ArrayList<ProcedureOutput>();
+            for (ProcedureEntity procedureEntity : metadata.getProcedures(parameters)) {
+                results.add(createExpanded(procedureEntity, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             ProcedureDao procedureDao = new ProcedureDao(session);
@@ -106,6 +122,14 @@ public class ProcedureRepository extends SessionAwareRepository implements Outpu
 
     @Override
     public ProcedureOutput getInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        ProcedureEntity cached = metadata != null
+            ? metadata.getProcedure(parseId(id))
+            : null;
+        if (cached != null) {
+            return createExpanded(cached, parameters);
+        }
+        // unknown to the snapshot or added since its last refresh
         Session session = getSession();
         try {
             ProcedureDao procedureDao = new ProcedureDao(session);
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.n52.series.api.v1.db.da.beans.DescribableEntity;
+import org.n52.series.api.v1.db.da.beans.I18nEntity;
+import org.n52.series.api.v1.db.da.beans.ServiceInfo;
+import org.n52.series.api.v1.db.da.dao.RollupDao;
+import org.n52.sensorweb.v1.spi.search.SearchResult;
+
+/**
+ * Maintains observation rollups, committing each series in its own transaction.
+ */
+class RollupRepository extends SessionAwareRepository {
+
+    RollupRepository(ServiceInfo serviceInfo) {
+        super(serviceInfo);
+    }
+
+    /**
+     * Not for use in this context
+     */
+    @Override
+    public Collection<SearchResult> searchFor(String queryString, String locale) {
+        return null;
+    }
+
+    /**
+     * Not for use in this context
+     */
+    @Override
+    protected List<SearchResult> convertToSearchResults(List< ? extends DescribableEntity< ? extends I18nEntity>> found,
+                                                        String locale) {
+        return null;
+    }
+
+    void createTablesIfMissing() throws DataAccessException {
+        Session session = getSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            new RollupDao(session).createTablesIfMissing();
+            transaction.commit();
+        }
+        catch (DataAccessException e) {
+            transaction.rollback();
+            throw e;
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * Rolls up all series having observations inserted since the last refresh.
+     * 
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param derivedResolutions
+     *        the resolutions rolled up from finer rollups.
+     * @return the number of series rolled up.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    int rollUpObservations(int resolution, int[] derivedResolutions) throws DataAccessException {
+        Session session = getSession();
+        try {
+            RollupDao dao = new RollupDao(session);
+            Long lastObservation = dao.getLastObservation();
+            Long rolledObservation = dao.getRolledObservation(resolution);
+            // nothing rolled up yet
+            long afterObservation = rolledObservation != null
+                ? rolledObservation.longValue()
+                : Long.MIN_VALUE;
+            if (lastObservation == null || lastObservation.longValue() <= afterObservation) {
+                return 0;
+            }
+            List<Object[]> observed = dao.getObservedSeries(afterObservation, lastObservation.longValue());
+            for (Object[] series : observed) {
+                Long seriesPkid = (Long) series[0];
+                Date sourceUntil = (Date) series[1];
+                Transaction transaction = session.beginTransaction();
+                try {
+                    dao.rollUpObservations(seriesPkid, resolution, derivedResolutions,
+                                           afterObservation, lastObservation.longValue(), sourceUntil);
+                    transaction.commit();
+                }
+                catch (DataAccessException e) {
+                    transaction.rollback();
+                    throw e;
+                }
+                catch (HibernateException e) {
+                    transaction.rollback();
+                    throw new DataAccessException("Could not commit rollup of series " + seriesPkid, e);
+                }
+            }
+            // advanced only when all series are done, rewriting buckets again on failure is harmless
+            Transaction transaction = session.beginTransaction();
+            try {
+                dao.updateRolledObservation(resolution, lastObservation.longValue());
+                transaction.commit();
+            }
+            catch (DataAccessException e) {
+                transaction.rollback();
+                throw e;
+            }
+            catch (HibernateException e) {
+                transaction.rollback();
+                throw new DataAccessException("Could not commit rollup watermark.", e);
+            }
+            return observed.size();
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * Rolls up the buckets marked dirty at the given resolution from the finer rollups.
+     * 
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param sourceResolution
+     *        the finer rollup resolution to roll up from.
+     * @return the number of series rolled up.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    int rollUpDirtyBuckets(int resolution, int sourceResolution) throws DataAccessException {
+        Session session = getSession();
+        try {
+            RollupDao dao = new RollupDao(session);
+            List<Object[]> dirty = dao.getDirtySeries(resolution, sourceResolution);
+            for (Object[] series : dirty) {
+                Long seriesPkid = (Long) series[0];
+                Date sourceUntil = (Date) series[1];
+                Transaction transaction = session.beginTransaction();
+                try {
+                    dao.rollUpDirtyBuckets(seriesPkid, resolution, sourceResolution, sourceUntil);
+                    transaction.commit();
+                }
+                catch (DataAccessException e) {
+                    transaction.rollback();
+                    throw e;
+                }
+                catch (HibernateException e) {
+                    transaction.rollback();
+                    throw new DataAccessException("Could not commit rollup of series " + seriesPkid, e);
+                }
+            }
+            return dirty.size();
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+}
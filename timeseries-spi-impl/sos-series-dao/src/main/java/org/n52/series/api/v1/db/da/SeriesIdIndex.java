@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable set of series pkids backed by an open addressing hash table of primitive longs. Allows
+ * checking if a series exists in constant time without boxing or accessing the database.
+ */
+public final class SeriesIdIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final long[] slots;
+
+    private final int shift;
+
+    private final int size;
+
+    private final boolean containsEmptyKey;
+
+    /**
+     * @param pkids
+     *        the pkids to index.
+     */
+    public SeriesIdIndex(Collection<Long> pkids) {
+        // keep load factor at most 0.5 to keep probe sequences short
+        int capacity = Integer.highestOneBit(Math.max(4, pkids.size() * 2 - 1)) << 1;
+        this.slots = new long[capacity];
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        Arrays.fill(slots, EMPTY);
+        boolean emptyKeyAdded = false;
+        int count = 0;
+        for (Long pkid : pkids) {
+            if (pkid == null) {
+                continue;
+            }
+            if (pkid.longValue() == EMPTY) {
+                count += emptyKeyAdded ? 0 : 1;
+                emptyKeyAdded = true;
+            }
+            else if (insert(pkid.longValue())) {
+                count++;
+            }
+        }
+        this.containsEmptyKey = emptyKeyAdded;
+        this.size = count;
+    }
+
+    private boolean insert(long pkid) {
+        int mask = slots.length - 1;
+        int index = indexOf(pkid);
+        while (slots[index] != EMPTY) {
+            if (slots[index] == pkid) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = pkid;
+        return true;
+    }
+
+    public boolean contains(long pkid) {
+        if (pkid == EMPTY) {
+            return containsEmptyKey;
+        }
+        int mask = slots.length - 1;
+        int index = indexOf(pkid);
+        while (slots[index] != EMPTY) {
+            if (slots[index] == pkid) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private int indexOf(long pkid) {
+        return (int) ((pkid * MIX) >>> shift);
+    }
+
+    public int size() {
+        return size;
+    }
+
+}
@@ -39,10 +39,11 @@ public class ServiceRepository implements OutputAssembler<ServiceOutput> {
 
     private ServiceInfo serviceInfo;
     
-    private EntityCounter counter = new EntityCounter();
+    private EntityCounter counter;
     
     public ServiceRepository(ServiceInfo serviceInfo) {
         this.serviceInfo = serviceInfo;
+        this.counter = new EntityCounter(serviceInfo);
     }
 
     public String getServiceId() {
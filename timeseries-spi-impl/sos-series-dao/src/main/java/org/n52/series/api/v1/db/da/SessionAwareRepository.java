@@ -27,12 +27,10 @@
  */
 package org.n52.series.api.v1.db.da;
 
-import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import org.hibernate.Session;
 import org.n52.io.IoParameters;
 import static org.n52.io.IoParameters.createFromQuery;
@@ -51,57 +49,35 @@ import org.n52.series.api.v1.db.da.beans.I18nPhenomenonEntity;
 import org.n52.series.api.v1.db.da.beans.I18nProcedureEntity;
 import org.n52.series.api.v1.db.da.beans.SeriesEntity;
 import org.n52.series.api.v1.db.da.beans.ServiceInfo;
-import org.n52.sos.ds.hibernate.HibernateSessionHolder;
-import org.n52.sos.ds.hibernate.SessionFactoryProvider;
-import org.n52.sos.ogc.ows.OwsExceptionReport;
-import org.n52.sos.service.Configurator;
 import org.n52.sensorweb.v1.spi.search.SearchResult;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public abstract class SessionAwareRepository {
 
-    private static final String DATASOURCE_PROPERTIES = "/datasource.properties";
-
-    private static final Logger LOGGER = LoggerFactory.getLogger(SessionAwareRepository.class);
-
-    private static HibernateSessionHolder sessionHolder;
-
     private final ServiceInfo serviceInfo;
 
     protected SessionAwareRepository(ServiceInfo serviceInfo) {
         this.serviceInfo = serviceInfo;
-        createSessionHolderIfNeccessary();
     }
 
     public abstract Collection<SearchResult> searchFor(String queryString, String locale);
 
     protected abstract List<SearchResult> convertToSearchResults(List<? extends DescribableEntity<? extends I18nEntity>> found, String locale);
 
-    private void createSessionHolderIfNeccessary() {
-        try {
-            if (Configurator.getInstance() == null) {
-                Properties connectionProviderConfig = new Properties();
-                connectionProviderConfig.load(getClass().getResourceAsStream(DATASOURCE_PROPERTIES));
-                SessionFactoryProvider provider = new SessionFactoryProvider();
-                provider.initialize(connectionProviderConfig);
-
-                // TODO configure hbm.xml mapping path
-
-                sessionHolder = new HibernateSessionHolder(provider);
-            } else {
-                sessionHolder = new HibernateSessionHolder();
-            }
-        } catch (IOException e) {
-            LOGGER.error("Could not establish database connection. Check {}", DATASOURCE_PROPERTIES, e);
-            throw new RuntimeException("Could not establish database connection.");
-        }
-    }
-
     public ServiceInfo getServiceInfo() {
         return serviceInfo;
     }
 
+    /**
+     * @return the current metadata snapshot or <code>null</code> if metadata has to be read from the
+     *         database.
+     */
+    protected MetadataSnapshot getMetadataSnapshot() {
+        MetadataCache metadataCache = serviceInfo.getMetadataCache();
+        return metadataCache != null
+            ? metadataCache.getSnapshot()
+            : null;
+    }
+
     protected DbQuery createDefaultsWithLocale(String locale) {
         if (locale == null) {
             return DbQuery.createFrom(IoParameters.createDefaults());
@@ -131,19 +107,19 @@ public abstract class SessionAwareRepository {
     }
 
     protected void returnSession(Session session) {
-        sessionHolder.returnSession(session);
+        getDataAccessContext().returnSession(session);
     }
 
     protected Session getSession() {
-        if (sessionHolder == null) {
-            createSessionHolderIfNeccessary();
-        }
-        try {
-            return sessionHolder.getSession();
-        }
-        catch (OwsExceptionReport e) {
-            throw new IllegalStateException("Could not get hibernate session.", e);
+        return getDataAccessContext().getSession();
+    }
+
+    private DataAccessContext getDataAccessContext() {
+        DataAccessContext context = serviceInfo.getDataAccessContext();
+        if (context == null) {
+            throw new IllegalStateException("No data access context configured for service " + serviceInfo.getServiceId());
         }
+        return context;
     }
 
     protected Map<String, TimeseriesOutput> createTimeseriesList(List<SeriesEntity> series, DbQuery parameters) throws DataAccessException {
@@ -168,13 +144,11 @@ public abstract class SessionAwareRepository {
         return timeseriesOutput;
     }
 
-    private ServiceOutput getCondensedService() throws DataAccessException {
-        ServiceRepository serviceRepository = createServiceRepository();
-        String serviceId = serviceRepository.getServiceId();
-        ServiceOutput instance = serviceRepository.getCondensedInstance(serviceId);
+    private ServiceOutput getCondensedService() {
+        // built directly from service info as a service repository would set up its own entity counter
         ServiceOutput serviceOutput = new ServiceOutput();
-        serviceOutput.setLabel(instance.getLabel());
-        serviceOutput.setId(instance.getId());
+        serviceOutput.setLabel(serviceInfo.getServiceDescription());
+        serviceOutput.setId(serviceInfo.getServiceId());
         return serviceOutput;
     }
 
@@ -96,6 +96,14 @@ public class StationRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public List<StationOutput> getAllCondensed(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<StationOutput> results = new ArrayList<StationOutput>();
+            for (FeatureEntity featureEntity : metadata.getFeatures(parameters)) {
+                results.add(createCondensed(featureEntity, metadata.getStationLocation(featureEntity.getPkid()), parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             parameters.setDatabaseAuthorityCode(dbSrid);
@@ -116,6 +124,14 @@ public class StationRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public List<StationOutput> getAllExpanded(DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<StationOutput> results = new ArrayList<StationOutput>();
+            for (FeatureEntity featureEntity : metadata.getFeatures(parameters)) {
+                results.add(createExpanded(featureEntity, metadata, parameters));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             parameters.setDatabaseAuthorityCode(dbSrid);
@@ -134,6 +150,11 @@ public class StationRepository extends SessionAwareRepository implements OutputA
 
     @Override
     public StationOutput getInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null && metadata.hasStationLocation(parseId(id))) {
+            return createExpanded(metadata.getFeature(parseId(id)), metadata, parameters);
+        }
+        // unknown to the snapshot, added since its last refresh or without series
         Session session = getSession();
         try {
             parameters.setDatabaseAuthorityCode(dbSrid);
@@ -150,6 +171,11 @@ public class StationRepository extends SessionAwareRepository implements OutputA
     }
 
     public StationOutput getCondensedInstance(String id, DbQuery parameters) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null && metadata.hasStationLocation(parseId(id))) {
+            FeatureEntity feature = metadata.getFeature(parseId(id));
+            return createCondensed(feature, metadata.getStationLocation(feature.getPkid()), parameters);
+        }
         Session session = getSession();
         try {
             parameters.setDatabaseAuthorityCode(dbSrid);
@@ -170,19 +196,55 @@ public class StationRepository extends SessionAwareRepository implements OutputA
         return stationOutput;
     }
 
+    private StationOutput createExpanded(FeatureEntity feature, MetadataSnapshot metadata, DbQuery parameters) throws DataAccessException {
+        GeojsonPoint location = metadata.getStationLocation(feature.getPkid());
+        StationOutput stationOutput = createCondensed(feature, location, parameters);
+        stationOutput.addProperty("timeseries", createTimeseriesList(metadata.getSeriesOf(feature.getPkid()), parameters));
+        return stationOutput;
+    }
+
     private StationOutput createCondensed(FeatureEntity entity, DbQuery parameters) {
+        return createCondensed(entity, createPoint(entity), parameters);
+    }
+
+    static StationOutput createCondensed(FeatureEntity entity, GeojsonPoint location, DbQuery parameters) {
         StationOutput stationOutput = new StationOutput();
-        stationOutput.setGeometry(createPoint(entity));
+        stationOutput.setGeometry(location);
         stationOutput.addProperty("id", entity.getPkid());
         stationOutput.addProperty("label", entity.getNameI18n(parameters.getLocale()));
         return stationOutput;
     }
 
     private GeojsonPoint createPoint(FeatureEntity featureEntity) {
+        return createGeojsonPoint(transformToInnerCrs(featureEntity), featureEntity);
+    }
+
+    /**
+     * @param featureEntity
+     *        the feature to locate.
+     * @return the feature's location transformed to the inner CRS or <code>null</code> if transformation
+     *         failed.
+     */
+    Point transformToInnerCrs(FeatureEntity featureEntity) {
         try {
             Geometry geometry = featureEntity.getGeom();
             String fromCrs = "EPSG:" +geometry.getSRID();
-            Point location = crsUtil.transformOuterToInner((Point) geometry, fromCrs);
+            return crsUtil.transformOuterToInner((Point) geometry, fromCrs);
+        }
+        catch (FactoryException e) {
+            LOGGER.info("Unable to create CRS factory for station/feature: {}" + featureEntity.getCanonicalId());
+        }
+        catch (TransformException e) {
+            LOGGER.info("Unable to transform station/feature: {}" + featureEntity.getCanonicalId());
+        }
+        return null;
+    }
+
+    GeojsonPoint createGeojsonPoint(Point location, FeatureEntity featureEntity) {
+        if (location == null) {
+            return null;
+        }
+        try {
             return crsUtil.convertToGeojsonFrom(location, DEFAULT_CRS);
         }
         catch (FactoryException e) {
@@ -34,15 +34,25 @@ import static org.n52.io.crs.CRSUtils.createEpsgForcedXYAxisOrder;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.n52.io.crs.CRSUtils;
+import org.n52.io.format.TimeseriesRowHandler;
+import org.n52.io.format.TimeseriesRowMerger;
+import org.n52.io.format.TimeseriesValueCursor;
+import org.n52.io.format.TimeseriesValueHandler;
 import org.n52.io.geojson.GeojsonPoint;
 import org.joda.time.Interval;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.ReferenceValueOutput;
 import org.n52.io.v1.data.StationOutput;
 import org.n52.io.v1.data.TimeseriesOutput;
@@ -50,6 +60,7 @@ import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.TimeseriesDataMetadata;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
 import org.n52.io.v1.data.TimeseriesValue;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.series.api.v1.db.da.beans.DescribableEntity;
 import org.n52.series.api.v1.db.da.beans.FeatureEntity;
 import org.n52.series.api.v1.db.da.beans.I18nEntity;
@@ -74,6 +85,13 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(TimeseriesRepository.class);
 	
+    private static final double[] POWERS_OF_TEN = new double[] {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+    /**
+     * Above this magnitude doubles have no fractional digits left to round.
+     */
+    private static final double MAX_ROUNDABLE = 1L << 52;
+
 	private CRSUtils crsUtil = createEpsgForcedXYAxisOrder();
 	
     public TimeseriesRepository(ServiceInfo serviceInfo) {
@@ -117,6 +135,14 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
 
     @Override
     public List<TimeseriesMetadataOutput> getAllCondensed(DbQuery query) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null) {
+            List<TimeseriesMetadataOutput> results = new ArrayList<TimeseriesMetadataOutput>();
+            for (SeriesEntity timeseries : metadata.getSeries(query)) {
+                results.add(createCondensed(timeseries, query));
+            }
+            return results;
+        }
         Session session = getSession();
         try {
             SeriesDao seriesDao = new SeriesDao(session);
@@ -134,12 +160,24 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
 
     @Override
     public List<TimeseriesMetadataOutput> getAllExpanded(DbQuery query) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
         Session session = getSession();
         try {
             SeriesDao seriesDao = new SeriesDao(session);
             List<TimeseriesMetadataOutput> results = new ArrayList<TimeseriesMetadataOutput>();
+            if (metadata != null) {
+                List<SeriesEntity> matches = metadata.getSeries(query);
+                Map<Long, SeriesEntity> current = loadFirstAndLastValues(matches, seriesDao);
+                for (SeriesEntity timeseries : matches) {
+                    SeriesEntity values = current.get(timeseries.getPkid());
+                    if (values != null) {
+                        results.add(createExpanded(timeseries, values, query));
+                    }
+                }
+                return results;
+            }
             for (SeriesEntity timeseries : seriesDao.getAllInstances(query)) {
-                results.add(createExpanded(session, timeseries, query));
+                results.add(createExpanded(timeseries, timeseries, query));
             }
             return results;
         }
@@ -157,7 +195,108 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
             if (result == null) {
                 throw new ResourceNotFoundException("Resource with id '" + timeseriesId + "' could not be found.");
             }
-            return createExpanded(session, result, dbQuery);
+            MetadataSnapshot metadata = getMetadataSnapshot();
+            SeriesEntity cached = metadata != null
+                ? metadata.getSeries(result.getPkid())
+                : null;
+            return cached != null
+                ? createExpanded(cached, result, dbQuery)
+                : createExpanded(result, result, dbQuery);
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * Like {@link #getInstance(String, DbQuery)}, but reads the series rows of all requested timeseries with a
+     * single query.
+     * 
+     * @param timeseriesIds
+     *        the ids of the timeseries to get.
+     * @param dbQuery
+     *        the query to assemble the outputs with.
+     * @return the expanded timeseries in order of the given ids.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public List<TimeseriesMetadataOutput> getInstances(String[] timeseriesIds, DbQuery dbQuery) throws DataAccessException {
+        Session session = getSession();
+        try {
+            Set<Long> pkids = new HashSet<Long>();
+            for (String timeseriesId : timeseriesIds) {
+                pkids.add(parseId(timeseriesId));
+            }
+            Map<Long, SeriesEntity> seriesByPkid = new HashMap<Long, SeriesEntity>();
+            for (SeriesEntity entity : new SeriesDao(session).getInstances(pkids)) {
+                seriesByPkid.put(entity.getPkid(), entity);
+            }
+            MetadataSnapshot metadata = getMetadataSnapshot();
+            List<TimeseriesMetadataOutput> results = new ArrayList<TimeseriesMetadataOutput>();
+            for (String timeseriesId : timeseriesIds) {
+                SeriesEntity result = seriesByPkid.get(parseId(timeseriesId));
+                if (result == null) {
+                    throw new ResourceNotFoundException("Resource with id '" + timeseriesId + "' could not be found.");
+                }
+                SeriesEntity cached = metadata != null
+                    ? metadata.getSeries(result.getPkid())
+                    : null;
+                results.add(cached != null
+                    ? createExpanded(cached, result, dbQuery)
+                    : createExpanded(result, result, dbQuery));
+            }
+            return results;
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * First and last values change with each new observation, so they are read from the series rows rather
+     * than from the metadata snapshot. Associations of the loaded series are not touched.
+     */
+    private Map<Long, SeriesEntity> loadFirstAndLastValues(List<SeriesEntity> series, SeriesDao seriesDao) throws DataAccessException {
+        Set<Long> pkids = new HashSet<Long>();
+        for (SeriesEntity entity : series) {
+            pkids.add(entity.getPkid());
+        }
+        Map<Long, SeriesEntity> seriesByPkid = new HashMap<Long, SeriesEntity>();
+        for (SeriesEntity entity : seriesDao.getInstances(pkids)) {
+            seriesByPkid.put(entity.getPkid(), entity);
+        }
+        return seriesByPkid;
+    }
+
+    /**
+     * Checks if a timeseries exists without assembling any output. Uses the index of known series kept by the
+     * {@link MetadataCache} if available and falls back to a single count query only if there is none.
+     * 
+     * @param timeseriesId
+     *        the id to check.
+     * @return <code>true</code> if a timeseries with given id exists.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public boolean isKnown(String timeseriesId) throws DataAccessException {
+        long pkid;
+        try {
+            pkid = Long.parseLong(timeseriesId);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+        MetadataCache metadataCache = getServiceInfo().getMetadataCache();
+        SeriesIdIndex knownSeries = metadataCache != null
+            ? metadataCache.getKnownSeries()
+            : null;
+        if (knownSeries != null) {
+            // authoritative, as it is refreshed every few seconds
+            return knownSeries.contains(pkid);
+        }
+        Session session = getSession();
+        try {
+            return new SeriesDao(session).hasInstance(pkid);
         }
         finally {
             returnSession(session);
@@ -167,26 +306,144 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
     public TimeseriesData getData(String timeseriesId, DbQuery dbQuery) throws DataAccessException {
         Session session = getSession();
         try {
-            SeriesDao seriesDao = new SeriesDao(session);
-            SeriesEntity timeseries = seriesDao.getInstance(parseId(timeseriesId), dbQuery);
-            return createTimeseriesData(timeseries, dbQuery, session);
+            SeriesEntity timeseries = getSeries(parseId(timeseriesId), session);
+            TimeseriesData result = createTimeseriesData(timeseries, dbQuery, session);
+            addNextPageTo(result, dbQuery);
+            return result;
         }
         finally {
             returnSession(session);
         }
     }
 
+    /**
+     * Passes all observations of the given timeseries to the handler while reading them from the database.
+     * Values are neither collected nor sorted in memory, as the database delivers them ordered by timestamp.
+     * 
+     * @param timeseriesId
+     *        the timeseries to read data from.
+     * @param dbQuery
+     *        the query to restrict data.
+     * @param handler
+     *        the handler to pass each value to.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public void streamData(String timeseriesId, DbQuery dbQuery, TimeseriesValueHandler handler) throws DataAccessException {
+        Session session = getSession();
+        ScrollableResults results = null;
+        try {
+            SeriesEntity timeseries = getSeries(parseId(timeseriesId), session);
+            ObservationDao dao = new ObservationDao(session);
+            if ( !isMobile(timeseries, session)) {
+                results = dao.scrollValuesFor(timeseries, dbQuery);
+                int scale = timeseries.getNumberOfDecimals();
+                while (results.next()) {
+                    TimeseriesValue value = new TimeseriesValue();
+                    value.setTimestamp(((Date) results.get(1)).getTime());
+                    Double observed = (Double) results.get(2);
+                    value.setValue(observed != null
+                        ? formatDecimal(observed, scale)
+                        : null);
+                    handler.handleValue(value);
+                }
+                return;
+            }
+            results = dao.scrollAllInstancesFor(timeseries, dbQuery);
+            while (results.next()) {
+                ObservationEntity observation = (ObservationEntity) results.get(0);
+                if (observation != null) {
+                    handler.handleValue(createTimeseriesValueFor(observation, timeseries));
+                    session.evict(observation);
+                }
+            }
+        }
+        finally {
+            if (results != null) {
+                results.close();
+            }
+            returnSession(session);
+        }
+    }
+
+    /**
+     * Opens a cursor per timeseries and merges their values into rows aligned by timestamp, so that only the
+     * current value of each timeseries is held in memory.
+     */
+    public void streamAlignedData(String[] timeseriesIds, DbQuery dbQuery, TimeseriesRowHandler handler) throws DataAccessException {
+        Session session = getSession();
+        TimeseriesValueCursor[] cursors = new TimeseriesValueCursor[timeseriesIds.length];
+        try {
+            ObservationDao dao = new ObservationDao(session);
+            for (int i = 0; i < timeseriesIds.length; i++) {
+                SeriesEntity timeseries = getSeries(parseId(timeseriesIds[i]), session);
+                cursors[i] = isMobile(timeseries, session)
+                    ? new ObservationCursor(dao.scrollAllInstancesFor(timeseries, dbQuery), timeseries, session)
+                    : new ValueCursor(dao.scrollValuesFor(timeseries, dbQuery), timeseries.getNumberOfDecimals());
+            }
+            TimeseriesRowMerger.merge(timeseriesIds, cursors, handler);
+        }
+        finally {
+            for (TimeseriesValueCursor cursor : cursors) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            returnSession(session);
+        }
+    }
+
     public TimeseriesData getDataWithReferenceValues(String timeseriesId, DbQuery dbQuery) throws DataAccessException {
         Session session = getSession();
         try {
-            SeriesDao seriesDao = new SeriesDao(session);
-            SeriesEntity timeseries = seriesDao.getInstance(parseId(timeseriesId), dbQuery);
+            SeriesEntity timeseries = getSeries(parseId(timeseriesId), session);
             TimeseriesData result = createTimeseriesData(timeseries, dbQuery, session);
-            Set<SeriesEntity> referenceValues = timeseries.getReferenceValues();
-            if (referenceValues != null && !referenceValues.isEmpty()) {
-                TimeseriesDataMetadata metadata = new TimeseriesDataMetadata();
-                metadata.setReferenceValues(assembleReferenceSeries(referenceValues, dbQuery, session));
-                result.setMetadata(metadata);
+            addReferenceValues(result, timeseries, dbQuery, session);
+            addNextPageTo(result, dbQuery);
+            return result;
+        }
+        finally {
+            returnSession(session);
+        }
+    }
+
+    /**
+     * Reads the data of multiple timeseries within one session. The observations of all timeseries are
+     * fetched by one query ordered by series and timestamp and are split up per timeseries while reading.
+     * 
+     * @param timeseriesIds
+     *        the timeseries to read data from.
+     * @param dbQuery
+     *        the query to restrict data.
+     * @param withReferenceValues
+     *        if reference values shall be added to each timeseries.
+     * @return the data of each known timeseries (in requested order) mapped by its id.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public Map<String, TimeseriesData> getData(String[] timeseriesIds, DbQuery dbQuery, boolean withReferenceValues) throws DataAccessException {
+        Session session = getSession();
+        try {
+            Map<Long, SeriesEntity> seriesByPkid = loadSeries(timeseriesIds, session);
+            Map<Long, TimeseriesData> dataByPkid = dbQuery.isAggregate() || dbQuery.isDecimated()
+                ? createTimeseriesDataPerSeries(seriesByPkid, dbQuery, session)
+                : dbQuery.isDataPaged()
+                    ? createPagedTimeseriesData(seriesByPkid, dbQuery, session)
+                    : createTimeseriesData(seriesByPkid, dbQuery, session);
+
+            Map<String, TimeseriesData> result = new LinkedHashMap<String, TimeseriesData>();
+            for (String timeseriesId : timeseriesIds) {
+                SeriesEntity timeseries = seriesByPkid.get(parseId(timeseriesId));
+                if (timeseries != null) {
+                    TimeseriesData data = dataByPkid.get(timeseries.getPkid());
+                    if (withReferenceValues) {
+                        addReferenceValues(data, timeseries, dbQuery, session);
+                    }
+                    if (dbQuery.isDataPaged() && !dbQuery.isAggregate()) {
+                        addNextPageTo(data, dbQuery);
+                    }
+                    result.put(timeseriesId, data);
+                }
             }
             return result;
         }
@@ -195,16 +452,292 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
         }
     }
 
-    private TimeseriesMetadataOutput createExpanded(Session session, SeriesEntity series, DbQuery query) throws DataAccessException {
+    private SeriesEntity getSeries(Long pkid, Session session) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null && metadata.containsSeries(pkid)) {
+            return metadata.getSeries(pkid);
+        }
+        return new SeriesDao(session).getInstance(pkid);
+    }
+
+    private Map<Long, SeriesEntity> loadSeries(String[] timeseriesIds, Session session) throws DataAccessException {
+        Map<Long, SeriesEntity> seriesByPkid = new HashMap<Long, SeriesEntity>();
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        Set<Long> pkids = new HashSet<Long>();
+        for (String timeseriesId : timeseriesIds) {
+            Long pkid = parseId(timeseriesId);
+            if (metadata != null && metadata.containsSeries(pkid)) {
+                seriesByPkid.put(pkid, metadata.getSeries(pkid));
+            }
+            else {
+                pkids.add(pkid);
+            }
+        }
+        for (SeriesEntity series : new SeriesDao(session).getInstances(pkids)) {
+            seriesByPkid.put(series.getPkid(), series);
+        }
+        return seriesByPkid;
+    }
+
+    private Map<Long, TimeseriesData> createTimeseriesData(Map<Long, SeriesEntity> seriesByPkid, DbQuery query, Session session) throws DataAccessException {
+        Map<Long, ColumnarTimeseries> valuesByPkid = new HashMap<Long, ColumnarTimeseries>();
+        for (Long pkid : seriesByPkid.keySet()) {
+            valuesByPkid.put(pkid, new ColumnarTimeseries());
+        }
+        Set<Long> mobileSeries = getMobileSeries(seriesByPkid.keySet(), session);
+        Set<Long> stationarySeries = new HashSet<Long>(seriesByPkid.keySet());
+        stationarySeries.removeAll(mobileSeries);
+        if ( !stationarySeries.isEmpty()) {
+            ScrollableResults results = new ObservationDao(session).scrollValuesFor(stationarySeries, query);
+            try {
+                demultiplexValues(results, seriesByPkid, valuesByPkid);
+            }
+            finally {
+                results.close();
+            }
+        }
+        if ( !mobileSeries.isEmpty()) {
+            ScrollableResults results = new ObservationDao(session).scrollAllInstancesFor(mobileSeries, query);
+            try {
+                demultiplex(results, seriesByPkid, valuesByPkid, session);
+            }
+            finally {
+                results.close();
+            }
+        }
+        Map<Long, TimeseriesData> dataByPkid = new HashMap<Long, TimeseriesData>();
+        for (Map.Entry<Long, ColumnarTimeseries> values : valuesByPkid.entrySet()) {
+            dataByPkid.put(values.getKey(), TimeseriesData.newTimeseriesData(values.getValue()));
+        }
+        return dataByPkid;
+    }
+
+    /**
+     * The page size applies to each series, so paged data is read by one (index range) query per series.
+     */
+    private Map<Long, TimeseriesData> createPagedTimeseriesData(Map<Long, SeriesEntity> seriesByPkid, DbQuery query, Session session) throws DataAccessException {
+        Map<Long, TimeseriesData> dataByPkid = new HashMap<Long, TimeseriesData>();
+        for (SeriesEntity series : seriesByPkid.values()) {
+            dataByPkid.put(series.getPkid(), createTimeseriesData(series, query, session));
+        }
+        return dataByPkid;
+    }
+
+    /**
+     * Adds the paging token of the next page if the page is full, i.e. if further values may follow.
+     */
+    private void addNextPageTo(TimeseriesData data, DbQuery query) {
+        int limit = query.getLimit();
+        ColumnarTimeseries series = data.getSeries();
+        if (limit > 0 && series.size() >= limit) {
+            TimeseriesDataMetadata metadata = data.getMetadata() != null
+                ? data.getMetadata()
+                : new TimeseriesDataMetadata();
+            TimestampCursor next = TimestampCursor.createNextPage(query.getPagingCursor(), series);
+            metadata.setNext(next.encode());
+            data.setMetadata(metadata);
+        }
+    }
+
+    /**
+     * Splits up observation rows ordered by series into the values of each series.
+     */
+    private void demultiplex(ScrollableResults results,
+                             Map<Long, SeriesEntity> seriesByPkid,
+                             Map<Long, ColumnarTimeseries> valuesByPkid,
+                             Session session) {
+        Long currentPkid = null;
+        SeriesEntity currentSeries = null;
+        ColumnarTimeseries currentValues = null;
+        while (results.next()) {
+            ObservationEntity observation = (ObservationEntity) results.get(0);
+            if (observation == null) {
+                continue;
+            }
+            if ( !observation.getSeriesPkid().equals(currentPkid)) {
+                currentPkid = observation.getSeriesPkid();
+                currentSeries = seriesByPkid.get(currentPkid);
+                currentValues = valuesByPkid.get(currentPkid);
+            }
+            addObservationTo(currentValues, observation, currentSeries);
+            session.evict(observation);
+        }
+    }
+
+    /**
+     * Splits up plain <code>(seriesid, timestamp, value)</code> rows ordered by series into the values of
+     * each series.
+     */
+    private void demultiplexValues(ScrollableResults results,
+                                   Map<Long, SeriesEntity> seriesByPkid,
+                                   Map<Long, ColumnarTimeseries> valuesByPkid) {
+        Long currentPkid = null;
+        int currentScale = 0;
+        ColumnarTimeseries currentValues = null;
+        while (results.next()) {
+            Long pkid = (Long) results.get(0);
+            if ( !pkid.equals(currentPkid)) {
+                currentPkid = pkid;
+                currentScale = seriesByPkid.get(pkid).getNumberOfDecimals();
+                currentValues = valuesByPkid.get(pkid);
+            }
+            long timestamp = ((Date) results.get(1)).getTime();
+            currentValues.add(timestamp, formatDecimal((Double) results.get(2), currentScale));
+        }
+    }
+
+    /**
+     * Cursor over plain <code>(seriesid, timestamp, value)</code> rows of a stationary series.
+     */
+    private static final class ValueCursor implements TimeseriesValueCursor {
+
+        private final ScrollableResults results;
+
+        private final int scale;
+
+        ValueCursor(ScrollableResults results, int scale) {
+            this.results = results;
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean next() {
+            return results.next();
+        }
+
+        @Override
+        public long getTimestamp() {
+            return ((Date) results.get(1)).getTime();
+        }
+
+        @Override
+        public double getValue() {
+            return formatDecimal((Double) results.get(2), scale);
+        }
+
+        @Override
+        public void close() {
+            results.close();
+        }
+
+    }
+
+    /**
+     * Cursor over the observation entities of a mobile series (locations are left out).
+     */
+    private static final class ObservationCursor implements TimeseriesValueCursor {
+
+        private final ScrollableResults results;
+
+        private final int scale;
+
+        private final Session session;
+
+        private long timestamp;
+
+        private double value;
+
+        ObservationCursor(ScrollableResults results, SeriesEntity series, Session session) {
+            this.results = results;
+            this.scale = series.getNumberOfDecimals();
+            this.session = session;
+        }
+
+        @Override
+        public boolean next() {
+            while (results.next()) {
+                ObservationEntity observation = (ObservationEntity) results.get(0);
+                if (observation != null) {
+                    timestamp = observation.getTimestamp().getTime();
+                    value = formatDecimal(observation.getValue(), scale);
+                    session.evict(observation);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public void close() {
+            results.close();
+        }
+
+    }
+
+    /**
+     * @return the pkids of those given series which have observations with individual locations.
+     */
+    private Set<Long> getMobileSeries(Collection<Long> seriesPkids, Session session) throws DataAccessException {
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        Set<Long> mobileSeries = new HashSet<Long>();
+        Set<Long> uncachedSeries = new HashSet<Long>();
+        for (Long pkid : seriesPkids) {
+            if (metadata != null && metadata.containsSeries(pkid)) {
+                if (metadata.isMobileSeries(pkid)) {
+                    mobileSeries.add(pkid);
+                }
+            }
+            else {
+                uncachedSeries.add(pkid);
+            }
+        }
+        mobileSeries.addAll(new ObservationDao(session).getMobileSeries(uncachedSeries));
+        return mobileSeries;
+    }
+
+    private boolean isMobile(SeriesEntity series, Session session) throws DataAccessException {
+        Set<Long> pkids = Collections.singleton(series.getPkid());
+        return !getMobileSeries(pkids, session).isEmpty();
+    }
+
+    /**
+     * Aggregated and decimated data is reduced by the database per series, so there is nothing to gain from
+     * reading all series at once.
+     */
+    private Map<Long, TimeseriesData> createTimeseriesDataPerSeries(Map<Long, SeriesEntity> seriesByPkid, DbQuery query, Session session) throws DataAccessException {
+        Map<Long, TimeseriesData> dataByPkid = new HashMap<Long, TimeseriesData>();
+        for (SeriesEntity series : seriesByPkid.values()) {
+            dataByPkid.put(series.getPkid(), createTimeseriesData(series, query, session));
+        }
+        return dataByPkid;
+    }
+
+    private void addReferenceValues(TimeseriesData data, SeriesEntity timeseries, DbQuery dbQuery, Session session) throws DataAccessException {
+        Set<SeriesEntity> referenceValues = timeseries.getReferenceValues();
+        if (referenceValues != null && !referenceValues.isEmpty()) {
+            TimeseriesDataMetadata metadata = new TimeseriesDataMetadata();
+            metadata.setReferenceValues(assembleReferenceSeries(referenceValues, dbQuery, session));
+            data.setMetadata(metadata);
+        }
+    }
+
+    /**
+     * @param series
+     *        the series to describe.
+     * @param values
+     *        the series holding the current first and last value (may be the described series itself).
+     */
+    private TimeseriesMetadataOutput createExpanded(SeriesEntity series, SeriesEntity values, DbQuery query) throws DataAccessException {
         TimeseriesMetadataOutput output = createCondensed(series, query);
         output.setParameters(createTimeseriesOutput(series, query));
-        output.setReferenceValues(createReferenceValueOutputs(series, query));
-        output.setFirstValue(createTimeseriesValueFor(series.getFirstValue(), series));
-        output.setLastValue(createTimeseriesValueFor(series.getLastValue(), series));
+        output.setReferenceValues(createReferenceValueOutputs(series, values, query));
+        output.setFirstValue(createTimeseriesValueFor(values.getFirstValue(), series));
+        output.setLastValue(createTimeseriesValueFor(values.getLastValue(), series));
         return output;
     }
 
     private ReferenceValueOutput[] createReferenceValueOutputs(SeriesEntity series,
+                                                               SeriesEntity values,
                                                                DbQuery query) throws DataAccessException {
         Set<SeriesEntity> referenceValues = series.getReferenceValues();
         List<ReferenceValueOutput> outputs = new ArrayList<ReferenceValueOutput>();
@@ -214,7 +747,7 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
             refenceValueOutput.setLabel(procedure.getNameI18n(query.getLocale()));
             refenceValueOutput.setReferenceValueId(referenceSeriesEntity.getPkid().toString());
 
-            ObservationEntity lastValue = series.getLastValue();
+            ObservationEntity lastValue = values.getLastValue();
             refenceValueOutput.setLastValue(createTimeseriesValueFor(lastValue, series));
             outputs.add(refenceValueOutput);
         }
@@ -243,6 +776,11 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
 
     private StationOutput createCondensedStation(SeriesEntity entity, DbQuery query) throws DataAccessException {
         FeatureEntity feature = entity.getFeature();
+        MetadataSnapshot metadata = getMetadataSnapshot();
+        if (metadata != null && metadata.hasStationLocation(feature.getPkid())) {
+            GeojsonPoint location = metadata.getStationLocation(feature.getPkid());
+            return StationRepository.createCondensed(feature, location, query);
+        }
         String featurePkid = feature.getPkid().toString();
         StationRepository stationRepository = new StationRepository(getServiceInfo());
         return stationRepository.getCondensedInstance(featurePkid, query);
@@ -263,7 +801,7 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
     }
 
     private boolean haveToExpandReferenceData(TimeseriesData referenceSeriesData) {
-        return referenceSeriesData.getValues().length <= 1;
+        return referenceSeriesData.size() <= 1;
     }
 
     private TimeseriesData expandReferenceDataIfNecessary(SeriesEntity seriesEntity, DbQuery query, Session session) throws DataAccessException {
@@ -291,15 +829,67 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
     }
 
     private TimeseriesData createTimeseriesData(SeriesEntity seriesEntity, DbQuery query, Session session) throws DataAccessException {
-        TimeseriesData result = new TimeseriesData();
+        if (query.isAggregate()) {
+            return createAggregatedTimeseriesData(seriesEntity, query, session);
+        }
+        if (query.isDecimated()) {
+            return createDecimatedTimeseriesData(seriesEntity, query, session);
+        }
         ObservationDao dao = new ObservationDao(session);
+        if ( !isMobile(seriesEntity, session)) {
+            Map<Long, SeriesEntity> seriesByPkid = Collections.singletonMap(seriesEntity.getPkid(), seriesEntity);
+            Map<Long, ColumnarTimeseries> valuesByPkid = Collections.singletonMap(seriesEntity.getPkid(), new ColumnarTimeseries());
+            ScrollableResults results = dao.scrollValuesFor(seriesEntity, query);
+            try {
+                demultiplexValues(results, seriesByPkid, valuesByPkid);
+            }
+            finally {
+                results.close();
+            }
+            return TimeseriesData.newTimeseriesData(valuesByPkid.get(seriesEntity.getPkid()));
+        }
         List<ObservationEntity> observations = dao.getAllInstancesFor(seriesEntity, query);
+        ColumnarTimeseries series = new ColumnarTimeseries(observations.size());
         for (ObservationEntity observation : observations) {
             if (observation != null) {
-                result.addValues(createTimeseriesValueFor(observation, seriesEntity));
+                addObservationTo(series, observation, seriesEntity);
             }
         }
-        return result;
+        return TimeseriesData.newTimeseriesData(series);
+    }
+
+    private TimeseriesData createAggregatedTimeseriesData(SeriesEntity seriesEntity, DbQuery query, Session session) throws DataAccessException {
+        ObservationDao dao = new ObservationDao(session, getServiceInfo().getObservationRollups());
+        List<Object[]> buckets = dao.getAggregatedValuesFor(seriesEntity, query);
+        ColumnarTimeseries series = new ColumnarTimeseries(buckets.size());
+        for (Object[] bucket : buckets) {
+            long timestamp = ((Date) bucket[0]).getTime();
+            Double value = (Double) bucket[1];
+            series.add(timestamp, value != null
+                ? formatDecimal(value, seriesEntity)
+                : Double.NaN);
+        }
+        return TimeseriesData.newTimeseriesData(series);
+    }
+
+    private TimeseriesData createDecimatedTimeseriesData(SeriesEntity seriesEntity, DbQuery query, Session session) throws DataAccessException {
+        ObservationDao dao = new ObservationDao(session, getServiceInfo().getObservationRollups());
+        List<Object[]> rows = dao.getDecimatedValuesFor(seriesEntity, query);
+        ColumnarTimeseries series = new ColumnarTimeseries(rows.size());
+        int scale = seriesEntity.getNumberOfDecimals();
+        for (Object[] row : rows) {
+            series.add(((Date) row[0]).getTime(), formatDecimal((Double) row[1], scale));
+        }
+        return TimeseriesData.newTimeseriesData(series);
+    }
+
+    private void addObservationTo(ColumnarTimeseries series, ObservationEntity observation, SeriesEntity seriesEntity) {
+        long timestamp = observation.getTimestamp().getTime();
+        double value = formatDecimal(observation.getValue(), seriesEntity);
+        GeojsonPoint geometry = observation.getGeom() != null
+            ? createPoint(observation)
+            : null;
+        series.add(timestamp, value, geometry);
     }
 
     private TimeseriesValue[] expandToInterval(Interval interval, ObservationEntity entity, SeriesEntity series) {
@@ -320,7 +910,9 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
         if (observation.getGeom() != null){
         value.setGeom(createPoint(observation));
         }
-        value.setValue(formatDecimal(observation.getValue(), series));
+        value.setValue(observation.getValue() != null
+            ? formatDecimal(observation.getValue(), series)
+            : null);
         return value;
     }
 
@@ -341,10 +933,47 @@ public class TimeseriesRepository extends SessionAwareRepository implements Outp
     }
     
     private Double formatDecimal(Double value, SeriesEntity series) {
-        int scale = series.getNumberOfDecimals();
-        return new BigDecimal(value)
-            .setScale(scale, HALF_UP)
-            .doubleValue();
+        return formatDecimal(value, series.getNumberOfDecimals());
+    }
+
+    /**
+     * Rounds half up (away from zero) to the given number of decimals, exactly like
+     * <code>new BigDecimal(value).setScale(scale, HALF_UP).doubleValue()</code>. The common case is
+     * computed on doubles; values whose scaled fraction lies too close to a .5 tie to decide it safely,
+     * very large values and unusual scales fall back to <code>BigDecimal</code>.
+     * 
+     * @return the rounded value or {@link Double#NaN} if value is <code>null</code>.
+     */
+    static double formatDecimal(Double value, int scale) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        double unrounded = value.doubleValue();
+        if (Double.isNaN(unrounded) || Double.isInfinite(unrounded)) {
+            return unrounded;
+        }
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            return roundExactly(unrounded, scale);
+        }
+        double factor = POWERS_OF_TEN[scale];
+        double scaled = Math.abs(unrounded) * factor;
+        if (scaled >= MAX_ROUNDABLE) {
+            return roundExactly(unrounded, scale);
+        }
+        double integral = Math.floor(scaled);
+        double fraction = scaled - integral;
+        // the multiplication is off by at most half an ulp, so only near-ties can round differently
+        if (Math.abs(fraction - 0.5) <= 2 * Math.ulp(scaled)) {
+            return roundExactly(unrounded, scale);
+        }
+        double rounded = (fraction > 0.5 ? integral + 1 : integral) / factor;
+        return unrounded < 0 && rounded != 0
+            ? -rounded
+            : rounded;
+    }
+
+    private static double roundExactly(double value, int scale) {
+        return new BigDecimal(value).setScale(scale, HALF_UP).doubleValue();
     }
 
 }
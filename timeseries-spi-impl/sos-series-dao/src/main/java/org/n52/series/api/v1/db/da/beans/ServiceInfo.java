@@ -27,12 +27,22 @@
  */
 package org.n52.series.api.v1.db.da.beans;
 
+import org.n52.series.api.v1.db.da.DataAccessContext;
+import org.n52.series.api.v1.db.da.MetadataCache;
+import org.n52.series.api.v1.db.da.ObservationRollups;
+
 public class ServiceInfo {
     
     private String serviceId;
     
     private String serviceDescription;
 
+    private DataAccessContext dataAccessContext;
+
+    private MetadataCache metadataCache;
+
+    private ObservationRollups observationRollups;
+
     public String getServiceId() {
         return serviceId;
     }
@@ -48,5 +58,40 @@ public class ServiceInfo {
     public void setServiceDescription(String serviceDescription) {
         this.serviceDescription = serviceDescription;
     }
+
+    /**
+     * @return the context providing database sessions for this service.
+     */
+    public DataAccessContext getDataAccessContext() {
+        return dataAccessContext;
+    }
+
+    public void setDataAccessContext(DataAccessContext dataAccessContext) {
+        this.dataAccessContext = dataAccessContext;
+    }
+
+    /**
+     * @return the cache holding the metadata of this service, or <code>null</code> if metadata shall be read
+     *         from the database on each request.
+     */
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * @return the rollups to read long timespans from, or <code>null</code> if observations shall always be
+     *         read from the observation table.
+     */
+    public ObservationRollups getObservationRollups() {
+        return observationRollups;
+    }
+
+    public void setObservationRollups(ObservationRollups observationRollups) {
+        this.observationRollups = observationRollups;
+    }
     
 }
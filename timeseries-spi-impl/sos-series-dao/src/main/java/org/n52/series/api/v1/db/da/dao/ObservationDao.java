@@ -27,18 +27,33 @@
  */
 package org.n52.series.api.v1.db.da.dao;
 
+import static org.hibernate.criterion.Order.asc;
 import static org.hibernate.criterion.Restrictions.eq;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.joda.time.Interval;
+import org.joda.time.Period;
 import org.n52.io.IoParameters;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.series.api.v1.db.da.DataAccessException;
 import org.n52.series.api.v1.db.da.DbQuery;
+import org.n52.series.api.v1.db.da.ObservationRollups;
 import org.n52.series.api.v1.db.da.beans.ObservationEntity;
 import org.n52.series.api.v1.db.da.beans.SeriesEntity;
 
@@ -46,8 +61,39 @@ public class ObservationDao extends AbstractDao<ObservationEntity> {
 
     private static final String COLUMN_SERIES_PKID = "seriesPkid";
 
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+
+    /**
+     * Amount of rows the JDBC driver shall fetch per round trip when scrolling through observations.
+     */
+    private static final int SCROLL_FETCH_SIZE = 1000;
+
+    static final String BUCKET_START = "bucketstart";
+
+    static final String BUCKET_VALUE = "bucketvalue";
+
+    private static final String VALUE_SERIES = "seriesid";
+
+    static final String VALUE_TIMESTAMP = "obstime";
+
+    static final String VALUE_VALUE = "obsvalue";
+
+    private final ObservationRollups rollups;
+
     public ObservationDao(Session session) {
+        this(session, null);
+    }
+
+    /**
+     * @param session
+     *        the session to read observations with.
+     * @param rollups
+     *        the rollups to read aggregated or decimated values from, or <code>null</code> to always read raw
+     *        observations.
+     */
+    public ObservationDao(Session session, ObservationRollups rollups) {
         super(session);
+        this.rollups = rollups;
     }
 
     @Override
@@ -115,12 +161,398 @@ public class ObservationDao extends AbstractDao<ObservationEntity> {
     @SuppressWarnings("unchecked")
     public List<ObservationEntity> getAllInstancesFor(SeriesEntity series, DbQuery parameters) throws DataAccessException {
         Criteria criteria = session.createCriteria(ObservationEntity.class)
-                .add(Restrictions.eq(COLUMN_SERIES_PKID, series.getPkid()));
+                .add(Restrictions.eq(COLUMN_SERIES_PKID, series.getPkid()))
+                .addOrder(asc(COLUMN_TIMESTAMP));
         parameters.addTimespanTo(criteria);
-        parameters.addPagingTo(criteria);
+        parameters.addDataPagingTo(criteria);
         return (List<ObservationEntity>) criteria.list();
     }
 
+    /**
+     * Opens a forward-only cursor over all observations belonging to a particular series ordered by
+     * timestamp. Rows are fetched in chunks of {@value #SCROLL_FETCH_SIZE} so that the first results are
+     * available before the whole query has been processed.<br/>
+     * <br/>
+     * Callers have to close the returned results and should evict each read entity from the session to
+     * keep memory flat.
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        some query parameters to restrict result.
+     * @return a scrollable cursor over all matching observation entities.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public ScrollableResults scrollAllInstancesFor(SeriesEntity series, DbQuery parameters) throws DataAccessException {
+        Criteria criteria = session.createCriteria(ObservationEntity.class)
+                .add(Restrictions.eq(COLUMN_SERIES_PKID, series.getPkid()))
+                .addOrder(asc(COLUMN_TIMESTAMP))
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .setReadOnly(true);
+        parameters.addTimespanTo(criteria);
+        parameters.addDataPagingTo(criteria);
+        return criteria.scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    /**
+     * Opens a forward-only cursor over the observations of multiple series at once, ordered by series and
+     * timestamp. This way the data of many series can be read with a single query and split up per series
+     * while scrolling.<br/>
+     * <br/>
+     * Callers have to close the returned results and should evict each read entity from the session to
+     * keep memory flat.
+     * 
+     * @param seriesPkids
+     *        the ids of the series the observations belong to.
+     * @param parameters
+     *        some query parameters to restrict result.
+     * @return a scrollable cursor over all matching observation entities.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public ScrollableResults scrollAllInstancesFor(Collection<Long> seriesPkids, DbQuery parameters) throws DataAccessException {
+        Criteria criteria = session.createCriteria(ObservationEntity.class)
+                .add(Restrictions.in(COLUMN_SERIES_PKID, seriesPkids))
+                .addOrder(asc(COLUMN_SERIES_PKID))
+                .addOrder(asc(COLUMN_TIMESTAMP))
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .setReadOnly(true);
+        parameters.addTimespanTo(criteria);
+        return criteria.scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    /**
+     * Opens a forward-only cursor over the plain <code>(seriesid, timestamp, value)</code> rows of a
+     * particular series ordered by timestamp. In contrast to {@link #scrollAllInstancesFor(SeriesEntity, DbQuery)}
+     * no entities are hydrated and no observation locations are joined, so use this for stationary series only
+     * (see {@link #getMobileSeries(Collection)}).<br/>
+     * <br/>
+     * Callers have to close the returned results.
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        some query parameters to restrict result (including the requested data page).
+     * @return a scrollable cursor over <code>[seriesid (Long), timestamp (Date), value (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public ScrollableResults scrollValuesFor(SeriesEntity series, DbQuery parameters) throws DataAccessException {
+        return scroll(createValuesQuery(Collections.singleton(series.getPkid()), parameters, true));
+    }
+
+    /**
+     * Opens a forward-only cursor over the plain <code>(seriesid, timestamp, value)</code> rows of multiple
+     * stationary series ordered by series and timestamp.<br/>
+     * <br/>
+     * Callers have to close the returned results.
+     * 
+     * @param seriesPkids
+     *        the ids of the series the observations belong to.
+     * @param parameters
+     *        some query parameters to restrict result.
+     * @return a scrollable cursor over <code>[seriesid (Long), timestamp (Date), value (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     * @see #scrollValuesFor(SeriesEntity, DbQuery)
+     */
+    public ScrollableResults scrollValuesFor(Collection<Long> seriesPkids, DbQuery parameters) throws DataAccessException {
+        return scroll(createValuesQuery(seriesPkids, parameters, false));
+    }
+
+    private SQLQuery createValuesQuery(Collection<Long> seriesPkids, DbQuery parameters, boolean paged) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT o.seriesid AS ").append(VALUE_SERIES).append(", ");
+        sql.append("o.phenomenontimeend AS ").append(VALUE_TIMESTAMP).append(", ");
+        sql.append("n.value AS ").append(VALUE_VALUE).append(" ");
+        sql.append("FROM observation o JOIN numericvalue n ON n.observationid = o.observationid ");
+        sql.append("WHERE o.seriesid IN (:seriesIds) ");
+        Interval timespan = parameters.getTimespan();
+        if (timespan != null) {
+            sql.append("AND o.phenomenontimeend BETWEEN :start AND :end ");
+        }
+        TimestampCursor cursor = paged
+            ? parameters.getPagingCursor()
+            : null;
+        if (cursor != null) {
+            sql.append("AND o.phenomenontimeend >= :after ");
+        }
+        sql.append("ORDER BY o.seriesid, o.phenomenontimeend");
+        if (paged && parameters.isDataPaged()) {
+            // values sharing a timestamp have to keep their order across pages
+            sql.append(", o.observationid");
+        }
+
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(VALUE_SERIES, StandardBasicTypes.LONG);
+        query.addScalar(VALUE_TIMESTAMP, StandardBasicTypes.TIMESTAMP);
+        query.addScalar(VALUE_VALUE, StandardBasicTypes.DOUBLE);
+        query.setParameterList("seriesIds", seriesPkids);
+        if (timespan != null) {
+            query.setTimestamp("start", timespan.getStart().toDate());
+            query.setTimestamp("end", timespan.getEnd().toDate());
+        }
+        if (cursor != null) {
+            query.setTimestamp("after", new Date(cursor.getTimestamp()));
+            query.setFirstResult(cursor.getSkip());
+        }
+        if (paged && parameters.getLimit() > 0) {
+            query.setMaxResults(parameters.getLimit());
+        }
+        return query;
+    }
+
+    private ScrollableResults scroll(SQLQuery query) throws DataAccessException {
+        query.setFetchSize(SCROLL_FETCH_SIZE);
+        query.setReadOnly(true);
+        try {
+            return query.scroll(ScrollMode.FORWARD_ONLY);
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not read observation values.", e);
+        }
+    }
+
+    /**
+     * Determines which of the given series are mobile, i.e. have observations with individual locations in
+     * the <code>spatialfilteringprofile</code> table. Checks each series for the existence of one such
+     * observation instead of scanning all observations, so the check stops at the first location found.
+     * 
+     * @param seriesPkids
+     *        the ids of the series to check or <code>null</code> to check all series.
+     * @return the ids of all mobile series.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Long> getMobileSeries(Collection<Long> seriesPkids) throws DataAccessException {
+        Set<Long> mobileSeries = new HashSet<Long>();
+        if (seriesPkids != null && seriesPkids.isEmpty()) {
+            return mobileSeries;
+        }
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT se.seriesid AS ").append(VALUE_SERIES).append(" FROM series se ");
+        sql.append("WHERE EXISTS (SELECT 1 FROM observation o ");
+        sql.append("JOIN spatialfilteringprofile s ON s.observation = o.observationid ");
+        sql.append("WHERE o.seriesid = se.seriesid)");
+        if (seriesPkids != null) {
+            sql.append(" AND se.seriesid IN (:seriesIds)");
+        }
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(VALUE_SERIES, StandardBasicTypes.LONG);
+        if (seriesPkids != null) {
+            query.setParameterList("seriesIds", seriesPkids);
+        }
+        try {
+            mobileSeries.addAll((List<Long>) query.list());
+            return mobileSeries;
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not determine mobile series.", e);
+        }
+    }
+
+    /**
+     * Aggregates the observations of a particular series within time buckets in the database, so that only
+     * one row per bucket has to be transferred. Buckets are aligned to the start of the respective calendar
+     * unit (e.g. full hours for <code>PT1H</code>) or to multiples of the bucket length since the epoch.
+     * 
+     * <br/>
+     * For long timespans the values are read from the coarsest rollup the bucket width is a multiple of (see
+     * {@link ObservationRollups#selectForAggregation(DbQuery)}).
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        the query containing aggregation function, bucket width and timespan.
+     * @return an ordered list of <code>[bucketStart (Date), aggregatedValue (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getAggregatedValuesFor(SeriesEntity series, DbQuery parameters) throws DataAccessException {
+        int resolution = rollups != null
+            ? rollups.selectForAggregation(parameters)
+            : -1;
+        if (resolution > 0) {
+            RollupDao rollupDao = new RollupDao(session);
+            Date rolledUntil = rollupDao.getRolledUntil(series.getPkid(), resolution);
+            if (rolledUntil != null) {
+                return rollupDao.getAggregatedValuesFor(series, parameters, resolution, rolledUntil);
+            }
+        }
+        String bucket = createBucketExpression(parameters.getAggregationBucket(), "o.phenomenontimeend");
+        String function = parameters.getAggregation().getParameterValue();
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(bucket).append(" AS ").append(BUCKET_START).append(", ");
+        sql.append(function).append("(n.value) AS ").append(BUCKET_VALUE).append(" ");
+        sql.append("FROM observation o JOIN numericvalue n ON n.observationid = o.observationid ");
+        sql.append("WHERE o.seriesid = :seriesId ");
+        Interval timespan = parameters.getTimespan();
+        if (timespan != null) {
+            sql.append("AND o.phenomenontimeend BETWEEN :start AND :end ");
+        }
+        sql.append("GROUP BY 1 ORDER BY 1");
+
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(BUCKET_START, StandardBasicTypes.TIMESTAMP);
+        query.addScalar(BUCKET_VALUE, StandardBasicTypes.DOUBLE);
+        query.setLong("seriesId", series.getPkid());
+        if (timespan != null) {
+            query.setTimestamp("start", timespan.getStart().toDate());
+            query.setTimestamp("end", timespan.getEnd().toDate());
+        }
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not aggregate observations of series " + series.getPkid(), e);
+        }
+    }
+
+    /**
+     * @param bucket
+     *        the bucket width.
+     * @param column
+     *        the SQL expression of the timestamp to assign to a bucket.
+     * @return the SQL expression of the start of the bucket the timestamp belongs to.
+     */
+    static String createBucketExpression(Period bucket, String column) {
+        String calendarUnit = getCalendarUnit(bucket);
+        if (calendarUnit != null) {
+            return "date_trunc('" + calendarUnit + "', " + column + ")";
+        }
+        return createBucketExpression(bucket.toStandardSeconds().getSeconds(), column);
+    }
+
+    static String createBucketExpression(long seconds, String column) {
+        return "(to_timestamp(floor(extract(epoch FROM " + column + ") / " + seconds + ") * " + seconds
+                + ") AT TIME ZONE 'UTC')";
+    }
+
+    /**
+     * @return the PostgreSQL <code>date_trunc</code> unit if the bucket is exactly one calendar unit,
+     *         <code>null</code> otherwise.
+     */
+    private static String getCalendarUnit(Period bucket) {
+        if (bucket.equals(Period.years(1))) {
+            return "year";
+        }
+        else if (bucket.equals(Period.months(1))) {
+            return "month";
+        }
+        else if (bucket.equals(Period.weeks(1))) {
+            return "week";
+        }
+        else if (bucket.equals(Period.days(1))) {
+            return "day";
+        }
+        else if (bucket.equals(Period.hours(1))) {
+            return "hour";
+        }
+        else if (bucket.equals(Period.minutes(1))) {
+            return "minute";
+        }
+        else if (bucket.equals(Period.seconds(1))) {
+            return "second";
+        }
+        return null;
+    }
+
+    /**
+     * Reduces the observations of a particular series to the first, last, minimum and maximum value per pixel
+     * column (M4 aggregation) in the database. The requested timespan is divided into as many time buckets as
+     * the chart has pixel columns, so at most four rows per column have to be transferred while the rendered
+     * chart does not differ from one rendered from all values.
+     * <br/>
+     * For long timespans the values are read from the coarsest rollup not coarser than a pixel column (see
+     * {@link ObservationRollups#selectForDecimation(DbQuery)}), which provides minimum and maximum per column.
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        the query containing timespan and resolution.
+     * @return an ordered list of <code>[timestamp (Date), value (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getDecimatedValuesFor(SeriesEntity series, DbQuery parameters) throws DataAccessException {
+        int resolution = rollups != null
+            ? rollups.selectForDecimation(parameters)
+            : -1;
+        if (resolution > 0) {
+            RollupDao rollupDao = new RollupDao(session);
+            Date rolledUntil = rollupDao.getRolledUntil(series.getPkid(), resolution);
+            if (rolledUntil != null) {
+                return rollupDao.getDecimatedValuesFor(series, parameters, resolution, rolledUntil);
+            }
+        }
+        StringBuilder sql = new StringBuilder(createDecimatedValuesSql(false));
+        sql.append(" ORDER BY ").append(VALUE_TIMESTAMP);
+
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(VALUE_TIMESTAMP, StandardBasicTypes.TIMESTAMP);
+        query.addScalar(VALUE_VALUE, StandardBasicTypes.DOUBLE);
+        setDecimationParameters(query, series, parameters);
+        query.setReadOnly(true);
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not decimate observations of series " + series.getPkid(), e);
+        }
+    }
+
+    /**
+     * @param fromBoundary
+     *        if only observations at or after the <code>:boundary</code> parameter shall be decimated.
+     * @return SQL selecting <code>[timestamp, value]</code> of the first, last, minimum and maximum value of
+     *         each pixel column.
+     */
+    static String createDecimatedValuesSql(boolean fromBoundary) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(VALUE_TIMESTAMP).append(", ").append(VALUE_VALUE).append(" FROM (");
+        sql.append("SELECT ").append(VALUE_TIMESTAMP).append(", ").append(VALUE_VALUE).append(", ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY ").append(VALUE_TIMESTAMP).append(") AS firstrank, ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY ").append(VALUE_TIMESTAMP).append(" DESC) AS lastrank, ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY ").append(VALUE_VALUE).append(" ASC NULLS LAST, ")
+                .append(VALUE_TIMESTAMP).append(") AS minrank, ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY ").append(VALUE_VALUE).append(" DESC NULLS LAST, ")
+                .append(VALUE_TIMESTAMP).append(") AS maxrank ");
+        sql.append("FROM (");
+        sql.append("SELECT o.phenomenontimeend AS ").append(VALUE_TIMESTAMP).append(", ");
+        sql.append("n.value AS ").append(VALUE_VALUE).append(", ");
+        sql.append(createPixelExpression("o.phenomenontimeend")).append(" AS pixel ");
+        sql.append("FROM observation o JOIN numericvalue n ON n.observationid = o.observationid ");
+        sql.append("WHERE o.seriesid = :seriesId ");
+        sql.append("AND o.phenomenontimeend BETWEEN :start AND :end");
+        if (fromBoundary) {
+            sql.append(" AND o.phenomenontimeend >= :boundary");
+        }
+        sql.append(") AS v");
+        sql.append(") AS r ");
+        sql.append("WHERE firstrank = 1 OR lastrank = 1 OR minrank = 1 OR maxrank = 1");
+        return sql.toString();
+    }
+
+    /**
+     * @return SQL expression of the pixel column the given timestamp falls into.
+     */
+    static String createPixelExpression(String column) {
+        return "floor(extract(epoch FROM (" + column + " - :start)) * :columns / :span)";
+    }
+
+    static void setDecimationParameters(SQLQuery query, SeriesEntity series, DbQuery parameters) {
+        Interval timespan = parameters.getTimespan();
+        query.setLong("seriesId", series.getPkid());
+        query.setTimestamp("start", timespan.getStart().toDate());
+        query.setTimestamp("end", timespan.getEnd().toDate());
+        query.setInteger("columns", parameters.getResolution());
+        query.setDouble("span", Math.max(timespan.toDurationMillis() / 1000d, 1d));
+    }
+
     @SuppressWarnings("unchecked")
     public List<ObservationEntity> getObservationsFor(SeriesEntity series, DbQuery query) {
         Criteria criteria = query.addTimespanTo(session
@@ -0,0 +1,598 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da.dao;
+
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.BUCKET_START;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.BUCKET_VALUE;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.VALUE_TIMESTAMP;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.VALUE_VALUE;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.createBucketExpression;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.createDecimatedValuesSql;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.createPixelExpression;
+import static org.n52.series.api.v1.db.da.dao.ObservationDao.setDecimationParameters;
+
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.n52.io.v1.data.Aggregation;
+import org.n52.series.api.v1.db.da.DataAccessException;
+import org.n52.series.api.v1.db.da.DbQuery;
+import org.n52.series.api.v1.db.da.beans.SeriesEntity;
+
+/**
+ * Reads and maintains the <code>observation_rollup</code> side table. It holds minimum, maximum, sum and
+ * count of the numeric values of each series within fixed time buckets of several resolutions (in seconds,
+ * buckets aligned to multiples of the resolution since the epoch). The <code>observation_rollup_state</code>
+ * table keeps track up to which observation timestamp each series has been rolled up.<br/>
+ * <br/>
+ * Raw observations are picked up by id: <code>observation_rollup_watermark</code> holds the highest
+ * observation id rolled up, so observations inserted later are rolled up even if their timestamps lie before
+ * the rolled up timestamp (backfilled data). Only the buckets containing new observations are rewritten and
+ * the buckets of coarser resolutions containing them are marked in <code>observation_rollup_dirty</code> to
+ * be rewritten from the finer rollups.<br/>
+ * <br/>
+ * The bucket containing the rolled up timestamp may be incomplete, so queries read rollups before that
+ * bucket only and aggregate the remaining raw observations.
+ */
+public class RollupDao {
+
+    private static final String ROLLUP_SERIES = "seriesid";
+
+    private static final String ROLLED_UNTIL = "rolleduntil";
+
+    private static final String SOURCE_UNTIL = "sourceuntil";
+
+    private static final String ROLLED_OBSERVATION = "rolledobservation";
+
+    private static final String[] CREATE_TABLES = new String[] {
+        "CREATE TABLE IF NOT EXISTS observation_rollup ("
+                + "seriesid bigint NOT NULL, "
+                + "resolution integer NOT NULL, "
+                + "bucketstart timestamp NOT NULL, "
+                + "minvalue double precision, "
+                + "maxvalue double precision, "
+                + "sumvalue double precision, "
+                + "countvalue bigint NOT NULL, "
+                + "PRIMARY KEY (seriesid, resolution, bucketstart))",
+        "CREATE TABLE IF NOT EXISTS observation_rollup_state ("
+                + "seriesid bigint NOT NULL, "
+                + "resolution integer NOT NULL, "
+                + "rolleduntil timestamp NOT NULL, "
+                + "PRIMARY KEY (seriesid, resolution))",
+        "CREATE TABLE IF NOT EXISTS observation_rollup_watermark ("
+                + "resolution integer NOT NULL, "
+                + "rolledobservation bigint NOT NULL, "
+                + "PRIMARY KEY (resolution))",
+        "CREATE TABLE IF NOT EXISTS observation_rollup_dirty ("
+                + "seriesid bigint NOT NULL, "
+                + "resolution integer NOT NULL, "
+                + "bucketstart timestamp NOT NULL, "
+                + "PRIMARY KEY (seriesid, resolution, bucketstart))"
+    };
+
+    private final Session session;
+
+    public RollupDao(Session session) {
+        if (session == null) {
+            throw new NullPointerException("Cannot operate on a null session.");
+        }
+        this.session = session;
+    }
+
+    public void createTablesIfMissing() throws DataAccessException {
+        try {
+            for (String statement : CREATE_TABLES) {
+                session.createSQLQuery(statement).executeUpdate();
+            }
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not create rollup tables.", e);
+        }
+    }
+
+    /**
+     * @param seriesPkid
+     *        the series to check.
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @return the timestamp of the last observation rolled up, or <code>null</code> if the series has not
+     *         been rolled up at the given resolution yet.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public Date getRolledUntil(Long seriesPkid, int resolution) throws DataAccessException {
+        SQLQuery query = session.createSQLQuery("SELECT rolleduntil AS " + ROLLED_UNTIL
+                + " FROM observation_rollup_state WHERE seriesid = :seriesId AND resolution = :resolution");
+        query.addScalar(ROLLED_UNTIL, StandardBasicTypes.TIMESTAMP);
+        query.setLong("seriesId", seriesPkid);
+        query.setInteger("resolution", resolution);
+        try {
+            return (Date) query.uniqueResult();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not read rollup state of series " + seriesPkid, e);
+        }
+    }
+
+    /**
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @return the highest observation id rolled up at the given resolution, or <code>null</code> if no
+     *         observations have been rolled up yet.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public Long getRolledObservation(int resolution) throws DataAccessException {
+        SQLQuery query = session.createSQLQuery("SELECT rolledobservation AS " + ROLLED_OBSERVATION
+                + " FROM observation_rollup_watermark WHERE resolution = :resolution");
+        query.addScalar(ROLLED_OBSERVATION, StandardBasicTypes.LONG);
+        query.setInteger("resolution", resolution);
+        try {
+            return (Long) query.uniqueResult();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not read rollup watermark at resolution " + resolution, e);
+        }
+    }
+
+    /**
+     * @return the highest observation id, or <code>null</code> if there are no observations.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public Long getLastObservation() throws DataAccessException {
+        SQLQuery query = session.createSQLQuery("SELECT max(observationid) AS " + ROLLED_OBSERVATION
+                + " FROM observation");
+        query.addScalar(ROLLED_OBSERVATION, StandardBasicTypes.LONG);
+        try {
+            return (Long) query.uniqueResult();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not read last observation id.", e);
+        }
+    }
+
+    /**
+     * Finds the series having observations with ids within the given range, i.e. observations inserted since
+     * the last refresh no matter which timestamp they have.
+     * 
+     * @param afterObservation
+     *        the highest observation id rolled up so far.
+     * @param untilObservation
+     *        the highest observation id to roll up.
+     * @return <code>[seriesid (Long), sourceUntil (Date)]</code> rows with the latest timestamp of the new
+     *         observations of each series.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getObservedSeries(long afterObservation, long untilObservation) throws DataAccessException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT o.seriesid AS ").append(ROLLUP_SERIES).append(", ");
+        sql.append("max(o.phenomenontimeend) AS ").append(SOURCE_UNTIL).append(" ");
+        sql.append("FROM observation o ");
+        sql.append("WHERE o.observationid > :afterObservation AND o.observationid <= :untilObservation ");
+        sql.append("GROUP BY o.seriesid");
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(ROLLUP_SERIES, StandardBasicTypes.LONG);
+        query.addScalar(SOURCE_UNTIL, StandardBasicTypes.TIMESTAMP);
+        query.setLong("afterObservation", afterObservation);
+        query.setLong("untilObservation", untilObservation);
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not determine series to roll up.", e);
+        }
+    }
+
+    /**
+     * Finds the series having buckets marked dirty at the given resolution.
+     * 
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param sourceResolution
+     *        the finer rollup resolution the dirty buckets are rolled up from.
+     * @return <code>[seriesid (Long), sourceUntil (Date)]</code> rows with the timestamp the series has been
+     *         rolled up to at the source resolution.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getDirtySeries(int resolution, int sourceResolution) throws DataAccessException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT d.seriesid AS ").append(ROLLUP_SERIES).append(", ");
+        sql.append("max(f.rolleduntil) AS ").append(SOURCE_UNTIL).append(" ");
+        sql.append("FROM observation_rollup_dirty d JOIN observation_rollup_state f ");
+        sql.append("ON f.seriesid = d.seriesid AND f.resolution = :sourceResolution ");
+        sql.append("WHERE d.resolution = :resolution ");
+        sql.append("GROUP BY d.seriesid");
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(ROLLUP_SERIES, StandardBasicTypes.LONG);
+        query.addScalar(SOURCE_UNTIL, StandardBasicTypes.TIMESTAMP);
+        query.setInteger("resolution", resolution);
+        query.setInteger("sourceResolution", sourceResolution);
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not determine series to roll up.", e);
+        }
+    }
+
+    /**
+     * Rewrites the buckets containing the given range of new observations of a series from all raw
+     * observations within them and marks the according buckets of the derived resolutions dirty. Has to be
+     * run within a transaction.
+     * 
+     * @param seriesPkid
+     *        the series to roll up.
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param derivedResolutions
+     *        the resolutions rolled up from finer rollups, whose buckets containing the rewritten ones have to
+     *        be rolled up again.
+     * @param afterObservation
+     *        the highest observation id rolled up so far.
+     * @param untilObservation
+     *        the highest observation id to roll up.
+     * @param sourceUntil
+     *        the latest timestamp of the new observations.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public void rollUpObservations(Long seriesPkid,
+                                   int resolution,
+                                   int[] derivedResolutions,
+                                   long afterObservation,
+                                   long untilObservation,
+                                   Date sourceUntil) throws DataAccessException {
+        StringBuilder affected = new StringBuilder();
+        affected.append("SELECT DISTINCT ").append(createBucketExpression(resolution, "a.phenomenontimeend"));
+        affected.append(" AS bucketstart FROM observation a WHERE a.seriesid = :seriesId ");
+        affected.append("AND a.observationid > :afterObservation AND a.observationid <= :untilObservation");
+        try {
+            StringBuilder delete = new StringBuilder();
+            delete.append("DELETE FROM observation_rollup WHERE seriesid = :seriesId AND resolution = :resolution ");
+            delete.append("AND bucketstart IN (").append(affected).append(")");
+            setObservationRange(session.createSQLQuery(delete.toString()), seriesPkid, afterObservation, untilObservation)
+                    .setInteger("resolution", resolution)
+                    .executeUpdate();
+
+            StringBuilder insert = new StringBuilder();
+            insert.append("INSERT INTO observation_rollup ");
+            insert.append("(seriesid, resolution, bucketstart, minvalue, maxvalue, sumvalue, countvalue) ");
+            insert.append("SELECT o.seriesid, :resolution, d.bucketstart, ");
+            insert.append("min(n.value), max(n.value), sum(n.value), count(n.value) ");
+            insert.append("FROM (").append(affected).append(") AS d ");
+            insert.append("JOIN observation o ON o.seriesid = :seriesId AND o.phenomenontimeend >= d.bucketstart ");
+            insert.append("AND o.phenomenontimeend < d.bucketstart + :resolution * interval '1 second' ");
+            insert.append("JOIN numericvalue n ON n.observationid = o.observationid ");
+            insert.append("GROUP BY o.seriesid, d.bucketstart");
+            setObservationRange(session.createSQLQuery(insert.toString()), seriesPkid, afterObservation, untilObservation)
+                    .setInteger("resolution", resolution)
+                    .executeUpdate();
+
+            for (int derivedResolution : derivedResolutions) {
+                String derivedBucket = createBucketExpression(derivedResolution, "d.bucketstart");
+                StringBuilder mark = new StringBuilder();
+                mark.append("INSERT INTO observation_rollup_dirty (seriesid, resolution, bucketstart) ");
+                mark.append("SELECT :seriesId, :derivedResolution, b.bucketstart FROM (");
+                mark.append("SELECT DISTINCT ").append(derivedBucket).append(" AS bucketstart ");
+                mark.append("FROM (").append(affected).append(") AS d) AS b ");
+                mark.append("WHERE NOT EXISTS (SELECT 1 FROM observation_rollup_dirty x ");
+                mark.append("WHERE x.seriesid = :seriesId AND x.resolution = :derivedResolution ");
+                mark.append("AND x.bucketstart = b.bucketstart)");
+                setObservationRange(session.createSQLQuery(mark.toString()), seriesPkid, afterObservation, untilObservation)
+                        .setInteger("derivedResolution", derivedResolution)
+                        .executeUpdate();
+            }
+
+            updateRolledUntil(seriesPkid, resolution, sourceUntil);
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not roll up series " + seriesPkid + " at resolution " + resolution, e);
+        }
+    }
+
+    private SQLQuery setObservationRange(SQLQuery query, Long seriesPkid, long afterObservation, long untilObservation) {
+        query.setLong("seriesId", seriesPkid);
+        query.setLong("afterObservation", afterObservation);
+        query.setLong("untilObservation", untilObservation);
+        return query;
+    }
+
+    /**
+     * Rewrites the buckets of a series marked dirty at the given resolution from the finer rollups and clears
+     * the marks. Has to be run within a transaction.
+     * 
+     * @param seriesPkid
+     *        the series to roll up.
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param sourceResolution
+     *        the finer rollup resolution to roll up from.
+     * @param sourceUntil
+     *        the timestamp the series has been rolled up to at the source resolution.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public void rollUpDirtyBuckets(Long seriesPkid, int resolution, int sourceResolution, Date sourceUntil) throws DataAccessException {
+        try {
+            StringBuilder delete = new StringBuilder();
+            delete.append("DELETE FROM observation_rollup WHERE seriesid = :seriesId AND resolution = :resolution ");
+            delete.append("AND bucketstart IN (SELECT d.bucketstart FROM observation_rollup_dirty d ");
+            delete.append("WHERE d.seriesid = :seriesId AND d.resolution = :resolution)");
+            session.createSQLQuery(delete.toString())
+                    .setLong("seriesId", seriesPkid)
+                    .setInteger("resolution", resolution)
+                    .executeUpdate();
+
+            StringBuilder insert = new StringBuilder();
+            insert.append("INSERT INTO observation_rollup ");
+            insert.append("(seriesid, resolution, bucketstart, minvalue, maxvalue, sumvalue, countvalue) ");
+            insert.append("SELECT r.seriesid, :resolution, d.bucketstart, ");
+            insert.append("min(r.minvalue), max(r.maxvalue), sum(r.sumvalue), sum(r.countvalue) ");
+            insert.append("FROM observation_rollup_dirty d ");
+            insert.append("JOIN observation_rollup r ON r.seriesid = d.seriesid AND r.resolution = :sourceResolution ");
+            insert.append("AND r.bucketstart >= d.bucketstart ");
+            insert.append("AND r.bucketstart < d.bucketstart + :resolution * interval '1 second' ");
+            insert.append("WHERE d.seriesid = :seriesId AND d.resolution = :resolution ");
+            insert.append("GROUP BY r.seriesid, d.bucketstart");
+            session.createSQLQuery(insert.toString())
+                    .setLong("seriesId", seriesPkid)
+                    .setInteger("resolution", resolution)
+                    .setInteger("sourceResolution", sourceResolution)
+                    .executeUpdate();
+
+            session.createSQLQuery("DELETE FROM observation_rollup_dirty WHERE seriesid = :seriesId AND resolution = :resolution")
+                    .setLong("seriesId", seriesPkid)
+                    .setInteger("resolution", resolution)
+                    .executeUpdate();
+
+            updateRolledUntil(seriesPkid, resolution, sourceUntil);
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not roll up series " + seriesPkid + " at resolution " + resolution, e);
+        }
+    }
+
+    private void updateRolledUntil(Long seriesPkid, int resolution, Date rolledUntil) {
+        // backfilled observations must not move the state back
+        int updated = session.createSQLQuery("UPDATE observation_rollup_state "
+                + "SET rolleduntil = GREATEST(rolleduntil, :rolledUntil) "
+                + "WHERE seriesid = :seriesId AND resolution = :resolution")
+                .setTimestamp("rolledUntil", rolledUntil)
+                .setLong("seriesId", seriesPkid)
+                .setInteger("resolution", resolution)
+                .executeUpdate();
+        if (updated == 0) {
+            session.createSQLQuery("INSERT INTO observation_rollup_state (seriesid, resolution, rolleduntil) "
+                    + "VALUES (:seriesId, :resolution, :rolledUntil)")
+                    .setLong("seriesId", seriesPkid)
+                    .setInteger("resolution", resolution)
+                    .setTimestamp("rolledUntil", rolledUntil)
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Remembers the highest observation id rolled up at the given resolution. Has to be run within a
+     * transaction.
+     * 
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param rolledObservation
+     *        the highest observation id rolled up.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public void updateRolledObservation(int resolution, long rolledObservation) throws DataAccessException {
+        try {
+            int updated = session.createSQLQuery("UPDATE observation_rollup_watermark "
+                    + "SET rolledobservation = :rolledObservation WHERE resolution = :resolution")
+                    .setLong("rolledObservation", rolledObservation)
+                    .setInteger("resolution", resolution)
+                    .executeUpdate();
+            if (updated == 0) {
+                session.createSQLQuery("INSERT INTO observation_rollup_watermark (resolution, rolledobservation) "
+                        + "VALUES (:resolution, :rolledObservation)")
+                        .setInteger("resolution", resolution)
+                        .setLong("rolledObservation", rolledObservation)
+                        .executeUpdate();
+            }
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not update rollup watermark at resolution " + resolution, e);
+        }
+    }
+
+    /**
+     * Aggregates values within time buckets like
+     * {@link ObservationDao#getAggregatedValuesFor(SeriesEntity, DbQuery)}, but reads rollups instead of raw
+     * observations where possible. Rollups are read only if they lie completely within the timespan and before
+     * the (possibly incomplete) rollup containing <code>rolledUntil</code>. The partial rollup buckets at the
+     * timespan's edges and the values not rolled up yet are read from raw observations within the same query,
+     * both are merged per bucket. The bucket width has to be a multiple of the rollup resolution.
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        the query containing aggregation function, bucket width and timespan.
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param rolledUntil
+     *        the timestamp the series has been rolled up to.
+     * @return an ordered list of <code>[bucketStart (Date), aggregatedValue (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getAggregatedValuesFor(SeriesEntity series, DbQuery parameters, int resolution, Date rolledUntil) throws DataAccessException {
+        Period bucket = parameters.getAggregationBucket();
+        Aggregation aggregation = parameters.getAggregation();
+        // first rollup starting at or after :start
+        String rollupFrom = createBucketExpression(resolution, "CAST(:start AS timestamp) "
+                + "+ :resolution * interval '1 second' - interval '1 millisecond'");
+        // rollups starting from here end after :end or have not been rolled up completely
+        String rollupUntil = "LEAST(" + createBucketExpression(resolution, "CAST(:end AS timestamp)") + ", "
+                + createBucketExpression(resolution, "CAST(:rolledUntil AS timestamp)") + ")";
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT r.bucketstart AS ").append(BUCKET_START).append(", ");
+        sql.append(createRollupAggregation(aggregation)).append(" AS ").append(BUCKET_VALUE).append(" ");
+        sql.append("FROM (");
+        sql.append("SELECT ").append(createBucketExpression(bucket, "r.bucketstart")).append(" AS bucketstart, ");
+        sql.append("r.minvalue, r.maxvalue, r.sumvalue, r.countvalue ");
+        sql.append("FROM observation_rollup r ");
+        sql.append("WHERE r.seriesid = :seriesId AND r.resolution = :resolution ");
+        sql.append("AND r.bucketstart >= ").append(rollupFrom).append(" ");
+        sql.append("AND r.bucketstart < ").append(rollupUntil).append(" ");
+        sql.append("UNION ALL ");
+        sql.append("SELECT ").append(createBucketExpression(bucket, "o.phenomenontimeend")).append(", ");
+        sql.append("n.value, n.value, n.value, CASE WHEN n.value IS NULL THEN 0 ELSE 1 END ");
+        sql.append("FROM observation o JOIN numericvalue n ON n.observationid = o.observationid ");
+        sql.append("WHERE o.seriesid = :seriesId ");
+        sql.append("AND o.phenomenontimeend BETWEEN :start AND :end ");
+        sql.append("AND (o.phenomenontimeend < ").append(rollupFrom).append(" ");
+        sql.append("OR o.phenomenontimeend >= ").append(rollupUntil).append(")");
+        sql.append(") AS r ");
+        sql.append("GROUP BY 1 ");
+        sql.append("ORDER BY 1");
+
+        Interval timespan = parameters.getTimespan();
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(BUCKET_START, StandardBasicTypes.TIMESTAMP);
+        query.addScalar(BUCKET_VALUE, StandardBasicTypes.DOUBLE);
+        query.setLong("seriesId", series.getPkid());
+        query.setInteger("resolution", resolution);
+        query.setTimestamp("start", timespan.getStart().toDate());
+        query.setTimestamp("end", timespan.getEnd().toDate());
+        query.setTimestamp("rolledUntil", rolledUntil);
+        query.setReadOnly(true);
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not aggregate rollups of series " + series.getPkid(), e);
+        }
+    }
+
+    private String createRollupAggregation(Aggregation aggregation) {
+        switch (aggregation) {
+        case AVG:
+            return "sum(r.sumvalue) / NULLIF(sum(r.countvalue), 0)";
+        case MIN:
+            return "min(r.minvalue)";
+        case MAX:
+            return "max(r.maxvalue)";
+        case SUM:
+            return "sum(r.sumvalue)";
+        case COUNT:
+            return "sum(r.countvalue)";
+        default:
+            throw new IllegalArgumentException("Unsupported aggregation " + aggregation);
+        }
+    }
+
+    /**
+     * Decimates values to the pixel columns of a chart like
+     * {@link ObservationDao#getDecimatedValuesFor(SeriesEntity, DbQuery)}. Up to the pixel column containing
+     * <code>rolledUntil</code> the minimum and maximum of each column are read from rollups, which have to be
+     * at most as wide as a column. The remaining columns are decimated from raw observations.
+     * 
+     * @param series
+     *        the series the observations belongs to.
+     * @param parameters
+     *        the query containing timespan and resolution.
+     * @param resolution
+     *        the rollup resolution in seconds.
+     * @param rolledUntil
+     *        the timestamp the series has been rolled up to.
+     * @return an ordered list of <code>[timestamp (Date), value (Double)]</code> rows.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getDecimatedValuesFor(SeriesEntity series, DbQuery parameters, int resolution, Date rolledUntil) throws DataAccessException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH ranked AS (");
+        sql.append("SELECT bucketstart, minvalue, maxvalue, ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY minvalue ASC NULLS LAST, bucketstart) AS minrank, ");
+        sql.append("row_number() OVER (PARTITION BY pixel ORDER BY maxvalue DESC NULLS LAST, bucketstart) AS maxrank ");
+        sql.append("FROM (");
+        sql.append("SELECT r.bucketstart, r.minvalue, r.maxvalue, ");
+        sql.append(createPixelExpression("r.bucketstart")).append(" AS pixel ");
+        sql.append("FROM observation_rollup r ");
+        sql.append("WHERE r.seriesid = :seriesId AND r.resolution = :resolution ");
+        sql.append("AND r.bucketstart >= :start AND r.bucketstart < :boundary");
+        sql.append(") AS v) ");
+        sql.append("SELECT bucketstart AS ").append(VALUE_TIMESTAMP).append(", minvalue AS ").append(VALUE_VALUE);
+        sql.append(" FROM ranked WHERE minrank = 1 AND minvalue IS NOT NULL ");
+        sql.append("UNION ALL ");
+        sql.append("SELECT bucketstart, maxvalue FROM ranked WHERE maxrank = 1 AND maxvalue IS NOT NULL ");
+        sql.append("UNION ALL ");
+        sql.append(createDecimatedValuesSql(true)).append(" ");
+        sql.append("ORDER BY 1");
+
+        SQLQuery query = session.createSQLQuery(sql.toString());
+        query.addScalar(VALUE_TIMESTAMP, StandardBasicTypes.TIMESTAMP);
+        query.addScalar(VALUE_VALUE, StandardBasicTypes.DOUBLE);
+        setDecimationParameters(query, series, parameters);
+        query.setInteger("resolution", resolution);
+        query.setTimestamp("boundary", getPixelBoundary(parameters, resolution, rolledUntil));
+        query.setReadOnly(true);
+        try {
+            return (List<Object[]>) query.list();
+        }
+        catch (HibernateException e) {
+            throw new DataAccessException("Could not decimate rollups of series " + series.getPkid(), e);
+        }
+    }
+
+    /**
+     * @return the start of the pixel column containing the (possibly incomplete) rollup bucket of
+     *         <code>rolledUntil</code>, limited to the timespan.
+     */
+    private Date getPixelBoundary(DbQuery parameters, int resolution, Date rolledUntil) {
+        Interval timespan = parameters.getTimespan();
+        long start = timespan.getStartMillis();
+        double pixelMillis = (double) timespan.toDurationMillis() / parameters.getResolution();
+        long resolutionMillis = resolution * 1000L;
+        long rolledBucket = (rolledUntil.getTime() / resolutionMillis) * resolutionMillis;
+        long rolled = Math.min(Math.max(rolledBucket, start), timespan.getEndMillis());
+        long pixel = (long) Math.floor((rolled - start) / pixelMillis);
+        return new Date(start + (long) (pixel * pixelMillis));
+    }
+
+}
@@ -31,6 +31,7 @@ import static org.hibernate.criterion.Restrictions.eq;
 import static org.hibernate.sql.JoinType.LEFT_OUTER_JOIN;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.hibernate.Criteria;
@@ -95,6 +96,37 @@ public class SeriesDao extends AbstractDao<SeriesEntity> {
         return (SeriesEntity) session.get(SeriesEntity.class, key);
     }
 
+    /**
+     * @param keys
+     *        the ids of the series to load.
+     * @return all series found for the given ids (unknown ids are ignored).
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<SeriesEntity> getInstances(Collection<Long> keys) throws DataAccessException {
+        if (keys.isEmpty()) {
+            return new ArrayList<SeriesEntity>();
+        }
+        Criteria criteria = session.createCriteria(SeriesEntity.class)
+                .add(Restrictions.in(COLUMN_PKID, keys));
+        return (List<SeriesEntity>) criteria.list();
+    }
+
+    /**
+     * @param key
+     *        the id of the series.
+     * @return <code>true</code> if a series with given id exists.
+     * @throws DataAccessException
+     *         if accessing data from DB failed.
+     */
+    public boolean hasInstance(Long key) throws DataAccessException {
+        Criteria criteria = session.createCriteria(SeriesEntity.class)
+                .add(eq(COLUMN_PKID, key))
+                .setProjection(Projections.rowCount());
+        return ((Long) criteria.uniqueResult()).longValue() > 0;
+    }
+
     @Override
     public List<SeriesEntity> getAllInstances() throws DataAccessException {
         return getAllInstances(DbQuery.createFrom(IoParameters.createDefaults()));
@@ -32,9 +32,7 @@ import org.n52.series.api.v1.db.da.EntityCounter;
 import org.n52.web.InternalServerException;
 import org.n52.sensorweb.v1.spi.CountingMetadataService;
 
-public class MetadataAccessService implements CountingMetadataService {
-
-    private EntityCounter repository = new EntityCounter();
+public class MetadataAccessService extends ServiceInfoAccess implements CountingMetadataService {
 
     @Override
     public int getServiceCount() {
@@ -44,7 +42,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getStationsCount() {
         try {
-            return repository.countStations();
+            return createEntityCounter().countStations();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Station entities.", e);
         }
@@ -53,7 +51,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getTimeseriesCount() {
         try {
-            return repository.countTimeseries();
+            return createEntityCounter().countTimeseries();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Timeseries entities.", e);
         }
@@ -62,7 +60,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getOfferingsCount() {
         try {
-            return repository.countOfferings();
+            return createEntityCounter().countOfferings();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Offerings entities.", e);
         }
@@ -71,7 +69,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getCategoriesCount() {
         try {
-            return repository.countCategories();
+            return createEntityCounter().countCategories();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Categories entities.", e);
         }
@@ -80,7 +78,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getFeaturesCount() {
         try {
-            return repository.countFeatures();
+            return createEntityCounter().countFeatures();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Feature entities.", e);
         }
@@ -89,7 +87,7 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getProceduresCount() {
         try {
-            return repository.countProcedures();
+            return createEntityCounter().countProcedures();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Procedure entities.", e);
         }
@@ -98,10 +96,14 @@ public class MetadataAccessService implements CountingMetadataService {
     @Override
     public int getPhenomenaCount() {
         try {
-            return repository.countPhenomena();
+            return createEntityCounter().countPhenomena();
         } catch (DataAccessException e ) {
             throw new InternalServerException("Could not count Phenomenon entities.", e);
         }
     }
 
+    private EntityCounter createEntityCounter() {
+        return new EntityCounter(getServiceInfo());
+    }
+
 }
@@ -104,9 +104,8 @@ public class ServiceAccessService extends ServiceInfoAccess implements ServicePa
     @Override
     public boolean isKnownTimeseries(String timeseriesId) {
         try {
-            DbQuery dbQuery = DbQuery.createFrom(IoParameters.createDefaults());
             TimeseriesRepository timeseriesRepository = createTimeseriesRepository();
-            return timeseriesRepository.getInstance(timeseriesId, dbQuery) != null;
+            return timeseriesRepository.isKnown(timeseriesId);
         }
         catch (DataAccessException e) {
             throw new InternalServerException("Could not determine if timeseries '" + timeseriesId + "' is known.");
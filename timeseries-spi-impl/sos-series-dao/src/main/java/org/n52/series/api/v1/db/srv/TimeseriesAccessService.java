@@ -27,10 +27,13 @@
  */
 package org.n52.series.api.v1.db.srv;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.n52.io.IoParameters;
+import org.n52.io.format.TimeseriesRowHandler;
+import org.n52.io.format.TimeseriesValueHandler;
 import org.n52.io.format.TvpDataCollection;
 import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
@@ -40,19 +43,21 @@ import org.n52.series.api.v1.db.da.DbQuery;
 import org.n52.series.api.v1.db.da.TimeseriesRepository;
 import org.n52.web.InternalServerException;
 import org.n52.sensorweb.v1.spi.ParameterService;
-import org.n52.sensorweb.v1.spi.TimeseriesDataService;
+import org.n52.sensorweb.v1.spi.StreamingTimeseriesDataService;
 
-public class TimeseriesAccessService extends ServiceInfoAccess implements TimeseriesDataService, ParameterService<TimeseriesMetadataOutput> {
+public class TimeseriesAccessService extends ServiceInfoAccess implements StreamingTimeseriesDataService, ParameterService<TimeseriesMetadataOutput> {
 
     @Override
     public TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters) {
         try {
+            DbQuery dbQuery = DbQuery.createFrom(IoParameters.createFromQuery(parameters));
+            TimeseriesRepository repository = createTimeseriesRepository();
+            Map<String, TimeseriesData> data = repository.getData(parameters.getTimeseries(),
+                                                                  dbQuery,
+                                                                  parameters.isExpanded());
             TvpDataCollection dataCollection = new TvpDataCollection();
-            for (String timeseriesId : parameters.getTimeseries()) {
-                TimeseriesData data = getDataFor(timeseriesId, parameters);
-                if (data != null) {
-                    dataCollection.addNewTimeseries(timeseriesId, data);
-                }
+            for (Entry<String, TimeseriesData> timeseries : data.entrySet()) {
+                dataCollection.addNewTimeseries(timeseries.getKey(), timeseries.getValue());
             }
             return dataCollection;
         } catch (DataAccessException e) {
@@ -60,13 +65,29 @@ public class TimeseriesAccessService extends ServiceInfoAccess implements Timese
         }
     }
 
-    private TimeseriesData getDataFor(String timeseriesId, UndesignedParameterSet parameters) throws DataAccessException {
-        DbQuery dbQuery = DbQuery.createFrom(IoParameters.createFromQuery(parameters));
-        TimeseriesRepository repository = createTimeseriesRepository();
-        if (parameters.isExpanded()) {
-            return repository.getDataWithReferenceValues(timeseriesId, dbQuery);
-        } else {
-            return repository.getData(timeseriesId, dbQuery);
+    @Override
+    public void streamTimeseriesData(UndesignedParameterSet parameters, TimeseriesValueHandler handler) {
+        try {
+            DbQuery dbQuery = DbQuery.createFrom(IoParameters.createFromQuery(parameters));
+            TimeseriesRepository repository = createTimeseriesRepository();
+            for (String timeseriesId : parameters.getTimeseries()) {
+                handler.startTimeseries(timeseriesId);
+                repository.streamData(timeseriesId, dbQuery, handler);
+                handler.endTimeseries(timeseriesId);
+            }
+        } catch (DataAccessException e) {
+            throw new InternalServerException("Could not stream series data from database.", e);
+        }
+    }
+
+    @Override
+    public void streamAlignedTimeseriesData(UndesignedParameterSet parameters, TimeseriesRowHandler handler) {
+        try {
+            DbQuery dbQuery = DbQuery.createFrom(IoParameters.createFromQuery(parameters));
+            TimeseriesRepository repository = createTimeseriesRepository();
+            repository.streamAlignedData(parameters.getTimeseries(), dbQuery, handler);
+        } catch (DataAccessException e) {
+            throw new InternalServerException("Could not stream series data from database.", e);
         }
     }
 
@@ -104,10 +125,7 @@ public class TimeseriesAccessService extends ServiceInfoAccess implements Timese
         try {
             DbQuery dbQuery = DbQuery.createFrom(query);
             TimeseriesRepository repository = createTimeseriesRepository();
-            List<TimeseriesMetadataOutput> results = new ArrayList<TimeseriesMetadataOutput>();
-            for (String timeseriesId : items) {
-                results.add(repository.getInstance(timeseriesId, dbQuery));
-            }
+            List<TimeseriesMetadataOutput> results = repository.getInstances(items, dbQuery);
             return results.toArray(new TimeseriesMetadataOutput[0]);
         } catch (DataAccessException e) {
             throw new InternalServerException("Could not get series data.", e);
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.series.api.v1.db.da;
+
+import static java.math.RoundingMode.HALF_UP;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.n52.series.api.v1.db.da.TimeseriesRepository.formatDecimal;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeseriesRepositoryTest {
+
+    @Test
+    public void
+    shouldRoundBinaryTiesLikeBigDecimal()
+    {
+        assertThat(formatDecimal(1.115, 2), is(1.11));
+        assertThat(formatDecimal(2.675, 2), is(2.67));
+        assertThat(formatDecimal(-2.675, 2), is(-2.67));
+        assertThat(formatDecimal(0.125, 2), is(0.13));
+    }
+
+    @Test
+    public void
+    shouldRoundToNegativeScale()
+    {
+        assertThat(formatDecimal(1250.0, -2), is(1300.0));
+        assertThat(formatDecimal(-1249.0, -2), is(-1200.0));
+    }
+
+    @Test
+    public void
+    shouldNotProduceNegativeZero()
+    {
+        assertThat(formatDecimal(-0.001, 2), is(roundExactly(-0.001, 2)));
+    }
+
+    @Test
+    public void
+    shouldMatchBigDecimalForRandomValues()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int scale = random.nextInt(12) - 1;
+            double value = randomValue(random, scale);
+            assertThat(value + " @ " + scale, formatDecimal(value, scale), is(roundExactly(value, scale)));
+        }
+    }
+
+    private static double randomValue(Random random, int scale) {
+        switch (random.nextInt(3)) {
+        case 0:
+            // decimal literals with one digit more than the scale, many of them ties
+            long digits = random.nextInt(2000000) - 1000000;
+            return new BigDecimal(digits).scaleByPowerOfTen(-scale - 1).doubleValue();
+        case 1:
+            return (random.nextDouble() - 0.5) * 1000;
+        default:
+            return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 10);
+        }
+    }
+
+    private static double roundExactly(double value, int scale) {
+        return new BigDecimal(value).setScale(scale, HALF_UP).doubleValue();
+    }
+
+}
@@ -0,0 +1,466 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.sensorweb.v1.spi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.n52.io.IoParameters;
+import org.n52.io.format.TimeseriesRowHandler;
+import org.n52.io.format.TimeseriesRowMerger;
+import org.n52.io.format.TimeseriesValueHandler;
+import org.n52.io.format.TvpDataCollection;
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+import org.n52.io.v1.data.TimeseriesValue;
+import org.n52.io.v1.data.UndesignedParameterSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Composes a {@link TimeseriesDataService} instance to cache raw timeseries data in fixed time chunks
+ * aligned to the epoch (one day per timeseries by default). Requests are assembled from complete chunks held
+ * in a memory bounded LRU cache, so that only the chunks missing in cache are read from the composed service
+ * (with one request per contiguous range of missing chunks).<br/>
+ * <br/>
+ * Chunks lying completely in the past are considered immutable and are only dropped when the cache exceeds
+ * its size. The chunk containing the current time expires after a short time to live so that new values
+ * show up.<br/>
+ * <br/>
+ * Aggregated, paged and expanded (reference values) requests are passed to the composed service as they are.
+ * Streamed requests are served from the cache only if all of their chunks are cached already.
+ */
+public class CachingTimeseriesDataService implements StreamingTimeseriesDataService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingTimeseriesDataService.class);
+
+    /**
+     * Rough memory footprint of a cached value (timestamp and value).
+     */
+    private static final long BYTES_PER_VALUE = 16;
+
+    /**
+     * Rough memory footprint of an empty chunk (key, arrays and cache entry).
+     */
+    private static final long BYTES_PER_CHUNK = 160;
+
+    private final TimeseriesDataService composedService;
+
+    private final ChunkCache cache = new ChunkCache();
+
+    private long chunkLength = DateTimeConstants.MILLIS_PER_DAY;
+
+    private long currentChunkTimeToLive = 60 * DateTimeConstants.MILLIS_PER_SECOND;
+
+    private long maxCacheSize = 64 * 1024 * 1024;
+
+    private int maxStreamedChunks = 31;
+
+    public CachingTimeseriesDataService(TimeseriesDataService toCompose) {
+        this.composedService = toCompose;
+    }
+
+    @Override
+    public TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters) {
+        if ( !isCacheable(parameters)) {
+            return composedService.getTimeseriesData(parameters);
+        }
+        Interval timespan = IoParameters.createFromQuery(parameters).getTimespan();
+        long firstChunk = getChunkIndex(timespan.getStartMillis());
+        long lastChunk = getChunkIndex(timespan.getEndMillis());
+        long now = System.currentTimeMillis();
+
+        Map<String, ColumnarTimeseries[]> chunksById = new LinkedHashMap<String, ColumnarTimeseries[]>();
+        Map<ChunkRange, List<String>> missingChunks = new LinkedHashMap<ChunkRange, List<String>>();
+        for (String timeseriesId : parameters.getTimeseries()) {
+            ColumnarTimeseries[] chunks = new ColumnarTimeseries[(int) (lastChunk - firstChunk + 1)];
+            chunksById.put(timeseriesId, chunks);
+            long missingFrom = -1;
+            for (long chunk = firstChunk; chunk <= lastChunk; chunk++) {
+                ColumnarTimeseries cached = cache.get(new ChunkKey(timeseriesId, chunk), now);
+                chunks[(int) (chunk - firstChunk)] = cached;
+                if (cached == null && missingFrom < 0) {
+                    missingFrom = chunk;
+                }
+                else if (cached != null && missingFrom >= 0) {
+                    addMissingRange(missingChunks, new ChunkRange(missingFrom, chunk - 1), timeseriesId);
+                    missingFrom = -1;
+                }
+            }
+            if (missingFrom >= 0) {
+                addMissingRange(missingChunks, new ChunkRange(missingFrom, lastChunk), timeseriesId);
+            }
+        }
+
+        for (Map.Entry<ChunkRange, List<String>> missing : missingChunks.entrySet()) {
+            fetchChunks(missing.getKey(), missing.getValue(), firstChunk, chunksById, now);
+        }
+        return assembleData(chunksById, timespan);
+    }
+
+    /**
+     * Streams data from the cache only if all requested chunks are cached already. Everything else is
+     * streamed by the composed service (if supported) without populating the cache, so that streaming large
+     * or uncached ranges keeps memory flat.
+     */
+    @Override
+    public void streamTimeseriesData(UndesignedParameterSet parameters, TimeseriesValueHandler handler) {
+        if ( !(composedService instanceof StreamingTimeseriesDataService)) {
+            streamValues(getTimeseriesData(parameters), parameters.getTimeseries(), handler);
+            return;
+        }
+        Interval timespan = isCacheable(parameters)
+            ? IoParameters.createFromQuery(parameters).getTimespan()
+            : null;
+        Map<String, ColumnarTimeseries[]> chunksById = timespan != null
+            ? getCachedChunks(parameters.getTimeseries(), timespan)
+            : null;
+        if (chunksById == null) {
+            ((StreamingTimeseriesDataService) composedService).streamTimeseriesData(parameters, handler);
+            return;
+        }
+        streamValues(assembleData(chunksById, timespan), parameters.getTimeseries(), handler);
+    }
+
+    /**
+     * @return the cached chunks covering the timespan per timeseries, or <code>null</code> if the timespan
+     *         spans more than {@link #setMaxStreamedChunks(int) maxStreamedChunks} or if any chunk is
+     *         missing.
+     */
+    private Map<String, ColumnarTimeseries[]> getCachedChunks(String[] timeseriesIds, Interval timespan) {
+        long firstChunk = getChunkIndex(timespan.getStartMillis());
+        long lastChunk = getChunkIndex(timespan.getEndMillis());
+        if (lastChunk - firstChunk + 1 > maxStreamedChunks) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, ColumnarTimeseries[]> chunksById = new LinkedHashMap<String, ColumnarTimeseries[]>();
+        for (String timeseriesId : timeseriesIds) {
+            ColumnarTimeseries[] chunks = new ColumnarTimeseries[(int) (lastChunk - firstChunk + 1)];
+            for (long chunk = firstChunk; chunk <= lastChunk; chunk++) {
+                ColumnarTimeseries cached = cache.get(new ChunkKey(timeseriesId, chunk), now);
+                if (cached == null) {
+                    return null;
+                }
+                chunks[(int) (chunk - firstChunk)] = cached;
+            }
+            chunksById.put(timeseriesId, chunks);
+        }
+        return chunksById;
+    }
+
+    private void streamValues(TvpDataCollection data, String[] timeseriesIds, TimeseriesValueHandler handler) {
+        for (String timeseriesId : timeseriesIds) {
+            TimeseriesData timeseries = data.getTimeseries(timeseriesId);
+            if (timeseries != null) {
+                handler.startTimeseries(timeseriesId);
+                ColumnarTimeseries series = timeseries.getSeries();
+                for (int i = 0; i < series.size(); i++) {
+                    handler.handleValue(createValue(series, i));
+                }
+                handler.endTimeseries(timeseriesId);
+            }
+        }
+    }
+
+    /**
+     * Aligned data is always streamed by the composed service (if supported), as it is meant for exports
+     * whose size would blow the cache.
+     */
+    @Override
+    public void streamAlignedTimeseriesData(UndesignedParameterSet parameters, TimeseriesRowHandler handler) {
+        if (composedService instanceof StreamingTimeseriesDataService) {
+            ((StreamingTimeseriesDataService) composedService).streamAlignedTimeseriesData(parameters, handler);
+            return;
+        }
+        TimeseriesRowMerger.merge(parameters.getTimeseries(), getTimeseriesData(parameters), handler);
+    }
+
+    private TimeseriesValue createValue(ColumnarTimeseries series, int index) {
+        TimeseriesValue value = new TimeseriesValue();
+        value.setTimestamp(series.getTimestamp(index));
+        value.setValue(series.hasValue(index) ? series.getValue(index) : null);
+        value.setGeom(series.getGeometry(index));
+        return value;
+    }
+
+    private boolean isCacheable(UndesignedParameterSet parameters) {
+        return parameters.getAggregate() == null
+                && parameters.getLimit() <= 0
+                && parameters.getAfter() == null
+                && parameters.getResolution() <= 0
+                && !parameters.isExpanded();
+    }
+
+    private void addMissingRange(Map<ChunkRange, List<String>> missingChunks, ChunkRange range, String timeseriesId) {
+        List<String> timeseriesIds = missingChunks.get(range);
+        if (timeseriesIds == null) {
+            timeseriesIds = new ArrayList<String>();
+            missingChunks.put(range, timeseriesIds);
+        }
+        timeseriesIds.add(timeseriesId);
+    }
+
+    private void fetchChunks(ChunkRange range,
+                             List<String> timeseriesIds,
+                             long firstChunk,
+                             Map<String, ColumnarTimeseries[]> chunksById,
+                             long now) {
+        Interval interval = new Interval(getChunkStart(range.from), getChunkStart(range.to + 1) - 1);
+        String[] ids = timeseriesIds.toArray(new String[0]);
+        UndesignedParameterSet request = UndesignedParameterSet.createForTimeseries(ids, interval);
+        TvpDataCollection data = composedService.getTimeseriesData(request);
+        LOGGER.debug("Read {} chunk(s) of {} timeseries.", range.to - range.from + 1, ids.length);
+
+        for (String timeseriesId : timeseriesIds) {
+            ColumnarTimeseries[] chunks = new ColumnarTimeseries[(int) (range.to - range.from + 1)];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new ColumnarTimeseries();
+            }
+            TimeseriesData timeseries = data.getTimeseries(timeseriesId);
+            if (timeseries != null) {
+                ColumnarTimeseries series = timeseries.getSeries();
+                for (int i = 0; i < series.size(); i++) {
+                    long chunk = getChunkIndex(series.getTimestamp(i));
+                    if (chunk >= range.from && chunk <= range.to) {
+                        chunks[(int) (chunk - range.from)].add(series, i);
+                    }
+                }
+            }
+            ColumnarTimeseries[] requestedChunks = chunksById.get(timeseriesId);
+            for (int i = 0; i < chunks.length; i++) {
+                long chunk = range.from + i;
+                cache.put(new ChunkKey(timeseriesId, chunk), chunks[i], getExpiration(chunk, now));
+                requestedChunks[(int) (chunk - firstChunk)] = chunks[i];
+            }
+        }
+    }
+
+    private TvpDataCollection assembleData(Map<String, ColumnarTimeseries[]> chunksById, Interval timespan) {
+        TvpDataCollection result = new TvpDataCollection();
+        long start = timespan.getStartMillis();
+        long end = timespan.getEndMillis();
+        for (Map.Entry<String, ColumnarTimeseries[]> entry : chunksById.entrySet()) {
+            ColumnarTimeseries series = new ColumnarTimeseries();
+            for (ColumnarTimeseries chunk : entry.getValue()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    long timestamp = chunk.getTimestamp(i);
+                    if (timestamp >= start && timestamp <= end) {
+                        series.add(chunk, i);
+                    }
+                }
+            }
+            result.addNewTimeseries(entry.getKey(), TimeseriesData.newTimeseriesData(series));
+        }
+        return result;
+    }
+
+    private long getChunkIndex(long timestamp) {
+        // floor division, so that timestamps before the epoch are aligned as well
+        long index = timestamp / chunkLength;
+        return timestamp % chunkLength < 0
+            ? index - 1
+            : index;
+    }
+
+    private long getChunkStart(long chunkIndex) {
+        return chunkIndex * chunkLength;
+    }
+
+    private long getExpiration(long chunkIndex, long now) {
+        return getChunkStart(chunkIndex + 1) <= now
+            ? Long.MAX_VALUE
+            : now + currentChunkTimeToLive;
+    }
+
+    /**
+     * @param chunkLength
+     *        the (fixed) length of each chunk as ISO8601 period, e.g. <code>PT12H</code> or <code>P1D</code>.
+     */
+    public void setChunkLength(String chunkLength) {
+        long length = Period.parse(chunkLength).toStandardDuration().getMillis();
+        if (length <= 0) {
+            throw new IllegalArgumentException("Chunk length has to be positive: " + chunkLength);
+        }
+        this.chunkLength = length;
+        cache.clear();
+    }
+
+    /**
+     * @param timeToLive
+     *        seconds until a chunk containing the current time expires.
+     */
+    public void setCurrentChunkTimeToLive(int timeToLive) {
+        this.currentChunkTimeToLive = timeToLive * (long) DateTimeConstants.MILLIS_PER_SECOND;
+    }
+
+    /**
+     * @param maxCacheSize
+     *        the (approximated) maximum amount of memory in megabytes the cached chunks may use.
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize * 1024L * 1024L;
+    }
+
+    /**
+     * @param maxStreamedChunks
+     *        the maximum number of chunks a streamed request may span to be served from the cache. Larger
+     *        requests are always streamed by the composed service.
+     */
+    public void setMaxStreamedChunks(int maxStreamedChunks) {
+        this.maxStreamedChunks = maxStreamedChunks;
+    }
+
+    /**
+     * An LRU cache of chunks bounded by the approximated memory the cached values need.
+     */
+    private final class ChunkCache {
+
+        private final LinkedHashMap<ChunkKey, CachedChunk> chunks = new LinkedHashMap<ChunkKey, CachedChunk>(256, 0.75f, true);
+
+        private long size;
+
+        synchronized ColumnarTimeseries get(ChunkKey key, long now) {
+            CachedChunk cached = chunks.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiration <= now) {
+                remove(key);
+                return null;
+            }
+            return cached.values;
+        }
+
+        synchronized void put(ChunkKey key, ColumnarTimeseries values, long expiration) {
+            // sorts and trims the arrays once, so that cached chunks are never modified by reads
+            values.getTimestamps();
+            values.getValues();
+
+            remove(key);
+            CachedChunk cached = new CachedChunk(values, expiration);
+            chunks.put(key, cached);
+            size += cached.weight;
+            evictLeastRecentlyUsed();
+        }
+
+        private void remove(ChunkKey key) {
+            CachedChunk removed = chunks.remove(key);
+            if (removed != null) {
+                size -= removed.weight;
+            }
+        }
+
+        private void evictLeastRecentlyUsed() {
+            Iterator<CachedChunk> iterator = chunks.values().iterator();
+            while (size > maxCacheSize && iterator.hasNext()) {
+                size -= iterator.next().weight;
+                iterator.remove();
+            }
+        }
+
+        synchronized void clear() {
+            chunks.clear();
+            size = 0;
+        }
+    }
+
+    private static final class CachedChunk {
+
+        private final ColumnarTimeseries values;
+
+        private final long expiration;
+
+        private final long weight;
+
+        CachedChunk(ColumnarTimeseries values, long expiration) {
+            this.values = values;
+            this.expiration = expiration;
+            this.weight = BYTES_PER_CHUNK + values.size() * BYTES_PER_VALUE;
+        }
+    }
+
+    private static final class ChunkKey {
+
+        private final String timeseriesId;
+
+        private final long chunkIndex;
+
+        ChunkKey(String timeseriesId, long chunkIndex) {
+            this.timeseriesId = timeseriesId;
+            this.chunkIndex = chunkIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * timeseriesId.hashCode() + (int) (chunkIndex ^ (chunkIndex >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof ChunkKey)) {
+                return false;
+            }
+            ChunkKey other = (ChunkKey) obj;
+            return chunkIndex == other.chunkIndex && timeseriesId.equals(other.timeseriesId);
+        }
+    }
+
+    private static final class ChunkRange {
+
+        private final long from;
+
+        private final long to;
+
+        ChunkRange(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (from ^ (from >>> 32)) * 31 + (int) (to ^ (to >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof ChunkRange)) {
+                return false;
+            }
+            ChunkRange other = (ChunkRange) obj;
+            return from == other.from && to == other.to;
+        }
+    }
+
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.sensorweb.v1.spi;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Interval;
+import org.joda.time.Period;
+import org.n52.io.generalize.GeneralizingAlgorithm;
+import org.n52.io.v1.data.TimeseriesData;
+
+/**
+ * A memory bounded LRU cache of generalized timeseries shared by all {@link GeneralizingTimeseriesDataService}
+ * instances. Entries are keyed by timeseries, time window, algorithm and maximum number of points. Time
+ * windows are {@link #quantize(Interval) expanded} to multiples of a {@link #setWindowStep(String) window
+ * step}, so that repeated requests for e.g. "the last week" hit the same entry until the window moves on by
+ * one step.<br/>
+ * <br/>
+ * All entries of a timeseries are invalidated as soon as its last value is {@link #updateLastValue(String,
+ * long) reported} to have advanced. Entries generalized from data read before the last value advanced are
+ * never returned.
+ */
+public class GeneralizedDataCache {
+
+    /**
+     * Rough memory footprint of a cached value (timestamp and value).
+     */
+    private static final long BYTES_PER_VALUE = 16;
+
+    /**
+     * Rough memory footprint of an empty entry (key, arrays and cache entry).
+     */
+    private static final long BYTES_PER_ENTRY = 200;
+
+    private final LinkedHashMap<GeneralizedKey, CachedTimeseries> entries = new LinkedHashMap<GeneralizedKey, CachedTimeseries>(256, 0.75f, true);
+
+    private final Map<String, Set<GeneralizedKey>> keysByTimeseries = new HashMap<String, Set<GeneralizedKey>>();
+
+    private final Map<String, Long> lastValues = new HashMap<String, Long>();
+
+    private long windowStep = DateTimeConstants.MILLIS_PER_MINUTE * 5L;
+
+    private long maxCacheSize = 16 * 1024 * 1024;
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    /**
+     * @param timespan
+     *        the requested timespan.
+     * @return the timespan expanded to the enclosing multiples of the window step.
+     */
+    public Interval quantize(Interval timespan) {
+        long start = floor(timespan.getStartMillis());
+        long end = floor(timespan.getEndMillis());
+        if (end < timespan.getEndMillis()) {
+            end += windowStep;
+        }
+        return new Interval(start, end);
+    }
+
+    private long floor(long timestamp) {
+        // floor division, so that timestamps before the epoch are aligned as well
+        long steps = timestamp / windowStep;
+        return timestamp % windowStep < 0
+            ? (steps - 1) * windowStep
+            : steps * windowStep;
+    }
+
+    /**
+     * Reports the current last value of a timeseries and invalidates all its entries if it has advanced.
+     * 
+     * @param timeseriesId
+     *        the timeseries id.
+     * @param lastValueTimestamp
+     *        the timestamp of the timeseries' last value.
+     */
+    public synchronized void updateLastValue(String timeseriesId, long lastValueTimestamp) {
+        Long known = lastValues.put(timeseriesId, lastValueTimestamp);
+        if (known == null || known.longValue() != lastValueTimestamp) {
+            invalidate(timeseriesId);
+        }
+    }
+
+    /**
+     * @param timeseriesId
+     *        the timeseries id.
+     * @return the last value timestamp reported for the timeseries, or <code>null</code> if unknown. Has to be
+     *         passed to {@link #put(String, Interval, GeneralizingAlgorithm, int, Long, TimeseriesData)} when
+     *         caching data read after this call.
+     */
+    public synchronized Long getLastValue(String timeseriesId) {
+        return lastValues.get(timeseriesId);
+    }
+
+    /**
+     * @return the cached generalized timeseries or <code>null</code> if not cached.
+     */
+    public synchronized TimeseriesData get(String timeseriesId,
+                                           Interval window,
+                                           GeneralizingAlgorithm algorithm,
+                                           int maxPoints) {
+        CachedTimeseries cached = entries.get(new GeneralizedKey(timeseriesId, window, algorithm, maxPoints));
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.data;
+    }
+
+    /**
+     * @param lastValue
+     *        the last value timestamp known before reading the data (see {@link #getLastValue(String)}). The
+     *        data is not cached if the last value has advanced in the meantime.
+     */
+    public synchronized void put(String timeseriesId,
+                                 Interval window,
+                                 GeneralizingAlgorithm algorithm,
+                                 int maxPoints,
+                                 Long lastValue,
+                                 TimeseriesData data) {
+        Long currentLastValue = lastValues.get(timeseriesId);
+        if (currentLastValue == null ? lastValue != null : !currentLastValue.equals(lastValue)) {
+            return;
+        }
+        // sorts and trims the arrays once, so that cached timeseries are never modified by reads
+        data.getSeries().getTimestamps();
+        data.getSeries().getValues();
+
+        GeneralizedKey key = new GeneralizedKey(timeseriesId, window, algorithm, maxPoints);
+        remove(key);
+        CachedTimeseries cached = new CachedTimeseries(data);
+        entries.put(key, cached);
+        Set<GeneralizedKey> keys = keysByTimeseries.get(timeseriesId);
+        if (keys == null) {
+            keys = new HashSet<GeneralizedKey>();
+            keysByTimeseries.put(timeseriesId, keys);
+        }
+        keys.add(key);
+        size += cached.weight;
+        evictLeastRecentlyUsed();
+    }
+
+    private void invalidate(String timeseriesId) {
+        Set<GeneralizedKey> keys = keysByTimeseries.remove(timeseriesId);
+        if (keys != null) {
+            for (GeneralizedKey key : keys) {
+                CachedTimeseries removed = entries.remove(key);
+                if (removed != null) {
+                    size -= removed.weight;
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    private void remove(GeneralizedKey key) {
+        CachedTimeseries removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.weight;
+            removeFromIndex(key);
+        }
+    }
+
+    private void removeFromIndex(GeneralizedKey key) {
+        Set<GeneralizedKey> keys = keysByTimeseries.get(key.timeseriesId);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByTimeseries.remove(key.timeseriesId);
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<GeneralizedKey, CachedTimeseries>> iterator = entries.entrySet().iterator();
+        while (size > maxCacheSize && iterator.hasNext()) {
+            Map.Entry<GeneralizedKey, CachedTimeseries> eldest = iterator.next();
+            size -= eldest.getValue().weight;
+            iterator.remove();
+            removeFromIndex(eldest.getKey());
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByTimeseries.clear();
+        size = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the ratio of lookups served from cache, or <code>0</code> if there were no lookups yet.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0
+            ? 0d
+            : (double) hits / lookups;
+    }
+
+    /**
+     * @return the number of entries dropped to stay within the maximum cache size.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of entries dropped because the last value of their timeseries advanced.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * @return the number of cached entries.
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("GeneralizedDataCache [");
+        sb.append("entries: ").append(entries.size());
+        sb.append(", size: ").append(size / 1024).append("kB");
+        sb.append(", hits: ").append(hits);
+        sb.append(", misses: ").append(misses);
+        sb.append(", evictions: ").append(evictions);
+        sb.append(", invalidations: ").append(invalidations);
+        return sb.append("]").toString();
+    }
+
+    /**
+     * @param windowStep
+     *        the (fixed) length as ISO8601 period, e.g. <code>PT5M</code>, time windows are expanded to
+     *        multiples of.
+     */
+    public synchronized void setWindowStep(String windowStep) {
+        long step = Period.parse(windowStep).toStandardDuration().getMillis();
+        if (step <= 0) {
+            throw new IllegalArgumentException("Window step has to be positive: " + windowStep);
+        }
+        this.windowStep = step;
+        clear();
+    }
+
+    /**
+     * @param maxCacheSize
+     *        the (approximated) maximum amount of memory in megabytes the cached timeseries may use.
+     */
+    public synchronized void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize * 1024L * 1024L;
+        evictLeastRecentlyUsed();
+    }
+
+    private static final class CachedTimeseries {
+
+        private final TimeseriesData data;
+
+        private final long weight;
+
+        CachedTimeseries(TimeseriesData data) {
+            this.data = data;
+            this.weight = BYTES_PER_ENTRY + data.size() * BYTES_PER_VALUE;
+        }
+    }
+
+    private static final class GeneralizedKey {
+
+        private final String timeseriesId;
+
+        private final long windowStart;
+
+        private final long windowEnd;
+
+        private final GeneralizingAlgorithm algorithm;
+
+        private final int maxPoints;
+
+        GeneralizedKey(String timeseriesId, Interval window, GeneralizingAlgorithm algorithm, int maxPoints) {
+            this.timeseriesId = timeseriesId;
+            this.windowStart = window.getStartMillis();
+            this.windowEnd = window.getEndMillis();
+            this.algorithm = algorithm;
+            this.maxPoints = maxPoints;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = timeseriesId.hashCode();
+            hash = 31 * hash + (int) (windowStart ^ (windowStart >>> 32));
+            hash = 31 * hash + (int) (windowEnd ^ (windowEnd >>> 32));
+            hash = 31 * hash + algorithm.hashCode();
+            return 31 * hash + maxPoints;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof GeneralizedKey)) {
+                return false;
+            }
+            GeneralizedKey other = (GeneralizedKey) obj;
+            return windowStart == other.windowStart
+                    && windowEnd == other.windowEnd
+                    && maxPoints == other.maxPoints
+                    && algorithm == other.algorithm
+                    && timeseriesId.equals(other.timeseriesId);
+        }
+    }
+
+}
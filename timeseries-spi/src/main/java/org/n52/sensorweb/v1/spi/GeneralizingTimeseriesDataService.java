@@ -27,18 +27,47 @@
  */
 package org.n52.sensorweb.v1.spi;
 
-import static org.n52.io.generalize.LargestTriangleThreeBucketsGeneralizer.createNonConfigGeneralizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.joda.time.Interval;
+import org.n52.io.IoParameters;
 import org.n52.io.format.TvpDataCollection;
 import org.n52.io.generalize.Generalizer;
 import org.n52.io.generalize.GeneralizerException;
+import org.n52.io.generalize.GeneralizingAlgorithm;
+import org.n52.io.v1.data.ColumnarTimeseries;
 import org.n52.io.v1.data.TimeseriesData;
 import org.n52.io.v1.data.UndesignedParameterSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Composes a {@link TimeseriesDataService} instance to generalize requested timeseries data. 
+ * Composes a {@link TimeseriesDataService} instance to generalize requested timeseries data. When composed
+ * with an executor (see {@link #createGeneralizationPool(int)}) the timeseries of a multi-series request are
+ * generalized in parallel.<br/>
+ * <br/>
+ * Each timeseries is reduced to the requested {@link UndesignedParameterSet#getMaxPoints() maximum number of
+ * points}. The algorithm is taken from the request if given, then from the algorithms configured per
+ * timeseries, otherwise {@link GeneralizingAlgorithm#LTTB} is used.<br/>
+ * <br/>
+ * When composed with a {@link GeneralizedDataCache} generalized timeseries are looked up in the cache first.
+ * Only the timeseries missing in cache are read (for the whole quantized time window) and generalized.
+ * Aggregated, paged and expanded requests are never cached, neither is data ending before the last value
+ * known to the cache.
  */
 public class GeneralizingTimeseriesDataService implements TimeseriesDataService {
 
@@ -46,20 +75,61 @@ public class GeneralizingTimeseriesDataService implements TimeseriesDataService
 
     private TimeseriesDataService composedService;
 
+    private static final GeneralizingAlgorithm DEFAULT_ALGORITHM = GeneralizingAlgorithm.LTTB;
+
+    private ExecutorService executor;
+
+    private Map<String, GeneralizingAlgorithm> algorithms = Collections.emptyMap();
+
+    private GeneralizedDataCache cache;
+
     public GeneralizingTimeseriesDataService(TimeseriesDataService toCompose) {
+        this(toCompose, null);
+    }
+
+    /**
+     * @param toCompose
+     *        the service providing the data to generalize.
+     * @param executor
+     *        the executor to generalize timeseries in parallel, or <code>null</code> to generalize on the
+     *        calling thread.
+     */
+    public GeneralizingTimeseriesDataService(TimeseriesDataService toCompose, ExecutorService executor) {
         this.composedService = toCompose;
+        this.executor = executor;
+    }
+
+    /**
+     * @param algorithms
+     *        the algorithms to generalize timeseries with if no algorithm is requested, mapped by timeseries
+     *        id.
+     */
+    public void setAlgorithms(Map<String, GeneralizingAlgorithm> algorithms) {
+        this.algorithms = algorithms != null
+            ? algorithms
+            : Collections.<String, GeneralizingAlgorithm> emptyMap();
+    }
+
+    /**
+     * @param cache
+     *        the cache to look up generalized timeseries in, or <code>null</code> to generalize on each
+     *        request.
+     */
+    public void setCache(GeneralizedDataCache cache) {
+        this.cache = cache;
     }
 
     @Override
     public TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters) {
+        GeneralizingAlgorithm requestedAlgorithm = parameters.getGeneralizingAlgorithm() != null
+            ? GeneralizingAlgorithm.fromParameterValue(parameters.getGeneralizingAlgorithm())
+            : null;
+        if (cache != null && isCacheable(parameters)) {
+            return getCachedTimeseriesData(parameters, requestedAlgorithm);
+        }
         TvpDataCollection ungeneralizedData = composedService.getTimeseriesData(parameters);
         try {
-            Generalizer generalizer = createNonConfigGeneralizer(ungeneralizedData);
-            TvpDataCollection generalizedData = generalizer.generalize();
-            if (LOGGER.isDebugEnabled()) {
-                logGeneralizationAmount(ungeneralizedData, generalizedData);
-            }
-            return generalizedData;
+            return generalizeAll(ungeneralizedData, requestedAlgorithm, parameters.getMaxPoints());
         }
         catch (GeneralizerException e) {
             LOGGER.error("Could not generalize timeseries collection. Returning original data.", e);
@@ -67,13 +137,192 @@ public class GeneralizingTimeseriesDataService implements TimeseriesDataService
         }
     }
 
+    private boolean isCacheable(UndesignedParameterSet parameters) {
+        return parameters.getAggregate() == null
+                && parameters.getLimit() <= 0
+                && parameters.getAfter() == null
+                && !parameters.isExpanded();
+    }
+
+    private TvpDataCollection getCachedTimeseriesData(UndesignedParameterSet parameters,
+                                                      GeneralizingAlgorithm requestedAlgorithm) {
+        int maxPoints = parameters.getMaxPoints();
+        Interval timespan = IoParameters.createFromQuery(parameters).getTimespan();
+        Interval window = cache.quantize(timespan);
+        Map<String, TimeseriesData> generalizedById = new HashMap<String, TimeseriesData>();
+        Map<String, Long> missingLastValues = new HashMap<String, Long>();
+        for (String timeseriesId : parameters.getTimeseries()) {
+            GeneralizingAlgorithm algorithm = getAlgorithm(timeseriesId, requestedAlgorithm);
+            TimeseriesData cached = cache.get(timeseriesId, window, algorithm, maxPoints);
+            if (cached != null) {
+                generalizedById.put(timeseriesId, cached);
+            }
+            else {
+                // remember the last value before reading, so that data outdated meanwhile is not cached
+                missingLastValues.put(timeseriesId, cache.getLastValue(timeseriesId));
+            }
+        }
+
+        if ( !missingLastValues.isEmpty()) {
+            String[] missingIds = missingLastValues.keySet().toArray(new String[0]);
+            UndesignedParameterSet request = UndesignedParameterSet.createForTimeseries(missingIds, window);
+            TvpDataCollection ungeneralizedData = composedService.getTimeseriesData(request);
+            try {
+                TvpDataCollection generalizedData = generalizeAll(ungeneralizedData, requestedAlgorithm, maxPoints);
+                for (String timeseriesId : missingIds) {
+                    TimeseriesData generalized = generalizedData.getTimeseries(timeseriesId);
+                    if (generalized != null) {
+                        Long lastValue = missingLastValues.get(timeseriesId);
+                        TimeseriesData ungeneralized = ungeneralizedData.getTimeseries(timeseriesId);
+                        if ( !isOutdated(ungeneralized, window, lastValue)) {
+                            GeneralizingAlgorithm algorithm = getAlgorithm(timeseriesId, requestedAlgorithm);
+                            cache.put(timeseriesId, window, algorithm, maxPoints, lastValue, generalized);
+                        }
+                        generalizedById.put(timeseriesId, generalized);
+                    }
+                }
+            }
+            catch (GeneralizerException e) {
+                LOGGER.error("Could not generalize timeseries collection. Returning original data.", e);
+                generalizedById.putAll(ungeneralizedData.getAllTimeseries());
+            }
+        }
+
+        TvpDataCollection result = new TvpDataCollection();
+        for (String timeseriesId : parameters.getTimeseries()) {
+            TimeseriesData generalized = generalizedById.get(timeseriesId);
+            if (generalized != null) {
+                result.addNewTimeseries(timeseriesId, trimToTimespan(generalized, timespan));
+            }
+        }
+        LOGGER.debug("Generalized {} of {} timeseries, {}.",
+                     missingLastValues.size(), parameters.getTimeseries().length, cache);
+        return result;
+    }
+
+    /**
+     * The composed service may serve data older than the last value known to the cache (e.g. a
+     * {@link CachingTimeseriesDataService} keeps the current chunk for a while). Such data must not be cached
+     * under the newer last value, as it would be returned until the last value advances again.
+     * 
+     * @return <code>true</code> if the window contains the last value but the data read ends before it.
+     */
+    private boolean isOutdated(TimeseriesData ungeneralized, Interval window, Long lastValue) {
+        if (lastValue == null || !window.contains(lastValue.longValue())) {
+            return false;
+        }
+        ColumnarTimeseries series = ungeneralized != null
+            ? ungeneralized.getSeries()
+            : null;
+        return series == null
+                || series.isEmpty()
+                || series.getTimestamp(series.size() - 1) < lastValue.longValue();
+    }
+
+    /**
+     * @return a copy of the given timeseries containing only values within the timespan.
+     */
+    private TimeseriesData trimToTimespan(TimeseriesData timeseries, Interval timespan) {
+        ColumnarTimeseries series = timeseries.getSeries();
+        ColumnarTimeseries trimmed = new ColumnarTimeseries(series.size());
+        long start = timespan.getStartMillis();
+        long end = timespan.getEndMillis();
+        for (int i = 0; i < series.size(); i++) {
+            long timestamp = series.getTimestamp(i);
+            if (timestamp >= start && timestamp <= end) {
+                trimmed.add(series, i);
+            }
+        }
+        TimeseriesData result = TimeseriesData.newTimeseriesData(trimmed);
+        result.setMetadata(timeseries.getMetadata());
+        return result;
+    }
+
+    private TvpDataCollection generalizeAll(TvpDataCollection ungeneralizedData,
+                                            GeneralizingAlgorithm requestedAlgorithm,
+                                            int maxPoints) throws GeneralizerException {
+        TvpDataCollection generalizedData = executor == null || ungeneralizedData.getAllTimeseries().size() < 2
+            ? generalize(ungeneralizedData, requestedAlgorithm, maxPoints)
+            : generalizeInParallel(ungeneralizedData, requestedAlgorithm, maxPoints);
+        if (LOGGER.isDebugEnabled()) {
+            logGeneralizationAmount(ungeneralizedData, generalizedData);
+        }
+        return generalizedData;
+    }
+
+    private TvpDataCollection generalize(TvpDataCollection data, GeneralizingAlgorithm requestedAlgorithm, int maxPoints)
+            throws GeneralizerException {
+        TvpDataCollection generalizedData = new TvpDataCollection();
+        for (Entry<String, TimeseriesData> timeseries : data.getAllTimeseries().entrySet()) {
+            generalizedData.addAll(generalize(timeseries, requestedAlgorithm, maxPoints));
+        }
+        return generalizedData;
+    }
+
+    private TvpDataCollection generalize(Entry<String, TimeseriesData> timeseries,
+                                         GeneralizingAlgorithm requestedAlgorithm,
+                                         int maxPoints) throws GeneralizerException {
+        String timeseriesId = timeseries.getKey();
+        TvpDataCollection singleTimeseries = new TvpDataCollection();
+        singleTimeseries.addNewTimeseries(timeseriesId, timeseries.getValue());
+        GeneralizingAlgorithm algorithm = getAlgorithm(timeseriesId, requestedAlgorithm);
+        Generalizer generalizer = algorithm.createGeneralizer(singleTimeseries, maxPoints);
+        return generalizer.generalize();
+    }
+
+    private GeneralizingAlgorithm getAlgorithm(String timeseriesId, GeneralizingAlgorithm requestedAlgorithm) {
+        if (requestedAlgorithm != null) {
+            return requestedAlgorithm;
+        }
+        GeneralizingAlgorithm algorithm = algorithms.get(timeseriesId);
+        return algorithm != null
+            ? algorithm
+            : DEFAULT_ALGORITHM;
+    }
+
+    private TvpDataCollection generalizeInParallel(TvpDataCollection data,
+                                                   final GeneralizingAlgorithm requestedAlgorithm,
+                                                   final int maxPoints) throws GeneralizerException {
+        List<Future<TvpDataCollection>> results = new ArrayList<Future<TvpDataCollection>>();
+        for (final Entry<String, TimeseriesData> timeseries : data.getAllTimeseries().entrySet()) {
+            results.add(executor.submit(new Callable<TvpDataCollection>() {
+                @Override
+                public TvpDataCollection call() throws GeneralizerException {
+                    return generalize(timeseries, requestedAlgorithm, maxPoints);
+                }
+            }));
+        }
+        TvpDataCollection generalizedData = new TvpDataCollection();
+        try {
+            for (Future<TvpDataCollection> result : results) {
+                generalizedData.addAll(result.get());
+            }
+            return generalizedData;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GeneralizerException("Interrupted while generalizing timeseries.", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralizerException) {
+                throw (GeneralizerException) e.getCause();
+            }
+            throw new GeneralizerException("Could not generalize timeseries.", e.getCause());
+        }
+        finally {
+            for (Future<TvpDataCollection> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
     private void logGeneralizationAmount(TvpDataCollection ungeneralizedData,
                                          TvpDataCollection generalizedData) {
         for (String timeseriesId : ungeneralizedData.getAllTimeseries().keySet()) {
             TimeseriesData originalTimeseries = ungeneralizedData.getTimeseries(timeseriesId);
             TimeseriesData generalizedTimeseries = generalizedData.getTimeseries(timeseriesId);
-            int originalAmount = originalTimeseries.getValues().length;
-            int generalizedAmount = generalizedTimeseries.getValues().length;
+            int originalAmount = originalTimeseries.size();
+            int generalizedAmount = generalizedTimeseries.size();
             LOGGER.debug("Generalized timeseries: {} (#{} --> #{}).", timeseriesId, originalAmount, generalizedAmount);
         }
     }
@@ -82,4 +331,43 @@ public class GeneralizingTimeseriesDataService implements TimeseriesDataService
         return new GeneralizingTimeseriesDataService(toCompose);
     }
 
+    public static GeneralizingTimeseriesDataService composeDataService(TimeseriesDataService toCompose,
+                                                                       ExecutorService executor) {
+        return new GeneralizingTimeseriesDataService(toCompose, executor);
+    }
+
+    /**
+     * Creates a pool to be shared by all generalizing services. At most <code>parallelism</code> timeseries
+     * are generalized at the same time. When the pool's queue is full the requesting thread generalizes the
+     * timeseries itself, so concurrent requests are slowed down instead of queueing up without limit.
+     * 
+     * @param parallelism
+     *        the maximum number of threads generalizing timeseries.
+     * @return a pool of daemon threads.
+     */
+    public static ExecutorService createGeneralizationPool(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                                                         new ArrayBlockingQueue<Runnable>(parallelism * 16),
+                                                         createThreadFactory(),
+                                                         new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "generalizer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
 }
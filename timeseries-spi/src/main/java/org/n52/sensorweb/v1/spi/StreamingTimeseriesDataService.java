@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.sensorweb.v1.spi;
+
+import org.n52.io.format.TimeseriesRowHandler;
+import org.n52.io.format.TimeseriesValueHandler;
+import org.n52.io.v1.data.UndesignedParameterSet;
+
+/**
+ * Extends the {@link TimeseriesDataService} interface to pass raw timeseries data value by value to a
+ * {@link TimeseriesValueHandler} instead of collecting all values in memory first.
+ */
+public interface StreamingTimeseriesDataService extends TimeseriesDataService {
+
+    /**
+     * Reads the values of each requested timeseries ordered by timestamp and passes them to the given handler
+     * as soon as they are available.
+     * 
+     * @param parameters
+     *        the parameters determining which data to stream.
+     * @param handler
+     *        the handler to pass each value to.
+     */
+    void streamTimeseriesData(UndesignedParameterSet parameters, TimeseriesValueHandler handler);
+
+    /**
+     * Reads the values of all requested timeseries ordered by timestamp and passes them to the given handler
+     * as rows aligned by timestamp, as soon as they are available.
+     * 
+     * @param parameters
+     *        the parameters determining which data to stream.
+     * @param handler
+     *        the handler to pass each row to.
+     */
+    void streamAlignedTimeseriesData(UndesignedParameterSet parameters, TimeseriesRowHandler handler);
+
+}
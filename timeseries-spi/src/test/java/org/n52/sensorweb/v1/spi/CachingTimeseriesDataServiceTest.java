@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.sensorweb.v1.spi;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.io.IoParameters;
+import org.n52.io.format.TimeseriesRowHandler;
+import org.n52.io.format.TimeseriesValueHandler;
+import org.n52.io.format.TvpDataCollection;
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+import org.n52.io.v1.data.TimeseriesValue;
+import org.n52.io.v1.data.UndesignedParameterSet;
+
+public class CachingTimeseriesDataServiceTest {
+
+    private static final long DAY = DateTimeConstants.MILLIS_PER_DAY;
+
+    private static final long HOUR = DateTimeConstants.MILLIS_PER_HOUR;
+
+    private StubDataService composedService;
+
+    private CachingTimeseriesDataService cachingService;
+
+    @Before
+    public void
+    setUp()
+    {
+        composedService = new StubDataService();
+        composedService.add("ts", 10 * DAY + HOUR, 11 * DAY - 1, 11 * DAY, 11 * DAY + 1, 12 * DAY + HOUR);
+        cachingService = new CachingTimeseriesDataService(composedService);
+        cachingService.setChunkLength("P1D");
+    }
+
+    @Test
+    public void
+    shouldOnlyReadMissingChunks()
+    {
+        getData(10 * DAY, 11 * DAY + HOUR);
+        List<Long> values = getData(10 * DAY, 12 * DAY + 2 * HOUR);
+        assertThat(composedService.requested.size(), is(2));
+        assertThat(composedService.requested.get(0), is(new Interval(10 * DAY, 12 * DAY - 1)));
+        assertThat(composedService.requested.get(1), is(new Interval(12 * DAY, 13 * DAY - 1)));
+        assertThat(values, is(Arrays.asList(10 * DAY + HOUR, 11 * DAY - 1, 11 * DAY, 11 * DAY + 1, 12 * DAY + HOUR)));
+    }
+
+    @Test
+    public void
+    shouldAssignValuesAtChunkBoundaries()
+    {
+        assertThat(getData(10 * DAY, 11 * DAY), is(Arrays.asList(10 * DAY + HOUR, 11 * DAY - 1, 11 * DAY)));
+        assertThat(getData(11 * DAY, 11 * DAY + 1), is(Arrays.asList(11 * DAY, 11 * DAY + 1)));
+        assertThat(getData(11 * DAY - 1, 11 * DAY - 1), is(Arrays.asList(11 * DAY - 1)));
+        assertThat(composedService.requested.size(), is(1));
+    }
+
+    @Test
+    public void
+    shouldKeepCurrentChunkWithinTimeToLive()
+    {
+        long now = System.currentTimeMillis();
+        getData(now - DAY, now);
+        getData(now - DAY, now);
+        assertThat(composedService.requested.size(), is(1));
+    }
+
+    @Test
+    public void
+    shouldReadCurrentChunkAgainAfterTimeToLive()
+    {
+        cachingService.setCurrentChunkTimeToLive(0);
+        long now = System.currentTimeMillis();
+        getData(now - DAY, now);
+        getData(now - DAY, now);
+        long currentChunkStart = now - now % DAY;
+        assertThat(composedService.requested.size(), is(2));
+        assertThat(composedService.requested.get(1).getStartMillis(), is(currentChunkStart));
+    }
+
+    @Test
+    public void
+    shouldStreamUncachedDataFromComposedService()
+    {
+        List<Long> values = streamData(10 * DAY, 11 * DAY);
+        assertThat(composedService.streamed, is(1));
+        assertThat(composedService.requested.isEmpty(), is(true));
+        assertThat(values, is(Arrays.asList(10 * DAY + HOUR, 11 * DAY - 1, 11 * DAY)));
+    }
+
+    @Test
+    public void
+    shouldStreamFromCacheIfAllChunksAreCached()
+    {
+        getData(10 * DAY, 13 * DAY - 1);
+        List<Long> values = streamData(10 * DAY, 11 * DAY);
+        assertThat(composedService.streamed, is(0));
+        assertThat(values, is(Arrays.asList(10 * DAY + HOUR, 11 * DAY - 1, 11 * DAY)));
+    }
+
+    @Test
+    public void
+    shouldStreamPartiallyCachedDataFromComposedService()
+    {
+        getData(10 * DAY, 11 * DAY - 1);
+        streamData(10 * DAY, 12 * DAY);
+        assertThat(composedService.streamed, is(1));
+        assertThat(composedService.requested.size(), is(1));
+    }
+
+    @Test
+    public void
+    shouldStreamLargeRangesFromComposedService()
+    {
+        cachingService.setMaxStreamedChunks(2);
+        getData(10 * DAY, 13 * DAY - 1);
+        streamData(10 * DAY, 13 * DAY - 1);
+        assertThat(composedService.streamed, is(1));
+    }
+
+    private List<Long> getData(long start, long end) {
+        UndesignedParameterSet parameters = createParameters(start, end);
+        TvpDataCollection data = cachingService.getTimeseriesData(parameters);
+        return getTimestamps(data.getTimeseries("ts").getSeries());
+    }
+
+    private List<Long> streamData(long start, long end) {
+        final List<Long> timestamps = new ArrayList<Long>();
+        cachingService.streamTimeseriesData(createParameters(start, end), new TimeseriesValueHandler() {
+            @Override
+            public void startTimeseries(String timeseriesId) {
+                // nothing to do
+            }
+
+            @Override
+            public void handleValue(TimeseriesValue value) {
+                timestamps.add(value.getTimestamp());
+            }
+
+            @Override
+            public void endTimeseries(String timeseriesId) {
+                // nothing to do
+            }
+        });
+        return timestamps;
+    }
+
+    private UndesignedParameterSet createParameters(long start, long end) {
+        return UndesignedParameterSet.createForTimeseries(new String[] {"ts"}, new Interval(start, end));
+    }
+
+    private static List<Long> getTimestamps(ColumnarTimeseries series) {
+        List<Long> timestamps = new ArrayList<Long>();
+        for (int i = 0; i < series.size(); i++) {
+            timestamps.add(series.getTimestamp(i));
+        }
+        return timestamps;
+    }
+
+    private static final class StubDataService implements StreamingTimeseriesDataService {
+
+        private final Map<String, long[]> timestampsById = new HashMap<String, long[]>();
+
+        private final List<Interval> requested = new ArrayList<Interval>();
+
+        private int streamed;
+
+        void add(String timeseriesId, long... timestamps) {
+            timestampsById.put(timeseriesId, timestamps);
+        }
+
+        @Override
+        public TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters) {
+            Interval timespan = IoParameters.createFromQuery(parameters).getTimespan();
+            requested.add(new Interval(timespan.getStartMillis(), timespan.getEndMillis()));
+            TvpDataCollection data = new TvpDataCollection();
+            for (String timeseriesId : parameters.getTimeseries()) {
+                data.addNewTimeseries(timeseriesId, TimeseriesData.newTimeseriesData(read(timeseriesId, timespan)));
+            }
+            return data;
+        }
+
+        @Override
+        public void streamTimeseriesData(UndesignedParameterSet parameters, TimeseriesValueHandler handler) {
+            streamed++;
+            Interval timespan = IoParameters.createFromQuery(parameters).getTimespan();
+            for (String timeseriesId : parameters.getTimeseries()) {
+                handler.startTimeseries(timeseriesId);
+                ColumnarTimeseries series = read(timeseriesId, timespan);
+                for (int i = 0; i < series.size(); i++) {
+                    handler.handleValue(new TimeseriesValue(series.getTimestamp(i), series.getValue(i)));
+                }
+                handler.endTimeseries(timeseriesId);
+            }
+        }
+
+        @Override
+        public void streamAlignedTimeseriesData(UndesignedParameterSet parameters, TimeseriesRowHandler handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        private ColumnarTimeseries read(String timeseriesId, Interval timespan) {
+            ColumnarTimeseries series = new ColumnarTimeseries();
+            for (long timestamp : timestampsById.get(timeseriesId)) {
+                if (timestamp >= timespan.getStartMillis() && timestamp <= timespan.getEndMillis()) {
+                    series.add(timestamp, 1.0);
+                }
+            }
+            return series;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.sensorweb.v1.spi;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.n52.io.generalize.GeneralizingAlgorithm.DP;
+import static org.n52.io.generalize.GeneralizingAlgorithm.LTTB;
+
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.io.v1.data.ColumnarTimeseries;
+import org.n52.io.v1.data.TimeseriesData;
+
+public class GeneralizedDataCacheTest {
+
+    private static final Interval WINDOW = new Interval(0L, 600000L);
+
+    private GeneralizedDataCache cache;
+
+    @Before
+    public void
+    setUp()
+    {
+        cache = new GeneralizedDataCache();
+        cache.setMaxCacheSize(1);
+    }
+
+    @Test
+    public void
+    shouldQuantizeToWindowSteps()
+    {
+        cache.setWindowStep("PT5M");
+        assertThat(cache.quantize(new Interval(310000L, 610000L)), is(new Interval(300000L, 900000L)));
+        assertThat(cache.quantize(new Interval(300000L, 600000L)), is(new Interval(300000L, 600000L)));
+    }
+
+    @Test
+    public void
+    shouldSeparateEntriesByAlgorithmAndPoints()
+    {
+        cache.put("ts", WINDOW, LTTB, 100, null, createData(10));
+        assertThat(cache.get("ts", WINDOW, LTTB, 100), is(notNullValue()));
+        assertThat(cache.get("ts", WINDOW, DP, 100), is(nullValue()));
+        assertThat(cache.get("ts", WINDOW, LTTB, 200), is(nullValue()));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void
+    shouldEvictLeastRecentlyUsedEntry()
+    {
+        // each entry weighs about 480kB, so only two of them fit into 1MB
+        cache.put("ts_1", WINDOW, LTTB, 100, null, createData(30000));
+        cache.put("ts_2", WINDOW, LTTB, 100, null, createData(30000));
+        cache.get("ts_1", WINDOW, LTTB, 100);
+        cache.put("ts_3", WINDOW, LTTB, 100, null, createData(30000));
+        assertThat(cache.getEvictionCount(), is(1L));
+        assertThat(cache.get("ts_2", WINDOW, LTTB, 100), is(nullValue()));
+        assertThat(cache.get("ts_1", WINDOW, LTTB, 100), is(notNullValue()));
+        assertThat(cache.get("ts_3", WINDOW, LTTB, 100), is(notNullValue()));
+    }
+
+    @Test
+    public void
+    shouldWeighEntriesByNumberOfValues()
+    {
+        // 100 small entries of 360 bytes each plus one of 1024200 bytes exceed 1MB by 11624 bytes
+        for (int i = 0; i < 100; i++) {
+            cache.put("ts_" + i, WINDOW, LTTB, 100, null, createData(10));
+        }
+        assertThat(cache.getEvictionCount(), is(0L));
+        cache.put("large", WINDOW, LTTB, 100, null, createData(64000));
+        assertThat(cache.getEvictionCount(), is(33L));
+        assertThat(cache.getEntryCount(), is(68));
+        assertThat(cache.get("ts_32", WINDOW, LTTB, 100), is(nullValue()));
+        assertThat(cache.get("ts_33", WINDOW, LTTB, 100), is(notNullValue()));
+    }
+
+    @Test
+    public void
+    shouldInvalidateEntriesWhenLastValueAdvances()
+    {
+        cache.updateLastValue("ts", 1000L);
+        cache.put("ts", WINDOW, LTTB, 100, 1000L, createData(10));
+        cache.put("ts", WINDOW, DP, 100, 1000L, createData(10));
+        cache.put("other", WINDOW, LTTB, 100, null, createData(10));
+
+        cache.updateLastValue("ts", 1000L);
+        assertThat(cache.get("ts", WINDOW, LTTB, 100), is(notNullValue()));
+
+        cache.updateLastValue("ts", 2000L);
+        assertThat(cache.getInvalidationCount(), is(2L));
+        assertThat(cache.get("ts", WINDOW, LTTB, 100), is(nullValue()));
+        assertThat(cache.get("ts", WINDOW, DP, 100), is(nullValue()));
+        assertThat(cache.get("other", WINDOW, LTTB, 100), is(notNullValue()));
+    }
+
+    @Test
+    public void
+    shouldNotCacheDataReadBeforeLastValueAdvanced()
+    {
+        cache.updateLastValue("ts", 1000L);
+        Long lastValue = cache.getLastValue("ts");
+        cache.updateLastValue("ts", 2000L);
+        cache.put("ts", WINDOW, LTTB, 100, lastValue, createData(10));
+        assertThat(cache.get("ts", WINDOW, LTTB, 100), is(nullValue()));
+    }
+
+    @Test
+    public void
+    shouldNotCacheDataReadBeforeLastValueWasReported()
+    {
+        Long lastValue = cache.getLastValue("ts");
+        cache.updateLastValue("ts", 1000L);
+        cache.put("ts", WINDOW, LTTB, 100, lastValue, createData(10));
+        assertThat(cache.get("ts", WINDOW, LTTB, 100), is(nullValue()));
+    }
+
+    private static TimeseriesData createData(int size) {
+        ColumnarTimeseries series = new ColumnarTimeseries(size);
+        for (int i = 0; i < size; i++) {
+            series.add(i, i);
+        }
+        return TimeseriesData.newTimeseriesData(series);
+    }
+
+}
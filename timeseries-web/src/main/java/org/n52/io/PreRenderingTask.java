@@ -28,19 +28,32 @@
 package org.n52.io;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import javax.imageio.ImageIO;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ServletConfig;
-import javax.servlet.ServletOutputStream;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.n52.io.ConfigTaskPrerendering.ConfiguredStyle;
@@ -53,13 +66,14 @@ import org.n52.io.format.TvpDataCollection;
 import org.n52.io.img.ChartDimension;
 import org.n52.io.img.RenderingContext;
 import static org.n52.io.img.RenderingContext.createContextForSingleTimeseries;
-import org.n52.io.v1.data.PhenomenonOutput;
 import org.n52.io.v1.data.StyleProperties;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
+import org.n52.io.v1.data.TimeseriesValue;
 import org.n52.io.v1.data.UndesignedParameterSet;
 import static org.n52.io.v1.data.UndesignedParameterSet.createForSingleTimeseries;
 import org.n52.sensorweb.v1.spi.ParameterService;
 import org.n52.sensorweb.v1.spi.TimeseriesDataService;
+import org.n52.web.InternalServerException;
 import org.n52.web.ResourceNotFoundException;
 import org.n52.web.v1.ctrl.Stopwatch;
 import static org.n52.web.v1.ctrl.Stopwatch.startStopwatch;
@@ -67,6 +81,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.context.ServletConfigAware;
 
+/**
+ * Pre-renders charts of configured timeseries for the intervals <code>lastDay</code>, <code>lastWeek</code>
+ * and <code>lastMonth</code>. Each interval is rendered on its own schedule (see
+ * {@link #setIntervalPeriods(Map)}) by a bounded pool of {@link #setParallelism(int) render threads}. A chart
+ * is only re-rendered if the last value of its timeseries has changed since it was rendered before.
+ */
 public class PreRenderingTask implements ServletConfigAware {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(PreRenderingTask.class);
@@ -79,7 +99,12 @@ public class PreRenderingTask implements ServletConfigAware {
 
     private final ConfigTaskPrerendering taskConfigPrerendering;
 
-    private final RenderTask taskToRun;
+    /**
+     * Number of rendered charts after which the progress of a pass is logged.
+     */
+    private static final int PROGRESS_LOG_STEP = 500;
+
+    private final ImageCache imageCache = new ImageCache();
 
     private String webappFolder;
 
@@ -87,6 +112,19 @@ public class PreRenderingTask implements ServletConfigAware {
 
     private int periodInMinutes;
 
+    private Map<String, Integer> intervalPeriods = new HashMap<String, Integer>();
+
+    private int parallelism = 4;
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService renderPool;
+
+    /**
+     * Last value timestamps of the rendered charts, mapped by image file name.
+     */
+    private final Map<String, Long> renderedLastValues = new ConcurrentHashMap<String, Long>();
+
     private boolean enabled;
 
     private int width = 800;
@@ -100,14 +138,18 @@ public class PreRenderingTask implements ServletConfigAware {
     }
 
     // destroy method
-    public void shutdownTask() {
+    public synchronized void shutdownTask() {
         this.enabled = false;
-        this.taskToRun.cancel();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            renderPool.shutdownNow();
+            scheduler = null;
+            renderPool = null;
+        }
         LOGGER.info("Render task successfully shutted down.");
     }
 
     PreRenderingTask() {
-        this.taskToRun = new RenderTask();
         this.taskConfigPrerendering = readTaskConfig();
     }
 
@@ -133,16 +175,56 @@ public class PreRenderingTask implements ServletConfigAware {
         }
     }
 
-    public void startTask() {
-        if (taskToRun != null) {
-            this.enabled = true;
-            Timer timer = new Timer("Prerender charts timer task");
-            timer.schedule(taskToRun, 10000, getPeriodInMilliseconds());
+    public synchronized void startTask() {
+        if (scheduler != null) {
+            return;
+        }
+        this.enabled = true;
+        Set<String> intervals = getConfiguredIntervals();
+        scheduler = Executors.newScheduledThreadPool(Math.max(intervals.size(), 1),
+                                                     createThreadFactory("prerendering-scheduler-"));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+                                                         new ArrayBlockingQueue<Runnable>(parallelism * 16),
+                                                         createThreadFactory("prerendering-"),
+                                                         new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        renderPool = pool;
+        for (String interval : intervals) {
+            long period = getPeriodInMinutes(interval);
+            scheduler.scheduleAtFixedRate(new RenderPass(interval), 10, period * 60, TimeUnit.SECONDS);
+            LOGGER.info("Prerendering interval '{}' every {} minutes.", interval, period);
         }
     }
 
-    private int getPeriodInMilliseconds() {
-        return 1000 * 60 * periodInMinutes;
+    private Set<String> getConfiguredIntervals() {
+        Set<String> intervals = new TreeSet<String>();
+        for (ConfiguredStyle style : taskConfigPrerendering.getPhenomenonStyles().values()) {
+            intervals.addAll(Arrays.asList(style.getInterval()));
+        }
+        for (ConfiguredStyle style : taskConfigPrerendering.getTimeseriesStyles().values()) {
+            intervals.addAll(Arrays.asList(style.getInterval()));
+        }
+        return intervals;
+    }
+
+    private int getPeriodInMinutes(String interval) {
+        Integer period = intervalPeriods.get(interval);
+        return Math.max(period != null
+            ? period.intValue()
+            : periodInMinutes, 1);
+    }
+
+    private static ThreadFactory createThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
     }
 
     @Override
@@ -214,6 +296,34 @@ public class PreRenderingTask implements ServletConfigAware {
         this.periodInMinutes = period;
     }
 
+    /**
+     * @param intervalPeriods
+     *        minutes between two renderings, mapped by interval (e.g. <code>lastDay</code>). Intervals not
+     *        mapped are rendered every {@link #setPeriodInMinutes(int) period}.
+     */
+    public void setIntervalPeriods(Map<String, Integer> intervalPeriods) {
+        this.intervalPeriods = new HashMap<String, Integer>(intervalPeriods);
+    }
+
+    /**
+     * @param parallelism
+     *        the maximum number of charts rendered at the same time.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param imageCacheSize
+     *        the maximum amount of memory in megabytes frequently requested images may use.
+     */
+    public void setImageCacheSize(int imageCacheSize) {
+        imageCache.setMaxSize(imageCacheSize * 1024L * 1024L);
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -230,25 +340,55 @@ public class PreRenderingTask implements ServletConfigAware {
         return name.exists();
     }
 
-    public void writePrerenderedGraphToOutputStream(String timeseriesId,
-                                                    String interval,
-                                                    ServletOutputStream outputStream) {
+    /**
+     * Opens a pre-rendered image to be written as it is. Images requested repeatedly are served from memory
+     * until they are re-rendered.
+     * 
+     * @param timeseriesId
+     *        the timeseries id.
+     * @param interval
+     *        the pre-rendered interval.
+     * @return the opened image, has to be closed after writing.
+     * @throws ResourceNotFoundException
+     *         if no image has been pre-rendered (yet).
+     */
+    public PrerenderedImage openPrerenderedImage(String timeseriesId, String interval) {
+        File file = createFileName(timeseriesId, interval);
+        long lastModified = file.lastModified();
+        if (lastModified == 0L) {
+            throw createImageNotFoundException();
+        }
+        String key = file.getName();
+        byte[] cached = imageCache.get(key, lastModified, file.length());
+        if (cached != null) {
+            return PrerenderedImage.fromBytes(cached, lastModified);
+        }
         try {
-            BufferedImage image = loadImage(timeseriesId, interval);
-            if (image == null) {
-                ResourceNotFoundException ex = new ResourceNotFoundException("Could not find image on server.");
-                ex.addHint("Perhaps the image is being rendered at the moment. Try again later.");
-                throw ex;
+            PrerenderedImage image = PrerenderedImage.fromFile(file, lastModified);
+            if ( !imageCache.isFrequentlyRequested(key, lastModified, image.getLength())) {
+                return image;
+            }
+            try {
+                byte[] bytes = image.readFully();
+                imageCache.put(key, lastModified, bytes);
+                return PrerenderedImage.fromBytes(bytes, lastModified);
+            }
+            finally {
+                image.close();
             }
-            ImageIO.write(image, "png", outputStream);
+        }
+        catch (FileNotFoundException e) {
+            throw createImageNotFoundException();
         }
         catch (IOException e) {
-            LOGGER.error("Error while loading pre rendered image", e);
+            throw new InternalServerException("Error while loading pre rendered image", e);
         }
     }
 
-    private BufferedImage loadImage(String timeseriesId, String interval) throws IOException {
-        return ImageIO.read(new FileInputStream(createFileName(timeseriesId, interval)));
+    private ResourceNotFoundException createImageNotFoundException() {
+        ResourceNotFoundException ex = new ResourceNotFoundException("Could not find image on server.");
+        ex.addHint("Perhaps the image is being rendered at the moment. Try again later.");
+        return ex;
     }
 
     public Interval createTimespanFromInterval(String timeseriesId, String interval) {
@@ -268,10 +408,18 @@ public class PreRenderingTask implements ServletConfigAware {
         }
     }
 
-    private FileOutputStream createFile(String timeseriesId, String interval) throws IOException {
-        File file = createFileName(timeseriesId, interval);
-        file.createNewFile();
-        return new FileOutputStream(file);
+    /**
+     * Replaces the pre-rendered image by the rendered temporary file, so that readers never see partially
+     * written images.
+     */
+    private void replaceImage(File renderedFile, File imageFile) throws IOException {
+        if ( !renderedFile.renameTo(imageFile)) {
+            // some platforms do not rename onto existing files
+            imageFile.delete();
+            if ( !renderedFile.renameTo(imageFile)) {
+                throw new IOException("Could not rename " + renderedFile + " to " + imageFile);
+            }
+        }
     }
 
     private File createFileName(String timeseriesId, String interval) {
@@ -305,71 +453,167 @@ public class PreRenderingTask implements ServletConfigAware {
         return timeseriesData;
     }
 
-    private final class RenderTask extends TimerTask {
+    /**
+     * Renders all charts of one interval whose timeseries got new values since their last rendering.
+     */
+    private final class RenderPass implements Runnable {
+
+        private final String interval;
+
+        RenderPass(String interval) {
+            this.interval = interval;
+        }
 
         @Override
         public void run() {
-            LOGGER.info("Start prerendering task");
+            // runtime exceptions would cancel all further passes
             try {
-                Map<String, ConfiguredStyle> phenomenonStyles = taskConfigPrerendering.getPhenomenonStyles();
-                Map<String, ConfiguredStyle> timeseriesStyles = taskConfigPrerendering.getTimeseriesStyles();
-                for (String phenomenonId : phenomenonStyles.keySet()) {
-                    Map<String, String> parameters = new HashMap<String, String>();
-                    parameters.put(PHENOMENON, phenomenonId);
-                    IoParameters query = IoParameters.createFromQuery(parameters);
-                    TimeseriesMetadataOutput[] metadatas = timeseriesMetadataService.getCondensedParameters(query);
-                    for (TimeseriesMetadataOutput metadata : metadatas) {
-                        String timeseriesId = metadata.getId();
-                        ConfiguredStyle style = timeseriesStyles.containsKey(timeseriesId)
-                            ? timeseriesStyles.get(timeseriesId)
-                            : phenomenonStyles.get(phenomenonId);
-
-                        renderConfiguredIntervals(timeseriesId, style);
-                    }
+                renderCharts();
+            }
+            catch (RuntimeException e) {
+                LOGGER.error("Prerendering interval '{}' failed.", interval, e);
+            }
+        }
+
+        private void renderCharts() {
+            Stopwatch stopwatch = startStopwatch();
+            Map<String, StyleProperties> styles = collectStyles();
+            final RenderProgress progress = new RenderProgress(interval, styles.size());
+            LOGGER.info("Start prerendering {} charts of interval '{}'.", styles.size(), interval);
+            List<Future< ? >> results = new ArrayList<Future< ? >>();
+            try {
+                for (final Map.Entry<String, StyleProperties> style : styles.entrySet()) {
+                    results.add(renderPool.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            renderIfChanged(style.getKey(), style.getValue(), progress);
+                        }
+                    }));
                 }
+                for (Future< ? > result : results) {
+                    result.get();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.info("Prerendering interval '{}' interrupted.", interval);
+                return;
+            }
+            catch (ExecutionException e) {
+                LOGGER.error("Prerendering interval '{}' failed.", interval, e.getCause());
+            }
+            finally {
+                for (Future< ? > result : results) {
+                    result.cancel(true);
+                }
+            }
+            LOGGER.info("Prerendering interval '{}' finished in {} seconds: {}.",
+                        interval, stopwatch.stopInSeconds(), progress);
+        }
+
+        /**
+         * @return the styles to render the charts of this interval with, mapped by timeseries id.
+         */
+        private Map<String, StyleProperties> collectStyles() {
+            Map<String, StyleProperties> styles = new LinkedHashMap<String, StyleProperties>();
+            Map<String, ConfiguredStyle> phenomenonStyles = taskConfigPrerendering.getPhenomenonStyles();
+            Map<String, ConfiguredStyle> timeseriesStyles = taskConfigPrerendering.getTimeseriesStyles();
+            for (String phenomenonId : phenomenonStyles.keySet()) {
+                Map<String, String> parameters = new HashMap<String, String>();
+                parameters.put(PHENOMENON, phenomenonId);
+                IoParameters query = IoParameters.createFromQuery(parameters);
+                TimeseriesMetadataOutput[] metadatas = timeseriesMetadataService.getCondensedParameters(query);
+                for (TimeseriesMetadataOutput metadata : metadatas) {
+                    String timeseriesId = metadata.getId();
+                    ConfiguredStyle style = timeseriesStyles.containsKey(timeseriesId)
+                        ? timeseriesStyles.get(timeseriesId)
+                        : phenomenonStyles.get(phenomenonId);
+                    addStyleIfConfigured(styles, timeseriesId, style);
+                }
+            }
+
+            for (String timeseriesId : timeseriesStyles.keySet()) {
+                if ( !styles.containsKey(timeseriesId)) {
+                    // overridden phenomena styles have been added already
+                    addStyleIfConfigured(styles, timeseriesId, timeseriesStyles.get(timeseriesId));
+                }
+            }
+            return styles;
+        }
+
+        private void addStyleIfConfigured(Map<String, StyleProperties> styles, String timeseriesId, ConfiguredStyle style) {
+            if (Arrays.asList(style.getInterval()).contains(interval)) {
+                styles.put(timeseriesId, style.getStyle());
+            }
+        }
 
-                for (String timeseriesId : timeseriesStyles.keySet()) {
-                    TimeseriesMetadataOutput metadata = timeseriesMetadataService.getParameter(timeseriesId);
-                    PhenomenonOutput phenomenon = metadata.getParameters().getPhenomenon();
-                    if (!phenomenonStyles.containsKey(phenomenon.getId())) {
-                        // overridden phenomena styles have been rendered already
-                        ConfiguredStyle style = timeseriesStyles.get(timeseriesId);
-                        renderConfiguredIntervals(timeseriesId, style);
+        private void renderIfChanged(String timeseriesId, StyleProperties style, RenderProgress progress) {
+            try {
+                IoParameters config = createConfig();
+                TimeseriesMetadataOutput metadata = timeseriesMetadataService.getParameter(timeseriesId, config);
+                Long lastValue = getLastValueTimestamp(metadata);
+                String imageName = createFileName(timeseriesId, interval).getName();
+                if (lastValue != null && lastValue.equals(renderedLastValues.get(imageName))
+                        && hasPrerenderedImage(timeseriesId, interval)) {
+                    progress.skipped();
+                    return;
+                }
+                if (renderWithStyle(metadata, style, config)) {
+                    if (lastValue != null) {
+                        renderedLastValues.put(imageName, lastValue);
                     }
+                    progress.rendered();
+                }
+                else {
+                    progress.failed();
                 }
             }
             catch (IOException e) {
-                LOGGER.error("Error while reading prerendering configuration file!", e);
+                LOGGER.warn("Could not prerender interval '{}' of timeseries {}.", interval, timeseriesId, e);
+                progress.failed();
+            }
+            catch (RuntimeException e) {
+                LOGGER.warn("Could not prerender interval '{}' of timeseries {}.", interval, timeseriesId, e);
+                progress.failed();
             }
         }
 
-        private void renderConfiguredIntervals(String timeseriesId, ConfiguredStyle style) throws IOException {
-            for (String interval : style.getInterval()) {
-                renderWithStyle(timeseriesId, style.getStyle(), interval);
-            }
+        private Long getLastValueTimestamp(TimeseriesMetadataOutput metadata) {
+            TimeseriesValue lastValue = metadata.getLastValue();
+            return lastValue != null
+                ? lastValue.getTimestamp()
+                : null;
         }
 
-        private void renderWithStyle(String timeseriesId, StyleProperties style, String interval) throws IOException {
-            IoParameters config = createConfig();
+        private boolean renderWithStyle(TimeseriesMetadataOutput metadata, StyleProperties style, IoParameters config) throws IOException {
+            String timeseriesId = metadata.getId();
             Interval timespan = createTimespanFromInterval(timeseriesId, interval);
-            TimeseriesMetadataOutput metadata = timeseriesMetadataService.getParameter(timeseriesId, config);
             RenderingContext context = createContextForSingleTimeseries(metadata, style, timespan);
             context.setDimensions(new ChartDimension(width, height));
             UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, timespan);
+            parameters.setResolution(width);
             IoHandler renderer = IoFactory
                     .createWith(config)
                     .createIOHandler(context);
-            FileOutputStream fos = createFile(timeseriesId, interval);
-            renderChartFile(renderer, parameters, fos);
+            File imageFile = createFileName(timeseriesId, interval);
+            File renderedFile = new File(imageFile.getPath() + ".tmp");
+            if (renderChartFile(renderer, parameters, new FileOutputStream(renderedFile))) {
+                replaceImage(renderedFile, imageFile);
+                return true;
+            }
+            renderedFile.delete();
+            return false;
         }
 
-        private void renderChartFile(IoHandler renderer, UndesignedParameterSet parameters, FileOutputStream fos) {
+        private boolean renderChartFile(IoHandler renderer, UndesignedParameterSet parameters, FileOutputStream fos) {
             try {
                 renderer.generateOutput(getTimeseriesData(parameters));
                 renderer.encodeAndWriteTo(fos);
+                return true;
             }
             catch (IoParseException e) {
                 LOGGER.error("Image creation occures error.", e);
+                return false;
             }
             finally {
                 try {
@@ -382,4 +626,136 @@ public class PreRenderingTask implements ServletConfigAware {
             }
         }
     }
+
+    /**
+     * Counts the charts of a render pass and logs the progress.
+     */
+    private static final class RenderProgress {
+
+        private final String interval;
+
+        private final int total;
+
+        private final AtomicInteger rendered = new AtomicInteger();
+
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        RenderProgress(String interval, int total) {
+            this.interval = interval;
+            this.total = total;
+        }
+
+        void rendered() {
+            rendered.incrementAndGet();
+            logProgress();
+        }
+
+        void skipped() {
+            skipped.incrementAndGet();
+            logProgress();
+        }
+
+        void failed() {
+            failed.incrementAndGet();
+            logProgress();
+        }
+
+        private void logProgress() {
+            int done = rendered.get() + skipped.get() + failed.get();
+            if (done % PROGRESS_LOG_STEP == 0) {
+                LOGGER.info("Prerendering interval '{}': {} of {} charts done.", interval, done, total);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return rendered + " rendered, " + skipped + " unchanged, " + failed + " failed of " + total;
+        }
+    }
+
+    /**
+     * Keeps images in memory from their second request on, as long as they are not re-rendered. Bounded by
+     * the memory the images need, least recently used images are dropped first.
+     */
+    private static final class ImageCache {
+
+        /**
+         * Maximum number of images whose requests are tracked.
+         */
+        private static final int MAX_TRACKED_IMAGES = 4096;
+
+        private final LinkedHashMap<String, CachedImage> images = new LinkedHashMap<String, CachedImage>(64, 0.75f, true);
+
+        private long maxSize = 8 * 1024 * 1024;
+
+        private long size;
+
+        synchronized byte[] get(String key, long lastModified, long length) {
+            CachedImage cached = images.get(key);
+            return cached != null && cached.lastModified == lastModified
+                    && cached.bytes != null && cached.bytes.length == length
+                ? cached.bytes
+                : null;
+        }
+
+        /**
+         * Tracks a request of an image not held in memory.
+         * 
+         * @return <code>true</code> if the image has been requested before and shall be held in memory.
+         */
+        synchronized boolean isFrequentlyRequested(String key, long lastModified, long length) {
+            CachedImage cached = images.get(key);
+            if (cached != null && cached.lastModified == lastModified) {
+                return length <= maxSize;
+            }
+            remove(key);
+            images.put(key, new CachedImage(lastModified, null));
+            evict();
+            return false;
+        }
+
+        synchronized void put(String key, long lastModified, byte[] bytes) {
+            remove(key);
+            images.put(key, new CachedImage(lastModified, bytes));
+            size += bytes.length;
+            evict();
+        }
+
+        private void remove(String key) {
+            CachedImage removed = images.remove(key);
+            if (removed != null && removed.bytes != null) {
+                size -= removed.bytes.length;
+            }
+        }
+
+        private void evict() {
+            Iterator<CachedImage> iterator = images.values().iterator();
+            while ((size > maxSize || images.size() > MAX_TRACKED_IMAGES) && iterator.hasNext()) {
+                CachedImage eldest = iterator.next();
+                if (eldest.bytes != null) {
+                    size -= eldest.bytes.length;
+                }
+                iterator.remove();
+            }
+        }
+
+        synchronized void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+            evict();
+        }
+    }
+
+    private static final class CachedImage {
+
+        private final long lastModified;
+
+        private final byte[] bytes;
+
+        CachedImage(long lastModified, byte[] bytes) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+        }
+    }
 }
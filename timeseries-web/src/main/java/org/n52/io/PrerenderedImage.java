@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A pre-rendered chart ready to be written as it is, either from memory or from an opened file. An opened
+ * file keeps its content even if the image is re-rendered meanwhile, so length and content always match.
+ */
+public final class PrerenderedImage implements Closeable {
+
+    private final byte[] bytes;
+
+    private final FileInputStream stream;
+
+    private final FileChannel channel;
+
+    private final long lastModified;
+
+    private final long length;
+
+    private PrerenderedImage(byte[] bytes, FileInputStream stream, long lastModified, long length) {
+        this.bytes = bytes;
+        this.stream = stream;
+        this.channel = stream != null
+            ? stream.getChannel()
+            : null;
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    static PrerenderedImage fromBytes(byte[] bytes, long lastModified) {
+        return new PrerenderedImage(bytes, null, lastModified, bytes.length);
+    }
+
+    static PrerenderedImage fromFile(File file, long lastModified) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            return new PrerenderedImage(null, stream, lastModified, stream.getChannel().size());
+        }
+        catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the time the image was rendered in milliseconds since the epoch.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the number of bytes of the encoded image.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return a strong ETag derived from modification time and length of the image file.
+     */
+    public String getETag() {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    /**
+     * Writes the encoded image as it is. File content is transferred by the file channel without being
+     * copied to the heap.
+     * 
+     * @param outputStream
+     *        the stream to write the image to.
+     * @throws IOException
+     *         if reading or writing the image fails.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (bytes != null) {
+            outputStream.write(bytes);
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        long position = 0;
+        while (position < length) {
+            long transferred = channel.transferTo(position, length - position, target);
+            if (transferred <= 0 && position >= channel.size()) {
+                throw new IOException("Unexpected end of pre-rendered image.");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * @return the content of the opened file.
+     */
+    byte[] readFully() throws IOException {
+        if (bytes != null) {
+            return bytes;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("Unexpected end of pre-rendered image.");
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+}
@@ -30,9 +30,13 @@ package org.n52.io;
 import java.util.Map;
 
 import org.joda.time.Interval;
+import org.joda.time.Period;
 import org.n52.io.crs.BoundingBox;
+import org.n52.io.generalize.GeneralizingAlgorithm;
 import org.n52.io.img.ChartDimension;
+import org.n52.io.v1.data.Aggregation;
 import org.n52.io.v1.data.StyleProperties;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.web.BadRequestException;
 import org.n52.web.WebException;
 import org.springframework.util.MultiValueMap;
@@ -131,6 +135,63 @@ public final class QueryParameters extends IoParameters {
         }
     }
 
+    @Override
+    public int getMaxPoints() {
+        try {
+            return super.getMaxPoints();
+        }
+        catch (IoParseException e) {
+            throw new BadRequestException("Bad '" + MAX_POINTS + "' parameter.", e);
+        }
+    }
+
+    @Override
+    public GeneralizingAlgorithm getGeneralizingAlgorithm() {
+        try {
+            return super.getGeneralizingAlgorithm();
+        }
+        catch (IoParseException e) {
+            BadRequestException badRequest = new BadRequestException("Bad '" + GENERALIZING_ALGORITHM + "' parameter.", e);
+            badRequest.addHint("Valid algorithms are 'lttb' (Largest-Triangle-Three-Buckets) and 'dp' (Douglas-Peucker).");
+            throw badRequest;
+        }
+    }
+
+    @Override
+    public Aggregation getAggregation() {
+        try {
+            return super.getAggregation();
+        }
+        catch (IoParseException e) {
+            throw new BadRequestException("Bad '" + AGGREGATE + "' parameter.", e);
+        }
+    }
+
+    @Override
+    public Period getAggregationBucket() {
+        try {
+            return super.getAggregationBucket();
+        }
+        catch (IoParseException e) {
+            BadRequestException badRequest = new BadRequestException("Bad '" + BUCKET + "' parameter.", e);
+            badRequest.addHint("Valid buckets have to be in ISO8601 period format, e.g. 'PT15M', 'PT1H' or 'P1D'.");
+            badRequest.addHint("Calendar buckets are supported as 'P1M' or 'P1Y' only.");
+            throw badRequest;
+        }
+    }
+
+    @Override
+    public TimestampCursor getPagingCursor() {
+        try {
+            return super.getPagingCursor();
+        }
+        catch (IoParseException e) {
+            BadRequestException badRequest = new BadRequestException("Bad '" + AFTER + "' parameter.", e);
+            badRequest.addHint("Use the paging token as returned with the previous page.");
+            throw badRequest;
+        }
+    }
+
     @Override
     public boolean isLegend() {
         try {
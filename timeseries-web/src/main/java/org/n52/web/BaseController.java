@@ -35,6 +35,7 @@ import static org.n52.web.ExceptionResponse.createExceptionResponse;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 
 import java.io.IOException;
 
@@ -93,6 +94,12 @@ public abstract class BaseController {
         writeExceptionResponse((WebException) e, response, INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(value = ServiceUnavailableException.class)
+    public void handle503(Exception e, HttpServletRequest request, HttpServletResponse response) {
+        response.setHeader("Retry-After", Integer.toString(((ServiceUnavailableException) e).getRetryAfter()));
+        writeExceptionResponse((WebException) e, response, SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(value = {RuntimeException.class, Exception.class, Throwable.class})
     public void handleException(Exception e, HttpServletRequest request, HttpServletResponse response) {
         if (e instanceof HttpMessageNotReadableException) {
@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.web.v1.ctrl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches encoded chart images by a key identifying request, timespan and data version (see
+ * {@link TimeseriesDataController}). Images are held in a memory bounded LRU. Images evicted from memory are
+ * spilled to files, which are bounded as well, and are read back into memory on the next hit.<br/>
+ * <br/>
+ * Each instance spills to a uniquely named directory it creates on {@link #init()} within the configured
+ * {@link #setSpillDirectory(String) spill directory}, so that several deployments can share the same one. The
+ * instance's directory is deleted on {@link #destroy()}. Keys have to be valid file names (e.g. hex encoded
+ * hashes).
+ */
+public class RenderedChartCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderedChartCache.class);
+
+    private static final String SPILL_FILE_SUFFIX = ".img";
+
+    private static final String SPILL_DIRECTORY_PREFIX = "charts-";
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+
+    private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<String, Long>(64, 0.75f, true);
+
+    private File spillParent = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * The directory of this instance, <code>null</code> if images are not spilled.
+     */
+    private File spillDirectory;
+
+    private long maxMemorySize = 32 * 1024 * 1024;
+
+    private long maxDiskSize = 256 * 1024 * 1024;
+
+    private long memorySize;
+
+    private long diskSize;
+
+    private long memoryHits;
+
+    private long diskHits;
+
+    private long misses;
+
+    public void init() {
+        if (maxDiskSize > 0) {
+            spillDirectory = createSpillDirectory();
+            if (spillDirectory == null) {
+                LOGGER.warn("Could not create spill directory in {}. Charts are cached in memory only.", spillParent);
+                maxDiskSize = 0;
+            }
+        }
+    }
+
+    private File createSpillDirectory() {
+        if ( !spillParent.isDirectory() && !spillParent.mkdirs()) {
+            return null;
+        }
+        try {
+            // reserves a unique name, which is then replaced by the directory
+            File directory = File.createTempFile(SPILL_DIRECTORY_PREFIX, "", spillParent);
+            return directory.delete() && directory.mkdir()
+                ? directory
+                : null;
+        }
+        catch (IOException e) {
+            LOGGER.debug("Could not create spill directory in {}.", spillParent, e);
+            return null;
+        }
+    }
+
+    public synchronized void destroy() {
+        memory.clear();
+        spilled.clear();
+        memorySize = 0;
+        diskSize = 0;
+        if (spillDirectory != null) {
+            deleteSpillDirectory();
+        }
+    }
+
+    private void deleteSpillDirectory() {
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if ( !file.delete()) {
+                    LOGGER.debug("Could not delete spilled chart {}.", file);
+                }
+            }
+        }
+        if ( !spillDirectory.delete()) {
+            LOGGER.debug("Could not delete spill directory {}.", spillDirectory);
+        }
+    }
+
+    /**
+     * @param key
+     *        the key the image was cached with.
+     * @return the encoded image, or <code>null</code> if not cached.
+     */
+    public byte[] get(String key) {
+        synchronized (this) {
+            byte[] image = memory.get(key);
+            if (image != null) {
+                memoryHits++;
+                return image;
+            }
+            if ( !spilled.containsKey(key)) {
+                misses++;
+                return null;
+            }
+        }
+        try {
+            byte[] image = readSpilled(key);
+            synchronized (this) {
+                diskHits++;
+            }
+            put(key, image);
+            return image;
+        }
+        catch (IOException e) {
+            LOGGER.debug("Could not read spilled chart {}.", key, e);
+            synchronized (this) {
+                removeSpilled(key);
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Caches an encoded image in memory, possibly spilling least recently used images to disk.
+     * 
+     * @param key
+     *        the key to cache the image with.
+     * @param image
+     *        the encoded image.
+     */
+    public void put(String key, byte[] image) {
+        List<Map.Entry<String, byte[]>> toSpill = new ArrayList<Map.Entry<String, byte[]>>();
+        synchronized (this) {
+            byte[] replaced = memory.put(key, image);
+            if (replaced != null) {
+                memorySize -= replaced.length;
+            }
+            memorySize += image.length;
+            Iterator<Map.Entry<String, byte[]>> iterator = memory.entrySet().iterator();
+            while (memorySize > maxMemorySize && iterator.hasNext()) {
+                Map.Entry<String, byte[]> eldest = iterator.next();
+                memorySize -= eldest.getValue().length;
+                iterator.remove();
+                if ( !spilled.containsKey(eldest.getKey())) {
+                    toSpill.add(eldest);
+                }
+            }
+        }
+        for (Map.Entry<String, byte[]> entry : toSpill) {
+            spill(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void spill(String key, byte[] image) {
+        if (spillDirectory == null || image.length > maxDiskSize) {
+            return;
+        }
+        File file = getSpillFile(key);
+        File tempFile = new File(spillDirectory, key + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(image);
+            }
+            finally {
+                out.close();
+            }
+            if ( !tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+        }
+        catch (IOException e) {
+            LOGGER.debug("Could not spill chart {} to disk.", key, e);
+            tempFile.delete();
+            return;
+        }
+        synchronized (this) {
+            Long replaced = spilled.put(key, Long.valueOf(image.length));
+            if (replaced != null) {
+                diskSize -= replaced.longValue();
+            }
+            diskSize += image.length;
+            Iterator<Map.Entry<String, Long>> iterator = spilled.entrySet().iterator();
+            while (diskSize > maxDiskSize && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                diskSize -= eldest.getValue().longValue();
+                iterator.remove();
+                getSpillFile(eldest.getKey()).delete();
+            }
+        }
+    }
+
+    private byte[] readSpilled(String key) throws IOException {
+        File file = getSpillFile(key);
+        byte[] image = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < image.length) {
+                int count = in.read(image, read, image.length - read);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of spilled chart " + file);
+                }
+                read += count;
+            }
+            return image;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void removeSpilled(String key) {
+        Long removed = spilled.remove(key);
+        if (removed != null) {
+            diskSize -= removed.longValue();
+            getSpillFile(key).delete();
+        }
+    }
+
+    private File getSpillFile(String key) {
+        return new File(spillDirectory, key + SPILL_FILE_SUFFIX);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("RenderedChartCache [");
+        sb.append("memory: ").append(memory.size()).append(" (").append(memorySize / 1024).append("kB)");
+        sb.append(", disk: ").append(spilled.size()).append(" (").append(diskSize / 1024).append("kB)");
+        sb.append(", memory hits: ").append(memoryHits);
+        sb.append(", disk hits: ").append(diskHits);
+        sb.append(", misses: ").append(misses);
+        return sb.append("]").toString();
+    }
+
+    /**
+     * @param spillDirectory
+     *        the directory to create the spill directory of this instance in, either absolute or relative to
+     *        <code>java.io.tmpdir</code>.
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        File directory = new File(spillDirectory);
+        this.spillParent = directory.isAbsolute()
+            ? directory
+            : new File(System.getProperty("java.io.tmpdir"), spillDirectory);
+    }
+
+    /**
+     * @param maxMemorySize
+     *        the maximum amount of memory in megabytes the cached images may use.
+     */
+    public void setMaxMemorySize(int maxMemorySize) {
+        this.maxMemorySize = maxMemorySize * 1024L * 1024L;
+    }
+
+    /**
+     * @param maxDiskSize
+     *        the maximum amount of disk space in megabytes spilled images may use, <code>0</code> to cache
+     *        images in memory only.
+     */
+    public void setMaxDiskSize(int maxDiskSize) {
+        this.maxDiskSize = maxDiskSize * 1024L * 1024L;
+    }
+
+}
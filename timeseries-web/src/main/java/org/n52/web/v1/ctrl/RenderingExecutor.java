@@ -0,0 +1,439 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.web.v1.ctrl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.io.IoHandler;
+import org.n52.io.IoParseException;
+import org.n52.io.format.TvpDataCollection;
+import org.n52.web.InternalServerException;
+import org.n52.web.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the CPU and heap intensive output generation of {@link IoHandler}s (charts and reports) on a fixed
+ * number of threads instead of the servlet container's request threads.<br/>
+ * <br/>
+ * Waiting renderings are taken by {@link Priority} (interactive charts before reports) and in order of
+ * arrival. At most {@link #setQueueSize(int) queueSize} renderings wait at a time (including those still
+ * loading their data); further requests are refused at once with a {@link ServiceUnavailableException},
+ * before loading any data. So are renderings not done within their priority's timeout, counted from
+ * arrival in the queue. Renderings which did not start before their timeout are dropped.<br/>
+ * <br/>
+ * Queue depth, wait and render times are available via getters (exported by JMX, see the Web binding's
+ * bean configuration).
+ */
+public class RenderingExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderingExecutor.class);
+
+    /**
+     * The priority of a rendering. Lower ordinals are rendered first.
+     */
+    public enum Priority {
+        INTERACTIVE, REPORT
+    }
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final AtomicLong started = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private final AtomicLong totalWaitTime = new AtomicLong();
+
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    private final AtomicLong totalRenderTime = new AtomicLong();
+
+    private final AtomicLong maxRenderTime = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private int queueSize = 32;
+
+    private long interactiveTimeout = 20000L;
+
+    private long reportTimeout = 60000L;
+
+    private int retryAfter = 5;
+
+    public void init() {
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, SECONDS,
+                                          new PriorityBlockingQueue<Runnable>(), createThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reserves a queue slot, loads the data on the calling thread and generates and encodes the renderer's
+     * output with it. No data is loaded if the rendering is refused.
+     * 
+     * @param renderer
+     *        the renderer to generate output with.
+     * @param dataLoader
+     *        loads the data to render.
+     * @param priority
+     *        the priority of the rendering.
+     * @return the encoded output.
+     * @throws IoParseException
+     *         if generating or encoding the output fails.
+     * @throws ServiceUnavailableException
+     *         if too many renderings are waiting or the rendering did not finish in time.
+     */
+    public byte[] render(final IoHandler renderer, Callable<TvpDataCollection> dataLoader, Priority priority) throws IoParseException {
+        if (waiting.incrementAndGet() > queueSize) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            throw createServiceUnavailableException("Too many renderings are waiting.");
+        }
+        boolean queued = false;
+        try {
+            final TvpDataCollection data = loadData(dataLoader);
+            long timeout = priority == Priority.INTERACTIVE
+                ? interactiveTimeout
+                : reportTimeout;
+            RenderingTask task = new RenderingTask(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IoParseException {
+                    renderer.generateOutput(data);
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    renderer.encodeAndWriteTo(output);
+                    return output.toByteArray();
+                }
+            }, priority, MILLISECONDS.toNanos(timeout));
+            try {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                throw createServiceUnavailableException("Rendering is shut down.");
+            }
+            queued = true;
+            return awaitResult(task);
+        }
+        finally {
+            if ( !queued) {
+                // once queued, the slot is released when the task is taken or removed from the queue
+                waiting.decrementAndGet();
+            }
+        }
+    }
+
+    private TvpDataCollection loadData(Callable<TvpDataCollection> dataLoader) throws IoParseException {
+        try {
+            return dataLoader.call();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IoParseException("Could not load data to render.", e);
+        }
+    }
+
+    private byte[] awaitResult(RenderingTask task) throws IoParseException {
+        try {
+            return task.get(Math.max(task.deadline - System.nanoTime(), 0L), NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            cancel(task);
+        }
+        catch (CancellationException e) {
+            // dropped as not started in time
+        }
+        catch (InterruptedException e) {
+            cancel(task);
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Interrupted while waiting for rendering.", e);
+        }
+        catch (ExecutionException e) {
+            failed.incrementAndGet();
+            Throwable cause = e.getCause();
+            if (cause instanceof IoParseException) {
+                throw (IoParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IoParseException("Rendering failed.", cause);
+        }
+        timedOut.incrementAndGet();
+        throw createServiceUnavailableException("Rendering did not finish in time.");
+    }
+
+    private void cancel(RenderingTask task) {
+        task.cancel(true);
+        if (executor.remove(task)) {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private ServiceUnavailableException createServiceUnavailableException(String message) {
+        ServiceUnavailableException e = new ServiceUnavailableException(message, retryAfter);
+        e.addHint("The server is busy rendering other charts or reports. Retry after " + retryAfter + " seconds.");
+        LOGGER.debug("{} {}", message, this);
+        return e;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rendering-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private final class RenderingTask extends FutureTask<byte[]> implements Comparable<RenderingTask> {
+
+        private final Priority priority;
+
+        private final long number = sequence.incrementAndGet();
+
+        private final long arrival = System.nanoTime();
+
+        private final long deadline;
+
+        RenderingTask(Callable<byte[]> rendering, Priority priority, long timeout) {
+            super(rendering);
+            this.priority = priority;
+            this.deadline = arrival + timeout;
+        }
+
+        @Override
+        public void run() {
+            waiting.decrementAndGet();
+            long start = System.nanoTime();
+            long waitTime = NANOSECONDS.toMillis(start - arrival);
+            started.incrementAndGet();
+            totalWaitTime.addAndGet(waitTime);
+            updateMax(maxWaitTime, waitTime);
+            if (isCancelled() || start - deadline >= 0) {
+                cancel(false);
+                return;
+            }
+            super.run();
+            long renderTime = NANOSECONDS.toMillis(System.nanoTime() - start);
+            totalRenderTime.addAndGet(renderTime);
+            updateMax(maxRenderTime, renderTime);
+            completed.incrementAndGet();
+        }
+
+        @Override
+        public int compareTo(RenderingTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return number < other.number
+                ? -1
+                : number == other.number ? 0 : 1;
+        }
+
+    }
+
+    /**
+     * @return the number of renderings waiting to be started, including those still loading their data.
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the number of renderings running.
+     */
+    public int getActiveRenderings() {
+        return executor != null
+            ? executor.getActiveCount()
+            : 0;
+    }
+
+    /**
+     * @return the number of renderings run (successfully or not).
+     */
+    public long getCompletedRenderings() {
+        return completed.get();
+    }
+
+    /**
+     * @return the number of renderings which failed with an exception.
+     */
+    public long getFailedRenderings() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of renderings refused as too many renderings were waiting.
+     */
+    public long getRejectedRenderings() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of renderings not finished within their timeout.
+     */
+    public long getTimedOutRenderings() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return the average milliseconds renderings waited to be taken from the queue.
+     */
+    public long getAverageWaitTime() {
+        long count = started.get();
+        return count > 0
+            ? totalWaitTime.get() / count
+            : 0L;
+    }
+
+    /**
+     * @return the maximum milliseconds a rendering waited to be started.
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * @return the average milliseconds a rendering took.
+     */
+    public long getAverageRenderTime() {
+        long rendered = completed.get();
+        return rendered > 0
+            ? totalRenderTime.get() / rendered
+            : 0L;
+    }
+
+    /**
+     * @return the maximum milliseconds a rendering took.
+     */
+    public long getMaxRenderTime() {
+        return maxRenderTime.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("RenderingExecutor [");
+        sb.append("waiting: ").append(getQueueDepth());
+        sb.append(", active: ").append(getActiveRenderings());
+        sb.append(", completed: ").append(getCompletedRenderings());
+        sb.append(", failed: ").append(getFailedRenderings());
+        sb.append(", rejected: ").append(getRejectedRenderings());
+        sb.append(", timed out: ").append(getTimedOutRenderings());
+        sb.append(", average wait: ").append(getAverageWaitTime()).append("ms");
+        sb.append(", average rendering: ").append(getAverageRenderTime()).append("ms");
+        return sb.append("]").toString();
+    }
+
+    /**
+     * @param parallelism
+     *        the number of renderings run at the same time (defaults to the number of processors).
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * @param queueSize
+     *        the maximum number of renderings waiting to be started.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(queueSize, 0);
+    }
+
+    /**
+     * @param interactiveTimeout
+     *        the seconds within which an interactive rendering (chart) has to finish.
+     */
+    public void setInteractiveTimeout(int interactiveTimeout) {
+        this.interactiveTimeout = interactiveTimeout * 1000L;
+    }
+
+    /**
+     * @param reportTimeout
+     *        the seconds within which a report rendering has to finish.
+     */
+    public void setReportTimeout(int reportTimeout) {
+        this.reportTimeout = reportTimeout * 1000L;
+    }
+
+    /**
+     * @param retryAfter
+     *        the seconds after which refused callers are told to retry.
+     */
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+}
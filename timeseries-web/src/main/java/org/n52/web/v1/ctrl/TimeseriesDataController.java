@@ -29,8 +29,19 @@ package org.n52.web.v1.ctrl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Interval;
@@ -39,18 +50,35 @@ import org.n52.io.IoFactory;
 import org.n52.io.IoHandler;
 import org.n52.io.IoParameters;
 import org.n52.io.IoParseException;
+import static org.n52.io.MimeType.APPLICATION_JSON;
+import static org.n52.io.MimeType.APPLICATION_OCTET_STREAM;
 import static org.n52.io.MimeType.APPLICATION_PDF;
+import static org.n52.io.MimeType.TEXT_CSV;
 import org.n52.io.PreRenderingTask;
+import org.n52.io.PrerenderedImage;
 import static org.n52.io.QueryParameters.createFromQuery;
+import org.n52.io.format.BinaryDataCollection;
 import static org.n52.io.format.FormatterFactory.createFormatterFactory;
+import org.n52.io.format.TimeseriesCsvWriter;
+import static org.n52.io.format.TimeseriesCsvWriter.createCsvWriter;
 import org.n52.io.format.TimeseriesDataFormatter;
+import org.n52.io.format.TimeseriesJsonWriter;
+import static org.n52.io.format.TimeseriesJsonWriter.createJsonWriter;
+import org.n52.io.format.TimeseriesRowMerger;
 import org.n52.io.format.TvpDataCollection;
+import org.n52.io.generalize.GeneralizingAlgorithm;
+import static org.n52.io.img.BarRenderer.BAR_CHART_TYPE;
 import org.n52.io.img.RenderingContext;
 import static org.n52.io.img.RenderingContext.createContextForSingleTimeseries;
 import static org.n52.io.img.RenderingContext.createContextWith;
+import static org.n52.io.style.BarStyle.getBarIntervalPeriod;
+import org.n52.io.v1.data.Aggregation;
 import org.n52.io.v1.data.DesignedParameterSet;
+import org.n52.io.v1.data.StyleProperties;
 import org.n52.io.v1.data.TimeseriesDataCollection;
 import org.n52.io.v1.data.TimeseriesMetadataOutput;
+import org.n52.io.v1.data.TimeseriesValue;
+import org.n52.io.v1.data.TimestampCursor;
 import org.n52.io.v1.data.UndesignedParameterSet;
 import static org.n52.io.v1.data.UndesignedParameterSet.createForSingleTimeseries;
 import static org.n52.io.v1.data.UndesignedParameterSet.createFromDesignedParameters;
@@ -58,11 +86,17 @@ import org.n52.web.BadRequestException;
 import org.n52.web.BaseController;
 import org.n52.web.InternalServerException;
 import org.n52.web.ResourceNotFoundException;
+import static org.n52.web.v1.ctrl.RenderingExecutor.Priority.INTERACTIVE;
+import static org.n52.web.v1.ctrl.RenderingExecutor.Priority.REPORT;
 import static org.n52.web.v1.ctrl.RestfulUrls.COLLECTION_TIMESERIES;
 import static org.n52.web.v1.ctrl.Stopwatch.startStopwatch;
 import static org.n52.sensorweb.v1.spi.GeneralizingTimeseriesDataService.composeDataService;
+import static org.n52.sensorweb.v1.spi.GeneralizingTimeseriesDataService.createGeneralizationPool;
+import org.n52.sensorweb.v1.spi.GeneralizedDataCache;
+import org.n52.sensorweb.v1.spi.GeneralizingTimeseriesDataService;
 import org.n52.sensorweb.v1.spi.ParameterService;
 import org.n52.sensorweb.v1.spi.ServiceParameterService;
+import org.n52.sensorweb.v1.spi.StreamingTimeseriesDataService;
 import org.n52.sensorweb.v1.spi.TimeseriesDataService;
 import org.n52.web.WebExceptionAdapter;
 import org.slf4j.Logger;
@@ -77,12 +111,26 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
 @Controller
 @RequestMapping(value = COLLECTION_TIMESERIES, produces = {"application/json"})
 public class TimeseriesDataController extends BaseController {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(TimeseriesDataController.class);
 
+    /**
+     * Generalized timeseries get about two points per pixel column, so that minima and maxima are preserved.
+     */
+    private static final int GENERALIZED_POINTS_PER_PIXEL = 2;
+
+    /**
+     * The format requested implicitly by <code>Accept: application/octet-stream</code>.
+     */
+    private static final String BINARY_FORMAT = "binary";
+
     private ServiceParameterService serviceParameterService;
 
     private ParameterService<TimeseriesMetadataOutput> timeseriesMetadataService;
@@ -93,36 +141,86 @@ public class TimeseriesDataController extends BaseController {
 
     private String requestIntervalRestriction;
 
+    private ExecutorService generalizationPool;
+
+    private Map<String, GeneralizingAlgorithm> phenomenonGeneralizingAlgorithms = Collections.emptyMap();
+
+    private GeneralizedDataCache generalizedDataCache;
+
+    private RenderedChartCache renderedChartCache;
+
+    private RenderingExecutor renderingExecutor;
+
+    private final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
     @RequestMapping(value = "/getData", produces = {"application/json"}, method = POST)
     public ModelAndView getTimeseriesCollectionData(HttpServletResponse response,
                                                     @RequestBody UndesignedParameterSet parameters) throws Exception {
 
         checkIfUnknownTimeseries(parameters.getTimeseries());
+        checkGeneralizingAlgorithm(parameters.getGeneralizingAlgorithm());
+        checkPaging(parameters);
 
         TvpDataCollection timeseriesData = getTimeseriesData(parameters);
         TimeseriesDataCollection< ? > formattedDataCollection = format(timeseriesData, parameters.getFormat());
+        if (formattedDataCollection instanceof BinaryDataCollection) {
+            writeBinaryData(response, (BinaryDataCollection) formattedDataCollection);
+            return null; // response has been written already
+        }
         return new ModelAndView().addObject(formattedDataCollection.getTimeseriesOutput());
     }
 
+    @RequestMapping(value = "/getData", produces = {"application/octet-stream"}, method = POST)
+    public void getTimeseriesCollectionBinary(HttpServletResponse response,
+                                              @RequestBody UndesignedParameterSet parameters) throws Exception {
+        parameters.setFormat(BINARY_FORMAT);
+        getTimeseriesCollectionData(response, parameters);
+    }
+
     @RequestMapping(value = "/{timeseriesId}/getData", produces = {"application/json"}, method = GET)
     public ModelAndView getTimeseriesData(HttpServletResponse response,
                                           @PathVariable String timeseriesId,
                                           @RequestParam(required = false) MultiValueMap<String, String> query) {
+        IoParameters map = createFromQuery(query);
+        return getTimeseriesData(response, timeseriesId, map, map.getFormat());
+    }
+
+    @RequestMapping(value = "/{timeseriesId}/getData", produces = {"application/octet-stream"}, method = GET)
+    public void getTimeseriesBinary(HttpServletResponse response,
+                                    @PathVariable String timeseriesId,
+                                    @RequestParam(required = false) MultiValueMap<String, String> query) {
+        getTimeseriesData(response, timeseriesId, createFromQuery(query), BINARY_FORMAT);
+    }
+
+    private ModelAndView getTimeseriesData(HttpServletResponse response,
+                                           String timeseriesId,
+                                           IoParameters map,
+                                           String format) {
 
         checkIfUnknownTimeseries(timeseriesId);
 
-        IoParameters map = createFromQuery(query);
         Interval timespan = map.getTimespan();
         checkAgainstTimespanRestriction(timespan.toString());
         UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, timespan);
 
-        parameters.setGeneralize(map.isGeneralize());
+        setGeneralization(parameters, map, -1);
         parameters.setExpanded(map.isExpanded());
+        setAggregation(parameters, map);
+        setPaging(parameters, map);
 
-        // TODO add paging
+        if (isStreamable(parameters, format)) {
+            streamTimeseriesData(response, parameters, format);
+            return null; // response has been written already
+        }
 
         TvpDataCollection timeseriesData = getTimeseriesData(parameters);
-        TimeseriesDataCollection< ? > formattedDataCollection = format(timeseriesData, map.getFormat());
+        TimeseriesDataCollection< ? > formattedDataCollection = format(timeseriesData, format);
+        if (formattedDataCollection instanceof BinaryDataCollection) {
+            writeBinaryData(response, (BinaryDataCollection) formattedDataCollection);
+            return null; // response has been written already
+        }
         if (map.isExpanded()) {
             return new ModelAndView().addObject(formattedDataCollection.getTimeseriesOutput());
         }
@@ -130,6 +228,136 @@ public class TimeseriesDataController extends BaseController {
         return new ModelAndView().addObject(formattedTimeseries);
     }
 
+    @RequestMapping(value = "/getData", produces = {"text/csv"}, method = POST)
+    public void getTimeseriesCollectionCsv(HttpServletResponse response,
+                                           @RequestBody UndesignedParameterSet parameters) {
+
+        checkIfUnknownTimeseries(parameters.getTimeseries());
+        checkAgainstTimespanRestriction(parameters.getTimespan());
+
+        // exports contain all values
+        parameters.setGeneralize(false);
+        parameters.setExpanded(false);
+        parameters.setLimit(-1);
+        parameters.setAfter(null);
+        writeCsvData(response, parameters);
+    }
+
+    @RequestMapping(value = "/{timeseriesId}/getData", produces = {"text/csv"}, method = GET)
+    public void getTimeseriesCsv(HttpServletResponse response,
+                                 @PathVariable String timeseriesId,
+                                 @RequestParam(required = false) MultiValueMap<String, String> query) {
+
+        checkIfUnknownTimeseries(timeseriesId);
+
+        IoParameters map = createFromQuery(query);
+        Interval timespan = map.getTimespan();
+        checkAgainstTimespanRestriction(timespan.toString());
+        UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, timespan);
+        setAggregation(parameters, map);
+        writeCsvData(response, parameters);
+    }
+
+    /**
+     * Writes the requested timeseries as CSV with one column per timeseries. Raw values are streamed row by
+     * row from the data service, aggregated values are collected first.
+     */
+    private void writeCsvData(HttpServletResponse response, UndesignedParameterSet parameters) {
+        try {
+            Stopwatch stopwatch = startStopwatch();
+            response.setContentType(TEXT_CSV.getMimeType());
+            response.setCharacterEncoding("UTF-8");
+            TimeseriesCsvWriter writer = createCsvWriter(response.getOutputStream());
+            if (isStreamable(parameters, null)) {
+                StreamingTimeseriesDataService streamingService = (StreamingTimeseriesDataService) timeseriesDataService;
+                streamingService.streamAlignedTimeseriesData(parameters, writer);
+            }
+            else {
+                TimeseriesRowMerger.merge(parameters.getTimeseries(), getTimeseriesData(parameters), writer);
+            }
+            writer.close();
+            LOGGER.debug("Writing CSV took {} seconds.", stopwatch.stopInSeconds());
+        }
+        catch (IOException e) { // handled by BaseController
+            throw new InternalServerException("Error handling output stream.", e);
+        }
+    }
+
+    /**
+     * Data can be streamed if neither generalization nor reference values are requested (both need all values
+     * at once) and if the data service is able to pass values as they are read. Aggregated data is small
+     * enough to be collected, limited pages are collected to return the next page's token along with them.
+     */
+    private boolean isStreamable(UndesignedParameterSet parameters, String format) {
+        return timeseriesDataService instanceof StreamingTimeseriesDataService
+                && TimeseriesJsonWriter.isSupportedFormat(format)
+                && !parameters.isGeneralize()
+                && !parameters.isExpanded()
+                && parameters.getAggregate() == null
+                && parameters.getLimit() <= 0;
+    }
+
+    /**
+     * Pages of raw data are selected by the opaque {@link TimestampCursor} token returned with the previous
+     * page, so that deep pages do not get slower than the first one.
+     */
+    private void setPaging(UndesignedParameterSet parameters, IoParameters map) {
+        TimestampCursor cursor = map.getPagingCursor();
+        parameters.setLimit(map.getLimit());
+        parameters.setAfter(cursor != null
+            ? cursor.encode()
+            : null);
+    }
+
+    /**
+     * A paging token marks the position within a single timeseries, so pages can be requested for one
+     * timeseries at a time only.
+     */
+    private void checkPaging(UndesignedParameterSet parameters) {
+        boolean paged = parameters.getLimit() > 0 || parameters.getAfter() != null;
+        if (paged && parameters.getTimeseries().length > 1) {
+            BadRequestException badRequest = new BadRequestException("Paging is supported for a single timeseries only.");
+            badRequest.addHint("Request the pages of each timeseries via '/timeseries/{id}/getData'.");
+            throw badRequest;
+        }
+        try {
+            if (parameters.getAfter() != null) {
+                TimestampCursor.decode(parameters.getAfter());
+            }
+        }
+        catch (IoParseException e) {
+            BadRequestException badRequest = new BadRequestException("Bad 'after' parameter.", e);
+            badRequest.addHint("Use the paging token as returned with the previous page.");
+            throw badRequest;
+        }
+    }
+
+    private void streamTimeseriesData(HttpServletResponse response, UndesignedParameterSet parameters, String format) {
+        try {
+            Stopwatch stopwatch = startStopwatch();
+            response.setContentType(APPLICATION_JSON.getMimeType());
+            response.setCharacterEncoding("UTF-8");
+            TimeseriesJsonWriter writer = createJsonWriter(response.getOutputStream(), format);
+            StreamingTimeseriesDataService streamingService = (StreamingTimeseriesDataService) timeseriesDataService;
+            streamingService.streamTimeseriesData(parameters, writer);
+            writer.close();
+            LOGGER.debug("Streaming data took {} seconds.", stopwatch.stopInSeconds());
+        }
+        catch (IOException e) { // handled by BaseController
+            throw new InternalServerException("Error handling output stream.", e);
+        }
+    }
+
+    private void writeBinaryData(HttpServletResponse response, BinaryDataCollection binaryData) {
+        try {
+            response.setContentType(APPLICATION_OCTET_STREAM.getMimeType());
+            binaryData.writeTo(response.getOutputStream());
+        }
+        catch (IOException e) { // handled by BaseController
+            throw new InternalServerException("Error handling output stream.", e);
+        }
+    }
+
     private TimeseriesDataCollection< ? > format(TvpDataCollection timeseriesData, String format) {
         TimeseriesDataFormatter< ? > formatter = createFormatterFactory(format).create();
         return formatter.format(timeseriesData);
@@ -144,8 +372,10 @@ public class TimeseriesDataController extends BaseController {
         IoParameters map = createFromQuery(requestParameters);
         UndesignedParameterSet parameters = createFromDesignedParameters(requestParameters);
         checkAgainstTimespanRestriction(parameters.getTimespan());
-        parameters.setGeneralize(map.isGeneralize());
+        setGeneralization(parameters, map, requestParameters.getWidth());
         parameters.setExpanded(map.isExpanded());
+        setAggregation(parameters, map, getStyleOptions(requestParameters));
+        setResolution(parameters, requestParameters.getWidth());
 
         String[] timeseriesIds = parameters.getTimeseries();
         TimeseriesMetadataOutput[] timeseriesMetadatas = timeseriesMetadataService.getParameters(timeseriesIds, map);
@@ -153,7 +383,7 @@ public class TimeseriesDataController extends BaseController {
 
         IoHandler renderer = IoFactory.createWith(map).forMimeType(APPLICATION_PDF).createIOHandler(context);
 
-        handleBinaryResponse(response, parameters, renderer);
+        handleBinaryResponse(response, parameters, timeseriesMetadatas, renderer, REPORT);
 
     }
 
@@ -166,19 +396,23 @@ public class TimeseriesDataController extends BaseController {
 
         IoParameters map = createFromQuery(query);
         TimeseriesMetadataOutput metadata = timeseriesMetadataService.getParameter(timeseriesId, map);
-        RenderingContext context = createContextForSingleTimeseries(metadata, map.getStyle(), map.getTimespan());
-        UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, map.getTimespan());
+        Interval timespan = map.getTimespan();
+        RenderingContext context = createContextForSingleTimeseries(metadata, map.getStyle(), timespan);
+        UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, timespan);
         checkAgainstTimespanRestriction(parameters.getTimespan());
-        parameters.setGeneralize(map.isGeneralize());
+        setGeneralization(parameters, map, map.getChartDimension().getWidth());
         parameters.setExpanded(map.isExpanded());
+        setAggregation(parameters, map, map.getStyle());
+        setResolution(parameters, map.getChartDimension().getWidth());
 
         IoHandler renderer = IoFactory.createWith(map).forMimeType(APPLICATION_PDF).createIOHandler(context);
 
-        handleBinaryResponse(response, parameters, renderer);
+        handleBinaryResponse(response, parameters, new TimeseriesMetadataOutput[] {metadata}, renderer, REPORT);
     }
 
     @RequestMapping(value = "/getData", produces = {"image/png"}, method = POST)
-    public void getTimeseriesCollectionChart(HttpServletResponse response,
+    public void getTimeseriesCollectionChart(HttpServletRequest request,
+                                             HttpServletResponse response,
                                              @RequestBody DesignedParameterSet requestParameters) throws Exception {
 
         checkIfUnknownTimeseries(requestParameters.getTimeseries());
@@ -186,20 +420,27 @@ public class TimeseriesDataController extends BaseController {
         IoParameters map = createFromQuery(requestParameters);
         UndesignedParameterSet parameters = createFromDesignedParameters(requestParameters);
         checkAgainstTimespanRestriction(parameters.getTimespan());
-        parameters.setGeneralize(map.isGeneralize());
+        setGeneralization(parameters, map, requestParameters.getWidth());
         parameters.setExpanded(map.isExpanded());
         parameters.setBase64(map.isBase64());
+        setAggregation(parameters, map, getStyleOptions(requestParameters));
+        setResolution(parameters, requestParameters.getWidth());
 
         String[] timeseriesIds = parameters.getTimeseries();
         TimeseriesMetadataOutput[] timeseriesMetadatas = timeseriesMetadataService.getParameters(timeseriesIds, map);
+        String etag = createChartETag(canonicalMapper.writeValueAsString(requestParameters), parameters, timeseriesMetadatas);
+        if (isNotModified(request, response, etag)) {
+            return;
+        }
         RenderingContext context = createContextWith(requestParameters, timeseriesMetadatas);
         IoHandler renderer = IoFactory.createWith(map).createIOHandler(context);
 
-        handleBinaryResponse(response, parameters, renderer);
+        handleChartResponse(response, parameters, timeseriesMetadatas, renderer, etag);
     }
 
     @RequestMapping(value = "/{timeseriesId}/getData", produces = {"image/png"}, method = GET)
-    public void getTimeseriesChart(HttpServletResponse response,
+    public void getTimeseriesChart(HttpServletRequest request,
+                                   HttpServletResponse response,
                                    @PathVariable String timeseriesId,
                                    @RequestParam(required = false) MultiValueMap<String, String> query) throws Exception {
 
@@ -207,22 +448,30 @@ public class TimeseriesDataController extends BaseController {
 
         IoParameters map = createFromQuery(query);
         TimeseriesMetadataOutput metadata = timeseriesMetadataService.getParameter(timeseriesId, map);
-        RenderingContext context = createContextForSingleTimeseries(metadata, map.getStyle(), map.getTimespan());
+        Interval timespan = map.getTimespan();
+        RenderingContext context = createContextForSingleTimeseries(metadata, map.getStyle(), timespan);
         context.setDimensions(map.getChartDimension());
 
-        UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, map.getTimespan());
+        UndesignedParameterSet parameters = createForSingleTimeseries(timeseriesId, timespan);
         checkAgainstTimespanRestriction(parameters.getTimespan());
 
-        parameters.setGeneralize(map.isGeneralize());
+        setGeneralization(parameters, map, map.getChartDimension().getWidth());
         parameters.setBase64(map.isBase64());
         parameters.setExpanded(map.isExpanded());
+        setAggregation(parameters, map, map.getStyle());
+        setResolution(parameters, map.getChartDimension().getWidth());
 
+        String etag = createChartETag(createCanonicalQuery(timeseriesId, query), parameters, metadata);
+        if (isNotModified(request, response, etag)) {
+            return;
+        }
         IoHandler renderer = IoFactory.createWith(map).createIOHandler(context);
-        handleBinaryResponse(response, parameters, renderer);
+        handleChartResponse(response, parameters, new TimeseriesMetadataOutput[] {metadata}, renderer, etag);
     }
 
     @RequestMapping(value = "/{timeseriesId}/{interval}", produces = {"image/png"}, method = GET)
-    public void getTimeseriesChartByInterval(HttpServletResponse response,
+    public void getTimeseriesChartByInterval(HttpServletRequest request,
+                                             HttpServletResponse response,
                                              @PathVariable String timeseriesId,
                                              @PathVariable String interval,
                                              @RequestParam(required = false) MultiValueMap<String, String> query) throws Exception {
@@ -232,7 +481,123 @@ public class TimeseriesDataController extends BaseController {
         if ( !preRenderingTask.hasPrerenderedImage(timeseriesId, interval)) {
             throw new ResourceNotFoundException("No pre-rendered chart found for timeseries '" + timeseriesId + "'.");
         }
-        preRenderingTask.writePrerenderedGraphToOutputStream(timeseriesId, interval, response.getOutputStream());
+        PrerenderedImage image = preRenderingTask.openPrerenderedImage(timeseriesId, interval);
+        try {
+            response.setDateHeader("Last-Modified", image.getLastModified());
+            if (isNotModified(request, response, image.getETag())
+                    || isNotModifiedSince(request, response, image.getLastModified())) {
+                return;
+            }
+            response.setContentType("image/png");
+            response.setContentLength((int) image.getLength());
+            image.writeTo(response.getOutputStream());
+        }
+        finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Passes the requested generalization on to the data service. Unless a maximum number of points is
+     * requested explicitly, rendered charts limit each timeseries to the points the chart is able to show.
+     * 
+     * @param parameters
+     *        the parameters to set the generalization on.
+     * @param map
+     *        the query parameters.
+     * @param chartWidth
+     *        the width of the chart to render in pixels, or <code>-1</code> if raw data is requested.
+     */
+    private void setGeneralization(UndesignedParameterSet parameters, IoParameters map, int chartWidth) {
+        parameters.setGeneralize(map.isGeneralize());
+        GeneralizingAlgorithm algorithm = map.getGeneralizingAlgorithm();
+        parameters.setGeneralizingAlgorithm(algorithm != null
+            ? algorithm.getParameterValue()
+            : null);
+        int maxPoints = map.getMaxPoints();
+        parameters.setMaxPoints(maxPoints <= 0 && chartWidth > 0
+            ? chartWidth * GENERALIZED_POINTS_PER_PIXEL
+            : maxPoints);
+    }
+
+    /**
+     * Unless values are generalized or aggregated anyway, rendered charts get the first, last, minimum and
+     * maximum value per pixel column only. The chart looks the same, but rendering time no longer depends on
+     * the number of raw values.
+     * 
+     * @param parameters
+     *        the parameters to set the resolution on.
+     * @param chartWidth
+     *        the width of the chart to render in pixels.
+     */
+    private void setResolution(UndesignedParameterSet parameters, int chartWidth) {
+        if ( !parameters.isGeneralize() && parameters.getAggregate() == null) {
+            parameters.setResolution(chartWidth);
+        }
+    }
+
+    private void checkGeneralizingAlgorithm(String algorithm) {
+        try {
+            if (algorithm != null) {
+                GeneralizingAlgorithm.fromParameterValue(algorithm);
+            }
+        }
+        catch (IoParseException e) {
+            BadRequestException badRequest = new BadRequestException("Bad 'generalizingAlgorithm' parameter.", e);
+            badRequest.addHint("Valid algorithms are 'lttb' (Largest-Triangle-Three-Buckets) and 'dp' (Douglas-Peucker).");
+            throw badRequest;
+        }
+    }
+
+    /**
+     * Passes a requested aggregation on to the data service. If no aggregation was requested but all
+     * timeseries are rendered as bars of the same interval, summing up the values per bar is pushed down to
+     * the data service, too.
+     * 
+     * @param parameters
+     *        the parameters to set the aggregation on.
+     * @param map
+     *        the query parameters.
+     * @param styles
+     *        the styles of the timeseries to render (none if raw data is requested).
+     */
+    private void setAggregation(UndesignedParameterSet parameters, IoParameters map, StyleProperties... styles) {
+        Aggregation aggregation = map.getAggregation();
+        if (aggregation != null) {
+            parameters.setAggregate(aggregation.getParameterValue());
+            parameters.setBucket(map.getAggregationBucket().toString());
+        }
+        else if (styles.length > 0 && !parameters.isGeneralize()) {
+            Period barInterval = getCommonBarInterval(styles);
+            if (barInterval != null) {
+                parameters.setAggregate(Aggregation.SUM.getParameterValue());
+                parameters.setBucket(barInterval.toString());
+            }
+        }
+    }
+
+    private Period getCommonBarInterval(StyleProperties... styles) {
+        Period commonInterval = null;
+        for (StyleProperties style : styles) {
+            if (style == null || !BAR_CHART_TYPE.equals(style.getChartType())) {
+                return null;
+            }
+            Period barInterval = getBarIntervalPeriod(style);
+            if (commonInterval != null && !commonInterval.equals(barInterval)) {
+                return null;
+            }
+            commonInterval = barInterval;
+        }
+        return commonInterval;
+    }
+
+    private StyleProperties[] getStyleOptions(DesignedParameterSet parameters) {
+        String[] timeseriesIds = parameters.getTimeseries();
+        StyleProperties[] styles = new StyleProperties[timeseriesIds.length];
+        for (int i = 0; i < timeseriesIds.length; i++) {
+            styles[i] = parameters.getStyleOptions(timeseriesIds[i]);
+        }
+        return styles;
     }
 
     private void checkAgainstTimespanRestriction(String timespan) {
@@ -256,16 +621,29 @@ public class TimeseriesDataController extends BaseController {
      *        the response to write binary on.
      * @param parameters
      *        the timeseries parameter to request raw data.
+     * @param metadatas
+     *        the metadata of the requested timeseries.
      * @param renderer
      *        an output renderer.
+     * @param priority
+     *        the priority to render with if a {@link RenderingExecutor} is configured.
      * @throws InternalServerException
      *         if data processing fails for some reason.
      */
     private void handleBinaryResponse(HttpServletResponse response,
                                       UndesignedParameterSet parameters,
-                                      IoHandler renderer) {
+                                      TimeseriesMetadataOutput[] metadatas,
+                                      IoHandler renderer,
+                                      RenderingExecutor.Priority priority) {
         try {
-            renderer.generateOutput(getTimeseriesData(parameters));
+            if (renderingExecutor != null) {
+                byte[] output = renderingExecutor.render(renderer, createDataLoader(parameters, metadatas), priority);
+                response.getOutputStream().write(parameters.isBase64()
+                    ? Base64.encodeBase64(output)
+                    : output);
+                return;
+            }
+            renderer.generateOutput(getTimeseriesData(parameters, metadatas));
             if (parameters.isBase64()) {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 renderer.encodeAndWriteTo(baos);
@@ -285,15 +663,218 @@ public class TimeseriesDataController extends BaseController {
         }
     }
 
+    /**
+     * Like {@link #handleBinaryResponse(HttpServletResponse, UndesignedParameterSet, TimeseriesMetadataOutput[], IoHandler, RenderingExecutor.Priority)},
+     * but looks up the encoded chart in the {@link RenderedChartCache} first and caches newly rendered
+     * charts.
+     * 
+     * @param etag
+     *        the ETag identifying the chart, or <code>null</code> if charts are not cached.
+     */
+    private void handleChartResponse(HttpServletResponse response,
+                                     UndesignedParameterSet parameters,
+                                     TimeseriesMetadataOutput[] metadatas,
+                                     IoHandler renderer,
+                                     String etag) {
+        if (etag == null) {
+            handleBinaryResponse(response, parameters, metadatas, renderer, INTERACTIVE);
+            return;
+        }
+        try {
+            String key = etag.substring(1, etag.length() - 1);
+            byte[] imageData = renderedChartCache.get(key);
+            if (imageData == null) {
+                imageData = renderChart(renderer, parameters, metadatas);
+                renderedChartCache.put(key, imageData);
+            }
+            LOGGER.debug("Chart cache: {}", renderedChartCache);
+            response.getOutputStream().write(parameters.isBase64()
+                ? Base64.encodeBase64(imageData)
+                : imageData);
+        }
+        catch (IOException e) { // handled by BaseController
+            throw new InternalServerException("Error handling output stream.", e);
+        }
+        catch (IoParseException e) { // handled by BaseController
+            throw new InternalServerException("Could not write binary to stream.", e);
+        }
+    }
+
+    private byte[] renderChart(IoHandler renderer,
+                               UndesignedParameterSet parameters,
+                               TimeseriesMetadataOutput[] metadatas) throws IoParseException {
+        if (renderingExecutor != null) {
+            return renderingExecutor.render(renderer, createDataLoader(parameters, metadatas), INTERACTIVE);
+        }
+        renderer.generateOutput(getTimeseriesData(parameters, metadatas));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderer.encodeAndWriteTo(baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param canonicalRequest
+     *        the request in a canonical form, so that equal requests result in the same string.
+     * @param parameters
+     *        the parameters to request data with (having the resolved timespan).
+     * @param metadatas
+     *        the metadata of the requested timeseries.
+     * @return a strong ETag derived from request, timespan and the last values of all timeseries, or
+     *         <code>null</code> if charts are not cached.
+     */
+    private String createChartETag(String canonicalRequest,
+                                   UndesignedParameterSet parameters,
+                                   TimeseriesMetadataOutput... metadatas) {
+        if (renderedChartCache == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(canonicalRequest);
+        sb.append("\ntimespan=").append(parameters.getTimespan());
+        for (TimeseriesMetadataOutput metadata : metadatas) {
+            TimeseriesValue lastValue = metadata.getLastValue();
+            sb.append("\n").append(metadata.getId()).append("=");
+            sb.append(lastValue != null ? lastValue.getTimestamp() : null);
+        }
+        return "\"" + DigestUtils.sha256Hex(sb.toString()) + "\"";
+    }
+
+    private String createCanonicalQuery(String timeseriesId, MultiValueMap<String, String> query) {
+        StringBuilder sb = new StringBuilder(timeseriesId);
+        if (query != null) {
+            Map<String, Object> sortedQuery = new TreeMap<String, Object>();
+            for (Entry<String, List<String>> parameter : query.entrySet()) {
+                sortedQuery.put(parameter.getKey().toLowerCase(Locale.ROOT), parameter.getValue());
+            }
+            sb.append(sortedQuery);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the ETag on the response and answers with <code>304 Not Modified</code> if the client already
+     * has the current chart.
+     * 
+     * @return <code>true</code> if the chart does not have to be sent.
+     */
+    private boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        response.setHeader("ETag", etag);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals(etag) || trimmed.equals("*")) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Answers with <code>304 Not Modified</code> if the client's copy is not older than the last modification.
+     * Only evaluated if the request does not carry an <code>If-None-Match</code> header.
+     * 
+     * @return <code>true</code> if the content does not have to be sent.
+     */
+    private boolean isNotModifiedSince(HttpServletRequest request, HttpServletResponse response, long lastModified) {
+        if (request.getHeader("If-None-Match") != null) {
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            // HTTP dates have a resolution of seconds
+            if (ifModifiedSince >= 0 && lastModified / 1000 * 1000 <= ifModifiedSince) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            LOGGER.debug("Ignoring invalid If-Modified-Since header.", e);
+        }
+        return false;
+    }
+
     private TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters) {
+        return getTimeseriesData(parameters, null);
+    }
+
+    /**
+     * @param metadatas
+     *        the metadata of the requested timeseries if already loaded, or <code>null</code> to load it only
+     *        if needed for generalization.
+     */
+    private TvpDataCollection getTimeseriesData(UndesignedParameterSet parameters,
+                                                TimeseriesMetadataOutput[] metadatas) {
         Stopwatch stopwatch = startStopwatch();
         TvpDataCollection timeseriesData = parameters.isGeneralize()
-            ? composeDataService(timeseriesDataService).getTimeseriesData(parameters)
+            ? createGeneralizingDataService(parameters, metadatas).getTimeseriesData(parameters)
             : timeseriesDataService.getTimeseriesData(parameters);
         LOGGER.debug("Processing request took {} seconds.", stopwatch.stopInSeconds());
         return timeseriesData;
     }
 
+    /**
+     * @return a loader to pass to the {@link RenderingExecutor}, so that data is loaded only after a rendering
+     *         slot has been reserved.
+     */
+    private Callable<TvpDataCollection> createDataLoader(final UndesignedParameterSet parameters,
+                                                         final TimeseriesMetadataOutput[] metadatas) {
+        return new Callable<TvpDataCollection>() {
+            @Override
+            public TvpDataCollection call() {
+                return getTimeseriesData(parameters, metadatas);
+            }
+        };
+    }
+
+    private TimeseriesDataService createGeneralizingDataService(UndesignedParameterSet parameters,
+                                                                TimeseriesMetadataOutput[] metadatas) {
+        GeneralizingTimeseriesDataService generalizingService = composeDataService(timeseriesDataService, generalizationPool);
+        boolean configuredAlgorithms = parameters.getGeneralizingAlgorithm() == null
+                && !phenomenonGeneralizingAlgorithms.isEmpty();
+        if (configuredAlgorithms || generalizedDataCache != null) {
+            if (metadatas == null) {
+                metadatas = timeseriesMetadataService.getParameters(parameters.getTimeseries());
+            }
+            if (configuredAlgorithms) {
+                generalizingService.setAlgorithms(getGeneralizingAlgorithms(metadatas));
+            }
+            if (generalizedDataCache != null) {
+                updateLastValues(metadatas);
+                generalizingService.setCache(generalizedDataCache);
+            }
+        }
+        return generalizingService;
+    }
+
+    private Map<String, GeneralizingAlgorithm> getGeneralizingAlgorithms(TimeseriesMetadataOutput[] metadatas) {
+        Map<String, GeneralizingAlgorithm> algorithms = new HashMap<String, GeneralizingAlgorithm>();
+        for (TimeseriesMetadataOutput metadata : metadatas) {
+            String phenomenonId = metadata.getParameters().getPhenomenon().getId();
+            if (phenomenonGeneralizingAlgorithms.containsKey(phenomenonId)) {
+                algorithms.put(metadata.getId(), phenomenonGeneralizingAlgorithms.get(phenomenonId));
+            }
+        }
+        return algorithms;
+    }
+
+    /**
+     * Invalidates cached generalized timeseries whose last value has advanced.
+     */
+    private void updateLastValues(TimeseriesMetadataOutput[] metadatas) {
+        for (TimeseriesMetadataOutput metadata : metadatas) {
+            TimeseriesValue lastValue = metadata.getLastValue();
+            if (lastValue != null && lastValue.getTimestamp() != null) {
+                generalizedDataCache.updateLastValue(metadata.getId(), lastValue.getTimestamp());
+            }
+        }
+    }
+
     public ServiceParameterService getServiceParameterService() {
         return serviceParameterService;
     }
@@ -336,4 +917,63 @@ public class TimeseriesDataController extends BaseController {
         this.requestIntervalRestriction = requestIntervalRestriction;
     }
 
+    /**
+     * @param parallelism
+     *        the maximum number of timeseries generalized at the same time over all requests. If not set,
+     *        timeseries are generalized one after another on the request thread.
+     */
+    public void setGeneralizationParallelism(int parallelism) {
+        shutdownGeneralizationPool();
+        this.generalizationPool = createGeneralizationPool(parallelism);
+    }
+
+    /**
+     * @param algorithms
+     *        the algorithms (<code>lttb</code> or <code>dp</code>) to generalize timeseries of a phenomenon
+     *        with if no algorithm is requested, mapped by phenomenon id.
+     */
+    public void setPhenomenonGeneralizingAlgorithms(Map<String, String> algorithms) {
+        Map<String, GeneralizingAlgorithm> parsedAlgorithms = new HashMap<String, GeneralizingAlgorithm>();
+        for (Entry<String, String> algorithm : algorithms.entrySet()) {
+            parsedAlgorithms.put(algorithm.getKey(), GeneralizingAlgorithm.fromParameterValue(algorithm.getValue()));
+        }
+        this.phenomenonGeneralizingAlgorithms = parsedAlgorithms;
+    }
+
+    /**
+     * @param generalizedDataCache
+     *        the cache shared by all generalizing requests, or <code>null</code> to generalize on each request.
+     */
+    public void setGeneralizedDataCache(GeneralizedDataCache generalizedDataCache) {
+        this.generalizedDataCache = generalizedDataCache;
+    }
+
+    /**
+     * @param renderedChartCache
+     *        the cache for rendered PNG charts, or <code>null</code> to render charts on each request.
+     */
+    public void setRenderedChartCache(RenderedChartCache renderedChartCache) {
+        this.renderedChartCache = renderedChartCache;
+    }
+
+    /**
+     * @param renderingExecutor
+     *        the executor to render charts and reports with, <code>null</code> to render on the request
+     *        thread.
+     */
+    public void setRenderingExecutor(RenderingExecutor renderingExecutor) {
+        this.renderingExecutor = renderingExecutor;
+    }
+
+    public void destroy() {
+        shutdownGeneralizationPool();
+    }
+
+    private void shutdownGeneralizationPool() {
+        if (generalizationPool != null) {
+            generalizationPool.shutdownNow();
+            generalizationPool = null;
+        }
+    }
+
 }
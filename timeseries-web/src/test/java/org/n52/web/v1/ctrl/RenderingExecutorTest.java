@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2013-2014 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as publishedby the Free
+ * Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of the
+ * following licenses, the combination of the program with the linked library is
+ * not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed under
+ * the aforementioned licenses, is permitted by the copyright holders if the
+ * distribution is compliant with both the GNU General Public License version 2
+ * and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ */
+package org.n52.web.v1.ctrl;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.n52.web.v1.ctrl.RenderingExecutor.Priority.INTERACTIVE;
+import static org.n52.web.v1.ctrl.RenderingExecutor.Priority.REPORT;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.io.IoHandler;
+import org.n52.io.IoParseException;
+import org.n52.io.format.TvpDataCollection;
+import org.n52.web.ServiceUnavailableException;
+import org.n52.web.v1.ctrl.RenderingExecutor.Priority;
+
+public class RenderingExecutorTest {
+
+    private static final Callable<TvpDataCollection> NO_DATA = new Callable<TvpDataCollection>() {
+        @Override
+        public TvpDataCollection call() {
+            return null;
+        }
+    };
+
+    private RenderingExecutor executor;
+
+    private CountDownLatch release;
+
+    private List<String> rendered;
+
+    @Before
+    public void
+    setUp()
+    {
+        release = new CountDownLatch(1);
+        rendered = Collections.synchronizedList(new ArrayList<String>());
+        executor = new RenderingExecutor();
+        executor.setParallelism(1);
+        executor.setQueueSize(2);
+        executor.setInteractiveTimeout(1);
+        executor.setReportTimeout(30);
+        executor.init();
+    }
+
+    @After
+    public void
+    tearDown()
+    {
+        release.countDown();
+        executor.destroy();
+    }
+
+    @Test
+    public void
+    shouldRefuseRenderingsBeyondQueueSize() throws Exception
+    {
+        executor.setQueueSize(1);
+        Rendering blocking = startBlockingRendering();
+        Rendering queued = startRendering("queued", REPORT);
+        awaitQueueDepth(1);
+        try {
+            executor.render(new RecordingRenderer("refused"), NO_DATA, REPORT);
+            fail("rendering beyond queue size was accepted");
+        }
+        catch (ServiceUnavailableException e) {
+            assertThat(e.getRetryAfter() > 0, is(true));
+        }
+        assertThat(executor.getRejectedRenderings(), is(1L));
+        assertThat(executor.getQueueDepth(), is(1));
+
+        release.countDown();
+        assertThat(blocking.awaitResult(), is(new byte[] {1}));
+        assertThat(queued.awaitResult(), is(new byte[] {1}));
+        assertThat(executor.getQueueDepth(), is(0));
+        awaitCompletedRenderings(2L);
+        assertThat(rendered.contains("refused"), is(false));
+    }
+
+    @Test
+    public void
+    shouldNotLoadDataOfRefusedRenderings() throws Exception
+    {
+        executor.setQueueSize(0);
+        final AtomicBoolean loaded = new AtomicBoolean();
+        Callable<TvpDataCollection> dataLoader = new Callable<TvpDataCollection>() {
+            @Override
+            public TvpDataCollection call() {
+                loaded.set(true);
+                return null;
+            }
+        };
+        try {
+            executor.render(new RecordingRenderer("refused"), dataLoader, INTERACTIVE);
+            fail("rendering beyond queue size was accepted");
+        }
+        catch (ServiceUnavailableException e) {
+            // expected
+        }
+        assertThat(loaded.get(), is(false));
+        assertThat(executor.getRejectedRenderings(), is(1L));
+    }
+
+    @Test
+    public void
+    shouldReleaseQueueSlotIfLoadingDataFails() throws Exception
+    {
+        executor.setQueueSize(1);
+        Callable<TvpDataCollection> failing = new Callable<TvpDataCollection>() {
+            @Override
+            public TvpDataCollection call() {
+                throw new IllegalStateException("no data");
+            }
+        };
+        try {
+            executor.render(new RecordingRenderer("failing"), failing, INTERACTIVE);
+            fail("failure was not propagated");
+        }
+        catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("no data"));
+        }
+        assertThat(executor.getQueueDepth(), is(0));
+        assertThat(executor.render(new RecordingRenderer("next"), NO_DATA, INTERACTIVE), is(new byte[] {1}));
+        assertThat(rendered.contains("failing"), is(false));
+    }
+
+    @Test
+    public void
+    shouldReleaseQueueSlotOfTimedOutRendering() throws Exception
+    {
+        Rendering blocking = startBlockingRendering();
+        try {
+            executor.render(new RecordingRenderer("timed out"), NO_DATA, INTERACTIVE);
+            fail("rendering finished though no thread was free");
+        }
+        catch (ServiceUnavailableException e) {
+            // expected
+        }
+        assertThat(executor.getQueueDepth(), is(0));
+        assertThat(executor.getTimedOutRenderings(), is(1L));
+
+        release.countDown();
+        blocking.awaitResult();
+        assertThat(executor.getQueueDepth(), is(0));
+        assertThat(executor.render(new RecordingRenderer("next"), NO_DATA, INTERACTIVE), is(new byte[] {1}));
+        assertThat(executor.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void
+    shouldDropRenderingsNotStartedBeforeTheirDeadline() throws Exception
+    {
+        Rendering blocking = startBlockingRendering();
+        Rendering late = startRendering("late", INTERACTIVE);
+        assertThat(late.awaitFailure() instanceof ServiceUnavailableException, is(true));
+
+        release.countDown();
+        blocking.awaitResult();
+        assertThat(rendered.contains("late"), is(false));
+        awaitCompletedRenderings(1L);
+        assertThat(executor.getTimedOutRenderings(), is(1L));
+        assertThat(executor.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void
+    shouldRenderInteractiveBeforeReports() throws Exception
+    {
+        executor.setInteractiveTimeout(30);
+        Rendering blocking = startBlockingRendering();
+        Rendering report = startRendering("report", REPORT);
+        awaitQueueDepth(1);
+        Rendering chart = startRendering("chart", INTERACTIVE);
+        awaitQueueDepth(2);
+
+        release.countDown();
+        blocking.awaitResult();
+        report.awaitResult();
+        chart.awaitResult();
+        assertThat(rendered.indexOf("chart") < rendered.indexOf("report"), is(true));
+        awaitCompletedRenderings(3L);
+    }
+
+    @Test
+    public void
+    shouldCountFailedRenderings() throws Exception
+    {
+        IoHandler failing = new RecordingRenderer("failing") {
+            @Override
+            public void generateOutput(TvpDataCollection data) throws IoParseException {
+                throw new IoParseException("broken");
+            }
+        };
+        try {
+            executor.render(failing, NO_DATA, INTERACTIVE);
+            fail("failure was not propagated");
+        }
+        catch (IoParseException e) {
+            assertThat(e.getMessage(), is("broken"));
+        }
+        assertThat(executor.getFailedRenderings(), is(1L));
+        assertThat(executor.getQueueDepth(), is(0));
+    }
+
+    private Rendering startBlockingRendering() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        IoHandler renderer = new RecordingRenderer("blocking") {
+            @Override
+            public void generateOutput(TvpDataCollection data) throws IoParseException {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    throw new IoParseException("interrupted", e);
+                }
+            }
+        };
+        Rendering rendering = new Rendering(renderer, REPORT);
+        rendering.start();
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        return rendering;
+    }
+
+    private Rendering startRendering(String name, Priority priority) {
+        Rendering rendering = new Rendering(new RecordingRenderer(name), priority);
+        rendering.start();
+        return rendering;
+    }
+
+    private void awaitCompletedRenderings(long count) throws InterruptedException {
+        // counted after the result has been handed over to the waiting caller
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (executor.getCompletedRenderings() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(executor.getCompletedRenderings() + " renderings completed instead of " + count);
+            }
+            Thread.sleep(10L);
+        }
+        assertThat(executor.getCompletedRenderings(), is(count));
+    }
+
+    private void awaitQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (executor.getQueueDepth() != depth) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("queue depth " + executor.getQueueDepth() + " instead of " + depth);
+            }
+            Thread.sleep(10L);
+        }
+    }
+
+    private class RecordingRenderer implements IoHandler {
+
+        private final String name;
+
+        RecordingRenderer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void generateOutput(TvpDataCollection data) throws IoParseException {
+            rendered.add(name);
+        }
+
+        @Override
+        public void encodeAndWriteTo(OutputStream stream) throws IoParseException {
+            try {
+                stream.write(1);
+            }
+            catch (IOException e) {
+                throw new IoParseException("could not write", e);
+            }
+        }
+
+    }
+
+    private class Rendering extends Thread {
+
+        private final IoHandler renderer;
+
+        private final Priority priority;
+
+        private volatile byte[] result;
+
+        private volatile Exception failure;
+
+        Rendering(IoHandler renderer, Priority priority) {
+            this.renderer = renderer;
+            this.priority = priority;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = executor.render(renderer, NO_DATA, priority);
+            }
+            catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        byte[] awaitResult() throws Exception {
+            join(10000L);
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        Exception awaitFailure() throws InterruptedException {
+            join(10000L);
+            return failure;
+        }
+
+    }
+
+}